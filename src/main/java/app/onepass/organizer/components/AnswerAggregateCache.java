@@ -0,0 +1,154 @@
+package app.onepass.organizer.components;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import app.onepass.organizer.repositories.AnswerRepository;
+
+@Component
+public class AnswerAggregateCache {
+
+	private final ConcurrentHashMap<Integer, AnswerStatistics> statistics = new ConcurrentHashMap<>();
+
+	private final ConcurrentHashMap<Integer, Rebuild> rebuilds = new ConcurrentHashMap<>();
+
+	@Autowired
+	private AnswerRepository answerRepository;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Value("${ANSWER_AGGREGATE_MAX_AGE_SECONDS:60}")
+	private long maximumAgeSeconds;
+
+	@PostConstruct
+	public void initialize() {
+
+		invalidationBus.subscribe(InvalidationBus.Topic.ANSWERS, questionIds -> questionIds.forEach(this::evict), this::clear);
+	}
+
+	/**
+	 * Answers are also written by other services, so an aggregate is rebuilt from the table once it is older
+	 * than the configured maximum age. Writes made through this service evict it right after they commit. Callers
+	 * that find the same aggregate missing share one rebuild, which reads the table outside the map and is
+	 * returned without being cached if the aggregate was evicted while it ran.
+	 */
+	public AnswerStatistics get(int questionId) {
+
+		AnswerStatistics current = statistics.get(questionId);
+
+		if (current != null && !current.isOlderThan(TimeUnit.SECONDS.toMillis(maximumAgeSeconds))) {
+
+			return current;
+		}
+
+		Rebuild rebuild = new Rebuild();
+
+		Rebuild inFlight = rebuilds.putIfAbsent(questionId, rebuild);
+
+		if (inFlight != null) {
+
+			return inFlight.await();
+		}
+
+		try {
+
+			AnswerStatistics rebuilt = rebuild(questionId);
+
+			if (!rebuild.isInvalidated) {
+
+				statistics.put(questionId, rebuilt);
+
+				// An eviction that raced with the put marks the rebuild before it removes the old entry.
+				if (rebuild.isInvalidated) {
+
+					statistics.remove(questionId, rebuilt);
+				}
+			}
+
+			rebuild.result.complete(rebuilt);
+
+			return rebuilt;
+
+		} catch (RuntimeException exception) {
+
+			rebuild.result.completeExceptionally(exception);
+
+			throw exception;
+
+		} finally {
+
+			rebuilds.remove(questionId, rebuild);
+		}
+	}
+
+	public void evict(int questionId) {
+
+		Rebuild rebuild = rebuilds.get(questionId);
+
+		if (rebuild != null) {
+
+			rebuild.isInvalidated = true;
+		}
+
+		statistics.remove(questionId);
+	}
+
+	public void clear() {
+
+		rebuilds.values().forEach(rebuild -> rebuild.isInvalidated = true);
+
+		statistics.clear();
+	}
+
+	private AnswerStatistics rebuild(int questionId) {
+
+		AnswerStatistics answerStatistics = new AnswerStatistics();
+
+		List<Object[]> valueCounts = answerRepository.countValuesByQuestionId(questionId);
+
+		for (Object[] valueCount : valueCounts) {
+
+			answerStatistics.add((String) valueCount[0], ((Number) valueCount[1]).longValue());
+		}
+
+		return answerStatistics;
+	}
+
+	private static final class Rebuild {
+
+		private final CompletableFuture<AnswerStatistics> result = new CompletableFuture<>();
+
+		/**
+		 * Set when the aggregate is evicted during the rebuild, which may then have read the table before the
+		 * write that caused the eviction.
+		 */
+		private volatile boolean isInvalidated;
+
+		private AnswerStatistics await() {
+
+			try {
+
+				return result.join();
+
+			} catch (CompletionException exception) {
+
+				if (exception.getCause() instanceof RuntimeException) {
+
+					throw (RuntimeException) exception.getCause();
+				}
+
+				throw exception;
+			}
+		}
+	}
+}
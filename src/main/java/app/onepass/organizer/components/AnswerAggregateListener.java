@@ -0,0 +1,51 @@
+package app.onepass.organizer.components;
+
+import javax.persistence.PostPersist;
+import javax.persistence.PostRemove;
+import javax.persistence.PostUpdate;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import app.onepass.organizer.entities.AnswerEntity;
+import app.onepass.organizer.utilities.ServiceUtil;
+
+@Component
+public class AnswerAggregateListener {
+
+	@Autowired
+	private AnswerAggregateCache answerAggregateCache;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@PostPersist
+	public void onPersist(AnswerEntity answerEntity) {
+
+		int questionId = answerEntity.getQuestionId();
+
+		ServiceUtil.runAfterCommit(() -> answerAggregateCache.evict(questionId));
+
+		invalidationBus.publish(InvalidationBus.Topic.ANSWERS, questionId);
+	}
+
+	@PostUpdate
+	public void onUpdate(AnswerEntity answerEntity) {
+
+		int questionId = answerEntity.getQuestionId();
+
+		ServiceUtil.runAfterCommit(() -> answerAggregateCache.evict(questionId));
+
+		invalidationBus.publish(InvalidationBus.Topic.ANSWERS, questionId);
+	}
+
+	@PostRemove
+	public void onRemove(AnswerEntity answerEntity) {
+
+		int questionId = answerEntity.getQuestionId();
+
+		ServiceUtil.runAfterCommit(() -> answerAggregateCache.evict(questionId));
+
+		invalidationBus.publish(InvalidationBus.Topic.ANSWERS, questionId);
+	}
+}
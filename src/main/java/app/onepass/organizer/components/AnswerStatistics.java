@@ -0,0 +1,85 @@
+package app.onepass.organizer.components;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+import app.onepass.apis.AnswerAggregate;
+
+public class AnswerStatistics {
+
+	private final long loadedAt = System.currentTimeMillis();
+
+	private final Map<Integer, Long> histogram = new TreeMap<>();
+
+	private long count;
+
+	private double sum;
+
+	private double sumOfSquares;
+
+	public synchronized void add(String value, long occurrences) {
+
+		Integer scale = parseScale(value);
+
+		if (scale == null) {
+
+			return;
+		}
+
+		long updatedOccurrences = histogram.getOrDefault(scale, 0L) + occurrences;
+
+		if (updatedOccurrences <= 0) {
+
+			histogram.remove(scale);
+
+		} else {
+
+			histogram.put(scale, updatedOccurrences);
+		}
+
+		count += occurrences;
+
+		sum += (double) scale * occurrences;
+
+		sumOfSquares += (double) scale * scale * occurrences;
+	}
+
+	public synchronized AnswerAggregate toAnswerAggregate(int questionId) {
+
+		double mean = count == 0 ? 0 : sum / count;
+
+		double variance = count == 0 ? 0 : Math.max(sumOfSquares / count - mean * mean, 0);
+
+		return AnswerAggregate.newBuilder()
+				.setQuestionId(questionId)
+				.setCount(count)
+				.setSum(sum)
+				.setSumOfSquares(sumOfSquares)
+				.setMean(mean)
+				.setVariance(variance)
+				.putAllHistogram(histogram)
+				.build();
+	}
+
+	public boolean isOlderThan(long maximumAgeMillis) {
+
+		return System.currentTimeMillis() - loadedAt > maximumAgeMillis;
+	}
+
+	private static Integer parseScale(String value) {
+
+		if (value == null) {
+
+			return null;
+		}
+
+		try {
+
+			return Integer.parseInt(value.trim());
+
+		} catch (NumberFormatException exception) {
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,292 @@
+package app.onepass.organizer.components;
+
+import java.util.Arrays;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import app.onepass.apis.OrganizerServiceGrpc;
+import io.grpc.Context;
+import io.grpc.MethodDescriptor;
+
+/**
+ * Keeps traffic classes from starving each other. Every method belongs to a class, and each class runs its calls
+ * on its own threads and may hold at most a set number of connections of each pool, so slow bulk calls queue up
+ * behind each other instead of in front of check-ins. The critical class has no connection limit of its own and
+ * always has the connections the other classes are not allowed to take.
+ *
+ * <p>Saturation is logged once per report interval for every class that queued calls, rejected calls or waited
+ * for connections during it.
+ */
+@Component
+public class Bulkheads {
+
+	public enum TrafficClass {
+		CRITICAL, STANDARD, BULK
+	}
+
+	/**
+	 * Holds the traffic class of the call being served, including on threads the call fans out to.
+	 */
+	public static final Context.Key<TrafficClass> TRAFFIC_CLASS = Context.key("traffic-class");
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Bulkheads.class);
+
+	private final Map<String, TrafficClass> classesByMethod = new HashMap<>();
+
+	private final Map<TrafficClass, ThreadPoolExecutor> executors = new EnumMap<>(TrafficClass.class);
+
+	private ExecutorService overflowExecutor;
+
+	private final Map<TrafficClass, Integer> connectionLimits = new EnumMap<>(TrafficClass.class);
+
+	private final Map<TrafficClass, Statistics> statistics = new EnumMap<>(TrafficClass.class);
+
+	@Value("${BULKHEAD_CRITICAL_THREADS:16}")
+	private int criticalThreads;
+
+	@Value("${BULKHEAD_STANDARD_THREADS:32}")
+	private int standardThreads;
+
+	@Value("${BULKHEAD_BULK_THREADS:4}")
+	private int bulkThreads;
+
+	@Value("${BULKHEAD_QUEUE_SIZE:1000}")
+	private int queueSize;
+
+	@Value("${BULKHEAD_STANDARD_CONNECTIONS:6}")
+	private int standardConnections;
+
+	@Value("${BULKHEAD_BULK_CONNECTIONS:2}")
+	private int bulkConnections;
+
+	@Value("${BULKHEAD_CONNECTION_TIMEOUT_MS:30000}")
+	private long connectionTimeoutMillis;
+
+	@Value("${TRAFFIC_CLASSES:}")
+	private String methodClasses;
+
+	@PostConstruct
+	public void initialize() {
+
+		for (MethodDescriptor<?, ?> method : OrganizerServiceGrpc.getServiceDescriptor().getMethods()) {
+
+			classesByMethod.put(method.getFullMethodName(), TrafficClass.STANDARD);
+		}
+
+		Arrays.asList(OrganizerServiceGrpc.getCheckInMethod(), OrganizerServiceGrpc.getCheckInStreamMethod(),
+				OrganizerServiceGrpc.getHasEventMethod(), OrganizerServiceGrpc.getGenerateTicketMethod())
+				.forEach(method -> classesByMethod.put(method.getFullMethodName(), TrafficClass.CRITICAL));
+
+		Arrays.asList(OrganizerServiceGrpc.getGetOrganizationsMethod(), OrganizerServiceGrpc.getGetUsersInOrganizationByIdMethod(),
+				OrganizerServiceGrpc.getAddUsersToOrganizationMethod(), OrganizerServiceGrpc.getRemoveUsersFromOrganizationMethod(),
+				OrganizerServiceGrpc.getGetAnswersByQuestionIdMethod(), OrganizerServiceGrpc.getExportEventRegistrationsMethod(),
+				OrganizerServiceGrpc.getBulkCreateOrganizationsMethod(), OrganizerServiceGrpc.getBulkCreateLocationsMethod(),
+				OrganizerServiceGrpc.getBulkCreateEventsMethod())
+				.forEach(method -> classesByMethod.put(method.getFullMethodName(), TrafficClass.BULK));
+
+		// Health checks must be answered even when every class is saturated.
+		classesByMethod.remove(OrganizerServiceGrpc.getPingMethod().getFullMethodName());
+
+		for (String entry : methodClasses.split(",")) {
+
+			if (!entry.trim().isEmpty()) {
+
+				overrideClass(entry.trim());
+			}
+		}
+
+		for (TrafficClass trafficClass : TrafficClass.values()) {
+
+			statistics.put(trafficClass, new Statistics());
+		}
+
+		executors.put(TrafficClass.CRITICAL, createExecutor(TrafficClass.CRITICAL, criticalThreads));
+
+		executors.put(TrafficClass.STANDARD, createExecutor(TrafficClass.STANDARD, standardThreads));
+
+		executors.put(TrafficClass.BULK, createExecutor(TrafficClass.BULK, bulkThreads));
+
+		AtomicInteger overflowThreadCount = new AtomicInteger();
+
+		overflowExecutor = Executors.newCachedThreadPool(runnable -> {
+
+			Thread thread = new Thread(runnable, "bulkhead-overflow-" + overflowThreadCount.incrementAndGet());
+
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		connectionLimits.put(TrafficClass.CRITICAL, 0);
+
+		connectionLimits.put(TrafficClass.STANDARD, standardConnections);
+
+		connectionLimits.put(TrafficClass.BULK, bulkConnections);
+	}
+
+	@PreDestroy
+	public void shutdown() {
+
+		executors.values().forEach(ThreadPoolExecutor::shutdown);
+
+		overflowExecutor.shutdown();
+	}
+
+	/**
+	 * Returns the traffic class of the method, or null for calls that run on the gRPC threads as before.
+	 */
+	public TrafficClass classify(String fullMethodName) {
+
+		return classesByMethod.get(fullMethodName);
+	}
+
+	public Executor getExecutor(TrafficClass trafficClass) {
+
+		return executors.get(trafficClass);
+	}
+
+	/**
+	 * Returns an unbounded executor for callbacks that must run even when their class is saturated, such as the end
+	 * of a call.
+	 */
+	public Executor getOverflowExecutor() {
+
+		return overflowExecutor;
+	}
+
+	/**
+	 * Returns the permits that cap the connections the class may hold in one pool, or null when it has no cap.
+	 */
+	public Semaphore createConnectionPermits(TrafficClass trafficClass) {
+
+		int connectionLimit = connectionLimits.get(trafficClass);
+
+		return connectionLimit > 0 ? new Semaphore(connectionLimit, true) : null;
+	}
+
+	public long getConnectionTimeoutMillis() {
+
+		return connectionTimeoutMillis;
+	}
+
+	public void recordRejectedCall(TrafficClass trafficClass) {
+
+		statistics.get(trafficClass).rejectedCalls.increment();
+	}
+
+	public void recordConnectionWait(TrafficClass trafficClass, boolean isTimedOut) {
+
+		statistics.get(trafficClass).connectionWaits.increment();
+
+		if (isTimedOut) {
+
+			statistics.get(trafficClass).connectionTimeouts.increment();
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${BULKHEAD_REPORT_MS:60000}")
+	public void report() {
+
+		for (TrafficClass trafficClass : TrafficClass.values()) {
+
+			ThreadPoolExecutor executor = executors.get(trafficClass);
+
+			Statistics classStatistics = statistics.get(trafficClass);
+
+			long rejectedCalls = classStatistics.rejectedCalls.sumThenReset();
+
+			long connectionWaits = classStatistics.connectionWaits.sumThenReset();
+
+			long connectionTimeouts = classStatistics.connectionTimeouts.sumThenReset();
+
+			int largestQueueSize = classStatistics.largestQueueSize.getAndSet(executor.getQueue().size());
+
+			if (largestQueueSize > 0 || rejectedCalls > 0 || connectionWaits > 0) {
+
+				LOGGER.warn("The {} traffic class was saturated: {} of {} threads busy, up to {} calls queued, {} calls "
+								+ "rejected, {} connection waits and {} connection timeouts.", trafficClass, executor.getActiveCount(),
+						executor.getMaximumPoolSize(), largestQueueSize, rejectedCalls, connectionWaits, connectionTimeouts);
+			}
+		}
+	}
+
+	private void overrideClass(String entry) {
+
+		String[] methodAndClass = entry.split("=");
+
+		String fullMethodName = methodAndClass.length != 2 ? null : classesByMethod.keySet().stream()
+				.filter(name -> name.substring(name.lastIndexOf('/') + 1).equalsIgnoreCase(methodAndClass[0].trim()))
+				.findFirst()
+				.orElse(null);
+
+		if (fullMethodName == null) {
+
+			throw new IllegalArgumentException("Malformed traffic class: " + entry);
+		}
+
+		classesByMethod.put(fullMethodName, TrafficClass.valueOf(methodAndClass[1].trim().toUpperCase(Locale.ROOT)));
+	}
+
+	private ThreadPoolExecutor createExecutor(TrafficClass trafficClass, int threads) {
+
+		String threadPrefix = "bulkhead-" + trafficClass.name().toLowerCase(Locale.ROOT) + "-";
+
+		AtomicInteger threadCount = new AtomicInteger();
+
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+				new ArrayBlockingQueue<Runnable>(queueSize) {
+
+					@Override
+					public boolean offer(Runnable runnable) {
+
+						boolean isQueued = super.offer(runnable);
+
+						statistics.get(trafficClass).largestQueueSize.accumulateAndGet(size(), Math::max);
+
+						return isQueued;
+					}
+				}, runnable -> {
+
+			Thread thread = new Thread(runnable, threadPrefix + threadCount.incrementAndGet());
+
+			thread.setDaemon(true);
+
+			return thread;
+		});
+
+		executor.allowCoreThreadTimeOut(true);
+
+		return executor;
+	}
+
+	private static final class Statistics {
+
+		private final LongAdder rejectedCalls = new LongAdder();
+
+		private final LongAdder connectionWaits = new LongAdder();
+
+		private final LongAdder connectionTimeouts = new LongAdder();
+
+		private final AtomicInteger largestQueueSize = new AtomicInteger();
+	}
+}
@@ -0,0 +1,502 @@
+package app.onepass.organizer.components;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import app.onepass.apis.ChangeEvent;
+import app.onepass.organizer.utilities.ServiceUtil;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+/**
+ * Fans out committed changes to subscribers from a single ring buffer. One dispatcher thread serves every
+ * subscriber, so an idle subscription costs only its cursor.
+ *
+ * <p>Changes are numbered in the global database and delivered to every instance over the invalidation bus, so all
+ * instances hold the same changes under the same sequence numbers. Resume tokens are those numbers and work on any
+ * instance until its ring buffer wraps past them. A publisher advances {@code change_feed_position} and sends the
+ * {@code NOTIFY} in one statement, and the row lock it takes makes notifications arrive in sequence order. Changes
+ * sent while an instance's listening connection is down are missing from its buffer, and subscribers that need them
+ * fail with OUT_OF_RANGE. With the bus disabled, the feed only carries this instance's changes.
+ */
+@Component
+public class ChangeFeed {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ChangeFeed.class);
+
+	private static final int CAPACITY = 1 << 16;
+
+	private static final String CHANNEL = "organizer_change_feed";
+
+	/**
+	 * Keeps a payload of the longest changes below the 8000 bytes PostgreSQL accepts.
+	 */
+	private static final int MAXIMUM_CHANGES_PER_PAYLOAD = 150;
+
+	private static final String ADVANCE_AND_NOTIFY = "WITH advanced AS (UPDATE change_feed_position SET position = position + ? "
+			+ "WHERE id = 1 RETURNING position) SELECT pg_notify(?, advanced.position || '|' || ?) FROM advanced";
+
+	private final AtomicReferenceArray<Entry> buffer = new AtomicReferenceArray<>(CAPACITY);
+
+	private final Set<Subscriber> subscribers = ConcurrentHashMap.newKeySet();
+
+	private final List<ChangeEvent> pending = new ArrayList<>();
+
+	private volatile long cursor;
+
+	private volatile boolean isSynced;
+
+	private boolean isShared;
+
+	private JdbcTemplate jdbcTemplate;
+
+	private Thread dispatcher;
+
+	private Thread publisher;
+
+	private volatile boolean isClosing;
+
+	@Autowired
+	private EventDurationIndex eventDurationIndex;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Value("${INVALIDATION_BATCH_MS:20}")
+	private long batchMillis;
+
+	@Value("${INVALIDATION_RECONNECT_MS:1000}")
+	private long reconnectMillis;
+
+	@PostConstruct
+	public void start() {
+
+		dispatcher = new Thread(this::dispatch, "change-feed-dispatcher");
+
+		dispatcher.setDaemon(true);
+
+		dispatcher.start();
+
+		isShared = invalidationBus.isEnabled();
+
+		if (!isShared) {
+
+			isSynced = true;
+
+			return;
+		}
+
+		jdbcTemplate = new JdbcTemplate(dataSource);
+
+		invalidationBus.listen(CHANNEL, this::receive, this::sync);
+
+		publisher = new Thread(this::publishPending, "change-feed-publisher");
+
+		publisher.setDaemon(true);
+
+		publisher.start();
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		dispatcher.interrupt();
+
+		if (publisher != null) {
+
+			publisher.interrupt();
+		}
+	}
+
+	/**
+	 * Ends every subscription with UNAVAILABLE so subscribers reconnect to another instance. Closing happens on
+	 * the dispatcher thread, which is the only one that writes to subscriber streams.
+	 */
+	public void closeSubscribers() {
+
+		isClosing = true;
+
+		wakeDispatcher();
+	}
+
+	public void publish(ChangeEvent.EntityType entityType, ChangeEvent.ChangeType changeType, int id, int organizationId,
+			int eventId) {
+
+		ChangeEvent changeEvent = ChangeEvent.newBuilder()
+				.setEntityType(entityType)
+				.setChangeType(changeType)
+				.setId(id)
+				.setOrganizationId(organizationId)
+				.setEventId(eventId)
+				.build();
+
+		ServiceUtil.runAfterCommit(() -> {
+
+			if (!isShared) {
+
+				appendNext(changeEvent);
+
+				return;
+			}
+
+			synchronized (pending) {
+
+				pending.add(changeEvent);
+
+				pending.notify();
+			}
+		});
+	}
+
+	public void publishForEvent(ChangeEvent.EntityType entityType, ChangeEvent.ChangeType changeType, int id, int eventId) {
+
+		Integer organizationId = eventDurationIndex.getOrganizationId(eventId);
+
+		publish(entityType, changeType, id, organizationId == null ? 0 : organizationId, eventId);
+	}
+
+	/**
+	 * Registers a subscriber. The organization filter only applies to changes that belong to an organization, so
+	 * locations and tags are still delivered when their entity types are requested.
+	 */
+	public void subscribe(ServerCallStreamObserver<ChangeEvent> observer, Collection<ChangeEvent.EntityType> entityTypes,
+			Integer organizationId, String resumeToken) {
+
+		Set<ChangeEvent.EntityType> acceptedEntityTypes = entityTypes.isEmpty() ?
+				EnumSet.allOf(ChangeEvent.EntityType.class) : EnumSet.copyOf(entityTypes);
+
+		Subscriber subscriber = new Subscriber(observer, acceptedEntityTypes, organizationId, resolveNextSequence(resumeToken));
+
+		observer.setOnCancelHandler(() -> subscribers.remove(subscriber));
+
+		observer.setOnReadyHandler(this::wakeDispatcher);
+
+		subscribers.add(subscriber);
+
+		wakeDispatcher();
+	}
+
+	/**
+	 * A token from an instance that is slightly ahead of this one is accepted, and its subscriber waits until the
+	 * changes after it arrive here.
+	 */
+	private long resolveNextSequence(String resumeToken) {
+
+		if (!isSynced) {
+
+			throw Status.UNAVAILABLE.withDescription("The change feed is starting.").asRuntimeException();
+		}
+
+		if (resumeToken.isEmpty()) {
+
+			return cursor + 1;
+		}
+
+		long nextSequence;
+
+		try {
+
+			nextSequence = Long.parseLong(resumeToken) + 1;
+
+		} catch (NumberFormatException exception) {
+
+			throw new IllegalArgumentException("The resume token is malformed.");
+		}
+
+		if (nextSequence <= cursor - CAPACITY || nextSequence > cursor + 1 + CAPACITY) {
+
+			throw new IllegalStateException("The resume token has expired.");
+		}
+
+		return nextSequence;
+	}
+
+	private synchronized void appendNext(ChangeEvent changeEvent) {
+
+		append(cursor + 1, changeEvent);
+	}
+
+	/**
+	 * Stores the change under its sequence number. Numbers already passed are ignored, and numbers skipped over
+	 * leave stale slots that subscribers recognize as missing.
+	 */
+	private synchronized void append(long sequence, ChangeEvent changeEvent) {
+
+		if (sequence <= cursor) {
+
+			return;
+		}
+
+		buffer.set(indexOf(sequence), new Entry(sequence, changeEvent.toBuilder().setResumeToken(Long.toString(sequence)).build()));
+
+		cursor = sequence;
+
+		wakeDispatcher();
+	}
+
+	/**
+	 * Runs on the bus's listening thread each time the channel is listened to. Changes numbered before the stored
+	 * position were sent before this instance listened, so the cursor moves past them.
+	 */
+	private void sync() {
+
+		jdbcTemplate.update("INSERT INTO change_feed_position (id, position) VALUES (1, 0) ON CONFLICT DO NOTHING");
+
+		long position = jdbcTemplate.queryForObject("SELECT position FROM change_feed_position WHERE id = 1", Long.class);
+
+		synchronized (this) {
+
+			if (position > cursor) {
+
+				cursor = position;
+			}
+		}
+
+		isSynced = true;
+
+		wakeDispatcher();
+	}
+
+	/**
+	 * Handles a payload of the form {@code lastSequence|change;change}, where each change is its entity type, change
+	 * type, ID, organization ID and event ID, and the changes are numbered up to the last sequence.
+	 */
+	private void receive(String payload) {
+
+		int separator = payload.indexOf('|');
+
+		String[] changes = payload.substring(separator + 1).split(";");
+
+		long sequence = Long.parseLong(payload.substring(0, separator)) - changes.length + 1;
+
+		for (String change : changes) {
+
+			String[] fields = change.split(",");
+
+			append(sequence++, ChangeEvent.newBuilder()
+					.setEntityTypeValue(Integer.parseInt(fields[0]))
+					.setChangeTypeValue(Integer.parseInt(fields[1]))
+					.setId(Integer.parseInt(fields[2]))
+					.setOrganizationId(Integer.parseInt(fields[3]))
+					.setEventId(Integer.parseInt(fields[4]))
+					.build());
+		}
+	}
+
+	private void publishPending() {
+
+		List<ChangeEvent> batch = new ArrayList<>();
+
+		try {
+
+			while (!Thread.currentThread().isInterrupted()) {
+
+				synchronized (pending) {
+
+					while (pending.isEmpty()) {
+
+						pending.wait();
+					}
+				}
+
+				// Gives concurrent writes a moment to join the batch.
+				TimeUnit.MILLISECONDS.sleep(batchMillis);
+
+				synchronized (pending) {
+
+					batch.addAll(pending);
+
+					pending.clear();
+				}
+
+				try {
+
+					while (!batch.isEmpty()) {
+
+						List<ChangeEvent> changes = batch.subList(0, Math.min(batch.size(), MAXIMUM_CHANGES_PER_PAYLOAD));
+
+						jdbcTemplate.queryForList(ADVANCE_AND_NOTIFY, changes.size(), CHANNEL, encode(changes));
+
+						changes.clear();
+					}
+
+				} catch (DataAccessException exception) {
+
+					// The rest of the batch is kept and sent ahead of the next one.
+					LOGGER.warn("Could not publish changes.", exception);
+
+					TimeUnit.MILLISECONDS.sleep(reconnectMillis);
+				}
+			}
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static String encode(List<ChangeEvent> changes) {
+
+		StringBuilder payload = new StringBuilder();
+
+		for (ChangeEvent change : changes) {
+
+			if (payload.length() > 0) {
+
+				payload.append(';');
+			}
+
+			payload.append(change.getEntityTypeValue()).append(',')
+					.append(change.getChangeTypeValue()).append(',')
+					.append(change.getId()).append(',')
+					.append(change.getOrganizationId()).append(',')
+					.append(change.getEventId());
+		}
+
+		return payload.toString();
+	}
+
+	private void wakeDispatcher() {
+
+		LockSupport.unpark(dispatcher);
+	}
+
+	private void dispatch() {
+
+		while (!Thread.currentThread().isInterrupted()) {
+
+			long published = cursor;
+
+			for (Subscriber subscriber : subscribers) {
+
+				if (isClosing) {
+
+					subscribers.remove(subscriber);
+
+					close(subscriber);
+
+					continue;
+				}
+
+				try {
+
+					drain(subscriber, published);
+
+				} catch (RuntimeException exception) {
+
+					subscribers.remove(subscriber);
+				}
+			}
+
+			LockSupport.parkNanos(this, TimeUnit.MILLISECONDS.toNanos(100));
+		}
+	}
+
+	private void drain(Subscriber subscriber, long published) {
+
+		while (subscriber.nextSequence <= published && subscriber.observer.isReady()) {
+
+			Entry entry = buffer.get(indexOf(subscriber.nextSequence));
+
+			if (entry == null || entry.sequence != subscriber.nextSequence) {
+
+				subscribers.remove(subscriber);
+
+				subscriber.observer.onError(
+						Status.OUT_OF_RANGE.withDescription("The subscriber fell behind the change feed.").asException());
+
+				return;
+			}
+
+			if (subscriber.accepts(entry.changeEvent)) {
+
+				subscriber.observer.onNext(entry.changeEvent);
+			}
+
+			subscriber.nextSequence++;
+		}
+	}
+
+	private static void close(Subscriber subscriber) {
+
+		try {
+
+			subscriber.observer.onError(Status.UNAVAILABLE.withDescription("The server is shutting down.").asException());
+
+		} catch (RuntimeException exception) {
+
+			// The call has already been cancelled by the client.
+		}
+	}
+
+	private static int indexOf(long sequence) {
+
+		return (int) (sequence & (CAPACITY - 1));
+	}
+
+	private static final class Entry {
+
+		private final long sequence;
+
+		private final ChangeEvent changeEvent;
+
+		private Entry(long sequence, ChangeEvent changeEvent) {
+
+			this.sequence = sequence;
+
+			this.changeEvent = changeEvent;
+		}
+	}
+
+	private static final class Subscriber {
+
+		private final ServerCallStreamObserver<ChangeEvent> observer;
+
+		private final Set<ChangeEvent.EntityType> entityTypes;
+
+		private final Integer organizationId;
+
+		private long nextSequence;
+
+		private Subscriber(ServerCallStreamObserver<ChangeEvent> observer, Set<ChangeEvent.EntityType> entityTypes,
+				Integer organizationId, long nextSequence) {
+
+			this.observer = observer;
+
+			this.entityTypes = entityTypes;
+
+			this.organizationId = organizationId;
+
+			this.nextSequence = nextSequence;
+		}
+
+		private boolean accepts(ChangeEvent changeEvent) {
+
+			return entityTypes.contains(changeEvent.getEntityType())
+					&& (organizationId == null || changeEvent.getOrganizationId() == 0
+					|| changeEvent.getOrganizationId() == organizationId);
+		}
+	}
+}
@@ -0,0 +1,457 @@
+package app.onepass.organizer.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import app.onepass.organizer.configurations.ShardContext;
+import app.onepass.organizer.entities.EventDurationEntity;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.repositories.EventDurationRepository;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.utilities.IntervalTree;
+
+@Component
+public class EventDurationIndex {
+
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final IntervalTree<Integer> durations = new IntervalTree<>();
+
+	private final Map<Integer, IntervalTree<Integer>> durationsByLocationId = new HashMap<>();
+
+	private final Map<Integer, List<Span>> spansByEventId = new HashMap<>();
+
+	/**
+	 * Written under the write lock but read without it, so that resolving the organization of an event on every call
+	 * does not contend with the index. Entries are replaced rather than removed and re-added while reloading.
+	 */
+	private final Map<Integer, EventPlacement> placementsByEventId = new ConcurrentHashMap<>();
+
+	@Autowired
+	private EventRepository eventRepository;
+
+	@Autowired
+	private EventDurationRepository eventDurationRepository;
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@PostConstruct
+	public void initialize() {
+
+		invalidationBus.subscribe(InvalidationBus.Topic.EVENT, this::refreshEvents, this::load);
+
+		load();
+	}
+
+	public void load() {
+
+		List<EventEntity> eventEntities = shardMap.fanOut(shard -> eventRepository.findAll());
+
+		List<EventDurationEntity> eventDurationEntities = shardMap.fanOut(shard -> eventDurationRepository.findAll());
+
+		lock.writeLock().lock();
+
+		try {
+
+			durations.clear();
+
+			durationsByLocationId.clear();
+
+			spansByEventId.clear();
+
+			eventEntities.forEach(this::putPlacement);
+
+			placementsByEventId.keySet().retainAll(eventEntities.stream().map(EventEntity::getId).collect(Collectors.toSet()));
+
+			// Durations of removed events stay in the database until they are purged.
+			eventDurationEntities.stream()
+					.filter(eventDurationEntity -> placementsByEventId.containsKey(eventDurationEntity.getEventId()))
+					.forEach(this::addDuration);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Reloads the events and their durations from their shards, dropping those that no longer exist.
+	 */
+	public void refreshEvents(Set<Integer> eventIds) {
+
+		Map<Integer, List<Integer>> eventIdsByShard = eventIds.stream().collect(Collectors.groupingBy(shardMap::getShardOfEvent));
+
+		eventIdsByShard.forEach((shard, shardEventIds) -> ShardContext.run(shard, () -> {
+
+			List<EventEntity> eventEntities = eventRepository.findAllById(shardEventIds);
+
+			List<EventDurationEntity> eventDurationEntities = eventDurationRepository.findAllByEventIdIn(shardEventIds);
+
+			lock.writeLock().lock();
+
+			try {
+
+				Set<Integer> existingEventIds = eventEntities.stream().map(EventEntity::getId).collect(Collectors.toSet());
+
+				for (int eventId : shardEventIds) {
+
+					removeDurations(eventId);
+
+					if (!existingEventIds.contains(eventId)) {
+
+						placementsByEventId.remove(eventId);
+					}
+				}
+
+				eventEntities.forEach(this::putPlacement);
+
+				eventDurationEntities.stream()
+						.filter(eventDurationEntity -> placementsByEventId.containsKey(eventDurationEntity.getEventId()))
+						.forEach(this::addDuration);
+
+			} finally {
+
+				lock.writeLock().unlock();
+			}
+		}));
+	}
+
+	public void putEvent(EventEntity eventEntity) {
+
+		lock.writeLock().lock();
+
+		try {
+
+			List<Span> spans = spansByEventId.getOrDefault(eventEntity.getId(), Collections.emptyList());
+
+			spans.forEach(this::removeFromLocation);
+
+			putPlacement(eventEntity);
+
+			spans.forEach(this::addToLocation);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void replaceDurations(int eventId, List<EventDurationEntity> eventDurationEntities) {
+
+		lock.writeLock().lock();
+
+		try {
+
+			removeDurations(eventId);
+
+			eventDurationEntities.forEach(this::addDuration);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	public void removeEvent(int eventId) {
+
+		lock.writeLock().lock();
+
+		try {
+
+			removeDurations(eventId);
+
+			placementsByEventId.remove(eventId);
+
+		} finally {
+
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the IDs of events with a duration overlapping [from, to), optionally restricted to one organization
+	 * and one location.
+	 */
+	public Set<Integer> findEventIds(long from, long to, Integer organizationId, Integer locationId) {
+
+		Set<Integer> eventIds = new LinkedHashSet<>();
+
+		lock.readLock().lock();
+
+		try {
+
+			IntervalTree<Integer> tree = locationId == null ? durations : durationsByLocationId.get(locationId);
+
+			if (tree == null) {
+
+				return eventIds;
+			}
+
+			tree.forEachOverlapping(from, to, eventId -> {
+
+				EventPlacement eventPlacement = placementsByEventId.get(eventId);
+
+				if (eventPlacement != null && eventPlacement.matches(organizationId, locationId)) {
+
+					eventIds.add(eventId);
+				}
+			});
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+
+		return eventIds;
+	}
+
+	public Integer getOrganizationId(int eventId) {
+
+		EventPlacement eventPlacement = placementsByEventId.get(eventId);
+
+		return eventPlacement == null ? null : eventPlacement.organizationId;
+	}
+
+	public Integer getLocationId(int eventId) {
+
+		lock.readLock().lock();
+
+		try {
+
+			EventPlacement eventPlacement = placementsByEventId.get(eventId);
+
+			return eventPlacement == null ? null : eventPlacement.locationId;
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks whether another event already occupies the location at any time in [start, finish).
+	 */
+	public boolean hasConflict(int locationId, int eventId, long start, long finish) {
+
+		lock.readLock().lock();
+
+		try {
+
+			return hasConflictUnlocked(locationId, eventId, start, finish);
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Checks whether any of the event's current durations would collide with another event if the event moved to
+	 * the given location.
+	 */
+	public boolean hasConflict(int locationId, int eventId) {
+
+		lock.readLock().lock();
+
+		try {
+
+			for (Span span : spansByEventId.getOrDefault(eventId, Collections.emptyList())) {
+
+				if (hasConflictUnlocked(locationId, eventId, span.start, span.finish)) {
+
+					return true;
+				}
+			}
+
+			return false;
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Returns the gaps in [from, to) during which no event occupies the location, as pairs of start and finish.
+	 */
+	public List<long[]> findFreeSlots(int locationId, long from, long to) {
+
+		List<long[]> freeSlots = new ArrayList<>();
+
+		long[] cursor = { from };
+
+		lock.readLock().lock();
+
+		try {
+
+			IntervalTree<Integer> tree = durationsByLocationId.get(locationId);
+
+			if (tree != null) {
+
+				tree.forEachOverlappingInterval(from, to, (start, finish, eventId) -> {
+
+					if (start > cursor[0]) {
+
+						freeSlots.add(new long[] { cursor[0], start });
+					}
+
+					cursor[0] = Math.max(cursor[0], finish);
+				});
+			}
+
+		} finally {
+
+			lock.readLock().unlock();
+		}
+
+		if (cursor[0] < to) {
+
+			freeSlots.add(new long[] { cursor[0], to });
+		}
+
+		return freeSlots;
+	}
+
+	private boolean hasConflictUnlocked(int locationId, int eventId, long start, long finish) {
+
+		IntervalTree<Integer> tree = durationsByLocationId.get(locationId);
+
+		return tree != null && tree.anyOverlapping(start, finish, bookedEventId -> bookedEventId != eventId);
+	}
+
+	private void putPlacement(EventEntity eventEntity) {
+
+		placementsByEventId.put(eventEntity.getId(),
+				new EventPlacement(eventEntity.getOrganizationId(), eventEntity.getLocationId()));
+	}
+
+	private void addDuration(EventDurationEntity eventDurationEntity) {
+
+		if (eventDurationEntity.getStart() == null || eventDurationEntity.getFinish() == null) {
+
+			return;
+		}
+
+		Span span = new Span(eventDurationEntity.getId(), eventDurationEntity.getEventId(),
+				eventDurationEntity.getStart().getTime(), eventDurationEntity.getFinish().getTime());
+
+		durations.put(span.id, span.start, span.finish, span.eventId);
+
+		spansByEventId.computeIfAbsent(span.eventId, eventId -> new ArrayList<>()).add(span);
+
+		addToLocation(span);
+	}
+
+	private void removeDurations(int eventId) {
+
+		List<Span> spans = spansByEventId.remove(eventId);
+
+		if (spans == null) {
+
+			return;
+		}
+
+		for (Span span : spans) {
+
+			durations.remove(span.id);
+
+			removeFromLocation(span);
+		}
+	}
+
+	private void addToLocation(Span span) {
+
+		Integer locationId = getLocationIdUnlocked(span.eventId);
+
+		if (locationId != null) {
+
+			durationsByLocationId.computeIfAbsent(locationId, key -> new IntervalTree<>())
+					.put(span.id, span.start, span.finish, span.eventId);
+		}
+	}
+
+	private void removeFromLocation(Span span) {
+
+		Integer locationId = getLocationIdUnlocked(span.eventId);
+
+		IntervalTree<Integer> tree = locationId == null ? null : durationsByLocationId.get(locationId);
+
+		if (tree != null) {
+
+			tree.remove(span.id);
+
+			if (tree.size() == 0) {
+
+				durationsByLocationId.remove(locationId);
+			}
+		}
+	}
+
+	private Integer getLocationIdUnlocked(int eventId) {
+
+		EventPlacement eventPlacement = placementsByEventId.get(eventId);
+
+		return eventPlacement == null ? null : eventPlacement.locationId;
+	}
+
+	private static final class Span {
+
+		private final int id;
+
+		private final int eventId;
+
+		private final long start;
+
+		private final long finish;
+
+		private Span(int id, int eventId, long start, long finish) {
+
+			this.id = id;
+
+			this.eventId = eventId;
+
+			this.start = start;
+
+			this.finish = finish;
+		}
+	}
+
+	private static final class EventPlacement {
+
+		private final int organizationId;
+
+		private final Integer locationId;
+
+		private EventPlacement(int organizationId, Integer locationId) {
+
+			this.organizationId = organizationId;
+
+			this.locationId = locationId;
+		}
+
+		private boolean matches(Integer organizationId, Integer locationId) {
+
+			return (organizationId == null || organizationId == this.organizationId)
+					&& (locationId == null || Objects.equals(locationId, this.locationId));
+		}
+	}
+}
@@ -0,0 +1,356 @@
+package app.onepass.organizer.components;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DataIntegrityViolationException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.InvalidProtocolBufferException;
+import com.google.protobuf.Parser;
+
+import app.onepass.organizer.configurations.ShardingConfiguration;
+import app.onepass.organizer.entities.IdempotencyRecordEntity;
+import app.onepass.organizer.interceptors.IdempotencyInterceptor;
+import app.onepass.organizer.repositories.IdempotencyRecordRepository;
+import app.onepass.organizer.utilities.ExceptionCatcher;
+import app.onepass.organizer.utilities.ServiceUtil;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+@Component
+public class IdempotencyCatcher {
+
+	private Map<String, IdempotencyRecordEntity> recentRecords;
+
+	private TransactionTemplate newTransactionTemplate;
+
+	@Autowired
+	private IdempotencyRecordRepository idempotencyRecordRepository;
+
+	@Autowired
+	@Qualifier(ShardingConfiguration.GLOBAL_TRANSACTION_MANAGER)
+	private PlatformTransactionManager transactionManager;
+
+	@Value("${IDEMPOTENCY_CACHE_SIZE:10000}")
+	private int cacheSize;
+
+	@Value("${IDEMPOTENCY_RETENTION_HOURS:24}")
+	private long retentionHours;
+
+	@Value("${IDEMPOTENCY_CLAIM_TIMEOUT_MS:300000}")
+	private long claimTimeoutMillis;
+
+	@PostConstruct
+	public void initialize() {
+
+		newTransactionTemplate = new TransactionTemplate(transactionManager);
+
+		newTransactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
+
+		recentRecords = Collections.synchronizedMap(new LinkedHashMap<String, IdempotencyRecordEntity>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, IdempotencyRecordEntity> eldest) {
+
+				return size() > cacheSize;
+			}
+		});
+	}
+
+	/**
+	 * Behaves like {@link ExceptionCatcher#catcher} unless the call carries an idempotency key. The key is claimed
+	 * with an in-progress row in the global database before the consumer runs, so the claim holds across instances.
+	 * A call whose key is already claimed gets the stored response back, or ABORTED while the first call is still
+	 * running. A successful response is stored once the surrounding transaction has committed, and any other outcome
+	 * releases the claim so the client can retry.
+	 */
+	public <M extends GeneratedMessageV3, R extends GeneratedMessageV3> void catcher(BiConsumer<M, StreamObserver<R>> consumer,
+			M request, StreamObserver<R> responseObserver, Parser<R> parser) {
+
+		String idempotencyKey = IdempotencyInterceptor.IDEMPOTENCY_KEY.get();
+
+		if (idempotencyKey == null) {
+
+			ExceptionCatcher.catcher(consumer, request, responseObserver);
+
+			return;
+		}
+
+		byte[] requestDigest = digest(request);
+
+		IdempotencyRecordEntity idempotencyRecordEntity = recentRecords.get(idempotencyKey);
+
+		if (idempotencyRecordEntity != null && idempotencyRecordEntity.getCreatedAt().getTime() >= expiryThreshold()) {
+
+			replay(idempotencyRecordEntity, requestDigest, responseObserver, parser);
+
+			return;
+		}
+
+		Timestamp claimedAt = new Timestamp(System.currentTimeMillis());
+
+		idempotencyRecordEntity = claim(idempotencyKey, requestDigest, claimedAt);
+
+		if (idempotencyRecordEntity != null) {
+
+			if (idempotencyRecordEntity.getResponse() == null) {
+
+				responseObserver.onError(Status.ABORTED
+						.withDescription("A request with the same idempotency key is still in progress.")
+						.asException());
+
+				return;
+			}
+
+			recentRecords.put(idempotencyKey, idempotencyRecordEntity);
+
+			replay(idempotencyRecordEntity, requestDigest, responseObserver, parser);
+
+			return;
+		}
+
+		boolean isCompletionRegistered = false;
+
+		try {
+
+			RecordingStreamObserver<R> recordingStreamObserver = new RecordingStreamObserver<>(responseObserver);
+
+			ExceptionCatcher.catcher(consumer, request, recordingStreamObserver);
+
+			registerCompletion(idempotencyKey, requestDigest, claimedAt, recordingStreamObserver);
+
+			isCompletionRegistered = true;
+
+		} finally {
+
+			if (!isCompletionRegistered) {
+
+				release(idempotencyKey, claimedAt);
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${IDEMPOTENCY_CLEANUP_INTERVAL_MS:3600000}")
+	public void removeExpiredRecords() {
+
+		idempotencyRecordRepository.deleteAllCreatedBefore(new Timestamp(expiryThreshold()));
+	}
+
+	/**
+	 * Returns null if the key is now claimed for this request, or else the record that holds it. A claim left behind
+	 * by an instance that died mid-request is taken over once it is older than the claim timeout.
+	 */
+	private IdempotencyRecordEntity claim(String idempotencyKey, byte[] requestDigest, Timestamp claimedAt) {
+
+		try {
+
+			inNewTransaction(() -> idempotencyRecordRepository.insertClaim(idempotencyKey, requestDigest, claimedAt));
+
+			return null;
+
+		} catch (DataIntegrityViolationException exception) {
+
+			// Another call holds the key, or an earlier one stored its response under it.
+		}
+
+		Timestamp abandonedBefore = new Timestamp(claimedAt.getTime() - claimTimeoutMillis);
+
+		if (inNewTransaction(() -> idempotencyRecordRepository.takeOverClaim(idempotencyKey, requestDigest, claimedAt,
+				new Timestamp(expiryThreshold()), abandonedBefore)) > 0) {
+
+			return null;
+		}
+
+		// A record released since the insert failed is reported as in progress, and the client's retry claims it.
+		return inNewTransaction(() -> idempotencyRecordRepository.findById(idempotencyKey))
+				.orElseGet(() -> IdempotencyRecordEntity.builder().idempotencyKey(idempotencyKey).build());
+	}
+
+	private <R extends GeneratedMessageV3> void replay(IdempotencyRecordEntity idempotencyRecordEntity, byte[] requestDigest,
+			StreamObserver<R> responseObserver, Parser<R> parser) {
+
+		if (!Arrays.equals(idempotencyRecordEntity.getRequestDigest(), requestDigest)) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver,
+					"The idempotency key was already used for a different request.");
+
+			return;
+		}
+
+		R response;
+
+		try {
+
+			response = parser.parseFrom(idempotencyRecordEntity.getResponse());
+
+		} catch (InvalidProtocolBufferException exception) {
+
+			responseObserver.onError(Status.INTERNAL.withDescription("The stored response cannot be read.").asException());
+
+			return;
+		}
+
+		ServiceUtil.returnObject(responseObserver, response);
+	}
+
+	private void registerCompletion(String idempotencyKey, byte[] requestDigest, Timestamp claimedAt,
+			RecordingStreamObserver<? extends GeneratedMessageV3> recordingStreamObserver) {
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+
+			complete(idempotencyKey, requestDigest, claimedAt, recordingStreamObserver, true);
+
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+			@Override
+			public void afterCompletion(int status) {
+
+				complete(idempotencyKey, requestDigest, claimedAt, recordingStreamObserver,
+						status == TransactionSynchronization.STATUS_COMMITTED);
+			}
+		});
+	}
+
+	private void complete(String idempotencyKey, byte[] requestDigest, Timestamp claimedAt,
+			RecordingStreamObserver<? extends GeneratedMessageV3> recordingStreamObserver, boolean isCommitted) {
+
+		GeneratedMessageV3 response = recordingStreamObserver.getCompletedResponse();
+
+		if (isCommitted && response != null) {
+
+			store(idempotencyKey, requestDigest, claimedAt, response);
+
+		} else {
+
+			release(idempotencyKey, claimedAt);
+		}
+	}
+
+	// The outer transaction may already be committed when these run, so each write needs its own. They run outside
+	// the call context because the work they record has committed or rolled back even if the call has since been
+	// cancelled. A failed write leaves the claim to expire after the claim timeout.
+
+	private void store(String idempotencyKey, byte[] requestDigest, Timestamp claimedAt, GeneratedMessageV3 response) {
+
+		byte[] responseBytes = response.toByteArray();
+
+		try {
+
+			Context.ROOT.run(() -> inNewTransaction(() -> idempotencyRecordRepository.completeClaim(idempotencyKey, claimedAt,
+					responseBytes)));
+
+		} catch (DataAccessException exception) {
+
+			return;
+		}
+
+		recentRecords.put(idempotencyKey, IdempotencyRecordEntity.builder()
+				.idempotencyKey(idempotencyKey)
+				.requestDigest(requestDigest)
+				.response(responseBytes)
+				.createdAt(claimedAt)
+				.build());
+	}
+
+	private void release(String idempotencyKey, Timestamp claimedAt) {
+
+		try {
+
+			Context.ROOT.run(() -> inNewTransaction(() -> idempotencyRecordRepository.deleteClaim(idempotencyKey, claimedAt)));
+
+		} catch (DataAccessException exception) {
+
+			// The response, if any, has already been sent.
+		}
+	}
+
+	private <T> T inNewTransaction(Supplier<T> work) {
+
+		return newTransactionTemplate.execute(status -> work.get());
+	}
+
+	private long expiryThreshold() {
+
+		return System.currentTimeMillis() - TimeUnit.HOURS.toMillis(retentionHours);
+	}
+
+	private static byte[] digest(GeneratedMessageV3 request) {
+
+		try {
+
+			return MessageDigest.getInstance("SHA-256").digest(request.toByteArray());
+
+		} catch (NoSuchAlgorithmException exception) {
+
+			throw new IllegalStateException(exception);
+		}
+	}
+
+	private static class RecordingStreamObserver<R> implements StreamObserver<R> {
+
+		private final StreamObserver<R> delegate;
+
+		private R lastResponse;
+
+		private boolean isCompleted;
+
+		RecordingStreamObserver(StreamObserver<R> delegate) {
+
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void onNext(R value) {
+
+			lastResponse = value;
+
+			delegate.onNext(value);
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+
+			delegate.onError(throwable);
+		}
+
+		@Override
+		public void onCompleted() {
+
+			isCompleted = true;
+
+			delegate.onCompleted();
+		}
+
+		R getCompletedResponse() {
+
+			return isCompleted ? lastResponse : null;
+		}
+	}
+}
@@ -0,0 +1,518 @@
+package app.onepass.organizer.components;
+
+import java.security.SecureRandom;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.postgresql.PGConnection;
+import org.postgresql.PGNotification;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.stereotype.Component;
+
+import app.onepass.organizer.utilities.ServiceUtil;
+
+/**
+ * Tells the other instances which cached entries a committed write has made stale. Invalidations are collected
+ * for a short window, coalesced and sent as {@code NOTIFY} payloads on the global database. Every instance
+ * {@code LISTEN}s on a dedicated connection and applies what its peers send. Notifications sent while that
+ * connection is down are lost, so every cache resyncs fully once it is back.
+ *
+ * <p>A payload is the sender ID followed by one group per topic, for example {@code 1f3a|E:12,14;Q:12}.
+ *
+ * <p>The listening connection also carries other channels registered with {@link #listen}, whose payloads are
+ * handed over as they are and in the order PostgreSQL delivers them, which is the same on every instance.
+ */
+@Component
+public class InvalidationBus {
+
+	public enum Topic {
+
+		EVENT('E'), ANSWERS('Q'), ORGANIZATION_SHARD('S');
+
+		private final char code;
+
+		Topic(char code) {
+
+			this.code = code;
+		}
+
+		private static Topic fromCode(char code) {
+
+			for (Topic topic : values()) {
+
+				if (topic.code == code) {
+
+					return topic;
+				}
+			}
+
+			return null;
+		}
+	}
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBus.class);
+
+	private static final String CHANNEL = "organizer_invalidation";
+
+	/**
+	 * PostgreSQL rejects payloads of 8000 bytes or more.
+	 */
+	private static final int MAXIMUM_PAYLOAD_LENGTH = 7900;
+
+	private final String instanceId = Long.toHexString(new SecureRandom().nextLong());
+
+	private final Map<Topic, Set<Integer>> pending = new EnumMap<>(Topic.class);
+
+	private final List<Subscription> subscriptions = new CopyOnWriteArrayList<>();
+
+	private final List<ChannelListener> channelListeners = new CopyOnWriteArrayList<>();
+
+	private Thread publisher;
+
+	private Thread listener;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private DataSourceProperties dataSourceProperties;
+
+	@Value("${INVALIDATION_BUS_ENABLED:true}")
+	private boolean isEnabled;
+
+	@Value("${INVALIDATION_BATCH_MS:20}")
+	private long batchMillis;
+
+	@Value("${INVALIDATION_RECONNECT_MS:1000}")
+	private long reconnectMillis;
+
+	@PostConstruct
+	public void start() {
+
+		if (!isEnabled) {
+
+			return;
+		}
+
+		publisher = new Thread(this::publish, "invalidation-publisher");
+
+		publisher.setDaemon(true);
+
+		publisher.start();
+
+		listener = new Thread(this::listen, "invalidation-listener");
+
+		listener.setDaemon(true);
+
+		listener.start();
+	}
+
+	@PreDestroy
+	public void stop() {
+
+		if (publisher != null) {
+
+			publisher.interrupt();
+
+			listener.interrupt();
+		}
+	}
+
+	/**
+	 * Registers a cache. The handler receives the coalesced IDs invalidated by peers, and the resync runs after
+	 * the listening connection has been re-established.
+	 */
+	public void subscribe(Topic topic, Consumer<Set<Integer>> handler, Runnable resync) {
+
+		subscriptions.add(new Subscription(topic, handler, resync));
+	}
+
+	/**
+	 * Registers a listener for a channel of its own. The handler receives every payload sent on the channel,
+	 * including this instance's, on the listening thread. The sync runs each time the channel is listened to, before
+	 * any payload is handed over, so the listener can catch up on what it may have missed.
+	 */
+	public void listen(String channel, Consumer<String> handler, Runnable sync) {
+
+		channelListeners.add(new ChannelListener(channel, handler, sync));
+	}
+
+	public boolean isEnabled() {
+
+		return isEnabled;
+	}
+
+	/**
+	 * Queues an invalidation for the peers once the surrounding transaction commits. The local cache is expected to
+	 * have been updated by the caller already.
+	 */
+	public void publish(Topic topic, int id) {
+
+		if (!isEnabled) {
+
+			return;
+		}
+
+		ServiceUtil.runAfterCommit(() -> {
+
+			synchronized (pending) {
+
+				pending.computeIfAbsent(topic, key -> new HashSet<>()).add(id);
+
+				pending.notify();
+			}
+		});
+	}
+
+	private void publish() {
+
+		JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
+
+		Map<Topic, Set<Integer>> batch = new EnumMap<>(Topic.class);
+
+		try {
+
+			while (!Thread.currentThread().isInterrupted()) {
+
+				synchronized (pending) {
+
+					while (pending.isEmpty()) {
+
+						pending.wait();
+					}
+				}
+
+				// Gives concurrent writes a moment to join the batch.
+				TimeUnit.MILLISECONDS.sleep(batchMillis);
+
+				synchronized (pending) {
+
+					pending.forEach((topic, ids) -> batch.computeIfAbsent(topic, key -> new HashSet<>()).addAll(ids));
+
+					pending.clear();
+				}
+
+				try {
+
+					for (String payload : encode(batch)) {
+
+						jdbcTemplate.queryForList("SELECT pg_notify(?, ?)", CHANNEL, payload);
+					}
+
+					batch.clear();
+
+				} catch (DataAccessException exception) {
+
+					// The batch is kept and merged into the next one.
+					LOGGER.warn("Could not publish invalidations.", exception);
+
+					TimeUnit.MILLISECONDS.sleep(reconnectMillis);
+				}
+			}
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private List<String> encode(Map<Topic, Set<Integer>> batch) {
+
+		List<String> payloads = new ArrayList<>();
+
+		StringBuilder payload = new StringBuilder();
+
+		Topic currentTopic = null;
+
+		for (Map.Entry<Topic, Set<Integer>> entry : batch.entrySet()) {
+
+			for (int id : entry.getValue()) {
+
+				// Leaves room for the longest ID and a new group header.
+				if (payload.length() + 16 > MAXIMUM_PAYLOAD_LENGTH) {
+
+					payloads.add(payload.toString());
+
+					payload.setLength(0);
+
+					currentTopic = null;
+				}
+
+				if (payload.length() == 0) {
+
+					payload.append(instanceId).append('|');
+				}
+
+				if (currentTopic != entry.getKey()) {
+
+					if (currentTopic != null) {
+
+						payload.append(';');
+					}
+
+					payload.append(entry.getKey().code).append(':');
+
+					currentTopic = entry.getKey();
+
+				} else {
+
+					payload.append(',');
+				}
+
+				payload.append(id);
+			}
+		}
+
+		if (payload.length() > 0) {
+
+			payloads.add(payload.toString());
+		}
+
+		return payloads;
+	}
+
+	private void listen() {
+
+		boolean hasConnected = false;
+
+		while (!Thread.currentThread().isInterrupted()) {
+
+			try (Connection connection = DriverManager.getConnection(dataSourceProperties.determineUrl(),
+					dataSourceProperties.determineUsername(), dataSourceProperties.determinePassword())) {
+
+				try (Statement statement = connection.createStatement()) {
+
+					statement.execute("LISTEN " + CHANNEL);
+				}
+
+				if (hasConnected) {
+
+					resync();
+				}
+
+				hasConnected = true;
+
+				PGConnection pgConnection = connection.unwrap(PGConnection.class);
+
+				Set<ChannelListener> listenedChannels = new HashSet<>();
+
+				while (!Thread.currentThread().isInterrupted()) {
+
+					listenToNewChannels(connection, listenedChannels);
+
+					PGNotification[] notifications = pgConnection.getNotifications((int) TimeUnit.SECONDS.toMillis(1));
+
+					if (notifications != null) {
+
+						dispatch(notifications);
+					}
+				}
+
+			} catch (SQLException exception) {
+
+				LOGGER.warn("The invalidation listener lost its connection and will resync after reconnecting.", exception);
+
+				hasConnected = true;
+
+				try {
+
+					TimeUnit.MILLISECONDS.sleep(reconnectMillis);
+
+				} catch (InterruptedException interruptedException) {
+
+					Thread.currentThread().interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Listens to the channels registered since the last call. Channels can be registered after the connection is
+	 * up, so this runs before every wait for notifications.
+	 */
+	private void listenToNewChannels(Connection connection, Set<ChannelListener> listenedChannels) throws SQLException {
+
+		for (ChannelListener channelListener : channelListeners) {
+
+			if (listenedChannels.contains(channelListener)) {
+
+				continue;
+			}
+
+			try (Statement statement = connection.createStatement()) {
+
+				statement.execute("LISTEN " + channelListener.channel);
+			}
+
+			listenedChannels.add(channelListener);
+
+			try {
+
+				channelListener.sync.run();
+
+			} catch (RuntimeException exception) {
+
+				LOGGER.warn("Could not sync the listener of {}.", channelListener.channel, exception);
+			}
+		}
+	}
+
+	private void dispatch(PGNotification[] notifications) {
+
+		Map<Topic, Set<Integer>> invalidations = new EnumMap<>(Topic.class);
+
+		for (PGNotification notification : notifications) {
+
+			if (CHANNEL.equals(notification.getName())) {
+
+				decode(notification.getParameter(), invalidations);
+
+			} else {
+
+				dispatchToChannel(notification);
+			}
+		}
+
+		for (Subscription subscription : subscriptions) {
+
+			Set<Integer> ids = invalidations.get(subscription.topic);
+
+			if (ids == null) {
+
+				continue;
+			}
+
+			try {
+
+				subscription.handler.accept(ids);
+
+			} catch (RuntimeException exception) {
+
+				LOGGER.warn("Could not apply {} invalidations, resyncing instead.", subscription.topic, exception);
+
+				runResync(subscription);
+			}
+		}
+	}
+
+	private void dispatchToChannel(PGNotification notification) {
+
+		for (ChannelListener channelListener : channelListeners) {
+
+			if (!channelListener.channel.equals(notification.getName())) {
+
+				continue;
+			}
+
+			try {
+
+				channelListener.handler.accept(notification.getParameter());
+
+			} catch (RuntimeException exception) {
+
+				LOGGER.warn("Could not handle a notification on {}.", channelListener.channel, exception);
+			}
+		}
+	}
+
+	private void decode(String payload, Map<Topic, Set<Integer>> invalidations) {
+
+		int senderEnd = payload.indexOf('|');
+
+		if (senderEnd < 0 || payload.substring(0, senderEnd).equals(instanceId)) {
+
+			return;
+		}
+
+		for (String group : payload.substring(senderEnd + 1).split(";")) {
+
+			Topic topic = group.length() > 2 ? Topic.fromCode(group.charAt(0)) : null;
+
+			if (topic == null) {
+
+				continue;
+			}
+
+			Set<Integer> ids = invalidations.computeIfAbsent(topic, key -> new HashSet<>());
+
+			for (String id : group.substring(2).split(",")) {
+
+				ids.add(Integer.parseInt(id));
+			}
+		}
+	}
+
+	private void resync() {
+
+		subscriptions.forEach(InvalidationBus::runResync);
+	}
+
+	private static void runResync(Subscription subscription) {
+
+		try {
+
+			subscription.resync.run();
+
+		} catch (RuntimeException exception) {
+
+			LOGGER.warn("Could not resync the {} cache.", subscription.topic, exception);
+		}
+	}
+
+	private static final class Subscription {
+
+		private final Topic topic;
+
+		private final Consumer<Set<Integer>> handler;
+
+		private final Runnable resync;
+
+		private Subscription(Topic topic, Consumer<Set<Integer>> handler, Runnable resync) {
+
+			this.topic = topic;
+
+			this.handler = handler;
+
+			this.resync = resync;
+		}
+	}
+
+	private static final class ChannelListener {
+
+		private final String channel;
+
+		private final Consumer<String> handler;
+
+		private final Runnable sync;
+
+		private ChannelListener(String channel, Consumer<String> handler, Runnable sync) {
+
+			this.channel = channel;
+
+			this.handler = handler;
+
+			this.sync = sync;
+		}
+	}
+}
@@ -0,0 +1,340 @@
+package app.onepass.organizer.components;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.SingleConnectionDataSource;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import app.onepass.organizer.configurations.ShardRoutingDataSource;
+
+/**
+ * Deletes removed organizations and events for good. Removing only sets {@code deleted_at}, which hides the row
+ * at once. This job later deletes everything below it, children first, in batches of {@code PURGE_BATCH_SIZE} rows
+ * taken in ID order. Every batch commits on its own and is followed by a pause, so a large organization never
+ * holds many locks or a connection for long.
+ *
+ * <p>Only one instance purges a shard at a time, which a PostgreSQL advisory lock ensures. Nothing depends on this
+ * bean, so it opts out of lazy initialization to have its schedule run in production.
+ *
+ * <p>Each shard has the same {@link PurgeCounters}: rows purged per table, parents purged, parents still pending and
+ * the time of the last deleted batch. The instance holding a shard's lock logs them after every run on that shard,
+ * so a purge that stops making progress while parents are pending can be alerted on.
+ */
+@Component
+@Lazy(false)
+public class Purger {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(Purger.class);
+
+	private static final long ADVISORY_LOCK_ID = 0x6f72675075726765L;
+
+	/**
+	 * The tables below an event, children first, with the condition that selects one event's rows.
+	 */
+	private static final String[][] EVENT_TABLES = {
+			{ "answer", "user_event_id IN (SELECT id FROM user_event WHERE event_id = ?)" },
+			{ "user_event", "event_id = ?" },
+			{ "question", "question_group_id IN (SELECT id FROM question_group WHERE event_id = ?)" },
+			{ "question_group", "event_id = ?" },
+			{ "event_tag", "event_id = ?" },
+			{ "event_duration", "event_id = ?" },
+			{ "event", "id = ?" }
+	};
+
+	private static final String[][] ORGANIZATION_TABLES = {
+			{ "user_organization", "organization_id = ?" },
+			{ "organization", "id = ?" }
+	};
+
+	private final List<PurgeCounters> countersByShard = new ArrayList<>();
+
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	@Value("${PURGE_ENABLED:true}")
+	private boolean isEnabled;
+
+	@Value("${PURGE_DELAY_MS:0}")
+	private long delayMillis;
+
+	@Value("${PURGE_BATCH_SIZE:1000}")
+	private int batchSize;
+
+	@Value("${PURGE_BATCH_PAUSE_MS:50}")
+	private long batchPauseMillis;
+
+	@PostConstruct
+	public void initialize() {
+
+		for (int shard = 0; shard < shardRoutingDataSource.getShardCount(); shard++) {
+
+			countersByShard.add(new PurgeCounters());
+		}
+	}
+
+	public PurgeCounters getCounters(int shard) {
+
+		return countersByShard.get(shard);
+	}
+
+	@Scheduled(fixedDelayString = "${PURGE_INTERVAL_MS:60000}")
+	public void purge() {
+
+		if (!isEnabled) {
+
+			return;
+		}
+
+		List<DataSource> shardDataSources = shardRoutingDataSource.getShardDataSources();
+
+		for (int shard = 0; shard < shardDataSources.size() && !Thread.currentThread().isInterrupted(); shard++) {
+
+			try (Connection lockConnection = shardDataSources.get(shard).getConnection()) {
+
+				JdbcTemplate lock = new JdbcTemplate(new SingleConnectionDataSource(lockConnection, true));
+
+				if (!Boolean.TRUE.equals(lock.queryForObject("SELECT pg_try_advisory_lock(?)", Boolean.class, ADVISORY_LOCK_ID))) {
+
+					continue;
+				}
+
+				try {
+
+					purgeShard(shard, new JdbcTemplate(shardDataSources.get(shard)));
+
+				} finally {
+
+					lock.queryForObject("SELECT pg_advisory_unlock(?)", Boolean.class, ADVISORY_LOCK_ID);
+
+					LOGGER.info("Purge counters of shard {}: {}.", shard, countersByShard.get(shard));
+				}
+
+			} catch (SQLException | DataAccessException exception) {
+
+				LOGGER.warn("Purging shard {} failed and is retried on the next run.", shard, exception);
+			}
+		}
+	}
+
+	private void purgeShard(int shard, JdbcTemplate jdbcTemplate) {
+
+		PurgeCounters counters = countersByShard.get(shard);
+
+		Timestamp threshold = new Timestamp(System.currentTimeMillis() - delayMillis);
+
+		List<Integer> eventIds = jdbcTemplate.queryForList(
+				"SELECT id FROM event WHERE deleted_at < ? ORDER BY id", Integer.class, threshold);
+
+		List<Integer> organizationIds = jdbcTemplate.queryForList(
+				"SELECT id FROM organization WHERE deleted_at < ? ORDER BY id", Integer.class, threshold);
+
+		counters.pendingEvents.set(eventIds.size());
+
+		counters.pendingOrganizations.set(organizationIds.size());
+
+		if (eventIds.isEmpty() && organizationIds.isEmpty()) {
+
+			return;
+		}
+
+		LOGGER.info("Purging {} events and {} organizations from shard {}.", eventIds.size(), organizationIds.size(), shard);
+
+		for (int eventId : eventIds) {
+
+			if (!purgeRows(jdbcTemplate, EVENT_TABLES, eventId, "event", shard)) {
+
+				return;
+			}
+
+			counters.pendingEvents.decrementAndGet();
+
+			counters.purgedEvents.incrementAndGet();
+		}
+
+		for (int organizationId : organizationIds) {
+
+			// Events created while the organization was being removed were not marked as deleted.
+			for (int eventId : jdbcTemplate.queryForList("SELECT id FROM event WHERE organization_id = ?", Integer.class,
+					organizationId)) {
+
+				if (!purgeRows(jdbcTemplate, EVENT_TABLES, eventId, "event", shard)) {
+
+					return;
+				}
+
+				counters.purgedEvents.incrementAndGet();
+			}
+
+			if (!purgeRows(jdbcTemplate, ORGANIZATION_TABLES, organizationId, "organization", shard)) {
+
+				return;
+			}
+
+			counters.pendingOrganizations.decrementAndGet();
+
+			counters.purgedOrganizations.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Deletes everything below one parent, and the parent itself, table by table. Returns false when the purge was
+	 * interrupted.
+	 */
+	private boolean purgeRows(JdbcTemplate jdbcTemplate, String[][] tables, int parentId, String parentName, int shard) {
+
+		PurgeCounters counters = countersByShard.get(shard);
+
+		Map<String, Long> deletedRows = new LinkedHashMap<>();
+
+		for (String[] table : tables) {
+
+			long deleted = 0;
+
+			long cursor = 0;
+
+			while (true) {
+
+				List<Long> ids = jdbcTemplate.queryForList("SELECT id FROM " + table[0] + " WHERE " + table[1]
+						+ " AND id > ? ORDER BY id LIMIT ?", Long.class, parentId, cursor, batchSize);
+
+				if (ids.isEmpty()) {
+
+					break;
+				}
+
+				long lastId = ids.get(ids.size() - 1);
+
+				// The range holds exactly the selected rows, since they are the first ones after the cursor.
+				int batchDeleted = jdbcTemplate.update("DELETE FROM " + table[0] + " WHERE " + table[1]
+						+ " AND id > ? AND id <= ?", parentId, cursor, lastId);
+
+				deleted += batchDeleted;
+
+				counters.purgedRows.get(table[0]).addAndGet(batchDeleted);
+
+				counters.lastProgressMillis = System.currentTimeMillis();
+
+				cursor = lastId;
+
+				if (!pause()) {
+
+					return false;
+				}
+			}
+
+			deletedRows.put(table[0], deleted);
+		}
+
+		LOGGER.info("Purged {} {} from shard {}: {}.", parentName, parentId, shard, deletedRows);
+
+		return true;
+	}
+
+	private boolean pause() {
+
+		try {
+
+			Thread.sleep(batchPauseMillis);
+
+			return true;
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+
+			return false;
+		}
+	}
+
+	/**
+	 * The purge progress of one shard since this instance started. Pending counts are set at the start of each run
+	 * and count down as parents are purged; the other counters only grow.
+	 */
+	public static final class PurgeCounters {
+
+		private final Map<String, AtomicLong> purgedRows;
+
+		private final AtomicLong pendingEvents = new AtomicLong();
+
+		private final AtomicLong pendingOrganizations = new AtomicLong();
+
+		private final AtomicLong purgedEvents = new AtomicLong();
+
+		private final AtomicLong purgedOrganizations = new AtomicLong();
+
+		private volatile long lastProgressMillis;
+
+		private PurgeCounters() {
+
+			Map<String, AtomicLong> rows = new LinkedHashMap<>();
+
+			Stream.concat(Stream.of(EVENT_TABLES), Stream.of(ORGANIZATION_TABLES))
+					.forEach(table -> rows.put(table[0], new AtomicLong()));
+
+			this.purgedRows = Collections.unmodifiableMap(rows);
+		}
+
+		public long getPurgedRows(String table) {
+
+			AtomicLong rows = purgedRows.get(table);
+
+			return rows == null ? 0 : rows.get();
+		}
+
+		public long getPendingEvents() {
+
+			return pendingEvents.get();
+		}
+
+		public long getPendingOrganizations() {
+
+			return pendingOrganizations.get();
+		}
+
+		public long getPurgedEvents() {
+
+			return purgedEvents.get();
+		}
+
+		public long getPurgedOrganizations() {
+
+			return purgedOrganizations.get();
+		}
+
+		/**
+		 * Returns when a batch of rows was last deleted from the shard, or 0 if none has been yet.
+		 */
+		public long getLastProgressMillis() {
+
+			return lastProgressMillis;
+		}
+
+		@Override
+		public String toString() {
+
+			return "pending_events=" + pendingEvents + " pending_organizations=" + pendingOrganizations
+					+ " purged_events=" + purgedEvents + " purged_organizations=" + purgedOrganizations
+					+ " last_progress_ms=" + lastProgressMillis + " purged_rows=" + purgedRows;
+		}
+	}
+}
@@ -0,0 +1,247 @@
+package app.onepass.organizer.components;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.SmartLifecycle;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import com.zaxxer.hikari.HikariDataSource;
+import com.zaxxer.hikari.HikariPoolMXBean;
+
+import app.onepass.organizer.configurations.ShardRoutingDataSource;
+import app.onepass.organizer.services.AccountService;
+
+/**
+ * Tracks whether this instance should receive traffic.
+ *
+ * <pre>
+ * STARTING -> READY <-> DEGRADED -> DRAINING -> CLOSED
+ * </pre>
+ *
+ * An instance is ready once the warm-up has finished and the latest probe reached every database and the
+ * account service. On shutdown it first keeps serving while reporting not ready, so load balancers can move
+ * traffic away, then rejects new calls and waits for the in-flight ones to finish.
+ */
+@Component
+public class ReadinessState implements SmartLifecycle {
+
+	public enum State {
+		STARTING, READY, DEGRADED, DRAINING, CLOSED
+	}
+
+	private final AtomicInteger inFlightCalls = new AtomicInteger();
+
+	private volatile State state = State.STARTING;
+
+	private volatile boolean isRunning;
+
+	@Autowired
+	private WarmUp warmUp;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private ChangeFeed changeFeed;
+
+	@Value("${DRAIN_DELAY_MS:5000}")
+	private long drainDelayMillis;
+
+	@Value("${DRAIN_GRACE_SECONDS:20}")
+	private long drainGraceSeconds;
+
+	public State getState() {
+
+		return state;
+	}
+
+	public boolean isReady() {
+
+		return state == State.READY;
+	}
+
+	/**
+	 * Counts a call as in flight. Returns false, without counting it, once the instance no longer accepts calls.
+	 */
+	public boolean tryEnter() {
+
+		inFlightCalls.incrementAndGet();
+
+		if (state == State.CLOSED) {
+
+			exit();
+
+			return false;
+		}
+
+		return true;
+	}
+
+	public void exit() {
+
+		inFlightCalls.decrementAndGet();
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(Ordered.HIGHEST_PRECEDENCE + 1)
+	@Scheduled(fixedDelayString = "${READINESS_PROBE_INTERVAL_MS:2000}")
+	public void probe() {
+
+		if (!warmUp.isComplete()) {
+
+			return;
+		}
+
+		boolean isHealthy = isDatabaseHealthy() && isAccountServiceHealthy();
+
+		synchronized (this) {
+
+			if (state == State.DRAINING || state == State.CLOSED) {
+
+				return;
+			}
+
+			state = isHealthy ? State.READY : State.DEGRADED;
+		}
+	}
+
+	@Override
+	public void start() {
+
+		isRunning = true;
+	}
+
+	@Override
+	public void stop() {
+
+		drain();
+	}
+
+	@Override
+	public void stop(Runnable callback) {
+
+		Thread drainer = new Thread(() -> {
+
+			try {
+
+				drain();
+
+			} finally {
+
+				callback.run();
+			}
+
+		}, "readiness-drain");
+
+		drainer.start();
+	}
+
+	@Override
+	public boolean isRunning() {
+
+		return isRunning;
+	}
+
+	private void drain() {
+
+		synchronized (this) {
+
+			state = State.DRAINING;
+		}
+
+		try {
+
+			Thread.sleep(drainDelayMillis);
+
+			synchronized (this) {
+
+				state = State.CLOSED;
+			}
+
+			changeFeed.closeSubscribers();
+
+			long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(drainGraceSeconds);
+
+			while (inFlightCalls.get() > 0 && System.nanoTime() < deadline) {
+
+				Thread.sleep(10);
+			}
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+
+		} finally {
+
+			isRunning = false;
+		}
+	}
+
+	private boolean isDatabaseHealthy() {
+
+		Set<DataSource> dataSources = Collections.newSetFromMap(new IdentityHashMap<>());
+
+		dataSources.add(dataSource);
+
+		dataSources.addAll(shardRoutingDataSource.getShardDataSources());
+
+		return dataSources.stream().allMatch(ReadinessState::isPoolHealthy);
+	}
+
+	private static boolean isPoolHealthy(DataSource dataSource) {
+
+		if (dataSource instanceof HikariDataSource) {
+
+			HikariPoolMXBean hikariPoolMXBean = ((HikariDataSource) dataSource).getHikariPoolMXBean();
+
+			// Borrowing from an exhausted pool would block the probe for the whole connection timeout.
+			if (hikariPoolMXBean != null && hikariPoolMXBean.getIdleConnections() == 0
+					&& hikariPoolMXBean.getThreadsAwaitingConnection() > 0) {
+
+				return false;
+			}
+		}
+
+		try (Connection connection = dataSource.getConnection()) {
+
+			return connection.isValid(1);
+
+		} catch (SQLException exception) {
+
+			return false;
+		}
+	}
+
+	private boolean isAccountServiceHealthy() {
+
+		try {
+
+			return accountService.ping().getValue();
+
+		} catch (RuntimeException exception) {
+
+			return false;
+		}
+	}
+}
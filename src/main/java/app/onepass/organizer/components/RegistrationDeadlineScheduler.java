@@ -0,0 +1,148 @@
+package app.onepass.organizer.components;
+
+import java.sql.Timestamp;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import app.onepass.organizer.configurations.ShardContext;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.UserEventRepository;
+import app.onepass.organizer.utilities.HashedTimingWheel;
+
+/**
+ * Closes registration when an event's registration due date passes by rejecting its pending registrations in one
+ * statement. Upcoming due dates are kept on a {@link HashedTimingWheel}, which is loaded on startup, updated when
+ * events are created, updated or removed here, and refreshed when a peer announces a change to an event. Due dates
+ * that passed while no instance was watching are caught up on load with one statement per shard.
+ *
+ * <p>Every instance fires every deadline. The update only touches registrations that are still pending, so the
+ * instances after the first find nothing left to do.
+ */
+@Component
+public class RegistrationDeadlineScheduler {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(RegistrationDeadlineScheduler.class);
+
+	@Autowired
+	private EventRepository eventRepository;
+
+	@Autowired
+	private UserEventRepository userEventRepository;
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Value("${REGISTRATION_DEADLINE_TICK_MS:1000}")
+	private long tickMillis;
+
+	@Value("${REGISTRATION_DEADLINE_WHEEL_SIZE:4096}")
+	private int wheelSize;
+
+	@Value("${REGISTRATION_DEADLINE_RETRY_MS:60000}")
+	private long retryMillis;
+
+	private HashedTimingWheel<Integer> timingWheel;
+
+	@PostConstruct
+	public void initialize() {
+
+		timingWheel = new HashedTimingWheel<>(tickMillis, wheelSize, "registration-deadlines", this::closeRegistration);
+
+		invalidationBus.subscribe(InvalidationBus.Topic.EVENT, this::refreshEvents, this::load);
+
+		load();
+
+		timingWheel.start();
+	}
+
+	@PreDestroy
+	public void shutdown() {
+
+		timingWheel.stop();
+	}
+
+	public void load() {
+
+		Timestamp now = new Timestamp(System.currentTimeMillis());
+
+		List<Integer> rejected = shardMap.fanOut(shard ->
+				Collections.singletonList(userEventRepository.rejectAllPendingPastRegistrationDueDate(now)));
+
+		int rejectedCount = rejected.stream().mapToInt(Integer::intValue).sum();
+
+		if (rejectedCount > 0) {
+
+			LOGGER.info("Rejected {} pending registrations whose registration due date passed while not scheduled.", rejectedCount);
+		}
+
+		shardMap.fanOut(shard -> eventRepository.findAllByRegistrationDueDateAfter(now)).forEach(this::schedule);
+	}
+
+	/**
+	 * Schedules the event's registration due date, or cancels it when the event has none.
+	 */
+	public void schedule(EventEntity eventEntity) {
+
+		if (eventEntity.getRegistrationDueDate() == null || eventEntity.getDeletedAt() != null) {
+
+			timingWheel.cancel(eventEntity.getId());
+
+			return;
+		}
+
+		timingWheel.schedule(eventEntity.getId(), eventEntity.getRegistrationDueDate().getTime());
+	}
+
+	public void cancel(int eventId) {
+
+		timingWheel.cancel(eventId);
+	}
+
+	private void refreshEvents(Set<Integer> eventIds) {
+
+		Map<Integer, List<Integer>> eventIdsByShard = eventIds.stream().collect(Collectors.groupingBy(shardMap::getShardOfEvent));
+
+		eventIdsByShard.forEach((shard, shardEventIds) -> ShardContext.run(shard, () -> {
+
+			shardEventIds.forEach(timingWheel::cancel);
+
+			eventRepository.findAllById(shardEventIds).forEach(this::schedule);
+		}));
+	}
+
+	private void closeRegistration(int eventId) {
+
+		try {
+
+			int rejectedCount = ShardContext.call(shardMap.getShardOfEvent(eventId), () -> userEventRepository
+					.rejectAllPendingPastRegistrationDueDateByEventId(eventId, new Timestamp(System.currentTimeMillis())));
+
+			if (rejectedCount > 0) {
+
+				LOGGER.info("Closed registration for event {} and rejected {} pending registrations.", eventId, rejectedCount);
+			}
+
+		} catch (RuntimeException exception) {
+
+			LOGGER.warn("Closing registration for event {} failed and is retried.", eventId, exception);
+
+			timingWheel.schedule(eventId, System.currentTimeMillis() + retryMillis);
+		}
+	}
+}
@@ -0,0 +1,342 @@
+package app.onepass.organizer.components;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import app.onepass.organizer.configurations.ShardContext;
+import app.onepass.organizer.configurations.ShardRoutingDataSource;
+import app.onepass.organizer.entities.OrganizationShardEntity;
+import app.onepass.organizer.repositories.OrganizationShardRepository;
+import io.grpc.Context;
+import io.grpc.Status;
+
+/**
+ * Knows which organization shard holds each organization. The directory in the global database has an entry for
+ * every organization created or moved since sharding was enabled; organizations without one predate sharding and
+ * stay on shard 0. Each instance keeps the directory in memory and reloads it when a peer announces a change on the
+ * {@link InvalidationBus}. A periodic refresh as well guarantees that a move is seen by every instance within one
+ * refresh interval.
+ *
+ * <p>Rows below an organization are located through their event. Events come from {@link EventDurationIndex}, and
+ * anything it does not know is looked up on every shard once and cached, which relies on IDs being unique across
+ * shards (see {@link ShardRebalancer#prepareIdSequences()}).
+ */
+@Component
+public class ShardMap {
+
+	private static final String ORGANIZATION_OF_EVENT = "SELECT organization_id FROM event WHERE id = ?";
+
+	private static final String ORGANIZATION_OF_QUESTION_GROUP = "SELECT event.organization_id FROM question_group "
+			+ "JOIN event ON event.id = question_group.event_id WHERE question_group.id = ?";
+
+	private static final String ORGANIZATION_OF_QUESTION = "SELECT event.organization_id FROM question "
+			+ "JOIN question_group ON question_group.id = question.question_group_id "
+			+ "JOIN event ON event.id = question_group.event_id WHERE question.id = ?";
+
+	private final Map<Integer, OrganizationShardEntity> directory = new ConcurrentHashMap<>();
+
+	private Map<String, Integer> organizationIdsByRow;
+
+	private ExecutorService fanOutExecutor;
+
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	@Autowired
+	private OrganizationShardRepository organizationShardRepository;
+
+	@Autowired
+	@Lazy
+	private EventDurationIndex eventDurationIndex;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Value("${SHARD_ROW_CACHE_SIZE:100000}")
+	private int rowCacheSize;
+
+	@Value("${SHARD_FAN_OUT_THREADS:16}")
+	private int fanOutThreads;
+
+	@PostConstruct
+	public void initialize() {
+
+		organizationIdsByRow = Collections.synchronizedMap(new LinkedHashMap<String, Integer>(16, 0.75f, true) {
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Integer> eldest) {
+
+				return size() > rowCacheSize;
+			}
+		});
+
+		if (isSharded()) {
+
+			AtomicInteger threadCount = new AtomicInteger();
+
+			fanOutExecutor = Executors.newFixedThreadPool(fanOutThreads, runnable -> {
+
+				Thread thread = new Thread(runnable, "shard-fan-out-" + threadCount.incrementAndGet());
+
+				thread.setDaemon(true);
+
+				return thread;
+			});
+
+			invalidationBus.subscribe(InvalidationBus.Topic.ORGANIZATION_SHARD, organizationIds -> refresh(), this::refresh);
+
+			refresh();
+		}
+	}
+
+	@PreDestroy
+	public void shutdown() {
+
+		if (fanOutExecutor != null) {
+
+			fanOutExecutor.shutdownNow();
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${SHARD_MAP_REFRESH_MS:10000}")
+	public void refresh() {
+
+		if (!isSharded()) {
+
+			return;
+		}
+
+		Map<Integer, OrganizationShardEntity> entries = new ConcurrentHashMap<>();
+
+		organizationShardRepository.findAll().forEach(entry -> entries.put(entry.getOrganizationId(), entry));
+
+		directory.putAll(entries);
+
+		directory.keySet().retainAll(entries.keySet());
+	}
+
+	public boolean isSharded() {
+
+		return getShardCount() > 1;
+	}
+
+	public int getShardCount() {
+
+		return shardRoutingDataSource.getShardCount();
+	}
+
+	/**
+	 * Returns the shard of the organization, or fails with UNAVAILABLE while the organization is being moved so
+	 * that the client retries once the move has finished.
+	 */
+	public int getShardOfOrganization(int organizationId) {
+
+		OrganizationShardEntity entry = directory.get(organizationId);
+
+		if (entry == null) {
+
+			return 0;
+		}
+
+		if (entry.isMoving()) {
+
+			throw Status.UNAVAILABLE.withDescription("The organization is being moved to another shard.").asRuntimeException();
+		}
+
+		return entry.getShard();
+	}
+
+	public int getShardOfEvent(int eventId) {
+
+		if (!isSharded()) {
+
+			return 0;
+		}
+
+		Integer organizationId = eventDurationIndex.getOrganizationId(eventId);
+
+		return organizationId != null ? getShardOfOrganization(organizationId) : getShardOfRow(ORGANIZATION_OF_EVENT, "event", eventId);
+	}
+
+	/**
+	 * Returns the organization of an event known to {@link EventDurationIndex}, or null, without taking its lock or
+	 * querying a shard.
+	 */
+	public Integer getOrganizationOfEvent(int eventId) {
+
+		return eventDurationIndex.getOrganizationId(eventId);
+	}
+
+	public Integer getOrganizationOfQuestionGroup(int questionGroupId) {
+
+		return getOrganizationOfRow(ORGANIZATION_OF_QUESTION_GROUP, "question_group", questionGroupId);
+	}
+
+	public Integer getOrganizationOfQuestion(int questionId) {
+
+		return getOrganizationOfRow(ORGANIZATION_OF_QUESTION, "question", questionId);
+	}
+
+	public int getShardOfQuestionGroup(int questionGroupId) {
+
+		return isSharded() ? getShardOfRow(ORGANIZATION_OF_QUESTION_GROUP, "question_group", questionGroupId) : 0;
+	}
+
+	public int getShardOfQuestion(int questionId) {
+
+		return isSharded() ? getShardOfRow(ORGANIZATION_OF_QUESTION, "question", questionId) : 0;
+	}
+
+	/**
+	 * Picks the shard with the fewest organizations in the directory for an organization that is about to be
+	 * created.
+	 */
+	public int getShardForNewOrganization() {
+
+		int[] organizationCounts = new int[getShardCount()];
+
+		directory.values().forEach(entry -> organizationCounts[entry.getShard()]++);
+
+		int shard = 0;
+
+		for (int candidate = 1; candidate < organizationCounts.length; candidate++) {
+
+			if (organizationCounts[candidate] < organizationCounts[shard]) {
+
+				shard = candidate;
+			}
+		}
+
+		return shard;
+	}
+
+	public void assignOrganization(int organizationId, int shard, boolean isMoving) {
+
+		OrganizationShardEntity entry = organizationShardRepository.save(OrganizationShardEntity.builder()
+				.organizationId(organizationId)
+				.shard(shard)
+				.moving(isMoving)
+				.build());
+
+		directory.put(organizationId, entry);
+
+		invalidationBus.publish(InvalidationBus.Topic.ORGANIZATION_SHARD, organizationId);
+	}
+
+	/**
+	 * Runs the query on every shard, each on its own thread and in its own {@link ShardContext}, and concatenates the
+	 * results in shard order. The calling gRPC context is carried over so the call's deadline still applies.
+	 */
+	public <T> List<T> fanOut(IntFunction<List<T>> query) {
+
+		if (!isSharded()) {
+
+			return ShardContext.call(0, () -> query.apply(0));
+		}
+
+		Context context = Context.current();
+
+		List<Future<List<T>>> futures = new ArrayList<>();
+
+		for (int shard = 0; shard < getShardCount(); shard++) {
+
+			int selectedShard = shard;
+
+			futures.add(fanOutExecutor.submit(context.wrap(() -> ShardContext.call(selectedShard, () -> query.apply(selectedShard)))));
+		}
+
+		List<T> results = new ArrayList<>();
+
+		try {
+
+			for (Future<List<T>> future : futures) {
+
+				results.addAll(future.get());
+			}
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+
+			throw Status.CANCELLED.withDescription("The fan-out was interrupted.").asRuntimeException();
+
+		} catch (ExecutionException exception) {
+
+			if (exception.getCause() instanceof RuntimeException) {
+
+				throw (RuntimeException) exception.getCause();
+			}
+
+			throw new IllegalStateException(exception.getCause());
+
+		} finally {
+
+			futures.forEach(future -> future.cancel(true));
+		}
+
+		return results;
+	}
+
+	private int getShardOfRow(String query, String table, int id) {
+
+		Integer organizationId = getOrganizationOfRow(query, table, id);
+
+		// Every shard gives the same "does not exist" answer, so any of them will do.
+		return organizationId == null ? 0 : getShardOfOrganization(organizationId);
+	}
+
+	private Integer getOrganizationOfRow(String query, String table, int id) {
+
+		String key = table + ":" + id;
+
+		Integer organizationId = organizationIdsByRow.get(key);
+
+		if (organizationId == null) {
+
+			organizationId = findOrganizationId(query, id);
+
+			if (organizationId != null) {
+
+				organizationIdsByRow.put(key, organizationId);
+			}
+		}
+
+		return organizationId;
+	}
+
+	private Integer findOrganizationId(String query, int id) {
+
+		for (DataSource shardDataSource : shardRoutingDataSource.getShardDataSources()) {
+
+			List<Integer> organizationIds = new JdbcTemplate(shardDataSource).queryForList(query, Integer.class, id);
+
+			if (!organizationIds.isEmpty()) {
+
+				return organizationIds.get(0);
+			}
+		}
+
+		return null;
+	}
+}
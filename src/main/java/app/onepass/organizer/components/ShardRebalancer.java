@@ -0,0 +1,346 @@
+package app.onepass.organizer.components;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.stereotype.Component;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import app.onepass.organizer.configurations.ShardRoutingDataSource;
+import app.onepass.organizer.entities.OrganizationShardEntity;
+import app.onepass.organizer.repositories.OrganizationShardRepository;
+
+/**
+ * Command line tool for the organization shards, started with {@code organizer.shard-tool} set to a command. It
+ * runs the command once the application is ready and exits.
+ *
+ * <ul>
+ * <li>{@code prepare} makes every shard hand out IDs that no other shard uses. Run it before enabling sharding and
+ * whenever a shard is added.</li>
+ * <li>{@code plan} prints the moves that would even out the number of events per shard.</li>
+ * <li>{@code rebalance} performs those moves.</li>
+ * <li>{@code move:ORGANIZATION_ID:SHARD} moves a single organization.</li>
+ * </ul>
+ *
+ * A move first marks the organization as moving and waits until every instance has refreshed its shard map, so
+ * calls for the organization are rejected with UNAVAILABLE and retried by clients. It then copies the rows in one
+ * transaction on the target shard, points the directory at the target and deletes the rows from the source.
+ */
+@Component
+@ConditionalOnProperty("organizer.shard-tool")
+public class ShardRebalancer {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(ShardRebalancer.class);
+
+	private static final String EVENTS_OF_ORGANIZATION = "SELECT id FROM event WHERE organization_id = ?";
+
+	/**
+	 * The tables that belong to an organization, parents first, with the condition that selects one organization's
+	 * rows.
+	 */
+	private static final String[][] ORGANIZATION_TABLES = {
+			{ "organization", "id = ?" },
+			{ "user_organization", "organization_id = ?" },
+			{ "event", "organization_id = ?" },
+			{ "event_duration", "event_id IN (" + EVENTS_OF_ORGANIZATION + ")" },
+			{ "event_tag", "event_id IN (" + EVENTS_OF_ORGANIZATION + ")" },
+			{ "question_group", "event_id IN (" + EVENTS_OF_ORGANIZATION + ")" },
+			{ "question", "question_group_id IN (SELECT id FROM question_group WHERE event_id IN (" + EVENTS_OF_ORGANIZATION + "))" },
+			{ "user_event", "event_id IN (" + EVENTS_OF_ORGANIZATION + ")" },
+			{ "answer", "user_event_id IN (SELECT id FROM user_event WHERE event_id IN (" + EVENTS_OF_ORGANIZATION + "))" }
+	};
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	@Autowired
+	private OrganizationShardRepository organizationShardRepository;
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@Value("${organizer.shard-tool}")
+	private String command;
+
+	@Value("${SHARD_ID_STRIDE:64}")
+	private int idStride;
+
+	@Value("${SHARD_MAP_REFRESH_MS:10000}")
+	private long refreshMillis;
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(Ordered.LOWEST_PRECEDENCE)
+	public void runCommand() {
+
+		int exitCode = 0;
+
+		try {
+
+			String[] arguments = command.split(":");
+
+			switch (arguments[0]) {
+
+				case "prepare":
+
+					prepareIdSequences();
+
+					break;
+
+				case "plan":
+
+					plan().forEach(move -> LOGGER.info("Would move organization {} from shard {} to shard {}.", move[0], move[1], move[2]));
+
+					break;
+
+				case "rebalance":
+
+					for (int[] move : plan()) {
+
+						move(move[0], move[2]);
+					}
+
+					break;
+
+				case "move":
+
+					move(Integer.parseInt(arguments[1]), Integer.parseInt(arguments[2]));
+
+					break;
+
+				default:
+
+					throw new IllegalArgumentException("Unknown shard tool command " + command + ".");
+			}
+
+		} catch (RuntimeException exception) {
+
+			LOGGER.error("The shard tool command {} failed.", command, exception);
+
+			exitCode = 1;
+		}
+
+		int finalExitCode = exitCode;
+
+		System.exit(SpringApplication.exit(applicationContext, () -> finalExitCode));
+	}
+
+	/**
+	 * Sets the ID sequence of every organization table on shard {@code s} to hand out only IDs congruent to
+	 * {@code s + 1} modulo {@code SHARD_ID_STRIDE}, starting above the highest ID on any shard.
+	 */
+	public void prepareIdSequences() {
+
+		List<DataSource> shardDataSources = shardRoutingDataSource.getShardDataSources();
+
+		if (shardDataSources.size() > idStride) {
+
+			throw new IllegalStateException("There are more shards than SHARD_ID_STRIDE allows.");
+		}
+
+		for (String[] table : ORGANIZATION_TABLES) {
+
+			long highestId = 0;
+
+			for (DataSource shardDataSource : shardDataSources) {
+
+				Long shardHighestId = new JdbcTemplate(shardDataSource).queryForObject(
+						"SELECT COALESCE(MAX(id), 0) FROM " + table[0], Long.class);
+
+				highestId = Math.max(highestId, shardHighestId);
+			}
+
+			for (int shard = 0; shard < shardDataSources.size(); shard++) {
+
+				JdbcTemplate jdbcTemplate = new JdbcTemplate(shardDataSources.get(shard));
+
+				String sequence = jdbcTemplate.queryForObject("SELECT pg_get_serial_sequence(?, 'id')", String.class, table[0]);
+
+				long nextId = highestId + 1 + Math.floorMod(shard + 1 - (highestId + 1), idStride);
+
+				jdbcTemplate.execute("ALTER SEQUENCE " + sequence + " INCREMENT BY " + idStride);
+
+				jdbcTemplate.queryForObject("SELECT setval(?, ?, false)", Long.class, sequence, nextId);
+
+				LOGGER.info("The {} IDs on shard {} continue at {} in steps of {}.", table[0], shard, nextId, idStride);
+			}
+		}
+	}
+
+	/**
+	 * Plans moves from the shard with the most events to the one with the fewest, taking the largest organization
+	 * that narrows the gap, until no such organization remains. Each move is organization, source and target.
+	 */
+	public List<int[]> plan() {
+
+		List<DataSource> shardDataSources = shardRoutingDataSource.getShardDataSources();
+
+		long[] shardLoads = new long[shardDataSources.size()];
+
+		List<Map<Integer, Long>> organizationLoads = new ArrayList<>();
+
+		for (int shard = 0; shard < shardDataSources.size(); shard++) {
+
+			Map<Integer, Long> loads = new HashMap<>();
+
+			new JdbcTemplate(shardDataSources.get(shard)).query("SELECT organization_id, COUNT(*) FROM event GROUP BY organization_id",
+					resultSet -> {
+
+						loads.put(resultSet.getInt(1), resultSet.getLong(2));
+					});
+
+			organizationLoads.add(loads);
+
+			shardLoads[shard] = loads.values().stream().mapToLong(Long::longValue).sum();
+		}
+
+		List<int[]> moves = new ArrayList<>();
+
+		while (true) {
+
+			int heaviest = 0;
+
+			int lightest = 0;
+
+			for (int shard = 1; shard < shardLoads.length; shard++) {
+
+				heaviest = shardLoads[shard] > shardLoads[heaviest] ? shard : heaviest;
+
+				lightest = shardLoads[shard] < shardLoads[lightest] ? shard : lightest;
+			}
+
+			long gap = shardLoads[heaviest] - shardLoads[lightest];
+
+			Map.Entry<Integer, Long> candidate = organizationLoads.get(heaviest).entrySet().stream()
+					.filter(entry -> entry.getValue() * 2 < gap)
+					.max(Map.Entry.comparingByValue())
+					.orElse(null);
+
+			if (candidate == null) {
+
+				return moves;
+			}
+
+			organizationLoads.get(heaviest).remove(candidate.getKey());
+
+			organizationLoads.get(lightest).put(candidate.getKey(), candidate.getValue());
+
+			shardLoads[heaviest] -= candidate.getValue();
+
+			shardLoads[lightest] += candidate.getValue();
+
+			moves.add(new int[] { candidate.getKey(), heaviest, lightest });
+		}
+	}
+
+	public void move(int organizationId, int targetShard) {
+
+		OrganizationShardEntity entry = organizationShardRepository.findById(organizationId).orElse(null);
+
+		int sourceShard = entry == null ? 0 : entry.getShard();
+
+		if (sourceShard == targetShard) {
+
+			return;
+		}
+
+		LOGGER.info("Moving organization {} from shard {} to shard {}.", organizationId, sourceShard, targetShard);
+
+		shardMap.assignOrganization(organizationId, sourceShard, true);
+
+		waitForRefresh();
+
+		JdbcTemplate source = new JdbcTemplate(shardRoutingDataSource.getShardDataSources().get(sourceShard));
+
+		DataSource targetDataSource = shardRoutingDataSource.getShardDataSources().get(targetShard);
+
+		JdbcTemplate target = new JdbcTemplate(targetDataSource);
+
+		try {
+
+			new TransactionTemplate(new DataSourceTransactionManager(targetDataSource)).execute(status -> {
+
+				for (String[] table : ORGANIZATION_TABLES) {
+
+					copyRows(source, target, table[0], table[1], organizationId);
+				}
+
+				return null;
+			});
+
+		} catch (RuntimeException exception) {
+
+			shardMap.assignOrganization(organizationId, sourceShard, false);
+
+			throw exception;
+		}
+
+		shardMap.assignOrganization(organizationId, targetShard, false);
+
+		new TransactionTemplate(new DataSourceTransactionManager(source.getDataSource())).execute(status -> {
+
+			for (int index = ORGANIZATION_TABLES.length - 1; index >= 0; index--) {
+
+				String[] table = ORGANIZATION_TABLES[index];
+
+				source.update("DELETE FROM " + table[0] + " WHERE " + table[1], organizationId);
+			}
+
+			return null;
+		});
+	}
+
+	private void copyRows(JdbcTemplate source, JdbcTemplate target, String table, String condition, int organizationId) {
+
+		List<Map<String, Object>> rows = source.queryForList("SELECT * FROM " + table + " WHERE " + condition, organizationId);
+
+		if (rows.isEmpty()) {
+
+			return;
+		}
+
+		List<String> columns = new ArrayList<>(rows.get(0).keySet());
+
+		String insert = "INSERT INTO " + table + " (" + String.join(", ", columns) + ") VALUES ("
+				+ columns.stream().map(column -> "?").collect(Collectors.joining(", ")) + ")";
+
+		target.batchUpdate(insert, rows.stream()
+				.map(row -> columns.stream().map(row::get).toArray())
+				.collect(Collectors.toList()));
+	}
+
+	private void waitForRefresh() {
+
+		try {
+
+			TimeUnit.MILLISECONDS.sleep(refreshMillis * 2);
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+
+			throw new IllegalStateException("Interrupted while waiting for the shard maps to refresh.", exception);
+		}
+	}
+}
@@ -0,0 +1,212 @@
+package app.onepass.organizer.components;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+import java.util.stream.IntStream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Component;
+
+import app.onepass.apis.AddQuestionGroupsRequest;
+import app.onepass.apis.AddQuestionsRequest;
+import app.onepass.apis.CheckInBatchRequest;
+import app.onepass.apis.CheckInRequest;
+import app.onepass.apis.CreateEventRequest;
+import app.onepass.apis.ExportEventRegistrationsRequest;
+import app.onepass.apis.GenerateTicketRequest;
+import app.onepass.apis.GetObjectByIdRequest;
+import app.onepass.apis.HasEventRequest;
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.apis.RemoveEventRequest;
+import app.onepass.apis.RemoveOrganizationRequest;
+import app.onepass.apis.RemoveQuestionGroupsRequest;
+import app.onepass.apis.RemoveQuestionsRequest;
+import app.onepass.apis.UpdateEventDurationsRequest;
+import app.onepass.apis.UpdateEventRequest;
+import app.onepass.apis.UpdateOrganizationRequest;
+import app.onepass.apis.UpdateRegistrationRequestRequest;
+import app.onepass.apis.UpdateTagRequest;
+import app.onepass.apis.UpdateUsersInOrganizationRequest;
+import app.onepass.organizer.configurations.ShardContext;
+import io.grpc.MethodDescriptor;
+import io.grpc.Status;
+
+/**
+ * Resolves the organization shard of a call from its request. Calls that only touch global data, and the fan-out
+ * reads that visit every shard themselves, have no route and run without a shard. The same per-method extractors
+ * also give the organization of a call, which the rate limits are kept per.
+ */
+@Component
+public class ShardRouter {
+
+	private final Map<String, Function<Object, Integer>> routes = new HashMap<>();
+
+	private final Map<String, Function<Object, Integer>> organizations = new HashMap<>();
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@PostConstruct
+	public void initialize() {
+
+		routes.put(OrganizerServiceGrpc.getCreateOrganizationMethod().getFullMethodName(),
+				request -> shardMap.getShardForNewOrganization());
+
+		routeByOrganization(OrganizerServiceGrpc.getGetOrganizationByIdMethod(), GetObjectByIdRequest::getId);
+
+		routeByOrganization(OrganizerServiceGrpc.getGetUsersInOrganizationByIdMethod(), GetObjectByIdRequest::getId);
+
+		routeByOrganization(OrganizerServiceGrpc.getUpdateOrganizationMethod(), request -> request.getOrganization().getId());
+
+		routeByOrganization(OrganizerServiceGrpc.getRemoveOrganizationMethod(), RemoveOrganizationRequest::getOrganizationId);
+
+		routeByOrganization(OrganizerServiceGrpc.getAddUsersToOrganizationMethod(), UpdateUsersInOrganizationRequest::getOrganizationId);
+
+		routeByOrganization(OrganizerServiceGrpc.getRemoveUsersFromOrganizationMethod(), UpdateUsersInOrganizationRequest::getOrganizationId);
+
+		routeByOrganization(OrganizerServiceGrpc.getCreateEventMethod(), request -> request.getEvent().getOrganizationId());
+
+		routeByEvent(OrganizerServiceGrpc.getUpdateEventMethod(), request -> request.getEvent().getId());
+
+		routeByEvent(OrganizerServiceGrpc.getUpdateEventDurationsMethod(), UpdateEventDurationsRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getRemoveEventMethod(), RemoveEventRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getUpdateRegistrationRequestMethod(), UpdateRegistrationRequestRequest::getRegisteredEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getAddTagsMethod(), UpdateTagRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getRemoveTagsMethod(), UpdateTagRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getHasEventMethod(), HasEventRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getExportEventRegistrationsMethod(), ExportEventRegistrationsRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getGenerateTicketMethod(), GenerateTicketRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getCheckInMethod(), CheckInRequest::getEventId);
+
+		routeByEvent(OrganizerServiceGrpc.getCheckInStreamMethod(), CheckInBatchRequest::getEventId);
+
+		routeBySingleShard(OrganizerServiceGrpc.getAddQuestionGroupsMethod(), request -> request.getQuestionGroupsList().stream()
+				.mapToInt(questionGroup -> shardMap.getShardOfEvent(questionGroup.getEventId())));
+
+		organization(OrganizerServiceGrpc.getAddQuestionGroupsMethod(), request -> request.getQuestionGroupsCount() == 0 ?
+				null : shardMap.getOrganizationOfEvent(request.getQuestionGroups(0).getEventId()));
+
+		routeBySingleShard(OrganizerServiceGrpc.getRemoveQuestionGroupsMethod(), request -> request.getQuestionGroupIdsList().stream()
+				.mapToInt(shardMap::getShardOfQuestionGroup));
+
+		organization(OrganizerServiceGrpc.getRemoveQuestionGroupsMethod(), request -> request.getQuestionGroupIdsCount() == 0 ?
+				null : shardMap.getOrganizationOfQuestionGroup(request.getQuestionGroupIds(0)));
+
+		routeBySingleShard(OrganizerServiceGrpc.getAddQuestionsMethod(), request -> request.getQuestionsList().stream()
+				.mapToInt(question -> shardMap.getShardOfQuestionGroup(question.getQuestionGroupId())));
+
+		organization(OrganizerServiceGrpc.getAddQuestionsMethod(), request -> request.getQuestionsCount() == 0 ?
+				null : shardMap.getOrganizationOfQuestionGroup(request.getQuestions(0).getQuestionGroupId()));
+
+		routeBySingleShard(OrganizerServiceGrpc.getRemoveQuestionsMethod(), request -> request.getQuestionIdsList().stream()
+				.mapToInt(shardMap::getShardOfQuestion));
+
+		organization(OrganizerServiceGrpc.getRemoveQuestionsMethod(), request -> request.getQuestionIdsCount() == 0 ?
+				null : shardMap.getOrganizationOfQuestion(request.getQuestionIds(0)));
+
+		route(OrganizerServiceGrpc.getGetAnswersByQuestionIdMethod(), request -> shardMap.getShardOfQuestion(request.getId()));
+
+		organization(OrganizerServiceGrpc.getGetAnswersByQuestionIdMethod(), request -> shardMap.getOrganizationOfQuestion(request.getId()));
+
+		route(OrganizerServiceGrpc.getGetAnswerAggregateByQuestionIdMethod(), request -> shardMap.getShardOfQuestion(request.getId()));
+
+		organization(OrganizerServiceGrpc.getGetAnswerAggregateByQuestionIdMethod(),
+				request -> shardMap.getOrganizationOfQuestion(request.getId()));
+	}
+
+	/**
+	 * Returns the shard the request belongs to, or null when the method is not scoped to an organization. Fails with
+	 * UNAVAILABLE while the organization is being moved between shards.
+	 */
+	public Integer route(String fullMethodName, Object request) {
+
+		Function<Object, Integer> route = routes.get(fullMethodName);
+
+		return route == null ? null : route.apply(request);
+	}
+
+	/**
+	 * Returns the organization the request belongs to, or null when the method is not scoped to an organization or
+	 * its event is not indexed yet. Events are resolved from memory without a lock; questions and question groups
+	 * go through the same cached lookup as routing.
+	 */
+	public Integer getOrganizationId(String fullMethodName, Object request) {
+
+		Function<Object, Integer> organization = organizations.get(fullMethodName);
+
+		return organization == null ? null : organization.apply(request);
+	}
+
+	/**
+	 * Runs an in-process call on the shard its request belongs to, the same way {@code ShardInterceptor} does for
+	 * calls that arrive over the network.
+	 */
+	public <ReqT> void run(MethodDescriptor<ReqT, ?> method, ReqT request, Runnable call) {
+
+		ShardContext.run(route(method.getFullMethodName(), request), call);
+	}
+
+	private <ReqT> void routeByOrganization(MethodDescriptor<ReqT, ?> method, ToIntFunction<ReqT> organizationId) {
+
+		route(method, request -> shardMap.getShardOfOrganization(organizationId.applyAsInt(request)));
+
+		organization(method, organizationId::applyAsInt);
+	}
+
+	private <ReqT> void routeByEvent(MethodDescriptor<ReqT, ?> method, ToIntFunction<ReqT> eventId) {
+
+		route(method, request -> shardMap.getShardOfEvent(eventId.applyAsInt(request)));
+
+		organization(method, request -> shardMap.getOrganizationOfEvent(eventId.applyAsInt(request)));
+	}
+
+	/**
+	 * Routes a request that lists several objects. A call runs on one shard, so a request that lists nothing, or
+	 * objects from more than one shard, fails with INVALID_ARGUMENT.
+	 */
+	private <ReqT> void routeBySingleShard(MethodDescriptor<ReqT, ?> method, Function<ReqT, IntStream> shards) {
+
+		route(method, request -> {
+
+			int[] distinctShards = shards.apply(request).distinct().limit(2).toArray();
+
+			if (distinctShards.length == 0) {
+
+				throw Status.INVALID_ARGUMENT.withDescription("The request does not list anything.").asRuntimeException();
+			}
+
+			if (distinctShards.length > 1) {
+
+				throw Status.INVALID_ARGUMENT
+						.withDescription("The request lists objects of organizations on different shards. Send one request per organization.")
+						.asRuntimeException();
+			}
+
+			return distinctShards[0];
+		});
+	}
+
+	@SuppressWarnings("unchecked")
+	private <ReqT> void route(MethodDescriptor<ReqT, ?> method, ToIntFunction<ReqT> shard) {
+
+		routes.put(method.getFullMethodName(), request -> shard.applyAsInt((ReqT) request));
+	}
+
+	@SuppressWarnings("unchecked")
+	private <ReqT> void organization(MethodDescriptor<ReqT, ?> method, Function<ReqT, Integer> organizationId) {
+
+		organizations.put(method.getFullMethodName(), request -> organizationId.apply((ReqT) request));
+	}
+}
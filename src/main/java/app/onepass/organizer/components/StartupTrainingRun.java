@@ -0,0 +1,30 @@
+package app.onepass.organizer.components;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.SpringApplication;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.ApplicationContext;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+/**
+ * Shuts the application down as soon as it is ready, so a JVM started with {@code -XX:ArchiveClassesAtExit}
+ * dumps the classes loaded during a complete startup, including the warm-up, into its class data sharing archive.
+ */
+@Component
+@ConditionalOnProperty("organizer.exit-after-startup")
+public class StartupTrainingRun {
+
+	@Autowired
+	private ApplicationContext applicationContext;
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(Ordered.LOWEST_PRECEDENCE)
+	public void exit() {
+
+		System.exit(SpringApplication.exit(applicationContext));
+	}
+}
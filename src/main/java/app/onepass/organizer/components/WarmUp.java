@@ -0,0 +1,328 @@
+package app.onepass.organizer.components;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.stereotype.Component;
+
+import com.google.protobuf.Empty;
+import com.google.protobuf.GeneratedMessageV3;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.Timestamp;
+import com.zaxxer.hikari.HikariDataSource;
+
+import app.onepass.apis.GetEventsInWindowRequest;
+import app.onepass.apis.GetFreeSlotsRequest;
+import app.onepass.apis.GetObjectByIdRequest;
+import app.onepass.apis.HasEventRequest;
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.organizer.configurations.ShardRoutingDataSource;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.entities.LocationEntity;
+import app.onepass.organizer.entities.OrganizationEntity;
+import app.onepass.organizer.entities.QuestionEntity;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.LocationRepository;
+import app.onepass.organizer.repositories.OrganizationRepository;
+import app.onepass.organizer.repositories.QuestionRepository;
+import app.onepass.organizer.services.AccountService;
+import app.onepass.organizer.services.BaseService;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Runs once the application has started and before ping reports it as ready. It fills the connection pools, opens
+ * the account service channel and sends a synthetic mix of read calls through {@link BaseService}. This loads the
+ * in-memory caches and gets the JIT, Hibernate's query plans and protobuf serialization past their cold start.
+ */
+@Component
+public class WarmUp {
+
+	private static final int SAMPLE_SIZE = 50;
+
+	@Autowired
+	@Lazy
+	private BaseService baseService;
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private DataSource dataSource;
+
+	@Autowired
+	private ShardRoutingDataSource shardRoutingDataSource;
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@Autowired
+	private ShardRouter shardRouter;
+
+	@Autowired
+	private EventRepository eventRepository;
+
+	@Autowired
+	private OrganizationRepository organizationRepository;
+
+	@Autowired
+	private LocationRepository locationRepository;
+
+	@Autowired
+	private QuestionRepository questionRepository;
+
+	@Value("${WARM_UP_ITERATIONS:2000}")
+	private int iterations;
+
+	@Value("${WARM_UP_MAX_SECONDS:30}")
+	private long maximumSeconds;
+
+	private volatile boolean isComplete;
+
+	public boolean isComplete() {
+
+		return isComplete;
+	}
+
+	@EventListener(ApplicationReadyEvent.class)
+	@Order(Ordered.HIGHEST_PRECEDENCE)
+	public void warmUp() {
+
+		try {
+
+			Set<DataSource> dataSources = Collections.newSetFromMap(new IdentityHashMap<>());
+
+			dataSources.add(dataSource);
+
+			dataSources.addAll(shardRoutingDataSource.getShardDataSources());
+
+			dataSources.forEach(WarmUp::fillConnectionPool);
+
+			pingAccountService();
+
+			runReadMix();
+
+		} finally {
+
+			isComplete = true;
+		}
+	}
+
+	private static void fillConnectionPool(DataSource dataSource) {
+
+		int connectionCount = dataSource instanceof HikariDataSource ? ((HikariDataSource) dataSource).getMinimumIdle() : 1;
+
+		List<Connection> connections = new ArrayList<>();
+
+		try {
+
+			for (int index = 0; index < connectionCount; index++) {
+
+				connections.add(dataSource.getConnection());
+			}
+
+		} catch (SQLException exception) {
+
+			// The pool keeps filling itself in the background, and readiness checks report a database that is down.
+
+		} finally {
+
+			for (Connection connection : connections) {
+
+				try {
+
+					connection.close();
+
+				} catch (SQLException exception) {
+
+					// Closing only returns the connection to the pool.
+				}
+			}
+		}
+	}
+
+	private void pingAccountService() {
+
+		try {
+
+			accountService.ping();
+
+		} catch (RuntimeException exception) {
+
+			// An unreachable account service is reported by the readiness checks, not by the warm-up.
+		}
+	}
+
+	private void runReadMix() {
+
+		PageRequest sample = PageRequest.of(0, SAMPLE_SIZE);
+
+		List<EventEntity> events = shardMap.fanOut(shard -> eventRepository.findAll(sample).getContent());
+
+		List<Integer> organizationIds = shardMap.fanOut(shard -> organizationRepository.findAll(sample).stream()
+				.map(OrganizationEntity::getId)
+				.collect(Collectors.toList()));
+
+		List<Integer> locationIds = locationRepository.findAll(sample).stream()
+				.map(LocationEntity::getId)
+				.collect(Collectors.toList());
+
+		List<Integer> questionIds = shardMap.fanOut(shard -> questionRepository.findAll(sample).stream()
+				.map(QuestionEntity::getId)
+				.collect(Collectors.toList()));
+
+		Random random = new Random(0);
+
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(maximumSeconds);
+
+		for (int iteration = 0; iteration < iterations && System.nanoTime() < deadline; iteration++) {
+
+			try {
+
+				runReadCall(iteration % 8, random, events, organizationIds, locationIds, questionIds);
+
+			} catch (RuntimeException exception) {
+
+				// Failed calls warm up the error paths just as well.
+			}
+		}
+	}
+
+	private void runReadCall(int call, Random random, List<EventEntity> events, List<Integer> organizationIds,
+			List<Integer> locationIds, List<Integer> questionIds) {
+
+		long now = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis());
+
+		Timestamp start = Timestamp.newBuilder().setSeconds(now).build();
+
+		Timestamp finish = Timestamp.newBuilder().setSeconds(now + TimeUnit.DAYS.toSeconds(7)).build();
+
+		switch (call) {
+
+			case 0:
+
+				baseService.getOrganizations(Empty.getDefaultInstance(), new DiscardingStreamObserver<>());
+
+				break;
+
+			case 1:
+
+				GetObjectByIdRequest organizationRequest = byId(pick(random, organizationIds));
+
+				shardRouter.run(OrganizerServiceGrpc.getGetOrganizationByIdMethod(), organizationRequest,
+						() -> baseService.getOrganizationById(organizationRequest, new DiscardingStreamObserver<>()));
+
+				break;
+
+			case 2:
+
+				GetObjectByIdRequest usersRequest = byId(pick(random, organizationIds));
+
+				shardRouter.run(OrganizerServiceGrpc.getGetUsersInOrganizationByIdMethod(), usersRequest,
+						() -> baseService.getUsersInOrganizationById(usersRequest, new DiscardingStreamObserver<>()));
+
+				break;
+
+			case 3:
+
+				EventEntity eventEntity = events.isEmpty() ? null : events.get(random.nextInt(events.size()));
+
+				HasEventRequest hasEventRequest = HasEventRequest.newBuilder()
+						.setEventId(eventEntity == null ? 0 : eventEntity.getId())
+						.setOrganizationId(eventEntity == null ? 0 : eventEntity.getOrganizationId())
+						.build();
+
+				shardRouter.run(OrganizerServiceGrpc.getHasEventMethod(), hasEventRequest,
+						() -> baseService.hasEvent(hasEventRequest, new DiscardingStreamObserver<>()));
+
+				break;
+
+			case 4:
+
+				GetEventsInWindowRequest getEventsInWindowRequest = GetEventsInWindowRequest.newBuilder()
+						.setStart(start)
+						.setFinish(finish)
+						.setOrganizationId(Int32Value.of(pick(random, organizationIds)))
+						.build();
+
+				baseService.getEventsInWindow(getEventsInWindowRequest, new DiscardingStreamObserver<>());
+
+				break;
+
+			case 5:
+
+				baseService.getLocationById(byId(pick(random, locationIds)), new DiscardingStreamObserver<>());
+
+				break;
+
+			case 6:
+
+				GetFreeSlotsRequest getFreeSlotsRequest = GetFreeSlotsRequest.newBuilder()
+						.setLocationId(pick(random, locationIds))
+						.setStart(start)
+						.setFinish(finish)
+						.build();
+
+				baseService.getFreeSlotsByLocationId(getFreeSlotsRequest, new DiscardingStreamObserver<>());
+
+				break;
+
+			default:
+
+				GetObjectByIdRequest questionRequest = byId(pick(random, questionIds));
+
+				shardRouter.run(OrganizerServiceGrpc.getGetAnswersByQuestionIdMethod(), questionRequest,
+						() -> baseService.getAnswersByQuestionId(questionRequest, new DiscardingStreamObserver<>()));
+
+				shardRouter.run(OrganizerServiceGrpc.getGetAnswerAggregateByQuestionIdMethod(), questionRequest,
+						() -> baseService.getAnswerAggregateByQuestionId(questionRequest, new DiscardingStreamObserver<>()));
+		}
+	}
+
+	private static int pick(Random random, List<Integer> ids) {
+
+		return ids.isEmpty() ? 0 : ids.get(random.nextInt(ids.size()));
+	}
+
+	private static GetObjectByIdRequest byId(int id) {
+
+		return GetObjectByIdRequest.newBuilder().setId(id).build();
+	}
+
+	private static class DiscardingStreamObserver<T extends GeneratedMessageV3> implements StreamObserver<T> {
+
+		@Override
+		public void onNext(T value) {
+
+			// Serializing the response warms up the same code the transport would run.
+			value.toByteArray();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+
+		}
+
+		@Override
+		public void onCompleted() {
+
+		}
+	}
+}
@@ -0,0 +1,149 @@
+package app.onepass.organizer.configurations;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.DelegatingDataSource;
+
+import app.onepass.organizer.components.Bulkheads;
+import io.grpc.Context;
+import io.grpc.Deadline;
+
+/**
+ * Caps the connections each traffic class holds at once. Connections are borrowed as before, but only after the
+ * call's traffic class has taken a permit, which is returned when the connection is closed. Work outside a call,
+ * such as scheduled jobs and the warm-up, is not capped. Behind a {@link ShardRoutingDataSource} every shard has
+ * its own permits, since every shard has its own pool.
+ */
+public class BulkheadDataSource extends DelegatingDataSource {
+
+	private final Bulkheads bulkheads;
+
+	private final Map<Integer, Map<Bulkheads.TrafficClass, Semaphore>> permitsByShard = new ConcurrentHashMap<>();
+
+	public BulkheadDataSource(DataSource dataSource, Bulkheads bulkheads) {
+
+		super(dataSource);
+
+		this.bulkheads = bulkheads;
+	}
+
+	@Override
+	public Connection getConnection() throws SQLException {
+
+		Bulkheads.TrafficClass trafficClass = Bulkheads.TRAFFIC_CLASS.get();
+
+		Semaphore permits = trafficClass == null ? null : getPermits(trafficClass);
+
+		if (permits == null) {
+
+			return super.getConnection();
+		}
+
+		acquire(permits, trafficClass);
+
+		try {
+
+			return releasingOnClose(super.getConnection(), permits);
+
+		} catch (SQLException | RuntimeException exception) {
+
+			permits.release();
+
+			throw exception;
+		}
+	}
+
+	private Semaphore getPermits(Bulkheads.TrafficClass trafficClass) {
+
+		Integer shard = getTargetDataSource() instanceof ShardRoutingDataSource ? ShardContext.current() : null;
+
+		return permitsByShard.computeIfAbsent(shard == null ? 0 : shard, key -> {
+
+			Map<Bulkheads.TrafficClass, Semaphore> permits = new EnumMap<>(Bulkheads.TrafficClass.class);
+
+			for (Bulkheads.TrafficClass candidate : Bulkheads.TrafficClass.values()) {
+
+				permits.put(candidate, bulkheads.createConnectionPermits(candidate));
+			}
+
+			return permits;
+		}).get(trafficClass);
+	}
+
+	/**
+	 * Waits for a permit until the connection timeout, or the call's deadline if that comes first.
+	 */
+	private void acquire(Semaphore permits, Bulkheads.TrafficClass trafficClass) throws SQLException {
+
+		if (permits.tryAcquire()) {
+
+			return;
+		}
+
+		long timeoutMillis = bulkheads.getConnectionTimeoutMillis();
+
+		Deadline deadline = Context.current().getDeadline();
+
+		if (deadline != null) {
+
+			timeoutMillis = Math.min(timeoutMillis, Math.max(deadline.timeRemaining(TimeUnit.MILLISECONDS), 0));
+		}
+
+		boolean isAcquired;
+
+		try {
+
+			isAcquired = permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS);
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+
+			throw new SQLTransientConnectionException("Interrupted while waiting for a connection.", exception);
+		}
+
+		bulkheads.recordConnectionWait(trafficClass, !isAcquired);
+
+		if (!isAcquired) {
+
+			throw new SQLTransientConnectionException("The " + trafficClass + " traffic class has no free connection.");
+		}
+	}
+
+	private static Connection releasingOnClose(Connection connection, Semaphore permits) {
+
+		AtomicBoolean isReleased = new AtomicBoolean();
+
+		return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[] { Connection.class },
+				(proxy, method, arguments) -> {
+
+					try {
+
+						return method.invoke(connection, arguments);
+
+					} catch (InvocationTargetException exception) {
+
+						throw exception.getCause();
+
+					} finally {
+
+						if ("close".equals(method.getName()) && isReleased.compareAndSet(false, true)) {
+
+							permits.release();
+						}
+					}
+				});
+	}
+}
@@ -0,0 +1,18 @@
+package app.onepass.organizer.configurations;
+
+import org.hibernate.resource.jdbc.spi.StatementInspector;
+
+/**
+ * Stops a transaction between statements once its gRPC call has been cancelled, rather than running the
+ * remaining queries of a handler whose response will be discarded.
+ */
+public class ContextStatementInspector implements StatementInspector {
+
+	@Override
+	public String inspect(String sql) {
+
+		DeadlineAwareTransactionManager.checkContext();
+
+		return sql;
+	}
+}
@@ -0,0 +1,79 @@
+package app.onepass.organizer.configurations;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.DefaultTransactionStatus;
+
+import io.grpc.Context;
+import io.grpc.Deadline;
+import io.grpc.Status;
+
+/**
+ * Bounds every transaction by the deadline of the gRPC call it runs in. Hibernate turns the transaction timeout
+ * into a JDBC query timeout on each statement, so an expired deadline stops the query on the server instead of
+ * finishing it for a client that has already gone.
+ */
+public class DeadlineAwareTransactionManager extends JpaTransactionManager {
+
+	public DeadlineAwareTransactionManager(EntityManagerFactory entityManagerFactory) {
+
+		super(entityManagerFactory);
+	}
+
+	public static void checkContext() {
+
+		Context context = Context.current();
+
+		if (context.isCancelled()) {
+
+			Deadline deadline = context.getDeadline();
+
+			if (deadline != null && deadline.isExpired()) {
+
+				throw Status.DEADLINE_EXCEEDED.withDescription("The call deadline has expired.").asRuntimeException();
+			}
+
+			throw Status.CANCELLED.withDescription("The call was cancelled by the client.").asRuntimeException();
+		}
+	}
+
+	@Override
+	protected void doBegin(Object transaction, TransactionDefinition definition) {
+
+		checkContext();
+
+		super.doBegin(transaction, definition);
+	}
+
+	@Override
+	protected int determineTimeout(TransactionDefinition definition) {
+
+		int timeout = super.determineTimeout(definition);
+
+		Deadline deadline = Context.current().getDeadline();
+
+		if (deadline == null) {
+
+			return timeout;
+		}
+
+		long remainingMillis = deadline.timeRemaining(TimeUnit.MILLISECONDS);
+
+		int remainingSeconds = (int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(remainingMillis + 999));
+
+		return timeout == TransactionDefinition.TIMEOUT_DEFAULT ? remainingSeconds : Math.min(timeout, remainingSeconds);
+	}
+
+	@Override
+	protected void doCommit(DefaultTransactionStatus status) {
+
+		// A call that was cancelled while the transaction ran is rolled back instead of committed.
+		checkContext();
+
+		super.doCommit(status);
+	}
+}
@@ -0,0 +1,54 @@
+package app.onepass.organizer.configurations;
+
+import java.util.function.Supplier;
+
+/**
+ * Holds the organization shard that the current thread reads and writes. The shard has to be selected before a
+ * transaction starts, because the transaction keeps the connection it opened first.
+ */
+public final class ShardContext {
+
+	private static final ThreadLocal<Integer> CURRENT_SHARD = new ThreadLocal<>();
+
+	private ShardContext() {
+
+	}
+
+	public static Integer current() {
+
+		return CURRENT_SHARD.get();
+	}
+
+	public static <T> T call(Integer shard, Supplier<T> supplier) {
+
+		Integer previousShard = CURRENT_SHARD.get();
+
+		CURRENT_SHARD.set(shard);
+
+		try {
+
+			return supplier.get();
+
+		} finally {
+
+			if (previousShard == null) {
+
+				CURRENT_SHARD.remove();
+
+			} else {
+
+				CURRENT_SHARD.set(previousShard);
+			}
+		}
+	}
+
+	public static void run(Integer shard, Runnable runnable) {
+
+		call(shard, () -> {
+
+			runnable.run();
+
+			return null;
+		});
+	}
+}
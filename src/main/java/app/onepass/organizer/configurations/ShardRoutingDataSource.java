@@ -0,0 +1,76 @@
+package app.onepass.organizer.configurations;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.datasource.lookup.AbstractRoutingDataSource;
+
+/**
+ * Routes each connection request to the organization shard selected in {@link ShardContext}. With a single shard
+ * there is nothing to choose, so code that runs outside a call, such as seeding and startup tasks, keeps working
+ * without selecting one.
+ */
+public class ShardRoutingDataSource extends AbstractRoutingDataSource {
+
+	private final List<DataSource> shardDataSources;
+
+	public ShardRoutingDataSource(List<DataSource> shardDataSources) {
+
+		this.shardDataSources = Collections.unmodifiableList(new ArrayList<>(shardDataSources));
+
+		Map<Object, Object> targetDataSources = new HashMap<>();
+
+		for (int shard = 0; shard < shardDataSources.size(); shard++) {
+
+			targetDataSources.put(shard, shardDataSources.get(shard));
+		}
+
+		setTargetDataSources(targetDataSources);
+
+		setDefaultTargetDataSource(shardDataSources.get(0));
+
+		setLenientFallback(false);
+	}
+
+	public int getShardCount() {
+
+		return shardDataSources.size();
+	}
+
+	public List<DataSource> getShardDataSources() {
+
+		return shardDataSources;
+	}
+
+	/**
+	 * Closes the shard connection pools on shutdown. The global pool may be among them, and closing it twice is harmless.
+	 */
+	public void close() throws Exception {
+
+		for (DataSource shardDataSource : shardDataSources) {
+
+			if (shardDataSource instanceof AutoCloseable) {
+
+				((AutoCloseable) shardDataSource).close();
+			}
+		}
+	}
+
+	@Override
+	protected Object determineCurrentLookupKey() {
+
+		Integer shard = ShardContext.current();
+
+		if (shard == null && shardDataSources.size() > 1) {
+
+			throw new IllegalStateException("No organization shard was selected for this connection.");
+		}
+
+		return shard;
+	}
+}
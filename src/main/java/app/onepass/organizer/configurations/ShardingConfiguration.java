@@ -0,0 +1,191 @@
+package app.onepass.organizer.configurations;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.jdbc.DataSourceProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateProperties;
+import org.springframework.boot.autoconfigure.orm.jpa.HibernateSettings;
+import org.springframework.boot.autoconfigure.orm.jpa.JpaProperties;
+import org.springframework.boot.context.properties.ConfigurationProperties;
+import org.springframework.boot.orm.jpa.EntityManagerFactoryBuilder;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.context.annotation.Primary;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+
+import com.zaxxer.hikari.HikariDataSource;
+
+import app.onepass.organizer.components.Bulkheads;
+import app.onepass.organizer.entities.BaseEntity;
+import app.onepass.organizer.entities.ChangeFeedPositionEntity;
+import app.onepass.organizer.entities.IdempotencyRecordEntity;
+import app.onepass.organizer.entities.LocationEntity;
+import app.onepass.organizer.entities.OrganizationShardEntity;
+import app.onepass.organizer.entities.TagEntity;
+import app.onepass.organizer.entities.UserEntity;
+import app.onepass.organizer.repositories.IdempotencyRecordRepository;
+import app.onepass.organizer.repositories.LocationRepository;
+import app.onepass.organizer.repositories.OrganizationRepository;
+import app.onepass.organizer.repositories.OrganizationShardRepository;
+import app.onepass.organizer.repositories.TagRepository;
+import app.onepass.organizer.repositories.UserRepository;
+
+/**
+ * Splits persistence into two units. Users, locations, tags, idempotency records, the shard directory and the
+ * change feed position live in the global database configured by {@code spring.datasource}. Everything that
+ * belongs to an organization lives on one of the organization shards listed in {@code ORGANIZATION_SHARD_URLS}, or
+ * in the global database when no shards are listed.
+ */
+@Configuration
+public class ShardingConfiguration {
+
+	public static final String GLOBAL_ENTITY_MANAGER_FACTORY = "globalEntityManagerFactory";
+
+	public static final String GLOBAL_TRANSACTION_MANAGER = "globalTransactionManager";
+
+	public static final String ORGANIZATION_DATA_SOURCE = "organizationDataSource";
+
+	public static final String GLOBAL_DATA_SOURCE = "globalDataSource";
+
+	private static final Set<String> GLOBAL_ENTITIES = Arrays.asList(ChangeFeedPositionEntity.class, IdempotencyRecordEntity.class,
+			LocationEntity.class, OrganizationShardEntity.class, TagEntity.class, UserEntity.class)
+			.stream()
+			.map(Class::getName)
+			.collect(Collectors.toSet());
+
+	@Autowired
+	private JpaProperties jpaProperties;
+
+	@Autowired
+	private HibernateProperties hibernateProperties;
+
+	@Autowired
+	private Bulkheads bulkheads;
+
+	@Bean
+	@Primary
+	@ConfigurationProperties("spring.datasource.hikari")
+	public HikariDataSource dataSource(DataSourceProperties dataSourceProperties) {
+
+		return dataSourceProperties.initializeDataSourceBuilder().type(HikariDataSource.class).build();
+	}
+
+	@Bean
+	public ShardRoutingDataSource shardRoutingDataSource(HikariDataSource dataSource, DataSourceProperties dataSourceProperties,
+			@Value("${ORGANIZATION_SHARD_URLS:}") String shardUrls) {
+
+		List<DataSource> shardDataSources = new ArrayList<>();
+
+		if (shardUrls.trim().isEmpty()) {
+
+			shardDataSources.add(dataSource);
+
+			return new ShardRoutingDataSource(shardDataSources);
+		}
+
+		for (String shardUrl : shardUrls.split(",")) {
+
+			if (shardUrl.trim().equals(dataSourceProperties.determineUrl())) {
+
+				shardDataSources.add(dataSource);
+
+				continue;
+			}
+
+			HikariDataSource shardDataSource = dataSourceProperties.initializeDataSourceBuilder()
+					.type(HikariDataSource.class)
+					.url(shardUrl.trim())
+					.build();
+
+			shardDataSource.setPoolName("shard-" + shardDataSources.size());
+
+			shardDataSource.setMaximumPoolSize(dataSource.getMaximumPoolSize());
+
+			shardDataSource.setMinimumIdle(dataSource.getMinimumIdle());
+
+			shardDataSources.add(shardDataSource);
+		}
+
+		return new ShardRoutingDataSource(shardDataSources);
+	}
+
+	/**
+	 * The data source the organization unit is built on. JDBC code that uses it takes part in the unit's
+	 * transactions and in the bulkhead connection limits.
+	 */
+	@Bean(ORGANIZATION_DATA_SOURCE)
+	public BulkheadDataSource organizationDataSource(ShardRoutingDataSource shardRoutingDataSource) {
+
+		return new BulkheadDataSource(shardRoutingDataSource, bulkheads);
+	}
+
+	@Bean(GLOBAL_DATA_SOURCE)
+	public BulkheadDataSource globalDataSource(HikariDataSource dataSource) {
+
+		return new BulkheadDataSource(dataSource, bulkheads);
+	}
+
+	@Bean
+	@Primary
+	public LocalContainerEntityManagerFactoryBean entityManagerFactory(EntityManagerFactoryBuilder entityManagerFactoryBuilder,
+			@Qualifier(ORGANIZATION_DATA_SOURCE) DataSource organizationDataSource) {
+
+		return createEntityManagerFactory(entityManagerFactoryBuilder, organizationDataSource, "organizations", false);
+	}
+
+	@Bean(GLOBAL_ENTITY_MANAGER_FACTORY)
+	public LocalContainerEntityManagerFactoryBean globalEntityManagerFactory(EntityManagerFactoryBuilder entityManagerFactoryBuilder,
+			@Qualifier(GLOBAL_DATA_SOURCE) DataSource globalDataSource) {
+
+		return createEntityManagerFactory(entityManagerFactoryBuilder, globalDataSource, "global", true);
+	}
+
+	private LocalContainerEntityManagerFactoryBean createEntityManagerFactory(EntityManagerFactoryBuilder entityManagerFactoryBuilder,
+			DataSource dataSource, String persistenceUnit, boolean isGlobal) {
+
+		Map<String, Object> properties = hibernateProperties.determineHibernateProperties(jpaProperties.getProperties(),
+				new HibernateSettings());
+
+		LocalContainerEntityManagerFactoryBean entityManagerFactory = entityManagerFactoryBuilder
+				.dataSource(dataSource)
+				.packages(BaseEntity.class)
+				.persistenceUnit(persistenceUnit)
+				.properties(properties)
+				.build();
+
+		entityManagerFactory.setPersistenceUnitPostProcessors(persistenceUnitInfo -> persistenceUnitInfo.getManagedClassNames()
+				.removeIf(className -> GLOBAL_ENTITIES.contains(className) != isGlobal));
+
+		return entityManagerFactory;
+	}
+
+	@Configuration
+	@EnableJpaRepositories(basePackageClasses = OrganizationRepository.class, excludeFilters = @ComponentScan.Filter(
+			type = FilterType.ASSIGNABLE_TYPE, classes = { IdempotencyRecordRepository.class, LocationRepository.class,
+					OrganizationShardRepository.class, TagRepository.class, UserRepository.class }))
+	static class OrganizationRepositories {
+
+	}
+
+	@Configuration
+	@EnableJpaRepositories(basePackageClasses = OrganizationRepository.class, includeFilters = @ComponentScan.Filter(
+			type = FilterType.ASSIGNABLE_TYPE, classes = { IdempotencyRecordRepository.class, LocationRepository.class,
+					OrganizationShardRepository.class, TagRepository.class, UserRepository.class }),
+			entityManagerFactoryRef = GLOBAL_ENTITY_MANAGER_FACTORY, transactionManagerRef = GLOBAL_TRANSACTION_MANAGER)
+	static class GlobalRepositories {
+
+	}
+}
@@ -0,0 +1,27 @@
+package app.onepass.organizer.configurations;
+
+import javax.persistence.EntityManagerFactory;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.Primary;
+import org.springframework.transaction.PlatformTransactionManager;
+
+@Configuration
+public class TransactionConfiguration {
+
+	@Bean
+	@Primary
+	public PlatformTransactionManager transactionManager(@Qualifier("entityManagerFactory") EntityManagerFactory entityManagerFactory) {
+
+		return new DeadlineAwareTransactionManager(entityManagerFactory);
+	}
+
+	@Bean(ShardingConfiguration.GLOBAL_TRANSACTION_MANAGER)
+	public PlatformTransactionManager globalTransactionManager(
+			@Qualifier(ShardingConfiguration.GLOBAL_ENTITY_MANAGER_FACTORY) EntityManagerFactory entityManagerFactory) {
+
+		return new DeadlineAwareTransactionManager(entityManagerFactory);
+	}
+}
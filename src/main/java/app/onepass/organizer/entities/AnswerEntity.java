@@ -1,6 +1,7 @@
 package app.onepass.organizer.entities;
 
 import javax.persistence.Entity;
+import javax.persistence.EntityListeners;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
@@ -8,6 +9,7 @@ import javax.persistence.Table;
 import javax.validation.constraints.NotNull;
 
 import app.onepass.apis.Answer;
+import app.onepass.organizer.components.AnswerAggregateListener;
 import app.onepass.organizer.messages.AnswerMessage;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
@@ -17,6 +19,7 @@ import lombok.Setter;
 
 @Entity
 @Table(name = "answer")
+@EntityListeners(AnswerAggregateListener.class)
 @Getter
 @Setter
 @Builder
@@ -0,0 +1,29 @@
+package app.onepass.organizer.entities;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * The single row that numbers change feed entries across instances. {@code ChangeFeed} reads and advances it with
+ * plain SQL; the entity only declares the table.
+ */
+@Entity
+@Table(name = "change_feed_position")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class ChangeFeedPositionEntity {
+
+	@Id
+	private int id;
+	private long position;
+}
@@ -1,13 +1,19 @@
 package app.onepass.organizer.entities;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Where;
+
 import com.google.protobuf.Int32Value;
+import com.google.protobuf.Int64Value;
 import com.google.protobuf.StringValue;
 
 import app.onepass.apis.Event;
@@ -21,6 +27,8 @@ import lombok.Setter;
 
 @Entity
 @Table(name = "event")
+@DynamicUpdate
+@Where(clause = "deleted_at IS NULL")
 @Getter
 @Setter
 @Builder
@@ -46,6 +54,16 @@ public class EventEntity implements BaseEntity<EventMessage, EventEntity> {
 	private String profileImageHash;
 	private int attendeeLimit;
 	private java.sql.Timestamp registrationDueDate;
+	private java.sql.Timestamp deletedAt;
+	/**
+	 * Approved and attended registrations. Only the statements in {@code EventRepository} write it, so saving an
+	 * event never overwrites it.
+	 */
+	@Column(nullable = false, insertable = false, updatable = false, columnDefinition = "integer default 0")
+	private int approvedCount;
+	@Version
+	@Column(nullable = false, columnDefinition = "bigint default 0")
+	private long version;
 
 	@Override
 	public EventMessage parseEntity() {
@@ -56,6 +74,7 @@ public class EventEntity implements BaseEntity<EventMessage, EventEntity> {
 				.setDescription(description)
 				.setName(name)
 				.setAttendeeLimit(attendeeLimit)
+				.setVersion(Int64Value.of(version))
 				.build();
 
 		if (locationId != null) {
@@ -0,0 +1,28 @@
+package app.onepass.organizer.entities;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Index;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "idempotency_record", indexes = @Index(columnList = "createdAt"))
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class IdempotencyRecordEntity {
+
+	@Id
+	private String idempotencyKey;
+	private byte[] requestDigest;
+	private byte[] response;
+	private java.sql.Timestamp createdAt;
+}
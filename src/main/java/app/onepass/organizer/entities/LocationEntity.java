@@ -1,12 +1,17 @@
 package app.onepass.organizer.entities;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.DynamicUpdate;
+
+import com.google.protobuf.Int64Value;
 import com.google.protobuf.StringValue;
 
 import app.onepass.apis.Location;
@@ -19,6 +24,7 @@ import lombok.Setter;
 
 @Entity
 @Table(name = "location")
+@DynamicUpdate
 @Getter
 @Setter
 @Builder
@@ -37,6 +43,9 @@ public class LocationEntity implements BaseEntity<LocationMessage, LocationEntit
 	private String travelInformationImageUrl;
 	private String travelInformationImageHash;
 	private boolean isOnline;
+	@Version
+	@Column(nullable = false, columnDefinition = "bigint default 0")
+	private long version;
 
 	@Override
 	public LocationMessage parseEntity() {
@@ -46,6 +55,7 @@ public class LocationEntity implements BaseEntity<LocationMessage, LocationEntit
 				.setName(name)
 				.setGoogleMapUrl(googleMapUrl)
 				.setIsOnline(isOnline)
+				.setVersion(Int64Value.of(version))
 				.build();
 
 		if (description != null) {
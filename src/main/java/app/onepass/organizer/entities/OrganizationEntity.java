@@ -1,12 +1,18 @@
 package app.onepass.organizer.entities;
 
+import javax.persistence.Column;
 import javax.persistence.Entity;
 import javax.persistence.GeneratedValue;
 import javax.persistence.GenerationType;
 import javax.persistence.Id;
 import javax.persistence.Table;
+import javax.persistence.Version;
 import javax.validation.constraints.NotNull;
 
+import org.hibernate.annotations.DynamicUpdate;
+import org.hibernate.annotations.Where;
+
+import com.google.protobuf.Int64Value;
 import com.google.protobuf.StringValue;
 
 import app.onepass.apis.Organization;
@@ -19,6 +25,8 @@ import lombok.Setter;
 
 @Entity
 @Table(name = "organization")
+@DynamicUpdate
+@Where(clause = "deleted_at IS NULL")
 @Getter
 @Setter
 @Builder
@@ -46,11 +54,20 @@ public class OrganizationEntity implements BaseEntity<OrganizationMessage, Organ
 	private String contactLineId;
 	private String profilePictureUrl;
 	private String profilePictureHash;
+	private java.sql.Timestamp deletedAt;
+	@Version
+	@Column(nullable = false, columnDefinition = "bigint default 0")
+	private long version;
 
 	@Override
 	public OrganizationMessage parseEntity() {
 
-		Organization organization = Organization.newBuilder().setId(id).setName(name).setIsVerified(isVerified).build();
+		Organization organization = Organization.newBuilder()
+				.setId(id)
+				.setName(name)
+				.setIsVerified(isVerified)
+				.setVersion(Int64Value.of(version))
+				.build();
 
 		if (abbreviation != null) {
 			organization = organization.toBuilder().setAbbreviation(StringValue.of(abbreviation)).build();
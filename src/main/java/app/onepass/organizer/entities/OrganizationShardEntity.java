@@ -0,0 +1,26 @@
+package app.onepass.organizer.entities;
+
+import javax.persistence.Entity;
+import javax.persistence.Id;
+import javax.persistence.Table;
+
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+@Entity
+@Table(name = "organization_shard")
+@Getter
+@Setter
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+public class OrganizationShardEntity {
+
+	@Id
+	private int organizationId;
+	private int shard;
+	private boolean moving;
+}
@@ -0,0 +1,139 @@
+package app.onepass.organizer.interceptors;
+
+import java.util.concurrent.RejectedExecutionException;
+
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+
+import app.onepass.organizer.components.Bulkheads;
+import app.onepass.organizer.utilities.SerialExecutor;
+import io.grpc.Context;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Moves every callback of a call onto the executor of its traffic class, in order and one at a time. It runs
+ * first, so the other interceptors and the handler all run on that executor and see the traffic class in the
+ * context. A call whose class has a full queue is closed with RESOURCE_EXHAUSTED once its earlier callbacks are done.
+ */
+@GRpcGlobalInterceptor
+@Order(Ordered.HIGHEST_PRECEDENCE)
+public class BulkheadInterceptor implements ServerInterceptor {
+
+	@Autowired
+	private Bulkheads bulkheads;
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+			ServerCallHandler<ReqT, RespT> next) {
+
+		Bulkheads.TrafficClass trafficClass = bulkheads.classify(call.getMethodDescriptor().getFullMethodName());
+
+		if (trafficClass == null) {
+
+			return next.startCall(call, headers);
+		}
+
+		Context context = Context.current().withValue(Bulkheads.TRAFFIC_CLASS, trafficClass);
+
+		ServerCall.Listener<ReqT> listener;
+
+		Context previous = context.attach();
+
+		try {
+
+			listener = next.startCall(call, headers);
+
+		} finally {
+
+			context.detach(previous);
+		}
+
+		SerialExecutor serialExecutor = new SerialExecutor(bulkheads.getExecutor(trafficClass));
+
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+
+			private boolean isRejected;
+
+			@Override
+			public void onMessage(ReqT message) {
+
+				dispatch(() -> super.onMessage(message));
+			}
+
+			@Override
+			public void onHalfClose() {
+
+				dispatch(super::onHalfClose);
+			}
+
+			@Override
+			public void onReady() {
+
+				dispatch(super::onReady);
+			}
+
+			@Override
+			public void onCancel() {
+
+				complete(super::onCancel);
+			}
+
+			@Override
+			public void onComplete() {
+
+				complete(super::onComplete);
+			}
+
+			private void dispatch(Runnable callback) {
+
+				if (isRejected) {
+
+					return;
+				}
+
+				try {
+
+					serialExecutor.execute(context.wrap(callback));
+
+				} catch (RejectedExecutionException exception) {
+
+					isRejected = true;
+
+					bulkheads.recordRejectedCall(trafficClass);
+
+					// ServerCall is not thread-safe, so the close waits behind the callbacks already running the handler.
+					serialExecutor.executeOrOverflow(this::closeExhausted, bulkheads.getOverflowExecutor());
+				}
+			}
+
+			private void closeExhausted() {
+
+				try {
+
+					call.close(Status.RESOURCE_EXHAUSTED.withDescription("The server has too many " + trafficClass
+							+ " calls in progress."), new Metadata());
+
+				} catch (IllegalStateException exception) {
+
+					// The handler finished the call in one of the callbacks before the rejected one.
+				}
+			}
+
+			/**
+			 * Delivers the end of the call even when the class is saturated, so the interceptors that count calls
+			 * always see it. It still waits behind the call's earlier callbacks and never runs alongside them.
+			 */
+			private void complete(Runnable callback) {
+
+				serialExecutor.executeOrOverflow(context.wrap(callback), bulkheads.getOverflowExecutor());
+			}
+		};
+	}
+}
@@ -0,0 +1,86 @@
+package app.onepass.organizer.interceptors;
+
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.organizer.components.ReadinessState;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Counts in-flight calls for the graceful drain and rejects new ones once the instance is shutting down. Pings
+ * are always let through so health checks see the instance report itself as not ready.
+ */
+@GRpcGlobalInterceptor
+public class DrainInterceptor implements ServerInterceptor {
+
+	private static final String PING_METHOD_NAME = OrganizerServiceGrpc.getPingMethod().getFullMethodName();
+
+	@Autowired
+	private ReadinessState readinessState;
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+			ServerCallHandler<ReqT, RespT> next) {
+
+		if (PING_METHOD_NAME.equals(call.getMethodDescriptor().getFullMethodName())) {
+
+			return next.startCall(call, headers);
+		}
+
+		if (!readinessState.tryEnter()) {
+
+			call.close(Status.UNAVAILABLE.withDescription("The server is shutting down."), new Metadata());
+
+			return new ServerCall.Listener<ReqT>() {
+			};
+		}
+
+		ServerCall.Listener<ReqT> listener;
+
+		try {
+
+			listener = next.startCall(call, headers);
+
+		} catch (RuntimeException exception) {
+
+			readinessState.exit();
+
+			throw exception;
+		}
+
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+
+			@Override
+			public void onComplete() {
+
+				try {
+
+					super.onComplete();
+
+				} finally {
+
+					readinessState.exit();
+				}
+			}
+
+			@Override
+			public void onCancel() {
+
+				try {
+
+					super.onCancel();
+
+				} finally {
+
+					readinessState.exit();
+				}
+			}
+		};
+	}
+}
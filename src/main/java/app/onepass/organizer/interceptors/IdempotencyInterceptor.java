@@ -0,0 +1,54 @@
+package app.onepass.organizer.interceptors;
+
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+
+import io.grpc.Context;
+import io.grpc.Contexts;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+@GRpcGlobalInterceptor
+public class IdempotencyInterceptor implements ServerInterceptor {
+
+	public static final Metadata.Key<String> IDEMPOTENCY_KEY_HEADER = Metadata.Key.of("idempotency-key",
+			Metadata.ASCII_STRING_MARSHALLER);
+
+	/**
+	 * Holds the client supplied key prefixed with the full method name, so the same key sent to two
+	 * different RPCs never shares a stored response.
+	 */
+	public static final Context.Key<String> IDEMPOTENCY_KEY = Context.key("idempotency-key");
+
+	private static final int MAXIMUM_KEY_LENGTH = 128;
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+			ServerCallHandler<ReqT, RespT> next) {
+
+		String idempotencyKey = headers.get(IDEMPOTENCY_KEY_HEADER);
+
+		if (idempotencyKey == null) {
+
+			return next.startCall(call, headers);
+		}
+
+		// Running the call without the key would let a retry apply it twice, so a malformed key fails the call.
+		if (idempotencyKey.isEmpty() || idempotencyKey.length() > MAXIMUM_KEY_LENGTH) {
+
+			call.close(Status.INVALID_ARGUMENT.withDescription("The idempotency key must have between 1 and "
+					+ MAXIMUM_KEY_LENGTH + " characters."), new Metadata());
+
+			return new ServerCall.Listener<ReqT>() {
+			};
+		}
+
+		String scopedKey = call.getMethodDescriptor().getFullMethodName() + "/" + idempotencyKey;
+
+		Context context = Context.current().withValue(IDEMPOTENCY_KEY, scopedKey);
+
+		return Contexts.interceptCall(context, call, headers, next);
+	}
+}
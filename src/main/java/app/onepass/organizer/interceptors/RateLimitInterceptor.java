@@ -0,0 +1,365 @@
+package app.onepass.organizer.interceptors;
+
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import javax.annotation.PostConstruct;
+
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Scheduled;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.Message;
+
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.organizer.components.ShardMap;
+import app.onepass.organizer.components.ShardRouter;
+import app.onepass.organizer.utilities.RateLimiter;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Grpc;
+import io.grpc.Metadata;
+import io.grpc.MethodDescriptor;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.Status;
+
+/**
+ * Limits the rate of calls per method for each caller and for each organization. The caller is the request's user
+ * ID, or the peer address for requests that name no user, such as {@code getOrganizations}. The organization comes
+ * from the same per-method extractors as the shard route, including nested IDs such as {@code event.organization_id},
+ * and otherwise from a top-level organization or event ID. Events are resolved from memory without a lock. Every
+ * message of a call takes a token, and a call without tokens is closed with RESOURCE_EXHAUSTED and a
+ * {@code retry-after-ms} trailer.
+ *
+ * <p>Limits default to {@code RATE_LIMIT_USER_*} and {@code RATE_LIMIT_ORGANIZATION_*} and are overridden per
+ * method with {@code RATE_LIMITS}, for example {@code getOrganizations.user=2/10,addTags.organization=20/40}, where
+ * each value is calls per second and burst size. A rate of 0 turns the limit off.
+ */
+@GRpcGlobalInterceptor
+public class RateLimitInterceptor implements ServerInterceptor {
+
+	public static final Metadata.Key<String> RETRY_AFTER_HEADER = Metadata.Key.of("retry-after-ms",
+			Metadata.ASCII_STRING_MARSHALLER);
+
+	private static final String PING_METHOD_NAME = OrganizerServiceGrpc.getPingMethod().getFullMethodName();
+
+	private static final int USER = 0;
+
+	private static final int PEER = 1;
+
+	private static final int ORGANIZATION = 2;
+
+	private final RateLimiter rateLimiter = new RateLimiter();
+
+	private final Map<String, MethodLimits> limitsByMethod = new HashMap<>();
+
+	private final Map<Descriptors.Descriptor, RequestFields> requestFieldsByType = new ConcurrentHashMap<>();
+
+	@Autowired
+	@Lazy
+	private ShardRouter shardRouter;
+
+	@Autowired
+	@Lazy
+	private ShardMap shardMap;
+
+	@Value("${RATE_LIMITING_ENABLED:true}")
+	private boolean isEnabled;
+
+	@Value("${RATE_LIMIT_USER_PER_SECOND:50}")
+	private double userRate;
+
+	@Value("${RATE_LIMIT_USER_BURST:100}")
+	private int userBurst;
+
+	@Value("${RATE_LIMIT_ORGANIZATION_PER_SECOND:500}")
+	private double organizationRate;
+
+	@Value("${RATE_LIMIT_ORGANIZATION_BURST:1000}")
+	private int organizationBurst;
+
+	@Value("${RATE_LIMITS:}")
+	private String methodLimits;
+
+	@PostConstruct
+	public void initialize() {
+
+		Map<String, MethodLimits> limitsByBareName = new HashMap<>();
+
+		for (MethodDescriptor<?, ?> method : OrganizerServiceGrpc.getServiceDescriptor().getMethods()) {
+
+			MethodLimits limits = new MethodLimits(limitsByMethod.size(), new Limit(userRate, userBurst),
+					new Limit(organizationRate, organizationBurst));
+
+			limitsByMethod.put(method.getFullMethodName(), limits);
+
+			limitsByBareName.put(toBareName(method.getFullMethodName()), limits);
+		}
+
+		for (String entry : methodLimits.split(",")) {
+
+			if (entry.trim().isEmpty()) {
+
+				continue;
+			}
+
+			String[] keyAndValue = entry.trim().split("=");
+
+			String[] methodAndScope = keyAndValue[0].split("\\.");
+
+			String[] rateAndBurst = keyAndValue.length == 2 ? keyAndValue[1].split("/") : new String[0];
+
+			MethodLimits limits = limitsByBareName.get(methodAndScope[0].toLowerCase(Locale.ROOT));
+
+			if (limits == null || methodAndScope.length != 2 || rateAndBurst.length != 2) {
+
+				throw new IllegalArgumentException("Malformed rate limit: " + entry);
+			}
+
+			Limit limit = new Limit(Double.parseDouble(rateAndBurst[0]), Integer.parseInt(rateAndBurst[1]));
+
+			if ("user".equals(methodAndScope[1])) {
+
+				limits.user = limit;
+
+			} else if ("organization".equals(methodAndScope[1])) {
+
+				limits.organization = limit;
+
+			} else {
+
+				throw new IllegalArgumentException("Malformed rate limit: " + entry);
+			}
+		}
+	}
+
+	@Scheduled(fixedDelayString = "${RATE_LIMIT_EVICTION_MS:60000}")
+	public void evictIdleBuckets() {
+
+		rateLimiter.evictIdle(System.nanoTime());
+	}
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+			ServerCallHandler<ReqT, RespT> next) {
+
+		String fullMethodName = call.getMethodDescriptor().getFullMethodName();
+
+		MethodLimits limits = limitsByMethod.get(fullMethodName);
+
+		if (!isEnabled || limits == null || PING_METHOD_NAME.equals(fullMethodName)) {
+
+			return next.startCall(call, headers);
+		}
+
+		int peerId = toPeerId(call.getAttributes().get(Grpc.TRANSPORT_ATTR_REMOTE_ADDR));
+
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+
+			private boolean isRejected;
+
+			@Override
+			public void onMessage(ReqT message) {
+
+				if (isRejected) {
+
+					return;
+				}
+
+				long waitNanos = acquire(fullMethodName, limits, message, peerId);
+
+				if (waitNanos > 0) {
+
+					isRejected = true;
+
+					long waitMillis = TimeUnit.NANOSECONDS.toMillis(waitNanos) + 1;
+
+					Metadata trailers = new Metadata();
+
+					trailers.put(RETRY_AFTER_HEADER, Long.toString(waitMillis));
+
+					call.close(Status.RESOURCE_EXHAUSTED.withDescription("The rate limit of " + toBareName(fullMethodName)
+							+ " was exceeded. Retry in " + waitMillis + " ms."), trailers);
+
+					return;
+				}
+
+				super.onMessage(message);
+			}
+
+			@Override
+			public void onHalfClose() {
+
+				if (!isRejected) {
+
+					super.onHalfClose();
+				}
+			}
+		};
+	}
+
+	/**
+	 * Takes a token from the caller's bucket and then from the organization's. Returns 0 when both had one, or else
+	 * the nanoseconds until the exhausted one refills. A token taken from the caller is not returned when the
+	 * organization turns the call down.
+	 */
+	private long acquire(String fullMethodName, MethodLimits limits, Object message, int peerId) {
+
+		RequestFields requestFields = message instanceof Message ?
+				requestFieldsByType.computeIfAbsent(((Message) message).getDescriptorForType(), RequestFields::new) : null;
+
+		long now = System.nanoTime();
+
+		int userId = requestFields == null ? 0 : requestFields.getUserId((Message) message);
+
+		long waitNanos = userId != 0 ?
+				tryAcquire(limits, USER, userId, limits.user, now) : tryAcquire(limits, PEER, peerId, limits.user, now);
+
+		if (waitNanos > 0 || requestFields == null) {
+
+			return waitNanos;
+		}
+
+		Integer organizationId = shardRouter.getOrganizationId(fullMethodName, message);
+
+		if (organizationId == null) {
+
+			organizationId = requestFields.getOrganizationId((Message) message, shardMap);
+		}
+
+		return organizationId == null ? 0 : tryAcquire(limits, ORGANIZATION, organizationId, limits.organization, now);
+	}
+
+	private long tryAcquire(MethodLimits limits, int scope, int id, Limit limit, long now) {
+
+		if (limit.emissionIntervalNanos == 0) {
+
+			return 0;
+		}
+
+		long key = (long) limits.index << 34 | (long) scope << 32 | id & 0xFFFFFFFFL;
+
+		return rateLimiter.tryAcquire(key, now, limit.emissionIntervalNanos, limit.burst);
+	}
+
+	private static int toPeerId(SocketAddress remoteAddress) {
+
+		if (remoteAddress instanceof InetSocketAddress && ((InetSocketAddress) remoteAddress).getAddress() != null) {
+
+			return ((InetSocketAddress) remoteAddress).getAddress().hashCode();
+		}
+
+		return remoteAddress == null ? 0 : remoteAddress.hashCode();
+	}
+
+	private static String toBareName(String fullMethodName) {
+
+		return fullMethodName.substring(fullMethodName.lastIndexOf('/') + 1).toLowerCase(Locale.ROOT);
+	}
+
+	private static final class Limit {
+
+		private final long emissionIntervalNanos;
+
+		private final int burst;
+
+		private Limit(double callsPerSecond, int burst) {
+
+			this.emissionIntervalNanos = callsPerSecond > 0 ? (long) (TimeUnit.SECONDS.toNanos(1) / callsPerSecond) : 0;
+
+			this.burst = Math.max(burst, 1);
+		}
+	}
+
+	private static final class MethodLimits {
+
+		private final int index;
+
+		private Limit user;
+
+		private Limit organization;
+
+		private MethodLimits(int index, Limit user, Limit organization) {
+
+			this.index = index;
+
+			this.user = user;
+
+			this.organization = organization;
+		}
+	}
+
+	/**
+	 * The top-level fields of one request type that identify its user and organization, looked up once per type.
+	 * Methods whose organization is nested or listed are resolved by {@link ShardRouter} first.
+	 */
+	private static final class RequestFields {
+
+		private final Descriptors.FieldDescriptor userId;
+
+		private final Descriptors.FieldDescriptor organizationId;
+
+		private final Descriptors.FieldDescriptor eventId;
+
+		private RequestFields(Descriptors.Descriptor descriptor) {
+
+			this.userId = descriptor.findFieldByName("user_id");
+
+			this.organizationId = descriptor.findFieldByName("organization_id");
+
+			this.eventId = descriptor.findFieldByName("event_id");
+		}
+
+		private int getUserId(Message message) {
+
+			Integer value = getInt(message, userId);
+
+			return value == null ? 0 : value;
+		}
+
+		private Integer getOrganizationId(Message message, ShardMap shardMap) {
+
+			Integer value = getInt(message, organizationId);
+
+			if (value != null && value != 0) {
+
+				return value;
+			}
+
+			Integer eventIdValue = getInt(message, eventId);
+
+			return eventIdValue == null || eventIdValue == 0 ? null : shardMap.getOrganizationOfEvent(eventIdValue);
+		}
+
+		private static Integer getInt(Message message, Descriptors.FieldDescriptor field) {
+
+			if (field == null || field.isRepeated()) {
+
+				return null;
+			}
+
+			if (field.getJavaType() == Descriptors.FieldDescriptor.JavaType.INT) {
+
+				return (Integer) message.getField(field);
+			}
+
+			if (field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE && message.hasField(field)
+					&& message.getField(field) instanceof Int32Value) {
+
+				return ((Int32Value) message.getField(field)).getValue();
+			}
+
+			return null;
+		}
+	}
+}
@@ -0,0 +1,90 @@
+package app.onepass.organizer.interceptors;
+
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+import org.springframework.beans.factory.annotation.Autowired;
+
+import app.onepass.organizer.components.ShardRouter;
+import app.onepass.organizer.configurations.ShardContext;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+import io.grpc.StatusRuntimeException;
+
+/**
+ * Selects the organization shard for every callback of a call. The shard is resolved from each incoming message,
+ * so a unary call's handler, which runs on half-close, uses the shard of its request, and each message of a client
+ * stream uses its own.
+ */
+@GRpcGlobalInterceptor
+public class ShardInterceptor implements ServerInterceptor {
+
+	@Autowired
+	private ShardRouter shardRouter;
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+			ServerCallHandler<ReqT, RespT> next) {
+
+		String fullMethodName = call.getMethodDescriptor().getFullMethodName();
+
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(next.startCall(call, headers)) {
+
+			private Integer shard;
+
+			private boolean isRejected;
+
+			@Override
+			public void onMessage(ReqT message) {
+
+				if (isRejected) {
+
+					return;
+				}
+
+				try {
+
+					shard = shardRouter.route(fullMethodName, message);
+
+				} catch (StatusRuntimeException exception) {
+
+					isRejected = true;
+
+					call.close(exception.getStatus(), new Metadata());
+
+					return;
+				}
+
+				ShardContext.run(shard, () -> super.onMessage(message));
+			}
+
+			@Override
+			public void onHalfClose() {
+
+				if (!isRejected) {
+
+					ShardContext.run(shard, super::onHalfClose);
+				}
+			}
+
+			@Override
+			public void onReady() {
+
+				ShardContext.run(shard, super::onReady);
+			}
+
+			@Override
+			public void onCancel() {
+
+				ShardContext.run(shard, super::onCancel);
+			}
+
+			@Override
+			public void onComplete() {
+
+				ShardContext.run(shard, super::onComplete);
+			}
+		};
+	}
+}
@@ -0,0 +1,161 @@
+package app.onepass.organizer.interceptors;
+
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.lognet.springboot.grpc.GRpcGlobalInterceptor;
+import org.springframework.beans.factory.annotation.Value;
+
+import com.google.protobuf.MessageLite;
+
+import app.onepass.organizer.utilities.TrafficLog;
+import io.grpc.ForwardingServerCallListener;
+import io.grpc.Metadata;
+import io.grpc.ServerCall;
+import io.grpc.ServerCallHandler;
+import io.grpc.ServerInterceptor;
+
+/**
+ * Appends incoming requests to a {@link TrafficLog} when {@code TRAFFIC_RECORDING_FILE} is set. Requests are
+ * serialized on the calling thread and handed to a single writer thread through a bounded queue. When the queue is
+ * full the request is dropped from the recording rather than slowing the call down.
+ *
+ * <p>Recordings contain request payloads as they were sent, including user IDs, and should be handled like
+ * production data.
+ */
+@GRpcGlobalInterceptor
+public class TrafficRecorder implements ServerInterceptor {
+
+	private final AtomicLong droppedRecords = new AtomicLong();
+
+	@Value("${TRAFFIC_RECORDING_FILE:}")
+	private String recordingFile;
+
+	@Value("${TRAFFIC_RECORDING_SAMPLE_RATE:1.0}")
+	private double sampleRate;
+
+	@Value("${TRAFFIC_RECORDING_QUEUE_SIZE:65536}")
+	private int queueSize;
+
+	private BlockingQueue<TrafficLog.Record> records;
+
+	private Thread writer;
+
+	private volatile boolean isStopping;
+
+	@PostConstruct
+	public void start() throws IOException {
+
+		if (recordingFile.isEmpty()) {
+
+			return;
+		}
+
+		records = new ArrayBlockingQueue<>(queueSize);
+
+		TrafficLog.Writer trafficLogWriter = new TrafficLog.Writer(new FileOutputStream(recordingFile, false));
+
+		writer = new Thread(() -> write(trafficLogWriter), "traffic-recorder");
+
+		writer.setDaemon(true);
+
+		writer.start();
+	}
+
+	@PreDestroy
+	public void stop() throws InterruptedException {
+
+		if (writer == null) {
+
+			return;
+		}
+
+		isStopping = true;
+
+		writer.join(TimeUnit.SECONDS.toMillis(5));
+	}
+
+	public long getDroppedRecords() {
+
+		return droppedRecords.get();
+	}
+
+	@Override
+	public <ReqT, RespT> ServerCall.Listener<ReqT> interceptCall(ServerCall<ReqT, RespT> call, Metadata headers,
+			ServerCallHandler<ReqT, RespT> next) {
+
+		ServerCall.Listener<ReqT> listener = next.startCall(call, headers);
+
+		if (records == null || isStopping) {
+
+			return listener;
+		}
+
+		String method = call.getMethodDescriptor().getFullMethodName();
+
+		return new ForwardingServerCallListener.SimpleForwardingServerCallListener<ReqT>(listener) {
+
+			@Override
+			public void onMessage(ReqT message) {
+
+				record(method, message);
+
+				super.onMessage(message);
+			}
+		};
+	}
+
+	private void record(String method, Object message) {
+
+		if (!(message instanceof MessageLite) || sampleRate < 1 && ThreadLocalRandom.current().nextDouble() >= sampleRate) {
+
+			return;
+		}
+
+		long timestampMicros = TimeUnit.MILLISECONDS.toMicros(System.currentTimeMillis());
+
+		TrafficLog.Record record = new TrafficLog.Record(timestampMicros, method, ((MessageLite) message).toByteArray());
+
+		if (!records.offer(record)) {
+
+			droppedRecords.incrementAndGet();
+		}
+	}
+
+	private void write(TrafficLog.Writer trafficLogWriter) {
+
+		try (TrafficLog.Writer closingWriter = trafficLogWriter) {
+
+			while (!isStopping || !records.isEmpty()) {
+
+				TrafficLog.Record record = records.poll(1, TimeUnit.SECONDS);
+
+				if (record == null) {
+
+					closingWriter.flush();
+
+					continue;
+				}
+
+				closingWriter.write(record);
+			}
+
+		} catch (IOException exception) {
+
+			throw new UncheckedIOException(exception);
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -3,6 +3,8 @@ package app.onepass.organizer.repositories;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 
 import org.springframework.stereotype.Repository;
 import app.onepass.organizer.entities.AnswerEntity;
@@ -11,4 +13,7 @@ import app.onepass.organizer.entities.AnswerEntity;
 public interface AnswerRepository extends JpaRepository<AnswerEntity, Integer> {
 
 	List<AnswerEntity> findAllByQuestionId(int questionId);
+
+	@Query("SELECT answer.value, COUNT(answer) FROM AnswerEntity answer WHERE answer.questionId = :questionId GROUP BY answer.value")
+	List<Object[]> countValuesByQuestionId(@Param("questionId") int questionId);
 }
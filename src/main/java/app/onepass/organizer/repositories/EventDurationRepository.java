@@ -1,12 +1,24 @@
 package app.onepass.organizer.repositories;
 
-import org.springframework.data.jpa.repository.JpaRepository;
+import java.util.Collection;
+import java.util.List;
 
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+
 import app.onepass.organizer.entities.EventDurationEntity;
 
 @Repository
 public interface EventDurationRepository extends JpaRepository<EventDurationEntity, Integer> {
 
 	long deleteAllByEventId(int eventId);
+
+	List<EventDurationEntity> findAllByEventIdIn(Collection<Integer> eventIds);
+
+	@Query("SELECT COUNT(other) > 0 FROM EventDurationEntity own, EventDurationEntity other, EventEntity event "
+			+ "WHERE own.eventId = :eventId AND other.eventId = event.id AND event.id <> :eventId "
+			+ "AND event.locationId = :locationId AND other.start < own.finish AND other.finish > own.start")
+	boolean existsConflictAtLocation(@Param("eventId") int eventId, @Param("locationId") int locationId);
 }
@@ -1,10 +1,58 @@
 package app.onepass.organizer.repositories;
 
+import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import app.onepass.organizer.entities.EventEntity;
 
 @Repository
 public interface EventRepository extends JpaRepository<EventEntity, Integer> {
+
+	List<EventEntity> findAllByRegistrationDueDateAfter(java.sql.Timestamp timestamp);
+
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT event FROM EventEntity event WHERE event.id = :eventId")
+	Optional<EventEntity> findByIdForUpdate(@Param("eventId") int eventId);
+
+	/**
+	 * Takes a seat unless the event is full, and returns 0 if it is. Approvals for one event only wait on each
+	 * other from this statement to their commit.
+	 */
+	@Modifying
+	@Query("UPDATE EventEntity event SET event.approvedCount = event.approvedCount + 1 WHERE event.id = :eventId "
+			+ "AND (event.attendeeLimit <= 0 OR event.approvedCount < event.attendeeLimit)")
+	int incrementApprovedCount(@Param("eventId") int eventId);
+
+	@Modifying
+	@Query("UPDATE EventEntity event SET event.approvedCount = event.approvedCount - 1 "
+			+ "WHERE event.id = :eventId AND event.approvedCount > 0")
+	int decrementApprovedCount(@Param("eventId") int eventId);
+
+	/**
+	 * Recounts the seats of every event, for registrations written without going through the service.
+	 */
+	@Transactional
+	@Modifying
+	@Query("UPDATE EventEntity event SET event.approvedCount = (SELECT COUNT(userEvent) FROM UserEventEntity userEvent "
+			+ "WHERE userEvent.eventId = event.id AND userEvent.status IN ('APPROVED', 'ATTENDED'))")
+	int recountAllApprovedCounts();
+
+	@Query("SELECT event.id FROM EventEntity event WHERE event.organizationId = :organizationId")
+	List<Integer> findAllIdsByOrganizationId(@Param("organizationId") int organizationId);
+
+	@Modifying
+	@Query("UPDATE EventEntity event SET event.deletedAt = :deletedAt, event.version = event.version + 1 "
+			+ "WHERE event.organizationId = :organizationId AND event.deletedAt IS NULL")
+	int markAllDeletedByOrganizationId(@Param("organizationId") int organizationId,
+			@Param("deletedAt") java.sql.Timestamp deletedAt);
 }
@@ -1,5 +1,8 @@
 package app.onepass.organizer.repositories;
 
+import java.util.Collection;
+import java.util.List;
+
 import org.springframework.data.jpa.repository.JpaRepository;
 
 import org.springframework.stereotype.Repository;
@@ -9,4 +12,6 @@ import app.onepass.organizer.entities.EventTagEntity;
 public interface EventTagRepository extends JpaRepository<EventTagEntity, Integer> {
 
 	EventTagEntity findByEventIdAndTagId(int eventId, int tagId);
+
+	List<EventTagEntity> findAllByEventIdAndTagIdIn(int eventId, Collection<Integer> tagIds);
 }
@@ -0,0 +1,48 @@
+package app.onepass.organizer.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
+import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
+
+import app.onepass.organizer.entities.IdempotencyRecordEntity;
+
+@Repository
+public interface IdempotencyRecordRepository extends JpaRepository<IdempotencyRecordEntity, String> {
+
+	@Transactional
+	@Modifying
+	@Query("DELETE FROM IdempotencyRecordEntity record WHERE record.createdAt < :threshold")
+	int deleteAllCreatedBefore(@Param("threshold") java.sql.Timestamp threshold);
+
+	/**
+	 * Claims the key for a request in progress. Fails with a unique violation if the key is already claimed or
+	 * holds a stored response.
+	 */
+	@Modifying
+	@Query(value = "INSERT INTO idempotency_record (idempotency_key, request_digest, created_at) "
+			+ "VALUES (:idempotencyKey, :requestDigest, :createdAt)", nativeQuery = true)
+	int insertClaim(@Param("idempotencyKey") String idempotencyKey, @Param("requestDigest") byte[] requestDigest,
+			@Param("createdAt") java.sql.Timestamp createdAt);
+
+	@Modifying
+	@Query("UPDATE IdempotencyRecordEntity record SET record.requestDigest = :requestDigest, record.response = NULL, "
+			+ "record.createdAt = :createdAt WHERE record.idempotencyKey = :idempotencyKey "
+			+ "AND (record.createdAt < :expiredBefore OR (record.response IS NULL AND record.createdAt < :abandonedBefore))")
+	int takeOverClaim(@Param("idempotencyKey") String idempotencyKey, @Param("requestDigest") byte[] requestDigest,
+			@Param("createdAt") java.sql.Timestamp createdAt, @Param("expiredBefore") java.sql.Timestamp expiredBefore,
+			@Param("abandonedBefore") java.sql.Timestamp abandonedBefore);
+
+	@Modifying
+	@Query("UPDATE IdempotencyRecordEntity record SET record.response = :response "
+			+ "WHERE record.idempotencyKey = :idempotencyKey AND record.createdAt = :claimedAt AND record.response IS NULL")
+	int completeClaim(@Param("idempotencyKey") String idempotencyKey, @Param("claimedAt") java.sql.Timestamp claimedAt,
+			@Param("response") byte[] response);
+
+	@Modifying
+	@Query("DELETE FROM IdempotencyRecordEntity record "
+			+ "WHERE record.idempotencyKey = :idempotencyKey AND record.createdAt = :claimedAt AND record.response IS NULL")
+	int deleteClaim(@Param("idempotencyKey") String idempotencyKey, @Param("claimedAt") java.sql.Timestamp claimedAt);
+}
@@ -1,8 +1,14 @@
 package app.onepass.organizer.repositories;
 
 import java.util.List;
+import java.util.Optional;
+
+import javax.persistence.LockModeType;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Lock;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import app.onepass.organizer.entities.LocationEntity;
@@ -11,4 +17,8 @@ import app.onepass.organizer.entities.LocationEntity;
 public interface LocationRepository extends JpaRepository<LocationEntity, Integer> {
 
 	List<LocationEntity> findByName(String name);
+
+	@Lock(LockModeType.PESSIMISTIC_WRITE)
+	@Query("SELECT location FROM LocationEntity location WHERE location.id = :locationId")
+	Optional<LocationEntity> findByIdForUpdate(@Param("locationId") int locationId);
 }
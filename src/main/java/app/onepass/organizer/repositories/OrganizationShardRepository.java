@@ -0,0 +1,10 @@
+package app.onepass.organizer.repositories;
+
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+import app.onepass.organizer.entities.OrganizationShardEntity;
+
+@Repository
+public interface OrganizationShardRepository extends JpaRepository<OrganizationShardEntity, Integer> {
+}
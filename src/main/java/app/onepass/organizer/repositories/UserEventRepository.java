@@ -1,7 +1,18 @@
 package app.onepass.organizer.repositories;
 
+import java.util.Collection;
+import java.util.List;
+import java.util.stream.Stream;
+
+import javax.persistence.QueryHint;
+
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
+import org.springframework.transaction.annotation.Transactional;
 
 import app.onepass.organizer.entities.UserEventEntity;
 
@@ -10,5 +21,49 @@ public interface UserEventRepository extends JpaRepository<UserEventEntity, Inte
 
 	UserEventEntity findByUserIdAndEventId(int userId, int eventId);
 
+	/**
+	 * Changes the status only if it is still the one that was read, and returns 0 otherwise. Clears the persistence
+	 * context, so the registration can be read again.
+	 */
+	@Modifying(clearAutomatically = true)
+	@Query("UPDATE UserEventEntity userEvent SET userEvent.status = :status, userEvent.ticket = :ticket "
+			+ "WHERE userEvent.id = :id AND userEvent.status = :expectedStatus")
+	int updateStatusIfUnchanged(@Param("id") int id, @Param("expectedStatus") String expectedStatus,
+			@Param("status") String status, @Param("ticket") String ticket);
+
 	UserEventEntity findByTicketAndEventId(String ticket, int eventId);
+
+	long countByEventIdAndStatusIn(int eventId, Collection<String> statuses);
+
+	List<UserEventEntity> findAllByEventIdAndTicketIn(int eventId, Collection<String> tickets);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE UserEventEntity userEvent SET userEvent.status = 'ATTENDED' WHERE userEvent.id IN :ids AND userEvent.status <> 'ATTENDED'")
+	int markAttendedByIdIn(@Param("ids") Collection<Integer> ids);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE UserEventEntity userEvent SET userEvent.status = 'REJECTED' WHERE userEvent.status = 'PENDING' "
+			+ "AND userEvent.eventId IN (SELECT event.id FROM EventEntity event WHERE event.registrationDueDate <= :now)")
+	int rejectAllPendingPastRegistrationDueDate(@Param("now") java.sql.Timestamp now);
+
+	@Transactional
+	@Modifying
+	@Query("UPDATE UserEventEntity userEvent SET userEvent.status = 'REJECTED' WHERE userEvent.status = 'PENDING' "
+			+ "AND userEvent.eventId IN (SELECT event.id FROM EventEntity event WHERE event.id = :eventId "
+			+ "AND event.registrationDueDate <= :now)")
+	int rejectAllPendingPastRegistrationDueDateByEventId(@Param("eventId") int eventId, @Param("now") java.sql.Timestamp now);
+
+	@QueryHints(@QueryHint(name = "org.hibernate.fetchSize", value = "1000"))
+	@Query(value = "SELECT user_event.id, user_event.user_id, CAST(user_event.status AS text), user_event.ticket, "
+			+ "question_group.id AS question_group_id, question_group.title AS question_group_title, "
+			+ "question.id AS question_id, question.title AS question_title, answer.value "
+			+ "FROM user_event "
+			+ "LEFT JOIN answer ON answer.user_event_id = user_event.id "
+			+ "LEFT JOIN question ON question.id = answer.question_id "
+			+ "LEFT JOIN question_group ON question_group.id = question.question_group_id "
+			+ "WHERE user_event.event_id = :eventId "
+			+ "ORDER BY user_event.id, question_group.seq, question.seq", nativeQuery = true)
+	Stream<Object[]> streamRegistrationExportByEventId(@Param("eventId") int eventId);
 }
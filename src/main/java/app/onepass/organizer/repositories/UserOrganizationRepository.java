@@ -1,5 +1,6 @@
 package app.onepass.organizer.repositories;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.jpa.repository.JpaRepository;
@@ -13,4 +14,6 @@ public interface UserOrganizationRepository extends JpaRepository<UserOrganizati
 	List<UserOrganizationEntity> findByOrganizationId(int organizationId);
 
 	UserOrganizationEntity findByUserIdAndOrganizationId(int userId, int organizationId);
+
+	List<UserOrganizationEntity> findAllByOrganizationIdAndUserIdIn(int organizationId, Collection<Integer> userIds);
 }
@@ -1,5 +1,7 @@
 package app.onepass.organizer.services;
 
+import java.util.concurrent.TimeUnit;
+
 import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
@@ -23,12 +25,16 @@ public class AccountService {
 
 	private final AccountServiceGrpc.AccountServiceBlockingStub stub;
 
+	private final long timeoutMillis;
+
 	@Autowired
-	public AccountService(@Value("${HTS_SVC_ACCOUNT}") String address) {
+	public AccountService(@Value("${HTS_SVC_ACCOUNT}") String address, @Value("${ACCOUNT_SERVICE_TIMEOUT_MS:2000}") long timeoutMillis) {
 
 		channel = ManagedChannelBuilder.forAddress(getHost(address), getPort(address)).usePlaintext().build();
 
 		stub = AccountServiceGrpc.newBlockingStub(channel);
+
+		this.timeoutMillis = timeoutMillis;
 	}
 
 	private static String getHost(String address) {
@@ -40,20 +46,34 @@ public class AccountService {
 	}
 
 	@PreDestroy
-	public void onDestroy() {
+	public void onDestroy() throws InterruptedException {
 		channel.shutdown();
+
+		if (!channel.awaitTermination(5, TimeUnit.SECONDS)) {
+
+			channel.shutdownNow();
+		}
+	}
+
+	/**
+	 * Calls made while serving a request also inherit its deadline and cancellation from the current gRPC
+	 * context, so the effective deadline is whichever of the two comes first.
+	 */
+	private AccountServiceGrpc.AccountServiceBlockingStub getStub() {
+
+		return stub.withDeadlineAfter(timeoutMillis, TimeUnit.MILLISECONDS);
 	}
 
 	public BoolValue ping() {
 
-		return stub.ping(Empty.newBuilder().build());
+		return getStub().ping(Empty.newBuilder().build());
 	}
 
 	public BoolValue hasPermission(HasPermissionRequest hasPermissionRequest) {
 
 		try {
 
-			return stub.hasPermission(hasPermissionRequest);
+			return getStub().hasPermission(hasPermissionRequest);
 
 		} catch (StatusRuntimeException exception) {
 
@@ -70,6 +90,6 @@ public class AccountService {
 
 	public BoolValue assignRole(AssignRoleRequest assignRoleRequest) {
 
-		return stub.assignRole(assignRoleRequest);
+		return getStub().assignRole(assignRoleRequest);
 	}
 }
@@ -2,6 +2,7 @@ package app.onepass.organizer.services;
 
 import org.lognet.springboot.grpc.GRpcService;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.transaction.annotation.Transactional;
 
 import com.google.protobuf.BoolValue;
@@ -9,16 +10,27 @@ import com.google.protobuf.Empty;
 
 import app.onepass.apis.AddQuestionGroupsRequest;
 import app.onepass.apis.AddQuestionsRequest;
+import app.onepass.apis.AnswerAggregate;
 import app.onepass.apis.AnswerListResponse;
+import app.onepass.apis.BulkCreateResult;
+import app.onepass.apis.ChangeEvent;
+import app.onepass.apis.CheckInBatchRequest;
+import app.onepass.apis.CheckInBatchResponse;
 import app.onepass.apis.CheckInRequest;
 import app.onepass.apis.CreateEventRequest;
 import app.onepass.apis.CreateLocationRequest;
 import app.onepass.apis.CreateOrganizationRequest;
 import app.onepass.apis.CreateTagRequest;
+import app.onepass.apis.DurationListResponse;
 import app.onepass.apis.Event;
 import app.onepass.apis.EventDurationListResponse;
+import app.onepass.apis.EventListResponse;
 import app.onepass.apis.EventTagListResponse;
+import app.onepass.apis.ExportChunk;
+import app.onepass.apis.ExportEventRegistrationsRequest;
 import app.onepass.apis.GenerateTicketRequest;
+import app.onepass.apis.GetEventsInWindowRequest;
+import app.onepass.apis.GetFreeSlotsRequest;
 import app.onepass.apis.GetObjectByIdRequest;
 import app.onepass.apis.GetObjectByNameRequest;
 import app.onepass.apis.HasEventRequest;
@@ -34,6 +46,7 @@ import app.onepass.apis.RemoveLocationRequest;
 import app.onepass.apis.RemoveOrganizationRequest;
 import app.onepass.apis.RemoveQuestionGroupsRequest;
 import app.onepass.apis.RemoveQuestionsRequest;
+import app.onepass.apis.SubscribeChangesRequest;
 import app.onepass.apis.Tag;
 import app.onepass.apis.UpdateEventDurationsRequest;
 import app.onepass.apis.UpdateEventRequest;
@@ -45,6 +58,8 @@ import app.onepass.apis.UpdateUsersInOrganizationRequest;
 import app.onepass.apis.UserEvent;
 import app.onepass.apis.UserListResponse;
 import app.onepass.apis.UserOrganizationListResponse;
+import app.onepass.organizer.components.IdempotencyCatcher;
+import app.onepass.organizer.configurations.ShardingConfiguration;
 import app.onepass.organizer.utilities.ExceptionCatcher;
 import io.grpc.stub.StreamObserver;
 
@@ -69,10 +84,24 @@ public class BaseService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
 	@Autowired
 	LocationService locationService;
 
+	@Autowired
+	@Lazy
+	ExportService exportService;
+
+	@Autowired
+	@Lazy
+	ChangeFeedService changeFeedService;
+
+	@Autowired
+	@Lazy
+	BulkCreateService bulkCreateService;
+
+	@Autowired
+	IdempotencyCatcher idempotencyCatcher;
+
 	@Override
-	@Transactional
 	public void createOrganization(CreateOrganizationRequest request, StreamObserver<Organization> responseObserver) {
-		ExceptionCatcher.catcher(organizationService::createOrganization, request, responseObserver);
+		idempotencyCatcher.catcher(organizationService::createOrganization, request, responseObserver, Organization.parser());
 	}
 
 	@Override
@@ -81,158 +110,196 @@ public class BaseService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public void getOrganizationById(GetObjectByIdRequest request, StreamObserver<Organization> responseObserver) {
 		ExceptionCatcher.catcher(organizationService::getOrganizationById, request, responseObserver);
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public void getUsersInOrganizationById(GetObjectByIdRequest request, StreamObserver<UserListResponse> responseObserver) {
 		ExceptionCatcher.catcher(organizationService::getUsersInOrganizationById, request, responseObserver);
 	}
 
 	@Override
-	@Transactional
 	public void updateOrganization(UpdateOrganizationRequest request, StreamObserver<Organization> responseObserver) {
-		ExceptionCatcher.catcher(organizationService::updateOrganization, request, responseObserver);
+		idempotencyCatcher.catcher(organizationService::updateOrganization, request, responseObserver, Organization.parser());
 	}
 
 	@Override
-	@Transactional
 	public void removeOrganization(RemoveOrganizationRequest request, StreamObserver<Organization> responseObserver) {
-		ExceptionCatcher.catcher(organizationService::removeOrganization, request, responseObserver);
+		idempotencyCatcher.catcher(organizationService::removeOrganization, request, responseObserver, Organization.parser());
 	}
 
 	@Override
-	@Transactional
 	public void addUsersToOrganization(UpdateUsersInOrganizationRequest request, StreamObserver<UserOrganizationListResponse> responseObserver) {
-		ExceptionCatcher.catcher(organizationService::addUsersToOrganization, request, responseObserver);
+		idempotencyCatcher.catcher(organizationService::addUsersToOrganization, request, responseObserver, UserOrganizationListResponse.parser());
 	}
 
 	@Override
-	@Transactional
 	public void removeUsersFromOrganization(UpdateUsersInOrganizationRequest request, StreamObserver<UserOrganizationListResponse> responseObserver) {
-		ExceptionCatcher.catcher(organizationService::removeUsersFromOrganization, request, responseObserver);
+		idempotencyCatcher.catcher(organizationService::removeUsersFromOrganization, request, responseObserver, UserOrganizationListResponse.parser());
 	}
 
 	@Override
-	@Transactional
 	public void createEvent(CreateEventRequest request, StreamObserver<Event> responseObserver) {
-		ExceptionCatcher.catcher(eventService::createEvent, request, responseObserver);
+		idempotencyCatcher.catcher(eventService::createEvent, request, responseObserver, Event.parser());
 	}
 
 	@Override
-	@Transactional
 	public void updateEvent(UpdateEventRequest request, StreamObserver<Event> responseObserver) {
-		ExceptionCatcher.catcher(eventService::updateEvent, request, responseObserver);
+		idempotencyCatcher.catcher(eventService::updateEvent, request, responseObserver, Event.parser());
 	}
 
 	@Override
-	@Transactional
 	public void updateEventDurations(
 			UpdateEventDurationsRequest request, StreamObserver<EventDurationListResponse> responseObserver) {
-		ExceptionCatcher.catcher(eventService::updateEventDurations, request, responseObserver);
+		idempotencyCatcher.catcher(eventService::updateEventDurations, request, responseObserver, EventDurationListResponse.parser());
 	}
 
 	@Override
-	@Transactional
 	public void removeEvent(RemoveEventRequest request, StreamObserver<Event> responseObserver) {
-		ExceptionCatcher.catcher(eventService::removeEvent, request, responseObserver);
+		idempotencyCatcher.catcher(eventService::removeEvent, request, responseObserver, Event.parser());
 	}
 
 	@Override
 	public void updateRegistrationRequest(UpdateRegistrationRequestRequest request, StreamObserver<UserEvent> responseObserver) {
-		ExceptionCatcher.catcher(eventService::updateRegistrationRequest, request, responseObserver);
+		idempotencyCatcher.catcher(eventService::updateRegistrationRequest, request, responseObserver, UserEvent.parser());
 	}
 
 	@Override
-	@Transactional
 	public void createTag(CreateTagRequest request, StreamObserver<Tag> responseObserver) {
-		ExceptionCatcher.catcher(tagService::createTag, request, responseObserver);
+		idempotencyCatcher.catcher(tagService::createTag, request, responseObserver, Tag.parser());
 	}
 
 	@Override
 	public void addTags(UpdateTagRequest request, StreamObserver<EventTagListResponse> responseObserver) {
-		ExceptionCatcher.catcher(tagService::addTags, request, responseObserver);
+		idempotencyCatcher.catcher(tagService::addTags, request, responseObserver, EventTagListResponse.parser());
 	}
 
 	@Override
-	@Transactional
 	public void removeTags(UpdateTagRequest request, StreamObserver<EventTagListResponse> responseObserver) {
-		ExceptionCatcher.catcher(tagService::removeTags, request, responseObserver);
+		idempotencyCatcher.catcher(tagService::removeTags, request, responseObserver, EventTagListResponse.parser());
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public void hasEvent(HasEventRequest request, StreamObserver<Event> responseObserver) {
 		ExceptionCatcher.catcher(eventService::hasEvent, request, responseObserver);
 	}
 
 	@Override
-	@Transactional
+	public void getEventsInWindow(GetEventsInWindowRequest request, StreamObserver<EventListResponse> responseObserver) {
+		ExceptionCatcher.catcher(eventService::getEventsInWindow, request, responseObserver);
+	}
+
+	@Override
 	public void addQuestionGroups(AddQuestionGroupsRequest request, StreamObserver<QuestionGroupListResponse> responseObserver) {
-		ExceptionCatcher.catcher(questionService::addQuestionGroups, request, responseObserver);
+		idempotencyCatcher.catcher(questionService::addQuestionGroups, request, responseObserver, QuestionGroupListResponse.parser());
 	}
 
 	@Override
-	@Transactional
 	public void removeQuestionGroups(RemoveQuestionGroupsRequest request, StreamObserver<QuestionGroupListResponse> responseObserver) {
-		ExceptionCatcher.catcher(questionService::removeQuestionGroups, request, responseObserver);
+		idempotencyCatcher.catcher(questionService::removeQuestionGroups, request, responseObserver, QuestionGroupListResponse.parser());
 	}
 
 	@Override
-	@Transactional
 	public void addQuestions(AddQuestionsRequest request, StreamObserver<QuestionListResponse> responseObserver) {
-		ExceptionCatcher.catcher(questionService::addQuestions, request, responseObserver);
+		idempotencyCatcher.catcher(questionService::addQuestions, request, responseObserver, QuestionListResponse.parser());
 	}
 
 	@Override
-	@Transactional
 	public void removeQuestions(RemoveQuestionsRequest request, StreamObserver<QuestionListResponse> responseObserver) {
-		ExceptionCatcher.catcher(questionService::removeQuestions, request, responseObserver);
+		idempotencyCatcher.catcher(questionService::removeQuestions, request, responseObserver, QuestionListResponse.parser());
 	}
 
 	@Override
+	@Transactional(readOnly = true)
 	public void getAnswersByQuestionId(GetObjectByIdRequest request, StreamObserver<AnswerListResponse> responseObserver) {
 		ExceptionCatcher.catcher(questionService::getAnswersByQuestionId, request, responseObserver);
 	}
 
+	@Override
+	public void getAnswerAggregateByQuestionId(GetObjectByIdRequest request, StreamObserver<AnswerAggregate> responseObserver) {
+		ExceptionCatcher.catcher(questionService::getAnswerAggregateByQuestionId, request, responseObserver);
+	}
+
+	@Override
+	public void exportEventRegistrations(ExportEventRegistrationsRequest request, StreamObserver<ExportChunk> responseObserver) {
+		ExceptionCatcher.catcher(exportService::exportEventRegistrations, request, responseObserver);
+	}
+
 	@Override
 	public void createLocation(CreateLocationRequest request, StreamObserver<Location> responseObserver) {
-		ExceptionCatcher.catcher(locationService::createLocation, request, responseObserver);
+		idempotencyCatcher.catcher(locationService::createLocation, request, responseObserver, Location.parser());
 	}
 
 	@Override
+	@Transactional(transactionManager = ShardingConfiguration.GLOBAL_TRANSACTION_MANAGER, readOnly = true)
 	public void getLocations(Empty request, StreamObserver<LocationListResponse> responseObserver) {
 		ExceptionCatcher.catcher(locationService::getLocations, request, responseObserver);
 	}
 
 	@Override
+	@Transactional(transactionManager = ShardingConfiguration.GLOBAL_TRANSACTION_MANAGER, readOnly = true)
 	public void getLocationById(GetObjectByIdRequest request, StreamObserver<Location> responseObserver) {
 		ExceptionCatcher.catcher(locationService::getLocationById, request, responseObserver);
 	}
 
 	@Override
+	@Transactional(transactionManager = ShardingConfiguration.GLOBAL_TRANSACTION_MANAGER, readOnly = true)
 	public void searchLocationsByName(GetObjectByNameRequest request, StreamObserver<LocationListResponse> responseObserver) {
 		ExceptionCatcher.catcher(locationService::searchLocationsByName, request, responseObserver);
 	}
 
 	@Override
 	public void updateLocation(UpdateLocationRequest request, StreamObserver<Location> responseObserver) {
-		ExceptionCatcher.catcher(locationService::updateLocation, request, responseObserver);
+		idempotencyCatcher.catcher(locationService::updateLocation, request, responseObserver, Location.parser());
 	}
 
 	@Override
 	public void removeLocation(RemoveLocationRequest request, StreamObserver<Location> responseObserver) {
-		ExceptionCatcher.catcher(locationService::removeLocation, request, responseObserver);
+		idempotencyCatcher.catcher(locationService::removeLocation, request, responseObserver, Location.parser());
+	}
+
+	@Override
+	public void getFreeSlotsByLocationId(GetFreeSlotsRequest request, StreamObserver<DurationListResponse> responseObserver) {
+		ExceptionCatcher.catcher(locationService::getFreeSlotsByLocationId, request, responseObserver);
 	}
 
 	@Override
 	public void generateTicket(GenerateTicketRequest request, StreamObserver<UserEvent> responseObserver) {
-		ExceptionCatcher.catcher(eventService::generateTicket, request, responseObserver);
+		idempotencyCatcher.catcher(eventService::generateTicket, request, responseObserver, UserEvent.parser());
 	}
 
 	@Override
 	public void checkIn(CheckInRequest request, StreamObserver<UserEvent> responseObserver) {
-		ExceptionCatcher.catcher(eventService::checkIn, request, responseObserver);
+		idempotencyCatcher.catcher(eventService::checkIn, request, responseObserver, UserEvent.parser());
+	}
+
+	@Override
+	public StreamObserver<CheckInBatchRequest> checkInStream(StreamObserver<CheckInBatchResponse> responseObserver) {
+		return eventService.checkInStream(responseObserver);
+	}
+
+	@Override
+	public StreamObserver<CreateOrganizationRequest> bulkCreateOrganizations(StreamObserver<BulkCreateResult> responseObserver) {
+		return bulkCreateService.bulkCreateOrganizations(responseObserver);
+	}
+
+	@Override
+	public StreamObserver<CreateLocationRequest> bulkCreateLocations(StreamObserver<BulkCreateResult> responseObserver) {
+		return bulkCreateService.bulkCreateLocations(responseObserver);
+	}
+
+	@Override
+	public StreamObserver<CreateEventRequest> bulkCreateEvents(StreamObserver<BulkCreateResult> responseObserver) {
+		return bulkCreateService.bulkCreateEvents(responseObserver);
+	}
+
+	@Override
+	public void subscribeChanges(SubscribeChangesRequest request, StreamObserver<ChangeEvent> responseObserver) {
+		ExceptionCatcher.catcher(changeFeedService::subscribeChanges, request, responseObserver);
 	}
 
 	@Override
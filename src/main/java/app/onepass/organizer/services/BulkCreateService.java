@@ -0,0 +1,605 @@
+package app.onepass.organizer.services;
+
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.sql.DataSource;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.SqlTypeValue;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import app.onepass.apis.BulkCreateResult;
+import app.onepass.apis.ChangeEvent.ChangeType;
+import app.onepass.apis.ChangeEvent.EntityType;
+import app.onepass.apis.CreateEventRequest;
+import app.onepass.apis.CreateLocationRequest;
+import app.onepass.apis.CreateOrganizationRequest;
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.apis.Permission;
+import app.onepass.organizer.components.ChangeFeed;
+import app.onepass.organizer.components.EventDurationIndex;
+import app.onepass.organizer.components.InvalidationBus;
+import app.onepass.organizer.components.InvalidationBus.Topic;
+import app.onepass.organizer.components.RegistrationDeadlineScheduler;
+import app.onepass.organizer.components.ShardMap;
+import app.onepass.organizer.configurations.ShardContext;
+import app.onepass.organizer.configurations.ShardingConfiguration;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.entities.LocationEntity;
+import app.onepass.organizer.entities.OrganizationEntity;
+import app.onepass.organizer.messages.EventMessage;
+import app.onepass.organizer.messages.LocationMessage;
+import app.onepass.organizer.messages.OrganizationMessage;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.LocationRepository;
+import app.onepass.organizer.repositories.OrganizationRepository;
+import app.onepass.organizer.utilities.ServiceUtil;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Creates organizations, locations and events streamed in by an import. Requests are buffered into batches of
+ * {@code BULK_CREATE_BATCH_SIZE}. Every batch checks permissions once per organization and user, looks up the
+ * requested IDs with one query per shard and inserts the new rows with one batched statement per shard. Each
+ * request gets a result carrying its position in the stream, either the created object or the reason it was not
+ * created.
+ */
+@Service
+public class BulkCreateService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
+
+	private static final String INSERT_ORGANIZATION = "INSERT INTO organization (name, is_verified, abbreviation, advisor, "
+			+ "associated_faculty, description, facebook_page, instagram, line_official_account, email, contact_full_name, "
+			+ "contact_email, contact_phone_number, contact_line_id, profile_picture_url, profile_picture_hash, version) "
+			+ "VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+	private static final String INSERT_USER_ORGANIZATION = "INSERT INTO user_organization (user_id, organization_id) VALUES (?, ?)";
+
+	private static final String INSERT_LOCATION = "INSERT INTO location (name, google_map_url, description, "
+			+ "travel_information_image_url, travel_information_image_hash, is_online, version) VALUES (?, ?, ?, ?, ?, ?, 0)";
+
+	private static final String INSERT_EVENT = "INSERT INTO event (organization_id, location_id, description, name, "
+			+ "cover_image_url, cover_image_hash, poster_image_url, poster_image_hash, contact, profile_image_url, "
+			+ "profile_image_hash, attendee_limit, registration_due_date, version) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, 0)";
+
+	private static final String PERMISSION_DENIED_MESSAGE = "The user has no permission to execute the specified operation.";
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private OrganizationRepository organizationRepository;
+
+	@Autowired
+	private LocationRepository locationRepository;
+
+	@Autowired
+	private EventRepository eventRepository;
+
+	@Autowired
+	private EventDurationIndex eventDurationIndex;
+
+	@Autowired
+	private RegistrationDeadlineScheduler registrationDeadlineScheduler;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private ChangeFeed changeFeed;
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
+	@Autowired
+	@Qualifier(ShardingConfiguration.GLOBAL_TRANSACTION_MANAGER)
+	private PlatformTransactionManager globalTransactionManager;
+
+	@Autowired
+	@Qualifier(ShardingConfiguration.ORGANIZATION_DATA_SOURCE)
+	private DataSource organizationDataSource;
+
+	@Autowired
+	@Qualifier(ShardingConfiguration.GLOBAL_DATA_SOURCE)
+	private DataSource globalDataSource;
+
+	@Value("${BULK_CREATE_BATCH_SIZE:500}")
+	private int batchSize;
+
+	private TransactionTemplate globalTransactionTemplate;
+
+	@PostConstruct
+	public void initialize() {
+
+		globalTransactionTemplate = new TransactionTemplate(globalTransactionManager);
+	}
+
+	@Override
+	public StreamObserver<CreateOrganizationRequest> bulkCreateOrganizations(StreamObserver<BulkCreateResult> responseObserver) {
+
+		return new BatchingStreamObserver<>(responseObserver, this::createOrganizations);
+	}
+
+	@Override
+	public StreamObserver<CreateLocationRequest> bulkCreateLocations(StreamObserver<BulkCreateResult> responseObserver) {
+
+		return new BatchingStreamObserver<>(responseObserver, this::createLocations);
+	}
+
+	@Override
+	public StreamObserver<CreateEventRequest> bulkCreateEvents(StreamObserver<BulkCreateResult> responseObserver) {
+
+		return new BatchingStreamObserver<>(responseObserver, this::createEvents);
+	}
+
+	/**
+	 * Creates a batch of organizations on the shard with the fewest organizations, each with its creator as the
+	 * first member.
+	 */
+	private BulkCreateResult[] createOrganizations(List<CreateOrganizationRequest> requests, int firstIndex) {
+
+		BulkCreateResult[] results = new BulkCreateResult[requests.size()];
+
+		Set<Integer> requestedIds = requests.stream().map(request -> request.getOrganization().getId()).collect(Collectors.toSet());
+
+		Set<Integer> existingIds = shardMap.fanOut(shard -> organizationRepository.findAllById(requestedIds)).stream()
+				.map(OrganizationEntity::getId)
+				.collect(Collectors.toSet());
+
+		List<Integer> positions = new ArrayList<>();
+
+		for (int position = 0; position < requests.size(); position++) {
+
+			if (existingIds.contains(requests.get(position).getOrganization().getId())) {
+
+				results[position] = createError(firstIndex + position, "An organization with this ID already exists.");
+
+			} else {
+
+				positions.add(position);
+			}
+		}
+
+		List<OrganizationEntity> organizationEntities = positions.stream()
+				.map(position -> new OrganizationMessage(requests.get(position).getOrganization()).parseMessage())
+				.collect(Collectors.toList());
+
+		if (positions.isEmpty()) {
+
+			return results;
+		}
+
+		int shard = shardMap.getShardForNewOrganization();
+
+		try {
+
+			ShardContext.run(shard, () -> transactionTemplate.execute(status -> {
+
+				JdbcTemplate jdbcTemplate = new JdbcTemplate(organizationDataSource);
+
+				insertAll(jdbcTemplate, INSERT_ORGANIZATION, organizationEntities, organizationEntity -> new Object[] {
+						organizationEntity.getName(), organizationEntity.isVerified(), organizationEntity.getAbbreviation(),
+						organizationEntity.getAdvisor(), organizationEntity.getAssociatedFaculty(),
+						organizationEntity.getDescription(), organizationEntity.getFacebookPage(),
+						organizationEntity.getInstagram(), organizationEntity.getLineOfficialAccount(),
+						organizationEntity.getEmail(), organizationEntity.getContactFullName(),
+						organizationEntity.getContactEmail(), organizationEntity.getContactPhoneNumber(),
+						organizationEntity.getContactLineId(), organizationEntity.getProfilePictureUrl(),
+						organizationEntity.getProfilePictureHash() }, OrganizationEntity::setId);
+
+				List<Object[]> memberships = new ArrayList<>();
+
+				for (int i = 0; i < positions.size(); i++) {
+
+					memberships.add(new Object[] { requests.get(positions.get(i)).getUserId(), organizationEntities.get(i).getId() });
+				}
+
+				return jdbcTemplate.batchUpdate(INSERT_USER_ORGANIZATION, memberships);
+			}));
+
+		} catch (DataAccessException exception) {
+
+			fillErrors(results, positions, firstIndex, exception);
+
+			return results;
+		}
+
+		for (int i = 0; i < positions.size(); i++) {
+
+			OrganizationEntity organizationEntity = organizationEntities.get(i);
+
+			results[positions.get(i)] = BulkCreateResult.newBuilder()
+					.setIndex(firstIndex + positions.get(i))
+					.setOrganization(organizationEntity.parseEntity().getOrganization())
+					.build();
+
+			if (shardMap.isSharded()) {
+
+				shardMap.assignOrganization(organizationEntity.getId(), shard, false);
+			}
+
+			changeFeed.publish(EntityType.ORGANIZATION, ChangeType.CREATED, organizationEntity.getId(),
+					organizationEntity.getId(), 0);
+		}
+
+		return results;
+	}
+
+	private BulkCreateResult[] createLocations(List<CreateLocationRequest> requests, int firstIndex) {
+
+		BulkCreateResult[] results = new BulkCreateResult[requests.size()];
+
+		Set<Integer> existingIds = locationRepository.findAllById(requests.stream()
+				.map(request -> request.getLocation().getId())
+				.collect(Collectors.toSet())).stream()
+				.map(LocationEntity::getId)
+				.collect(Collectors.toSet());
+
+		List<Integer> positions = new ArrayList<>();
+
+		for (int position = 0; position < requests.size(); position++) {
+
+			if (existingIds.contains(requests.get(position).getLocation().getId())) {
+
+				results[position] = createError(firstIndex + position, "A location with this ID already exists.");
+
+			} else {
+
+				positions.add(position);
+			}
+		}
+
+		if (positions.isEmpty()) {
+
+			return results;
+		}
+
+		List<LocationEntity> locationEntities = positions.stream()
+				.map(position -> new LocationMessage(requests.get(position).getLocation()).parseMessage())
+				.collect(Collectors.toList());
+
+		try {
+
+			globalTransactionTemplate.execute(status -> {
+
+				insertAll(new JdbcTemplate(globalDataSource), INSERT_LOCATION, locationEntities, locationEntity -> new Object[] {
+						locationEntity.getName(), locationEntity.getGoogleMapUrl(), locationEntity.getDescription(),
+						locationEntity.getTravelInformationImageUrl(), locationEntity.getTravelInformationImageHash(),
+						locationEntity.isOnline() }, LocationEntity::setId);
+
+				return null;
+			});
+
+		} catch (DataAccessException exception) {
+
+			fillErrors(results, positions, firstIndex, exception);
+
+			return results;
+		}
+
+		for (int i = 0; i < positions.size(); i++) {
+
+			LocationEntity locationEntity = locationEntities.get(i);
+
+			results[positions.get(i)] = BulkCreateResult.newBuilder()
+					.setIndex(firstIndex + positions.get(i))
+					.setLocation(locationEntity.parseEntity().getLocation())
+					.build();
+
+			changeFeed.publish(EntityType.LOCATION, ChangeType.CREATED, locationEntity.getId(), 0, 0);
+		}
+
+		return results;
+	}
+
+	/**
+	 * Creates a batch of events shard by shard. An organization being moved between shards fails its events with
+	 * the same message its single calls get.
+	 */
+	private BulkCreateResult[] createEvents(List<CreateEventRequest> requests, int firstIndex) {
+
+		BulkCreateResult[] results = new BulkCreateResult[requests.size()];
+
+		Map<Integer, List<Integer>> positionsByShard = new LinkedHashMap<>();
+
+		for (int position = 0; position < requests.size(); position++) {
+
+			try {
+
+				positionsByShard.computeIfAbsent(shardMap.getShardOfOrganization(requests.get(position).getEvent().getOrganizationId()),
+						shard -> new ArrayList<>()).add(position);
+
+			} catch (StatusRuntimeException exception) {
+
+				results[position] = createError(firstIndex + position, exception.getStatus().getDescription());
+			}
+		}
+
+		positionsByShard.forEach((shard, positions) -> {
+
+			try {
+
+				ShardContext.run(shard, () -> createEventsOnShard(requests, positions, firstIndex, results));
+
+			} catch (DataAccessException | StatusRuntimeException exception) {
+
+				fillErrors(results, positions, firstIndex, exception);
+			}
+		});
+
+		return results;
+	}
+
+	private void createEventsOnShard(List<CreateEventRequest> requests, List<Integer> positions, int firstIndex,
+			BulkCreateResult[] results) {
+
+		Map<Long, Boolean> permissions = new HashMap<>();
+
+		List<Integer> permittedPositions = new ArrayList<>();
+
+		for (int position : positions) {
+
+			CreateEventRequest request = requests.get(position);
+
+			int organizationId = request.getEvent().getOrganizationId();
+
+			boolean hasPermission = permissions.computeIfAbsent((long) organizationId << 32 | request.getUserId() & 0xffffffffL,
+					key -> accountService.hasPermission(ServiceUtil.createHasPermissionRequest(request.getUserId(),
+							organizationId, Permission.EVENT_CREATE)).getValue());
+
+			if (hasPermission) {
+
+				permittedPositions.add(position);
+
+			} else {
+
+				results[position] = createError(firstIndex + position, PERMISSION_DENIED_MESSAGE);
+			}
+		}
+
+		Set<Integer> existingIds = eventRepository.findAllById(permittedPositions.stream()
+				.map(position -> requests.get(position).getEvent().getId())
+				.collect(Collectors.toSet())).stream()
+				.map(EventEntity::getId)
+				.collect(Collectors.toSet());
+
+		List<Integer> newPositions = new ArrayList<>();
+
+		for (int position : permittedPositions) {
+
+			if (existingIds.contains(requests.get(position).getEvent().getId())) {
+
+				results[position] = createError(firstIndex + position, "An event with this ID already exists.");
+
+			} else {
+
+				newPositions.add(position);
+			}
+		}
+
+		if (newPositions.isEmpty()) {
+
+			return;
+		}
+
+		List<EventEntity> eventEntities = newPositions.stream()
+				.map(position -> new EventMessage(requests.get(position).getEvent()).parseMessage())
+				.collect(Collectors.toList());
+
+		transactionTemplate.execute(status -> {
+
+			insertAll(new JdbcTemplate(organizationDataSource), INSERT_EVENT, eventEntities, eventEntity -> new Object[] {
+					eventEntity.getOrganizationId(), eventEntity.getLocationId(), eventEntity.getDescription(),
+					eventEntity.getName(), eventEntity.getCoverImageUrl(), eventEntity.getCoverImageHash(),
+					eventEntity.getPosterImageUrl(), eventEntity.getPosterImageHash(), eventEntity.getContact(),
+					eventEntity.getProfileImageUrl(), eventEntity.getProfileImageHash(), eventEntity.getAttendeeLimit(),
+					eventEntity.getRegistrationDueDate() }, EventEntity::setId);
+
+			return null;
+		});
+
+		for (int i = 0; i < newPositions.size(); i++) {
+
+			EventEntity eventEntity = eventEntities.get(i);
+
+			results[newPositions.get(i)] = BulkCreateResult.newBuilder()
+					.setIndex(firstIndex + newPositions.get(i))
+					.setEvent(eventEntity.parseEntity().getEvent())
+					.build();
+
+			eventDurationIndex.putEvent(eventEntity);
+
+			registrationDeadlineScheduler.schedule(eventEntity);
+
+			invalidationBus.publish(Topic.EVENT, eventEntity.getId());
+
+			changeFeed.publish(EntityType.EVENT, ChangeType.CREATED, eventEntity.getId(), eventEntity.getOrganizationId(),
+					eventEntity.getId());
+		}
+	}
+
+	/**
+	 * Inserts the entities with one batched statement and hands each its generated ID. Runs on the connection of the
+	 * current transaction.
+	 */
+	private static <E> void insertAll(JdbcTemplate jdbcTemplate, String sql, List<E> entities, Function<E, Object[]> columns,
+			ObjIntConsumer<E> setId) {
+
+		jdbcTemplate.execute((ConnectionCallback<Void>) connection -> {
+
+			try (PreparedStatement statement = connection.prepareStatement(sql, new String[] { "id" })) {
+
+				for (E entity : entities) {
+
+					Object[] values = columns.apply(entity);
+
+					for (int i = 0; i < values.length; i++) {
+
+						StatementCreatorUtils.setParameterValue(statement, i + 1, SqlTypeValue.TYPE_UNKNOWN, values[i]);
+					}
+
+					statement.addBatch();
+				}
+
+				statement.executeBatch();
+
+				try (ResultSet generatedKeys = statement.getGeneratedKeys()) {
+
+					for (E entity : entities) {
+
+						if (!generatedKeys.next()) {
+
+							throw new SQLException("The database returned fewer generated IDs than rows inserted.");
+						}
+
+						setId.accept(entity, generatedKeys.getInt(1));
+					}
+				}
+			}
+
+			return null;
+		});
+	}
+
+	/**
+	 * Fails every request of the group that has no result yet, since nothing of the group was committed.
+	 */
+	private static void fillErrors(BulkCreateResult[] results, List<Integer> positions, int firstIndex, RuntimeException exception) {
+
+		String message = exception instanceof DataAccessException ?
+				((DataAccessException) exception).getMostSpecificCause().getMessage() :
+				((StatusRuntimeException) exception).getStatus().getDescription();
+
+		for (int position : positions) {
+
+			if (results[position] == null) {
+
+				results[position] = createError(firstIndex + position, message);
+			}
+		}
+	}
+
+	private static BulkCreateResult createError(int index, String message) {
+
+		return BulkCreateResult.newBuilder().setIndex(index).setError(message == null ? "" : message).build();
+	}
+
+	/**
+	 * Collects requests into batches, creates each full batch as it arrives and the rest when the client finishes,
+	 * and streams back one result per request in order.
+	 */
+	private class BatchingStreamObserver<T> implements StreamObserver<T> {
+
+		private final StreamObserver<BulkCreateResult> responseObserver;
+
+		private final BiFunction<List<T>, Integer, BulkCreateResult[]> creator;
+
+		private final List<T> batch = new ArrayList<>();
+
+		private int firstIndex;
+
+		private boolean isFailed;
+
+		private BatchingStreamObserver(StreamObserver<BulkCreateResult> responseObserver,
+				BiFunction<List<T>, Integer, BulkCreateResult[]> creator) {
+
+			this.responseObserver = responseObserver;
+
+			this.creator = creator;
+		}
+
+		@Override
+		public void onNext(T request) {
+
+			if (isFailed) {
+
+				return;
+			}
+
+			batch.add(request);
+
+			if (batch.size() >= batchSize) {
+
+				flush();
+			}
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+
+		}
+
+		@Override
+		public void onCompleted() {
+
+			if (isFailed) {
+
+				return;
+			}
+
+			flush();
+
+			if (!isFailed) {
+
+				responseObserver.onCompleted();
+			}
+		}
+
+		private void flush() {
+
+			if (batch.isEmpty()) {
+
+				return;
+			}
+
+			try {
+
+				for (BulkCreateResult result : creator.apply(new ArrayList<>(batch), firstIndex)) {
+
+					responseObserver.onNext(result);
+				}
+
+			} catch (DataAccessException exception) {
+
+				isFailed = true;
+
+				responseObserver.onError(
+						Status.UNAVAILABLE.withDescription(exception.getMostSpecificCause().getMessage()).asException());
+
+			} catch (StatusRuntimeException exception) {
+
+				isFailed = true;
+
+				responseObserver.onError(exception);
+			}
+
+			firstIndex += batch.size();
+
+			batch.clear();
+		}
+	}
+}
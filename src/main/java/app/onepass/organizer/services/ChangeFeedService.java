@@ -0,0 +1,46 @@
+package app.onepass.organizer.services;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import app.onepass.apis.ChangeEvent;
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.apis.SubscribeChangesRequest;
+import app.onepass.organizer.components.ChangeFeed;
+import app.onepass.organizer.utilities.ServiceUtil;
+import io.grpc.Status;
+import io.grpc.StatusRuntimeException;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+@Service
+public class ChangeFeedService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
+
+	@Autowired
+	private ChangeFeed changeFeed;
+
+	@Override
+	public void subscribeChanges(SubscribeChangesRequest request, StreamObserver<ChangeEvent> responseObserver) {
+
+		Integer organizationId = request.hasOrganizationId() ? request.getOrganizationId().getValue() : null;
+
+		try {
+
+			changeFeed.subscribe((ServerCallStreamObserver<ChangeEvent>) responseObserver, request.getEntityTypesList(),
+					organizationId, request.getResumeToken());
+
+		} catch (IllegalArgumentException exception) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, exception.getMessage());
+
+		} catch (IllegalStateException exception) {
+
+			responseObserver.onError(Status.OUT_OF_RANGE.withDescription(exception.getMessage()).asException());
+
+		} catch (StatusRuntimeException exception) {
+
+			// The feed has not caught up with the database yet.
+			responseObserver.onError(exception);
+		}
+	}
+}
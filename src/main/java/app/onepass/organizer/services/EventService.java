@@ -1,20 +1,37 @@
 package app.onepass.organizer.services;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import app.onepass.apis.ChangeEvent.ChangeType;
+import app.onepass.apis.ChangeEvent.EntityType;
+import app.onepass.apis.CheckInBatchRequest;
+import app.onepass.apis.CheckInBatchResponse;
 import app.onepass.apis.CheckInRequest;
+import app.onepass.apis.CheckInResult;
 import app.onepass.apis.CreateEventRequest;
 import app.onepass.apis.Duration;
 import app.onepass.apis.Event;
 import app.onepass.apis.EventDuration;
 import app.onepass.apis.EventDurationListResponse;
+import app.onepass.apis.EventListResponse;
 import app.onepass.apis.GenerateTicketRequest;
+import app.onepass.apis.GetEventsInWindowRequest;
 import app.onepass.apis.HasEventRequest;
 import app.onepass.apis.HasPermissionRequest;
 import app.onepass.apis.OrganizerServiceGrpc;
@@ -24,20 +41,32 @@ import app.onepass.apis.UpdateEventDurationsRequest;
 import app.onepass.apis.UpdateEventRequest;
 import app.onepass.apis.UpdateRegistrationRequestRequest;
 import app.onepass.apis.UserEvent;
+import app.onepass.organizer.components.ChangeFeed;
+import app.onepass.organizer.components.EventDurationIndex;
+import app.onepass.organizer.components.InvalidationBus;
+import app.onepass.organizer.components.InvalidationBus.Topic;
+import app.onepass.organizer.components.RegistrationDeadlineScheduler;
+import app.onepass.organizer.components.ShardMap;
 import app.onepass.organizer.entities.EventDurationEntity;
 import app.onepass.organizer.entities.EventEntity;
 import app.onepass.organizer.entities.UserEventEntity;
 import app.onepass.organizer.messages.EventMessage;
 import app.onepass.organizer.repositories.EventDurationRepository;
 import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.LocationRepository;
 import app.onepass.organizer.repositories.UserEventRepository;
+import app.onepass.organizer.utilities.ExceptionCatcher;
 import app.onepass.organizer.utilities.ServiceUtil;
+import app.onepass.organizer.utilities.UpdateMaskUtil;
 import app.onepass.organizer.utilities.TypeUtil;
+import io.grpc.stub.ServerCallStreamObserver;
 import io.grpc.stub.StreamObserver;
 
 @Service
 public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
 
+	private static final int MAXIMUM_STATUS_UPDATE_ATTEMPTS = 3;
+
 	@Autowired
 	private AccountService accountService;
 
@@ -50,6 +79,27 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 	@Autowired
 	private UserEventRepository userEventRepository;
 
+	@Autowired
+	private LocationRepository locationRepository;
+
+	@Autowired
+	private EventDurationIndex eventDurationIndex;
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private RegistrationDeadlineScheduler registrationDeadlineScheduler;
+
+	@Autowired
+	private ChangeFeed changeFeed;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
 	@Override
 	public void createEvent(CreateEventRequest request, StreamObserver<Event> responseObserver) {
 
@@ -74,39 +124,105 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 
 		EventEntity savedEntity = eventRepository.save(eventMessage.parseMessage());
 
+		ServiceUtil.runAfterCommit(() -> {
+
+			eventDurationIndex.putEvent(savedEntity);
+
+			registrationDeadlineScheduler.schedule(savedEntity);
+		});
+
+		invalidationBus.publish(Topic.EVENT, savedEntity.getId());
+
+		changeFeed.publish(EntityType.EVENT, ChangeType.CREATED, savedEntity.getId(), savedEntity.getOrganizationId(), savedEntity.getId());
+
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getEvent());
 	}
 
 	@Override
 	public void updateEvent(UpdateEventRequest request, StreamObserver<Event> responseObserver) {
 
-		int storedOrganizationId = ServiceUtil.getOrganizationIdFromEventId(eventRepository, request.getEvent().getId());
+		int eventId = request.getEvent().getId();
 
-		int requestedOrganizationId = request.getEvent().getOrganizationId();
+		// The organization of an event never changes, so the index answers for masked requests without a round trip.
+		Integer organizationId = request.getEvent().getOrganizationId() != 0 ? Integer.valueOf(request.getEvent().getOrganizationId())
+				: eventDurationIndex.getOrganizationId(eventId);
 
-		if (storedOrganizationId != requestedOrganizationId) {
+		if (organizationId == null) {
 
-			ServiceUtil.returnInvalidArgumentError(responseObserver, "Cannot change organization ID in an event update.");
+			organizationId = eventRepository.findById(eventId).map(EventEntity::getOrganizationId).orElse(null);
+		}
+
+		if (organizationId == null) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, "An event with this ID does not exist.");
 
 			return;
 		}
 
-		if (!ServiceUtil.hasValidParameters(accountService, eventRepository, responseObserver, request.getUserId(),
-				request.getEvent().getId(), Permission.EVENT_UPDATE)) {
+		HasPermissionRequest hasPermissionRequest = ServiceUtil.createHasPermissionRequest(request.getUserId(),
+				organizationId, Permission.EVENT_UPDATE);
+
+		if (!accountService.hasPermission(hasPermissionRequest).getValue()) {
+
+			ServiceUtil.returnPermissionDeniedError(responseObserver);
 
 			return;
 		}
 
-		if (!eventRepository.existsById(request.getEvent().getId())) {
+		boolean isLocationRequested = !request.hasUpdateMask() || request.getUpdateMask().getPathsList().contains("location_id");
 
-			ServiceUtil.returnInvalidArgumentError(responseObserver, "An event with this ID does not exist.");
+		Integer requestedLocationId = isLocationRequested && request.getEvent().hasLocationId() ?
+				Integer.valueOf(request.getEvent().getLocationId().getValue()) : null;
+
+		boolean isMovingByIndex = requestedLocationId != null && !requestedLocationId.equals(eventDurationIndex.getLocationId(eventId));
+
+		if (isMovingByIndex && eventDurationIndex.hasConflict(requestedLocationId, eventId)) {
+
+			ServiceUtil.returnFailedPreconditionError(responseObserver,
+					"The location is already booked during one of the event's durations.");
 
 			return;
 		}
 
-		EventMessage eventMessage = new EventMessage(request.getEvent());
+		int expectedOrganizationId = organizationId;
 
-		EventEntity savedEntity = eventRepository.save(eventMessage.parseMessage());
+		EventEntity savedEntity;
+
+		try {
+
+			savedEntity = transactionTemplate.execute(status -> updateStoredEvent(request, expectedOrganizationId,
+					requestedLocationId, isMovingByIndex));
+
+		} catch (IllegalArgumentException exception) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, exception.getMessage());
+
+			return;
+
+		} catch (IllegalStateException exception) {
+
+			ServiceUtil.returnFailedPreconditionError(responseObserver, exception.getMessage());
+
+			return;
+
+		} catch (OptimisticLockingFailureException exception) {
+
+			ServiceUtil.returnVersionConflictError(responseObserver, "event",
+					eventRepository.findById(eventId).map(EventEntity::getVersion).orElse(0L));
+
+			return;
+		}
+
+		ServiceUtil.runAfterCommit(() -> {
+
+			eventDurationIndex.putEvent(savedEntity);
+
+			registrationDeadlineScheduler.schedule(savedEntity);
+		});
+
+		invalidationBus.publish(Topic.EVENT, eventId);
+
+		changeFeed.publish(EntityType.EVENT, ChangeType.UPDATED, eventId, savedEntity.getOrganizationId(), eventId);
 
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getEvent());
 	}
@@ -135,7 +251,21 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 			return;
 		}
 
-		eventRepository.delete(eventEntity);
+		// The event is hidden right away, and Purger deletes it with everything below it.
+		eventEntity.setDeletedAt(new Timestamp(System.currentTimeMillis()));
+
+		eventRepository.save(eventEntity);
+
+		ServiceUtil.runAfterCommit(() -> {
+
+			eventDurationIndex.removeEvent(eventId);
+
+			registrationDeadlineScheduler.cancel(eventId);
+		});
+
+		invalidationBus.publish(Topic.EVENT, eventId);
+
+		changeFeed.publish(EntityType.EVENT, ChangeType.DELETED, eventId, eventEntity.getOrganizationId(), eventId);
 
 		ServiceUtil.returnObject(responseObserver, eventEntity.parseEntity().getEvent());
 	}
@@ -151,7 +281,16 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 
 		int eventId = request.getEventId();
 
-		eventDurationRepository.deleteAllByEventId(eventId);
+		Integer locationId = eventDurationIndex.getLocationId(eventId);
+
+		if (locationId != null && request.getDurationList().stream().anyMatch(duration -> eventDurationIndex.hasConflict(locationId,
+				eventId, TypeUtil.toSqlTimestamp(duration.getStart()).getTime(), TypeUtil.toSqlTimestamp(duration.getFinish()).getTime()))) {
+
+			ServiceUtil.returnFailedPreconditionError(responseObserver,
+					"The location is already booked during one of the requested durations.");
+
+			return;
+		}
 
 		List<EventDurationEntity> entitiesToAdd = new ArrayList<>();
 
@@ -168,7 +307,36 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 			entitiesToAdd.add(eventDurationEntity);
 		}
 
-		List<EventDurationEntity> addedEntities = eventDurationRepository.saveAll(entitiesToAdd);
+		List<EventDurationEntity> addedEntities;
+
+		try {
+
+			addedEntities = transactionTemplate.execute(status -> {
+
+				Integer lockedLocationId = eventRepository.findByIdForUpdate(eventId).map(EventEntity::getLocationId).orElse(null);
+
+				eventDurationRepository.deleteAllByEventId(eventId);
+
+				List<EventDurationEntity> savedEntities = eventDurationRepository.saveAll(entitiesToAdd);
+
+				if (lockedLocationId != null) {
+
+					checkLocationIsFree(eventId, lockedLocationId);
+				}
+
+				return savedEntities;
+			});
+
+		} catch (IllegalStateException exception) {
+
+			ServiceUtil.returnFailedPreconditionError(responseObserver, exception.getMessage());
+
+			return;
+		}
+
+		eventDurationIndex.replaceDurations(eventId, addedEntities);
+
+		invalidationBus.publish(Topic.EVENT, eventId);
 
 		List<EventDuration> eventDurations = addedEntities.stream()
 				.map(eventDurationEntity -> eventDurationEntity.parseEntity().getEventDuration())
@@ -178,6 +346,8 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 				.addAllEventDurations(eventDurations)
 				.build();
 
+		changeFeed.publishForEvent(EntityType.EVENT, ChangeType.UPDATED, eventId, eventId);
+
 		ServiceUtil.returnObject(responseObserver, eventDurationListResponse);
 	}
 
@@ -190,25 +360,28 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 			return;
 		}
 
-		UserEventEntity userEventEntity = userEventRepository.findByUserIdAndEventId(request.getRegisteredUserId(),
-				request.getRegisteredEventId());
+		int eventId = request.getRegisteredEventId();
 
-		if (userEventEntity == null) {
+		UserEventEntity savedEntity;
 
-			ServiceUtil.returnInvalidArgumentError(responseObserver, "The user has not been registered in this event.");
+		try {
 
-			return;
-		}
+			savedEntity = transactionTemplate.execute(status -> updateRegistrationStatus(request));
 
-		userEventEntity.setStatus(request.getStatus().toString());
+		} catch (IllegalArgumentException exception) {
 
-		if (request.getStatus().equals(UserEvent.Status.APPROVED) && userEventEntity.getTicket() == null) {
+			ServiceUtil.returnInvalidArgumentError(responseObserver, exception.getMessage());
 
-			userEventEntity.setTicket(createTicket());
+			return;
+
+		} catch (IllegalStateException exception) {
 
+			ServiceUtil.returnFailedPreconditionError(responseObserver, exception.getMessage());
+
+			return;
 		}
 
-		UserEventEntity savedEntity = userEventRepository.save(userEventEntity);
+		changeFeed.publishForEvent(EntityType.REGISTRATION, ChangeType.UPDATED, savedEntity.getId(), eventId);
 
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getUserEvent());
 	}
@@ -242,6 +415,40 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 		}
 	}
 
+	@Override
+	public void getEventsInWindow(GetEventsInWindowRequest request, StreamObserver<EventListResponse> responseObserver) {
+
+		long from = TypeUtil.toSqlTimestamp(request.getStart()).getTime();
+
+		long to = TypeUtil.toSqlTimestamp(request.getFinish()).getTime();
+
+		if (to < from) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, "The window cannot finish before it starts.");
+
+			return;
+		}
+
+		Integer organizationId = request.hasOrganizationId() ? request.getOrganizationId().getValue() : null;
+
+		Integer locationId = request.hasLocationId() ? request.getLocationId().getValue() : null;
+
+		Set<Integer> eventIds = eventDurationIndex.findEventIds(from, Math.max(to, from + 1), organizationId, locationId);
+
+		Map<Integer, List<Integer>> eventIdsByShard = eventIds.stream().collect(Collectors.groupingBy(shardMap::getShardOfEvent));
+
+		List<Event> events = shardMap.fanOut(shard -> eventRepository.findAllById(
+				eventIdsByShard.getOrDefault(shard, Collections.emptyList()))).stream()
+				.map(eventEntity -> eventEntity.parseEntity().getEvent())
+				.collect(Collectors.toList());
+
+		EventListResponse eventListResponse = EventListResponse.newBuilder()
+				.addAllEvents(events)
+				.build();
+
+		ServiceUtil.returnObject(responseObserver, eventListResponse);
+	}
+
 	@Override
 	public void generateTicket(GenerateTicketRequest request, StreamObserver<UserEvent> responseObserver) {
 
@@ -251,6 +458,8 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 
 		UserEventEntity savedEntity = userEventRepository.save(userEventEntity);
 
+		changeFeed.publishForEvent(EntityType.REGISTRATION, ChangeType.UPDATED, savedEntity.getId(), savedEntity.getEventId());
+
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getUserEvent());
 	}
 
@@ -263,9 +472,243 @@ public class EventService extends OrganizerServiceGrpc.OrganizerServiceImplBase
 
 		UserEventEntity savedEntity = userEventRepository.save(userEventEntity);
 
+		changeFeed.publishForEvent(EntityType.REGISTRATION, ChangeType.UPDATED, savedEntity.getId(), savedEntity.getEventId());
+
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getUserEvent());
 	}
 
+	@Override
+	public StreamObserver<CheckInBatchRequest> checkInStream(StreamObserver<CheckInBatchResponse> responseObserver) {
+
+		ServerCallStreamObserver<CheckInBatchResponse> serverCallStreamObserver =
+				(ServerCallStreamObserver<CheckInBatchResponse>) responseObserver;
+
+		return new StreamObserver<CheckInBatchRequest>() {
+
+			private boolean isClosed;
+
+			@Override
+			public void onNext(CheckInBatchRequest request) {
+
+				if (isClosed) {
+
+					return;
+				}
+
+				if (serverCallStreamObserver.isCancelled()) {
+
+					isClosed = true;
+
+					return;
+				}
+
+				try {
+
+					responseObserver.onNext(checkInBatch(request));
+
+				} catch (RuntimeException exception) {
+
+					isClosed = true;
+
+					responseObserver.onError(ExceptionCatcher.toStatus(exception).asException());
+				}
+			}
+
+			@Override
+			public void onError(Throwable throwable) {
+
+				// The client cancelled or the stream broke, so batches still buffered must not be checked in.
+				isClosed = true;
+			}
+
+			@Override
+			public void onCompleted() {
+
+				if (!isClosed) {
+
+					isClosed = true;
+
+					responseObserver.onCompleted();
+				}
+			}
+		};
+	}
+
+	private CheckInBatchResponse checkInBatch(CheckInBatchRequest request) {
+
+		int eventId = request.getEventId();
+
+		List<String> tickets = request.getTicketsList();
+
+		CheckInBatchResponse.Builder checkInBatchResponse = CheckInBatchResponse.newBuilder().setEventId(eventId);
+
+		if (tickets.isEmpty()) {
+
+			return checkInBatchResponse.build();
+		}
+
+		Map<String, UserEventEntity> userEventEntities = userEventRepository.findAllByEventIdAndTicketIn(eventId,
+				new HashSet<>(tickets))
+				.stream()
+				.collect(Collectors.toMap(UserEventEntity::getTicket, Function.identity(), (first, second) -> first));
+
+		List<Integer> idsToCheckIn = userEventEntities.values().stream()
+				.filter(userEventEntity -> !"ATTENDED".equals(userEventEntity.getStatus()))
+				.map(UserEventEntity::getId)
+				.collect(Collectors.toList());
+
+		if (!idsToCheckIn.isEmpty()) {
+
+			userEventRepository.markAttendedByIdIn(idsToCheckIn);
+		}
+
+		for (String ticket : tickets) {
+
+			CheckInResult.Builder checkInResult = CheckInResult.newBuilder().setTicket(ticket);
+
+			UserEventEntity userEventEntity = userEventEntities.get(ticket);
+
+			if (userEventEntity != null) {
+
+				if (idsToCheckIn.contains(userEventEntity.getId())) {
+
+					changeFeed.publishForEvent(EntityType.REGISTRATION, ChangeType.UPDATED, userEventEntity.getId(), eventId);
+				}
+
+				userEventEntity.setStatus("ATTENDED");
+
+				checkInResult.setUserEvent(userEventEntity.parseEntity().getUserEvent());
+			}
+
+			checkInBatchResponse.addResults(checkInResult);
+		}
+
+		return checkInBatchResponse.build();
+	}
+
+	/**
+	 * Must run in a transaction. Reads the event and writes it back with one update that only applies if its
+	 * version is still the one read, so a concurrent update fails with an optimistic locking failure instead of
+	 * being overwritten. The event's row is only locked when the event moves to another location.
+	 */
+	private EventEntity updateStoredEvent(UpdateEventRequest request, int organizationId, Integer requestedLocationId,
+			boolean isMovingByIndex) {
+
+		int eventId = request.getEvent().getId();
+
+		Optional<EventEntity> storedEvent = isMovingByIndex ? eventRepository.findByIdForUpdate(eventId) : eventRepository.findById(eventId);
+
+		EventEntity storedEntity = storedEvent.orElseThrow(() -> new IllegalArgumentException("An event with this ID does not exist."));
+
+		Event event = request.hasUpdateMask() ? UpdateMaskUtil.apply(request.getUpdateMask(), request.getEvent(),
+				storedEntity.parseEntity().getEvent()) : request.getEvent();
+
+		if (storedEntity.getOrganizationId() != organizationId || event.getOrganizationId() != organizationId) {
+
+			throw new IllegalArgumentException("Cannot change organization ID in an event update.");
+		}
+
+		if (request.getEvent().hasVersion() && request.getEvent().getVersion().getValue() != storedEntity.getVersion()) {
+
+			throw new OptimisticLockingFailureException("The event was changed by another update.");
+		}
+
+		if (requestedLocationId != null && !requestedLocationId.equals(storedEntity.getLocationId())) {
+
+			if (!isMovingByIndex) {
+
+				eventRepository.findByIdForUpdate(eventId);
+			}
+
+			checkLocationIsFree(eventId, requestedLocationId);
+		}
+
+		EventEntity eventEntity = new EventMessage(event).parseMessage();
+
+		eventEntity.setVersion(storedEntity.getVersion());
+
+		// Merges onto the entity read above without another select, and flushes so a stale version fails here.
+		return eventRepository.saveAndFlush(eventEntity);
+	}
+
+	/**
+	 * Must run in a transaction, after the event's row is locked and its durations are written. Bookings of one
+	 * location wait on the location's row, so the check sees every booking committed before it, on any instance.
+	 * The duration index only serves as a pre-check because it can lag behind other instances.
+	 */
+	private void checkLocationIsFree(int eventId, int locationId) {
+
+		locationRepository.findByIdForUpdate(locationId);
+
+		if (eventDurationRepository.existsConflictAtLocation(eventId, locationId)) {
+
+			throw new IllegalStateException("The location is already booked during one of the event's durations.");
+		}
+	}
+
+	/**
+	 * Must run in a transaction. The registration's status only changes if nobody changed it since it was read, and
+	 * a registration that starts counting takes a seat with one conditional update of the event's approved count,
+	 * so concurrent approvals never fill more seats than the limit and never wait on a count.
+	 */
+	private UserEventEntity updateRegistrationStatus(UpdateRegistrationRequestRequest request) {
+
+		int eventId = request.getRegisteredEventId();
+
+		String status = request.getStatus().toString();
+
+		for (int attempt = 1; ; attempt++) {
+
+			UserEventEntity userEventEntity = userEventRepository.findByUserIdAndEventId(request.getRegisteredUserId(), eventId);
+
+			if (userEventEntity == null) {
+
+				throw new IllegalArgumentException("The user has not been registered in this event.");
+			}
+
+			String previousStatus = userEventEntity.getStatus();
+
+			String ticket = request.getStatus().equals(UserEvent.Status.APPROVED) && userEventEntity.getTicket() == null ?
+					createTicket() : userEventEntity.getTicket();
+
+			if (status.equals(previousStatus) && Objects.equals(ticket, userEventEntity.getTicket())) {
+
+				return userEventEntity;
+			}
+
+			if (userEventRepository.updateStatusIfUnchanged(userEventEntity.getId(), previousStatus, status, ticket) == 0) {
+
+				if (attempt == MAXIMUM_STATUS_UPDATE_ATTEMPTS) {
+
+					throw new IllegalStateException("The registration is being changed concurrently. Try again.");
+				}
+
+				continue;
+			}
+
+			if (!isCounted(previousStatus) && isCounted(status) && eventRepository.incrementApprovedCount(eventId) == 0) {
+
+				throw new IllegalStateException("The event has reached its attendee limit.");
+			}
+
+			if (isCounted(previousStatus) && !isCounted(status)) {
+
+				eventRepository.decrementApprovedCount(eventId);
+			}
+
+			userEventEntity.setStatus(status);
+
+			userEventEntity.setTicket(ticket);
+
+			return userEventEntity;
+		}
+	}
+
+	private static boolean isCounted(String status) {
+
+		return UserEvent.Status.APPROVED.toString().equals(status) || UserEvent.Status.ATTENDED.toString().equals(status);
+	}
+
 	private String createTicket() {
 
 		String ticketCharacters = "ABCDEFGHIJKLMNOPQRSTUVWXYZ0123456789";
@@ -0,0 +1,184 @@
+package app.onepass.organizer.services;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import app.onepass.apis.ExportChunk;
+import app.onepass.apis.ExportEventRegistrationsRequest;
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.apis.Permission;
+import app.onepass.organizer.components.Bulkheads;
+import app.onepass.organizer.configurations.ShardContext;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.UserEventRepository;
+import app.onepass.organizer.utilities.ChunkedOutputStream;
+import app.onepass.organizer.utilities.ExceptionCatcher;
+import app.onepass.organizer.utilities.ServiceUtil;
+import app.onepass.organizer.utilities.StreamReadiness;
+import io.grpc.Context;
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+import io.grpc.stub.StreamObserver;
+
+@Service
+public class ExportService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
+
+	private static final int CHUNK_SIZE = 64 * 1024;
+
+	private static final String HEADER = "registration_id,user_id,status,ticket,question_group_id,question_group_title,"
+			+ "question_id,question_title,answer";
+
+	@Autowired
+	private AccountService accountService;
+
+	@Autowired
+	private EventRepository eventRepository;
+
+	@Autowired
+	private UserEventRepository userEventRepository;
+
+	@Autowired
+	private PlatformTransactionManager transactionManager;
+
+	@Autowired
+	private Bulkheads bulkheads;
+
+	@Value("${EXPORT_READY_TIMEOUT_MS:30000}")
+	private long readyTimeoutMillis;
+
+	private TransactionTemplate readOnlyTransactionTemplate;
+
+	@PostConstruct
+	public void initialize() {
+
+		readOnlyTransactionTemplate = new TransactionTemplate(transactionManager);
+
+		readOnlyTransactionTemplate.setReadOnly(true);
+	}
+
+	@Override
+	public void exportEventRegistrations(ExportEventRegistrationsRequest request, StreamObserver<ExportChunk> responseObserver) {
+
+		if (!ServiceUtil.hasValidParameters(accountService, eventRepository, responseObserver, request.getUserId(),
+				request.getEventId(), Permission.EVENT_UPDATE)) {
+
+			return;
+		}
+
+		ServerCallStreamObserver<ExportChunk> serverCallStreamObserver = (ServerCallStreamObserver<ExportChunk>) responseObserver;
+
+		StreamReadiness streamReadiness = new StreamReadiness(serverCallStreamObserver, readyTimeoutMillis);
+
+		Integer shard = ShardContext.current();
+
+		Bulkheads.TrafficClass trafficClass = Bulkheads.TRAFFIC_CLASS.get();
+
+		// The call's callbacks, including the one saying the client can take more, only run once the handler has
+		// returned. The export waits for that callback, so it runs on a thread of its own.
+		try {
+
+			bulkheads.getExecutor(trafficClass == null ? Bulkheads.TrafficClass.BULK : trafficClass).execute(Context.current()
+					.wrap(() -> ShardContext.run(shard, () -> export(request.getEventId(), responseObserver, streamReadiness))));
+
+		} catch (RejectedExecutionException exception) {
+
+			responseObserver.onError(Status.RESOURCE_EXHAUSTED.withDescription("The server has too many exports in progress.")
+					.asException());
+		}
+	}
+
+	private void export(int eventId, StreamObserver<ExportChunk> responseObserver, StreamReadiness streamReadiness) {
+
+		ChunkedOutputStream chunkedOutputStream = new ChunkedOutputStream(CHUNK_SIZE, data -> {
+
+			streamReadiness.await();
+
+			responseObserver.onNext(ExportChunk.newBuilder().setData(data).build());
+		});
+
+		try {
+
+			// The streaming query needs an open transaction, which is only started once the permission check is done.
+			readOnlyTransactionTemplate.executeWithoutResult(status -> writeExport(eventId, chunkedOutputStream));
+
+		} catch (RuntimeException exception) {
+
+			responseObserver.onError(ExceptionCatcher.toStatus(exception).asException());
+
+			return;
+		}
+
+		responseObserver.onCompleted();
+	}
+
+	private void writeExport(int eventId, ChunkedOutputStream chunkedOutputStream) {
+
+		try (Stream<Object[]> rows = userEventRepository.streamRegistrationExportByEventId(eventId);
+				Writer writer = new OutputStreamWriter(new GZIPOutputStream(chunkedOutputStream, CHUNK_SIZE),
+						StandardCharsets.UTF_8)) {
+
+			writer.write(HEADER);
+
+			writer.write('\n');
+
+			rows.forEach(row -> writeRow(writer, row));
+
+		} catch (IOException exception) {
+
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	private static void writeRow(Writer writer, Object[] row) {
+
+		try {
+
+			for (int index = 0; index < row.length; index++) {
+
+				if (index > 0) {
+
+					writer.write(',');
+				}
+
+				writer.write(toCsvField(row[index]));
+			}
+
+			writer.write('\n');
+
+		} catch (IOException exception) {
+
+			throw new UncheckedIOException(exception);
+		}
+	}
+
+	private static String toCsvField(Object value) {
+
+		if (value == null) {
+
+			return "";
+		}
+
+		String field = value.toString();
+
+		if (field.indexOf(',') < 0 && field.indexOf('"') < 0 && field.indexOf('\n') < 0 && field.indexOf('\r') < 0) {
+
+			return field;
+		}
+
+		return '"' + field.replace("\"", "\"\"") + '"';
+	}
+}
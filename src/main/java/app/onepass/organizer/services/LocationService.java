@@ -1,14 +1,26 @@
 package app.onepass.organizer.services;
 
+import java.sql.Timestamp;
 import java.util.List;
 import java.util.stream.Collectors;
 
+import javax.annotation.PostConstruct;
+
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.protobuf.Empty;
 
+import app.onepass.apis.ChangeEvent.ChangeType;
+import app.onepass.apis.ChangeEvent.EntityType;
 import app.onepass.apis.CreateLocationRequest;
+import app.onepass.apis.Duration;
+import app.onepass.apis.DurationListResponse;
+import app.onepass.apis.GetFreeSlotsRequest;
 import app.onepass.apis.GetObjectByIdRequest;
 import app.onepass.apis.GetObjectByNameRequest;
 import app.onepass.apis.Location;
@@ -16,10 +28,15 @@ import app.onepass.apis.LocationListResponse;
 import app.onepass.apis.OrganizerServiceGrpc;
 import app.onepass.apis.RemoveLocationRequest;
 import app.onepass.apis.UpdateLocationRequest;
+import app.onepass.organizer.components.ChangeFeed;
+import app.onepass.organizer.components.EventDurationIndex;
+import app.onepass.organizer.configurations.ShardingConfiguration;
 import app.onepass.organizer.entities.LocationEntity;
 import app.onepass.organizer.messages.LocationMessage;
 import app.onepass.organizer.repositories.LocationRepository;
 import app.onepass.organizer.utilities.ServiceUtil;
+import app.onepass.organizer.utilities.UpdateMaskUtil;
+import app.onepass.organizer.utilities.TypeUtil;
 import io.grpc.stub.StreamObserver;
 
 @Service
@@ -28,6 +45,24 @@ public class LocationService extends OrganizerServiceGrpc.OrganizerServiceImplBa
 	@Autowired
 	LocationRepository locationRepository;
 
+	@Autowired
+	EventDurationIndex eventDurationIndex;
+
+	@Autowired
+	ChangeFeed changeFeed;
+
+	@Autowired
+	@Qualifier(ShardingConfiguration.GLOBAL_TRANSACTION_MANAGER)
+	PlatformTransactionManager globalTransactionManager;
+
+	private TransactionTemplate globalTransactionTemplate;
+
+	@PostConstruct
+	public void initialize() {
+
+		globalTransactionTemplate = new TransactionTemplate(globalTransactionManager);
+	}
+
 	@Override
 	public void createLocation(CreateLocationRequest request, StreamObserver<Location> responseObserver) {
 
@@ -42,6 +77,8 @@ public class LocationService extends OrganizerServiceGrpc.OrganizerServiceImplBa
 
 		LocationEntity savedEntity = locationRepository.save(locationMessage.parseMessage());
 
+		changeFeed.publish(EntityType.LOCATION, ChangeType.CREATED, savedEntity.getId(), 0, 0);
+
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getLocation());
 	}
 
@@ -101,16 +138,29 @@ public class LocationService extends OrganizerServiceGrpc.OrganizerServiceImplBa
 	@Override
 	public void updateLocation(UpdateLocationRequest request, StreamObserver<Location> responseObserver) {
 
-		if (!locationRepository.existsById(request.getLocation().getId())) {
+		int locationId = request.getLocation().getId();
+
+		LocationEntity savedEntity;
 
-			ServiceUtil.returnInvalidArgumentError(responseObserver, "A location with this ID does not exist.");
+		try {
+
+			savedEntity = globalTransactionTemplate.execute(status -> updateStoredLocation(request));
+
+		} catch (IllegalArgumentException exception) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, exception.getMessage());
 
 			return;
-		}
 
-		LocationMessage locationMessage = new LocationMessage(request.getLocation());
+		} catch (OptimisticLockingFailureException exception) {
 
-		LocationEntity savedEntity = locationRepository.save(locationMessage.parseMessage());
+			ServiceUtil.returnVersionConflictError(responseObserver, "location", locationRepository.findById(locationId)
+					.map(LocationEntity::getVersion).orElse(0L));
+
+			return;
+		}
+
+		changeFeed.publish(EntityType.LOCATION, ChangeType.UPDATED, savedEntity.getId(), 0, 0);
 
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getLocation());
 
@@ -136,7 +186,60 @@ public class LocationService extends OrganizerServiceGrpc.OrganizerServiceImplBa
 
 		locationRepository.delete(locationEntity);
 
+		changeFeed.publish(EntityType.LOCATION, ChangeType.DELETED, locationId, 0, 0);
+
 		ServiceUtil.returnObject(responseObserver, locationEntity.parseEntity().getLocation());
 	}
-}
 
+	@Override
+	public void getFreeSlotsByLocationId(GetFreeSlotsRequest request, StreamObserver<DurationListResponse> responseObserver) {
+
+		long from = TypeUtil.toSqlTimestamp(request.getStart()).getTime();
+
+		long to = TypeUtil.toSqlTimestamp(request.getFinish()).getTime();
+
+		if (to <= from) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, "The window must finish after it starts.");
+
+			return;
+		}
+
+		List<Duration> freeSlots = eventDurationIndex.findFreeSlots(request.getLocationId(), from, to).stream()
+				.map(freeSlot -> Duration.newBuilder()
+						.setStart(TypeUtil.toProtobufTimestamp(new Timestamp(freeSlot[0])))
+						.setFinish(TypeUtil.toProtobufTimestamp(new Timestamp(freeSlot[1])))
+						.build())
+				.collect(Collectors.toList());
+
+		DurationListResponse durationListResponse = DurationListResponse.newBuilder()
+				.addAllDurations(freeSlots)
+				.build();
+
+		ServiceUtil.returnObject(responseObserver, durationListResponse);
+	}
+
+	/**
+	 * Must run in a transaction. Reads the location and writes it back with one update that only applies if its
+	 * version is still the one read.
+	 */
+	private LocationEntity updateStoredLocation(UpdateLocationRequest request) {
+
+		LocationEntity storedEntity = locationRepository.findById(request.getLocation().getId())
+				.orElseThrow(() -> new IllegalArgumentException("A location with this ID does not exist."));
+
+		Location location = request.hasUpdateMask() ? UpdateMaskUtil.apply(request.getUpdateMask(), request.getLocation(),
+				storedEntity.parseEntity().getLocation()) : request.getLocation();
+
+		if (request.getLocation().hasVersion() && request.getLocation().getVersion().getValue() != storedEntity.getVersion()) {
+
+			throw new OptimisticLockingFailureException("The location was changed by another update.");
+		}
+
+		LocationEntity locationEntity = new LocationMessage(location).parseMessage();
+
+		locationEntity.setVersion(storedEntity.getVersion());
+
+		return locationRepository.saveAndFlush(locationEntity);
+	}
+}
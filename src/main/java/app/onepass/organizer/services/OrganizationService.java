@@ -1,15 +1,23 @@
 package app.onepass.organizer.services;
 
+import java.sql.Timestamp;
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.OptimisticLockingFailureException;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.support.TransactionTemplate;
 
 import com.google.protobuf.Empty;
 
+import app.onepass.apis.ChangeEvent.ChangeType;
+import app.onepass.apis.ChangeEvent.EntityType;
 import app.onepass.apis.CreateOrganizationRequest;
 import app.onepass.apis.GetObjectByIdRequest;
 import app.onepass.apis.HasPermissionRequest;
@@ -24,13 +32,21 @@ import app.onepass.apis.User;
 import app.onepass.apis.UserListResponse;
 import app.onepass.apis.UserOrganization;
 import app.onepass.apis.UserOrganizationListResponse;
+import app.onepass.organizer.components.ChangeFeed;
+import app.onepass.organizer.components.EventDurationIndex;
+import app.onepass.organizer.components.InvalidationBus;
+import app.onepass.organizer.components.RegistrationDeadlineScheduler;
+import app.onepass.organizer.components.ShardMap;
+import app.onepass.organizer.configurations.ShardContext;
 import app.onepass.organizer.entities.OrganizationEntity;
 import app.onepass.organizer.entities.UserOrganizationEntity;
 import app.onepass.organizer.messages.OrganizationMessage;
+import app.onepass.organizer.repositories.EventRepository;
 import app.onepass.organizer.repositories.OrganizationRepository;
 import app.onepass.organizer.repositories.UserOrganizationRepository;
 import app.onepass.organizer.repositories.UserRepository;
 import app.onepass.organizer.utilities.ServiceUtil;
+import app.onepass.organizer.utilities.UpdateMaskUtil;
 import io.grpc.stub.StreamObserver;
 
 @Service
@@ -48,6 +64,27 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 	@Autowired
 	private UserRepository userRepository;
 
+	@Autowired
+	private EventRepository eventRepository;
+
+	@Autowired
+	private EventDurationIndex eventDurationIndex;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
+	@Autowired
+	private RegistrationDeadlineScheduler registrationDeadlineScheduler;
+
+	@Autowired
+	private ChangeFeed changeFeed;
+
+	@Autowired
+	private ShardMap shardMap;
+
+	@Autowired
+	private TransactionTemplate transactionTemplate;
+
 	@Override
 	public void createOrganization(CreateOrganizationRequest request, StreamObserver<Organization> responseObserver) {
 
@@ -62,14 +99,26 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 
 		OrganizationMessage organizationMessage = new OrganizationMessage(request.getOrganization());
 
-		OrganizationEntity savedEntity = organizationRepository.save(organizationMessage.parseMessage());
+		OrganizationEntity savedEntity = transactionTemplate.execute(status -> {
 
-		UserOrganizationEntity userOrganizationEntity = UserOrganizationEntity.builder()
-				.userId(request.getUserId())
-				.organizationId(savedEntity.getId())
-				.build();
+			OrganizationEntity organizationEntity = organizationRepository.save(organizationMessage.parseMessage());
 
-		userOrganizationRepository.save(userOrganizationEntity);
+			UserOrganizationEntity userOrganizationEntity = UserOrganizationEntity.builder()
+					.userId(request.getUserId())
+					.organizationId(organizationEntity.getId())
+					.build();
+
+			userOrganizationRepository.save(userOrganizationEntity);
+
+			return organizationEntity;
+		});
+
+		if (shardMap.isSharded()) {
+
+			shardMap.assignOrganization(savedEntity.getId(), ShardContext.current(), false);
+		}
+
+		changeFeed.publish(EntityType.ORGANIZATION, ChangeType.CREATED, savedEntity.getId(), savedEntity.getId(), 0);
 
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getOrganization());
 	}
@@ -77,7 +126,7 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 	@Override
 	public void getOrganizations(Empty request, StreamObserver<OrganizationListResponse> responseObserver) {
 
-		List<OrganizationEntity> allOrganizationEntities = organizationRepository.findAll();
+		List<OrganizationEntity> allOrganizationEntities = shardMap.fanOut(shard -> organizationRepository.findAll());
 
 		List<Organization> allOrganizations = allOrganizationEntities.stream()
 				.map(organizationEntity -> organizationEntity.parseEntity().getOrganization())
@@ -142,16 +191,29 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 			return;
 		}
 
-		if (!organizationRepository.existsById(request.getOrganization().getId())) {
+		int organizationId = request.getOrganization().getId();
 
-			ServiceUtil.returnInvalidArgumentError(responseObserver, "An organization with this ID does not exist.");
+		OrganizationEntity savedEntity;
+
+		try {
+
+			savedEntity = transactionTemplate.execute(status -> updateStoredOrganization(request));
+
+		} catch (IllegalArgumentException exception) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, exception.getMessage());
 
 			return;
-		}
 
-		OrganizationMessage organizationMessage = new OrganizationMessage(request.getOrganization());
+		} catch (OptimisticLockingFailureException exception) {
 
-		OrganizationEntity savedEntity = organizationRepository.save(organizationMessage.parseMessage());
+			ServiceUtil.returnVersionConflictError(responseObserver, "organization", organizationRepository.findById(organizationId)
+					.map(OrganizationEntity::getVersion).orElse(0L));
+
+			return;
+		}
+
+		changeFeed.publish(EntityType.ORGANIZATION, ChangeType.UPDATED, savedEntity.getId(), savedEntity.getId(), 0);
 
 		ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getOrganization());
 	}
@@ -184,7 +246,32 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 			return;
 		}
 
-		organizationRepository.delete(organizationEntity);
+		// The organization and its events are hidden right away, and Purger deletes them with everything below them.
+		List<Integer> eventIds = transactionTemplate.execute(status -> {
+
+			Timestamp deletedAt = new Timestamp(System.currentTimeMillis());
+
+			organizationEntity.setDeletedAt(deletedAt);
+
+			organizationRepository.save(organizationEntity);
+
+			List<Integer> organizationEventIds = eventRepository.findAllIdsByOrganizationId(organizationId);
+
+			eventRepository.markAllDeletedByOrganizationId(organizationId, deletedAt);
+
+			return organizationEventIds;
+		});
+
+		for (int eventId : eventIds) {
+
+			eventDurationIndex.removeEvent(eventId);
+
+			registrationDeadlineScheduler.cancel(eventId);
+
+			invalidationBus.publish(InvalidationBus.Topic.EVENT, eventId);
+		}
+
+		changeFeed.publish(EntityType.ORGANIZATION, ChangeType.DELETED, organizationId, organizationId, 0);
 
 		ServiceUtil.returnObject(responseObserver, organizationEntity.parseEntity().getOrganization());
 	}
@@ -202,12 +289,19 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 			return;
 		}
 
+		Set<Integer> userIds = new LinkedHashSet<>(request.getUserIdsList());
+
+		List<UserOrganizationEntity> existingEntities = userOrganizationRepository.findAllByOrganizationIdAndUserIdIn(
+				request.getOrganizationId(), userIds);
+
+		existingEntities.forEach(userOrganizationEntity -> userIds.remove(userOrganizationEntity.getUserId()));
+
 		List<UserOrganizationEntity> entitiesToAdd = new ArrayList<>();
 
-		for (int index = 0; index < request.getUserIdsCount(); index++) {
+		for (int userId : userIds) {
 
 			UserOrganizationEntity userOrganizationEntity = UserOrganizationEntity.builder()
-					.userId(request.getUserIds(index))
+					.userId(userId)
 					.organizationId(request.getOrganizationId())
 					.build();
 
@@ -216,7 +310,7 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 
 		List<UserOrganizationEntity> addedEntities = userOrganizationRepository.saveAll(entitiesToAdd);
 
-		List<UserOrganization> userOrganizations = addedEntities.stream()
+		List<UserOrganization> userOrganizations = Stream.concat(existingEntities.stream(), addedEntities.stream())
 				.map(UserOrganizationEntity -> UserOrganizationEntity.parseEntity().getUserOrganization())
 				.collect(Collectors.toList());
 
@@ -269,4 +363,28 @@ public class OrganizationService extends OrganizerServiceGrpc.OrganizerServiceIm
 
 		ServiceUtil.returnObject(responseObserver, userOrganizationListResponse);
 	}
+
+	/**
+	 * Must run in a transaction. Reads the organization and writes it back with one update that only applies if its
+	 * version is still the one read.
+	 */
+	private OrganizationEntity updateStoredOrganization(UpdateOrganizationRequest request) {
+
+		OrganizationEntity storedEntity = organizationRepository.findById(request.getOrganization().getId())
+				.orElseThrow(() -> new IllegalArgumentException("An organization with this ID does not exist."));
+
+		Organization organization = request.hasUpdateMask() ? UpdateMaskUtil.apply(request.getUpdateMask(),
+				request.getOrganization(), storedEntity.parseEntity().getOrganization()) : request.getOrganization();
+
+		if (request.getOrganization().hasVersion() && request.getOrganization().getVersion().getValue() != storedEntity.getVersion()) {
+
+			throw new OptimisticLockingFailureException("The organization was changed by another update.");
+		}
+
+		OrganizationEntity organizationEntity = new OrganizationMessage(organization).parseMessage();
+
+		organizationEntity.setVersion(storedEntity.getVersion());
+
+		return organizationRepository.saveAndFlush(organizationEntity);
+	}
 }
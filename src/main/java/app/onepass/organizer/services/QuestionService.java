@@ -11,7 +11,9 @@ import org.springframework.stereotype.Service;
 import app.onepass.apis.AddQuestionGroupsRequest;
 import app.onepass.apis.AddQuestionsRequest;
 import app.onepass.apis.Answer;
+import app.onepass.apis.AnswerAggregate;
 import app.onepass.apis.AnswerListResponse;
+import app.onepass.apis.AnswerType;
 import app.onepass.apis.GetObjectByIdRequest;
 import app.onepass.apis.OrganizerServiceGrpc;
 import app.onepass.apis.Permission;
@@ -21,6 +23,8 @@ import app.onepass.apis.QuestionGroupListResponse;
 import app.onepass.apis.QuestionListResponse;
 import app.onepass.apis.RemoveQuestionGroupsRequest;
 import app.onepass.apis.RemoveQuestionsRequest;
+import app.onepass.organizer.components.AnswerAggregateCache;
+import app.onepass.organizer.components.InvalidationBus;
 import app.onepass.organizer.entities.AnswerEntity;
 import app.onepass.organizer.entities.QuestionEntity;
 import app.onepass.organizer.entities.QuestionGroupEntity;
@@ -51,6 +55,12 @@ public class QuestionService extends OrganizerServiceGrpc.OrganizerServiceImplBa
 	@Autowired
 	private AnswerRepository answerRepository;
 
+	@Autowired
+	private AnswerAggregateCache answerAggregateCache;
+
+	@Autowired
+	private InvalidationBus invalidationBus;
+
 	@Override
 	public void addQuestionGroups(AddQuestionGroupsRequest request, StreamObserver<QuestionGroupListResponse> responseObserver) {
 
@@ -253,6 +263,11 @@ public class QuestionService extends OrganizerServiceGrpc.OrganizerServiceImplBa
 
 		questionRepository.deleteAll(entitiesToDelete);
 
+		entitiesToDelete.forEach(questionEntity -> ServiceUtil.runAfterCommit(
+				() -> answerAggregateCache.evict(questionEntity.getId())));
+
+		entitiesToDelete.forEach(questionEntity -> invalidationBus.publish(InvalidationBus.Topic.ANSWERS, questionEntity.getId()));
+
 		List<Question> questions = entitiesToDelete.stream()
 				.map(eventTagEntity -> eventTagEntity.parseEntity().getQuestion())
 				.collect(Collectors.toList());
@@ -280,6 +295,34 @@ public class QuestionService extends OrganizerServiceGrpc.OrganizerServiceImplBa
 		ServiceUtil.returnObject(responseObserver, answerListResponse);
 	}
 
+	@Override
+	public void getAnswerAggregateByQuestionId(GetObjectByIdRequest request, StreamObserver<AnswerAggregate> responseObserver) {
+
+		QuestionEntity questionEntity;
+
+		try {
+
+			questionEntity = questionRepository.findById(request.getId()).orElseThrow(IllegalArgumentException::new);
+
+		} catch (IllegalArgumentException exception) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, "There is no question with the specified ID.");
+
+			return;
+		}
+
+		if (!AnswerType.SCALE.toString().equals(questionEntity.getAnswerType())) {
+
+			ServiceUtil.returnInvalidArgumentError(responseObserver, "Answer aggregates are only available for SCALE questions.");
+
+			return;
+		}
+
+		AnswerAggregate answerAggregate = answerAggregateCache.get(request.getId()).toAnswerAggregate(request.getId());
+
+		ServiceUtil.returnObject(responseObserver, answerAggregate);
+	}
+
 	private <T> boolean hasValidEventId(StreamObserver<T> responseObserver, int questionGroupId, int userId) {
 
 		int eventId;
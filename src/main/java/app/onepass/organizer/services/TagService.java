@@ -1,12 +1,17 @@
 package app.onepass.organizer.services;
 
 import java.util.ArrayList;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Service;
 
+import app.onepass.apis.ChangeEvent.ChangeType;
+import app.onepass.apis.ChangeEvent.EntityType;
 import app.onepass.apis.CreateTagRequest;
 import app.onepass.apis.EventTag;
 import app.onepass.apis.EventTagListResponse;
@@ -15,6 +20,7 @@ import app.onepass.apis.OrganizerServiceGrpc;
 import app.onepass.apis.Permission;
 import app.onepass.apis.Tag;
 import app.onepass.apis.UpdateTagRequest;
+import app.onepass.organizer.components.ChangeFeed;
 import app.onepass.organizer.entities.EventTagEntity;
 import app.onepass.organizer.entities.TagEntity;
 import app.onepass.organizer.messages.TagMessage;
@@ -39,6 +45,9 @@ public class TagService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
     @Autowired
     private EventTagRepository eventTagRepository;
 
+    @Autowired
+    private ChangeFeed changeFeed;
+
     @Override
     public void createTag(CreateTagRequest request, StreamObserver<Tag> responseObserver) {
 
@@ -63,6 +72,8 @@ public class TagService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
 
         TagEntity savedEntity = tagRepository.save(tagMessage.parseMessage());
 
+        changeFeed.publish(EntityType.TAG, ChangeType.CREATED, savedEntity.getId(), 0, 0);
+
         ServiceUtil.returnObject(responseObserver, savedEntity.parseEntity().getTag());
     }
 
@@ -75,13 +86,19 @@ public class TagService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
             return;
         }
 
+        Set<Integer> tagIds = new LinkedHashSet<>(request.getTagIdsList());
+
+        List<EventTagEntity> existingEntities = eventTagRepository.findAllByEventIdAndTagIdIn(request.getEventId(), tagIds);
+
+        existingEntities.forEach(eventTagEntity -> tagIds.remove(eventTagEntity.getTagId()));
+
         List<EventTagEntity> entitiesToAdd = new ArrayList<>();
 
-        for (int index = 0; index < request.getTagIdsCount(); index++) {
+        for (int tagId : tagIds) {
 
             EventTagEntity eventTagEntity = EventTagEntity.builder()
                     .eventId(request.getEventId())
-                    .tagId(request.getTagIds(index))
+                    .tagId(tagId)
                     .build();
 
             entitiesToAdd.add(eventTagEntity);
@@ -89,7 +106,7 @@ public class TagService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
 
         List<EventTagEntity> addedEntities = eventTagRepository.saveAll(entitiesToAdd);
 
-        List<EventTag> eventTags = addedEntities.stream()
+        List<EventTag> eventTags = Stream.concat(existingEntities.stream(), addedEntities.stream())
                 .map(eventTagEntity -> eventTagEntity.parseEntity().getEventTag())
                 .collect(Collectors.toList());
 
@@ -97,6 +114,8 @@ public class TagService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
                 .addAllEventTags(eventTags)
                 .build();
 
+        changeFeed.publishForEvent(EntityType.EVENT, ChangeType.UPDATED, request.getEventId(), request.getEventId());
+
         ServiceUtil.returnObject(responseObserver, eventTagListResponse);
     }
 
@@ -135,6 +154,8 @@ public class TagService extends OrganizerServiceGrpc.OrganizerServiceImplBase {
                 .addAllEventTags(eventTags)
                 .build();
 
+        changeFeed.publishForEvent(EntityType.EVENT, ChangeType.UPDATED, eventId, eventId);
+
         ServiceUtil.returnObject(responseObserver, eventTagListResponse);
     }
 }
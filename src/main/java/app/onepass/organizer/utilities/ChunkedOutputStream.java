@@ -0,0 +1,71 @@
+package app.onepass.organizer.utilities;
+
+import java.io.OutputStream;
+import java.util.function.Consumer;
+
+import com.google.protobuf.ByteString;
+
+public class ChunkedOutputStream extends OutputStream {
+
+	private final byte[] buffer;
+
+	private final Consumer<ByteString> chunkConsumer;
+
+	private int position;
+
+	public ChunkedOutputStream(int chunkSize, Consumer<ByteString> chunkConsumer) {
+
+		this.buffer = new byte[chunkSize];
+
+		this.chunkConsumer = chunkConsumer;
+	}
+
+	@Override
+	public void write(int value) {
+
+		if (position == buffer.length) {
+
+			emitChunk();
+		}
+
+		buffer[position++] = (byte) value;
+	}
+
+	@Override
+	public void write(byte[] bytes, int offset, int length) {
+
+		while (length > 0) {
+
+			if (position == buffer.length) {
+
+				emitChunk();
+			}
+
+			int copied = Math.min(length, buffer.length - position);
+
+			System.arraycopy(bytes, offset, buffer, position, copied);
+
+			position += copied;
+
+			offset += copied;
+
+			length -= copied;
+		}
+	}
+
+	@Override
+	public void close() {
+
+		if (position > 0) {
+
+			emitChunk();
+		}
+	}
+
+	private void emitChunk() {
+
+		chunkConsumer.accept(ByteString.copyFrom(buffer, 0, position));
+
+		position = 0;
+	}
+}
@@ -3,6 +3,9 @@ package app.onepass.organizer.utilities;
 import java.util.function.BiConsumer;
 
 import org.springframework.dao.DataAccessException;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.dao.QueryTimeoutException;
+import org.springframework.transaction.TransactionTimedOutException;
 
 import com.google.protobuf.GeneratedMessageV3;
 
@@ -19,17 +22,40 @@ public class ExceptionCatcher {
 
 			consumer.accept(request, responseObserver);
 
-		} catch (DataAccessException exception) {
+		} catch (DataAccessException | TransactionTimedOutException | StatusRuntimeException exception) {
 
-			responseObserver.onError(Status.UNAVAILABLE.withDescription(exception.getMostSpecificCause().getMessage()).asException());
+			responseObserver.onError(toStatus(exception).asException());
 
 			throw exception;
+		}
+	}
 
-		} catch (StatusRuntimeException exception) {
+	/**
+	 * Maps an exception to the status {@link #catcher} responds with. Any other exception becomes UNKNOWN, as it
+	 * would if it escaped a unary handler.
+	 */
+	public static Status toStatus(RuntimeException exception) {
 
-			responseObserver.onError(Status.fromThrowable(exception).withDescription(exception.getMessage()).asException());
+		if (exception instanceof QueryTimeoutException || exception instanceof TransactionTimedOutException) {
 
-			throw exception;
+			return Status.DEADLINE_EXCEEDED.withDescription(exception.getMessage());
 		}
+
+		if (exception instanceof OptimisticLockingFailureException) {
+
+			return Status.ABORTED.withDescription("The object was changed by another update.");
+		}
+
+		if (exception instanceof DataAccessException) {
+
+			return Status.UNAVAILABLE.withDescription(((DataAccessException) exception).getMostSpecificCause().getMessage());
+		}
+
+		if (exception instanceof StatusRuntimeException) {
+
+			return Status.fromThrowable(exception).withDescription(exception.getMessage());
+		}
+
+		return Status.UNKNOWN.withCause(exception);
 	}
 }
@@ -0,0 +1,196 @@
+package app.onepass.organizer.utilities;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Consumer;
+
+/**
+ * Fires keyed deadlines on a single thread with a resolution of one tick. Deadlines are hashed by their tick into a
+ * fixed ring of slots, each a doubly linked list, so scheduling, rescheduling and cancelling take O(1) however many
+ * deadlines are pending. Every tick only the slot of that tick is visited, and deadlines more than one revolution
+ * away stay in it until their tick comes round. Deadlines are wall-clock milliseconds, and those already past fire
+ * on the next tick.
+ */
+public class HashedTimingWheel<K> {
+
+	private final Node<K>[] slots;
+
+	private final Map<K, Node<K>> nodes = new HashMap<>();
+
+	private final long tickMillis;
+
+	private final Consumer<K> action;
+
+	private final Thread worker;
+
+	private long lastTick;
+
+	/**
+	 * @param wheelSize number of slots, rounded up to a power of two
+	 * @param action    runs on the worker thread for each key whose deadline has passed
+	 */
+	@SuppressWarnings("unchecked")
+	public HashedTimingWheel(long tickMillis, int wheelSize, String threadName, Consumer<K> action) {
+
+		this.slots = new Node[Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1];
+
+		this.tickMillis = tickMillis;
+
+		this.action = action;
+
+		this.lastTick = System.currentTimeMillis() / tickMillis;
+
+		this.worker = new Thread(this::run, threadName);
+
+		this.worker.setDaemon(true);
+	}
+
+	public void start() {
+
+		worker.start();
+	}
+
+	public void stop() {
+
+		worker.interrupt();
+	}
+
+	/**
+	 * Schedules the key, replacing its previous deadline if it had one.
+	 */
+	public synchronized void schedule(K key, long deadlineMillis) {
+
+		unlink(nodes.remove(key));
+
+		Node<K> node = new Node<>(key, Math.max(deadlineMillis / tickMillis, lastTick + 1));
+
+		int slot = (int) (node.deadlineTick & (slots.length - 1));
+
+		node.next = slots[slot];
+
+		if (node.next != null) {
+
+			node.next.previous = node;
+		}
+
+		slots[slot] = node;
+
+		nodes.put(key, node);
+	}
+
+	public synchronized boolean cancel(K key) {
+
+		Node<K> node = nodes.remove(key);
+
+		unlink(node);
+
+		return node != null;
+	}
+
+	public synchronized int size() {
+
+		return nodes.size();
+	}
+
+	private void run() {
+
+		while (!Thread.currentThread().isInterrupted()) {
+
+			try {
+
+				Thread.sleep(tickMillis - System.currentTimeMillis() % tickMillis);
+
+			} catch (InterruptedException exception) {
+
+				return;
+			}
+
+			for (K key : expire(System.currentTimeMillis() / tickMillis)) {
+
+				action.accept(key);
+			}
+		}
+	}
+
+	/**
+	 * Removes and returns the keys due by the tick. The worker calls it once per tick; tests call it directly.
+	 */
+	synchronized List<K> expire(long currentTick) {
+
+		List<K> expiredKeys = new ArrayList<>();
+
+		// After a pause longer than one revolution every slot is due for a visit, but no slot more than once.
+		long firstTick = Math.max(lastTick + 1, currentTick - slots.length + 1);
+
+		for (long tick = firstTick; tick <= currentTick; tick++) {
+
+			Node<K> node = slots[(int) (tick & (slots.length - 1))];
+
+			while (node != null) {
+
+				Node<K> next = node.next;
+
+				if (node.deadlineTick <= currentTick) {
+
+					nodes.remove(node.key);
+
+					unlink(node);
+
+					expiredKeys.add(node.key);
+				}
+
+				node = next;
+			}
+		}
+
+		lastTick = Math.max(lastTick, currentTick);
+
+		return expiredKeys;
+	}
+
+	private void unlink(Node<K> node) {
+
+		if (node == null) {
+
+			return;
+		}
+
+		if (node.previous != null) {
+
+			node.previous.next = node.next;
+
+		} else {
+
+			slots[(int) (node.deadlineTick & (slots.length - 1))] = node.next;
+		}
+
+		if (node.next != null) {
+
+			node.next.previous = node.previous;
+		}
+
+		node.previous = null;
+
+		node.next = null;
+	}
+
+	private static final class Node<K> {
+
+		private final K key;
+
+		private final long deadlineTick;
+
+		private Node<K> previous;
+
+		private Node<K> next;
+
+		private Node(K key, long deadlineTick) {
+
+			this.key = key;
+
+			this.deadlineTick = deadlineTick;
+		}
+	}
+}
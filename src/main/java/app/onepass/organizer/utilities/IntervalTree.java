@@ -0,0 +1,290 @@
+package app.onepass.organizer.utilities;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Consumer;
+import java.util.function.Predicate;
+
+/**
+ * A treap of half-open intervals [start, finish) ordered by start and augmented with the largest finish in each
+ * subtree, so insertion and removal take O(log n) and listing the k intervals overlapping a window takes
+ * O(log n + k). The tree is not thread-safe.
+ */
+public class IntervalTree<T> {
+
+	private final Map<Long, Node<T>> nodes = new HashMap<>();
+
+	private final Random random = new Random();
+
+	private Node<T> root;
+
+	public void put(long id, long start, long finish, T value) {
+
+		remove(id);
+
+		Node<T> node = new Node<>(id, start, finish, value, random.nextInt());
+
+		root = insert(root, node);
+
+		nodes.put(id, node);
+	}
+
+	public boolean remove(long id) {
+
+		Node<T> node = nodes.remove(id);
+
+		if (node == null) {
+
+			return false;
+		}
+
+		root = delete(root, node);
+
+		return true;
+	}
+
+	public void clear() {
+
+		nodes.clear();
+
+		root = null;
+	}
+
+	public int size() {
+
+		return nodes.size();
+	}
+
+	public void forEachOverlapping(long from, long to, Consumer<T> consumer) {
+
+		visit(root, from, to, node -> {
+
+			consumer.accept(node.value);
+
+			return true;
+		});
+	}
+
+	/**
+	 * Visits the overlapping intervals in order of their start.
+	 */
+	public void forEachOverlappingInterval(long from, long to, IntervalConsumer<T> consumer) {
+
+		visit(root, from, to, node -> {
+
+			consumer.accept(node.start, node.finish, node.value);
+
+			return true;
+		});
+	}
+
+	public boolean anyOverlapping(long from, long to, Predicate<T> filter) {
+
+		return !visit(root, from, to, node -> !filter.test(node.value));
+	}
+
+	private boolean visit(Node<T> node, long from, long to, Predicate<Node<T>> visitor) {
+
+		if (node == null || node.maximumFinish <= from) {
+
+			return true;
+		}
+
+		if (!visit(node.left, from, to, visitor)) {
+
+			return false;
+		}
+
+		if (node.start >= to) {
+
+			return true;
+		}
+
+		if (node.finish > from && !visitor.test(node)) {
+
+			return false;
+		}
+
+		return visit(node.right, from, to, visitor);
+	}
+
+	private Node<T> insert(Node<T> node, Node<T> inserted) {
+
+		if (node == null) {
+
+			return inserted;
+		}
+
+		if (compare(inserted, node) < 0) {
+
+			node.left = insert(node.left, inserted);
+
+			if (node.left.priority > node.priority) {
+
+				node = rotateRight(node);
+			}
+
+		} else {
+
+			node.right = insert(node.right, inserted);
+
+			if (node.right.priority > node.priority) {
+
+				node = rotateLeft(node);
+			}
+		}
+
+		update(node);
+
+		return node;
+	}
+
+	private Node<T> delete(Node<T> node, Node<T> deleted) {
+
+		if (node == null) {
+
+			return null;
+		}
+
+		if (node == deleted) {
+
+			return merge(node.left, node.right);
+		}
+
+		if (compare(deleted, node) < 0) {
+
+			node.left = delete(node.left, deleted);
+
+		} else {
+
+			node.right = delete(node.right, deleted);
+		}
+
+		update(node);
+
+		return node;
+	}
+
+	private Node<T> merge(Node<T> left, Node<T> right) {
+
+		if (left == null) {
+
+			return right;
+		}
+
+		if (right == null) {
+
+			return left;
+		}
+
+		if (left.priority > right.priority) {
+
+			left.right = merge(left.right, right);
+
+			update(left);
+
+			return left;
+		}
+
+		right.left = merge(left, right.left);
+
+		update(right);
+
+		return right;
+	}
+
+	private Node<T> rotateRight(Node<T> node) {
+
+		Node<T> left = node.left;
+
+		node.left = left.right;
+
+		left.right = node;
+
+		update(node);
+
+		update(left);
+
+		return left;
+	}
+
+	private Node<T> rotateLeft(Node<T> node) {
+
+		Node<T> right = node.right;
+
+		node.right = right.left;
+
+		right.left = node;
+
+		update(node);
+
+		update(right);
+
+		return right;
+	}
+
+	private static <T> void update(Node<T> node) {
+
+		long maximumFinish = node.finish;
+
+		if (node.left != null) {
+
+			maximumFinish = Math.max(maximumFinish, node.left.maximumFinish);
+		}
+
+		if (node.right != null) {
+
+			maximumFinish = Math.max(maximumFinish, node.right.maximumFinish);
+		}
+
+		node.maximumFinish = maximumFinish;
+	}
+
+	private static <T> int compare(Node<T> first, Node<T> second) {
+
+		int comparison = Long.compare(first.start, second.start);
+
+		return comparison != 0 ? comparison : Long.compare(first.id, second.id);
+	}
+
+	@FunctionalInterface
+	public interface IntervalConsumer<T> {
+
+		void accept(long start, long finish, T value);
+	}
+
+	private static final class Node<T> {
+
+		private final long id;
+
+		private final long start;
+
+		private final long finish;
+
+		private final T value;
+
+		private final int priority;
+
+		private long maximumFinish;
+
+		private Node<T> left;
+
+		private Node<T> right;
+
+		private Node(long id, long start, long finish, T value, int priority) {
+
+			this.id = id;
+
+			this.start = start;
+
+			this.finish = finish;
+
+			this.value = value;
+
+			this.priority = priority;
+
+			this.maximumFinish = finish;
+		}
+	}
+}
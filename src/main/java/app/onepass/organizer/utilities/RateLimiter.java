@@ -0,0 +1,74 @@
+package app.onepass.organizer.utilities;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Keyed token buckets implemented with the generic cell rate algorithm. Each bucket is a single theoretical arrival
+ * time updated with compare-and-set, and buckets live in a concurrent map whose reads never lock, so callers only
+ * contend when they share a key. A bucket that has refilled completely is equivalent to one that does not exist,
+ * which lets {@link #evictIdle(long)} drop it.
+ */
+public class RateLimiter {
+
+	private final ConcurrentHashMap<Long, AtomicLong> theoreticalArrivalTimes = new ConcurrentHashMap<>();
+
+	/**
+	 * Takes one token from the bucket of the key. Returns 0 when the token was taken, or else the number of
+	 * nanoseconds until one will be available.
+	 *
+	 * @param emissionIntervalNanos nanoseconds it takes to refill one token
+	 * @param burst                 number of tokens in a full bucket
+	 */
+	public long tryAcquire(long key, long nowNanos, long emissionIntervalNanos, int burst) {
+
+		AtomicLong theoreticalArrivalTime = theoreticalArrivalTimes.get(key);
+
+		if (theoreticalArrivalTime == null) {
+
+			theoreticalArrivalTime = new AtomicLong(nowNanos);
+
+			AtomicLong existing = theoreticalArrivalTimes.putIfAbsent(key, theoreticalArrivalTime);
+
+			if (existing != null) {
+
+				theoreticalArrivalTime = existing;
+			}
+		}
+
+		long burstTolerance = emissionIntervalNanos * (burst - 1);
+
+		while (true) {
+
+			long current = theoreticalArrivalTime.get();
+
+			long arrival = current - nowNanos > 0 ? current : nowNanos;
+
+			long waitNanos = arrival - burstTolerance - nowNanos;
+
+			if (waitNanos > 0) {
+
+				return waitNanos;
+			}
+
+			if (theoreticalArrivalTime.compareAndSet(current, arrival + emissionIntervalNanos)) {
+
+				return 0;
+			}
+		}
+	}
+
+	/**
+	 * Removes the buckets that have refilled completely. A call racing with the removal may update a bucket that is
+	 * no longer in the map, which at worst grants the key one extra token.
+	 */
+	public void evictIdle(long nowNanos) {
+
+		theoreticalArrivalTimes.entrySet().removeIf(entry -> entry.getValue().get() - nowNanos <= 0);
+	}
+
+	public int size() {
+
+		return theoreticalArrivalTimes.size();
+	}
+}
@@ -0,0 +1,105 @@
+package app.onepass.organizer.utilities;
+
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Runs tasks one at a time and in submission order on a shared executor, holding a thread of it only while tasks
+ * are queued. Submitting must not happen concurrently, which holds for the callbacks of a single gRPC call.
+ */
+public class SerialExecutor implements Executor {
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(SerialExecutor.class);
+
+	private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+
+	private final AtomicBoolean isScheduled = new AtomicBoolean();
+
+	private final Executor executor;
+
+	public SerialExecutor(Executor executor) {
+
+		this.executor = executor;
+	}
+
+	/**
+	 * Queues the task. Throws {@link RejectedExecutionException}, without queueing it, when the shared executor
+	 * refuses to run the queue.
+	 */
+	@Override
+	public void execute(Runnable task) {
+
+		tasks.add(task);
+
+		if (!isScheduled.compareAndSet(false, true)) {
+
+			return;
+		}
+
+		try {
+
+			executor.execute(this::drain);
+
+		} catch (RejectedExecutionException exception) {
+
+			// Nothing was running, so the task just added is the only one queued.
+			tasks.clear();
+
+			isScheduled.set(false);
+
+			throw exception;
+		}
+	}
+
+	/**
+	 * Queues the task like {@link #execute}, but never rejects it. If the shared executor refuses to run the queue,
+	 * the queue runs on the overflow executor instead, still in order and one task at a time.
+	 */
+	public void executeOrOverflow(Runnable task, Executor overflowExecutor) {
+
+		tasks.add(task);
+
+		if (!isScheduled.compareAndSet(false, true)) {
+
+			return;
+		}
+
+		try {
+
+			executor.execute(this::drain);
+
+		} catch (RejectedExecutionException exception) {
+
+			overflowExecutor.execute(this::drain);
+		}
+	}
+
+	private void drain() {
+
+		do {
+
+			Runnable task;
+
+			while ((task = tasks.poll()) != null) {
+
+				try {
+
+					task.run();
+
+				} catch (RuntimeException exception) {
+
+					LOGGER.warn("A serially executed task failed.", exception);
+				}
+			}
+
+			isScheduled.set(false);
+
+		} while (!tasks.isEmpty() && isScheduled.compareAndSet(false, true));
+	}
+}
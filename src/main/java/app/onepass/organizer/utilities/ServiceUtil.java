@@ -1,6 +1,8 @@
 package app.onepass.organizer.utilities;
 
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import com.google.protobuf.Empty;
 
@@ -11,11 +13,15 @@ import app.onepass.organizer.entities.EventEntity;
 import app.onepass.organizer.messages.BaseMessage;
 import app.onepass.organizer.repositories.EventRepository;
 import app.onepass.organizer.services.AccountService;
+import io.grpc.Metadata;
 import io.grpc.Status;
 import io.grpc.stub.StreamObserver;
 
 public class ServiceUtil {
 
+	public static final Metadata.Key<String> CURRENT_VERSION_HEADER = Metadata.Key.of("current-version",
+			Metadata.ASCII_STRING_MARSHALLER);
+
 	@Deprecated
 	public static <M extends BaseMessage<M, E>, E extends BaseEntity<M, E>> boolean saveEntity(BaseMessage<M, E> message,
 			JpaRepository<E, Integer> repository) {
@@ -52,6 +58,24 @@ public class ServiceUtil {
 		responseObserver.onError(Status.INVALID_ARGUMENT.withDescription(description).asException());
 	}
 
+	public static <T> void returnFailedPreconditionError(StreamObserver<T> responseObserver, String description) {
+
+		responseObserver.onError(Status.FAILED_PRECONDITION.withDescription(description).asException());
+	}
+
+	/**
+	 * Fails an update that was based on an outdated version, telling the client which version to reload.
+	 */
+	public static <T> void returnVersionConflictError(StreamObserver<T> responseObserver, String objectName, long currentVersion) {
+
+		Metadata trailers = new Metadata();
+
+		trailers.put(CURRENT_VERSION_HEADER, Long.toString(currentVersion));
+
+		responseObserver.onError(Status.ABORTED.withDescription("The " + objectName + " was changed by another update. "
+				+ "Its current version is " + currentVersion + ".").asException(trailers));
+	}
+
 	public static <T> void returnPermissionDeniedError(StreamObserver<T> responseObserver) {
 
 		responseObserver.onError(
@@ -118,4 +142,23 @@ public class ServiceUtil {
 
 		return true;
 	}
+
+	public static void runAfterCommit(Runnable runnable) {
+
+		if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+
+			runnable.run();
+
+			return;
+		}
+
+		TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+
+			@Override
+			public void afterCommit() {
+
+				runnable.run();
+			}
+		});
+	}
 }
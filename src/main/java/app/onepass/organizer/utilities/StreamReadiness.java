@@ -0,0 +1,77 @@
+package app.onepass.organizer.utilities;
+
+import java.util.concurrent.TimeUnit;
+
+import io.grpc.Status;
+import io.grpc.stub.ServerCallStreamObserver;
+
+/**
+ * Lets a thread that writes a server stream sleep until the client can take more. It installs the call's on-ready
+ * and cancel handlers, so it has to be created before the handler returns, and the writing thread must not be the
+ * one the call's callbacks run on.
+ */
+public class StreamReadiness {
+
+	private final ServerCallStreamObserver<?> serverCallStreamObserver;
+
+	private final long timeoutNanos;
+
+	private final Object lock = new Object();
+
+	public StreamReadiness(ServerCallStreamObserver<?> serverCallStreamObserver, long timeoutMillis) {
+
+		this.serverCallStreamObserver = serverCallStreamObserver;
+
+		this.timeoutNanos = TimeUnit.MILLISECONDS.toNanos(timeoutMillis);
+
+		serverCallStreamObserver.setOnReadyHandler(this::signal);
+
+		serverCallStreamObserver.setOnCancelHandler(this::signal);
+	}
+
+	/**
+	 * Returns once the stream is ready. Fails with CANCELLED when the client cancels, and with DEADLINE_EXCEEDED when
+	 * the client has not read anything for the timeout.
+	 */
+	public void await() {
+
+		long deadline = System.nanoTime() + timeoutNanos;
+
+		synchronized (lock) {
+
+			while (!serverCallStreamObserver.isReady()) {
+
+				if (serverCallStreamObserver.isCancelled()) {
+
+					throw Status.CANCELLED.withDescription("The call was cancelled by the client.").asRuntimeException();
+				}
+
+				long remainingNanos = deadline - System.nanoTime();
+
+				if (remainingNanos <= 0) {
+
+					throw Status.DEADLINE_EXCEEDED.withDescription("The client stopped reading the stream.").asRuntimeException();
+				}
+
+				try {
+
+					TimeUnit.NANOSECONDS.timedWait(lock, remainingNanos);
+
+				} catch (InterruptedException exception) {
+
+					Thread.currentThread().interrupt();
+
+					throw Status.CANCELLED.withDescription("The call was interrupted.").asRuntimeException();
+				}
+			}
+		}
+	}
+
+	private void signal() {
+
+		synchronized (lock) {
+
+			lock.notifyAll();
+		}
+	}
+}
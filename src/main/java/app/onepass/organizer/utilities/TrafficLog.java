@@ -0,0 +1,211 @@
+package app.onepass.organizer.utilities;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.google.protobuf.CodedInputStream;
+import com.google.protobuf.CodedOutputStream;
+import com.google.protobuf.InvalidProtocolBufferException;
+
+/**
+ * Binary format of recorded traffic. After a short header, every record is
+ *
+ * <pre>
+ * varint   timestamp in microseconds since the epoch
+ * varint   method number
+ * [string  full method name, only the first time a method number appears]
+ * bytes    length-delimited serialized request
+ * </pre>
+ *
+ * Method names are numbered in the order they first appear, so a record usually costs a few bytes on top of the
+ * request itself.
+ */
+public class TrafficLog {
+
+	private static final byte[] HEADER = { 'O', 'P', 'T', 'L', 1 };
+
+	public static final class Record {
+
+		private final long timestampMicros;
+
+		private final String method;
+
+		private final byte[] request;
+
+		public Record(long timestampMicros, String method, byte[] request) {
+
+			this.timestampMicros = timestampMicros;
+
+			this.method = method;
+
+			this.request = request;
+		}
+
+		public long getTimestampMicros() {
+
+			return timestampMicros;
+		}
+
+		public String getMethod() {
+
+			return method;
+		}
+
+		public byte[] getRequest() {
+
+			return request;
+		}
+	}
+
+	public static final class Writer implements Closeable {
+
+		private final OutputStream outputStream;
+
+		private final CodedOutputStream codedOutputStream;
+
+		private final Map<String, Integer> methodNumbers = new HashMap<>();
+
+		public Writer(OutputStream outputStream) throws IOException {
+
+			this.outputStream = new BufferedOutputStream(outputStream, 64 * 1024);
+
+			this.outputStream.write(HEADER);
+
+			codedOutputStream = CodedOutputStream.newInstance(this.outputStream, 8 * 1024);
+		}
+
+		public void write(Record record) throws IOException {
+
+			Integer methodNumber = methodNumbers.get(record.method);
+
+			if (methodNumber == null) {
+
+				methodNumber = methodNumbers.size();
+
+				methodNumbers.put(record.method, methodNumber);
+
+				codedOutputStream.writeUInt64NoTag(record.timestampMicros);
+
+				codedOutputStream.writeUInt32NoTag(methodNumber);
+
+				codedOutputStream.writeStringNoTag(record.method);
+
+			} else {
+
+				codedOutputStream.writeUInt64NoTag(record.timestampMicros);
+
+				codedOutputStream.writeUInt32NoTag(methodNumber);
+			}
+
+			codedOutputStream.writeByteArrayNoTag(record.request);
+		}
+
+		public void flush() throws IOException {
+
+			codedOutputStream.flush();
+
+			outputStream.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			flush();
+
+			outputStream.close();
+		}
+	}
+
+	public static final class Reader implements Closeable {
+
+		private final InputStream inputStream;
+
+		private final CodedInputStream codedInputStream;
+
+		private final List<String> methods = new ArrayList<>();
+
+		public Reader(InputStream inputStream) throws IOException {
+
+			this.inputStream = new BufferedInputStream(inputStream, 64 * 1024);
+
+			byte[] header = new byte[HEADER.length];
+
+			int read = 0;
+
+			while (read < header.length) {
+
+				int count = this.inputStream.read(header, read, header.length - read);
+
+				if (count < 0) {
+
+					throw new EOFException("The traffic log is truncated.");
+				}
+
+				read += count;
+			}
+
+			if (!Arrays.equals(header, HEADER)) {
+
+				throw new IOException("The file is not a traffic log of a supported version.");
+			}
+
+			codedInputStream = CodedInputStream.newInstance(this.inputStream);
+
+			codedInputStream.setSizeLimit(Integer.MAX_VALUE);
+		}
+
+		/**
+		 * Returns the next record, or null at the end of the log. A record cut off by a crash ends the log.
+		 */
+		public Record read() throws IOException {
+
+			if (codedInputStream.isAtEnd()) {
+
+				return null;
+			}
+
+			try {
+
+				long timestampMicros = codedInputStream.readUInt64();
+
+				int methodNumber = codedInputStream.readUInt32();
+
+				if (methodNumber == methods.size()) {
+
+					methods.add(codedInputStream.readString());
+
+				} else if (methodNumber > methods.size()) {
+
+					throw new IOException("The traffic log is corrupt.");
+				}
+
+				byte[] request = codedInputStream.readByteArray();
+
+				// Keeps the size counter from reaching the limit on long logs.
+				codedInputStream.resetSizeCounter();
+
+				return new Record(timestampMicros, methods.get(methodNumber), request);
+
+			} catch (InvalidProtocolBufferException exception) {
+
+				return null;
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+
+			inputStream.close();
+		}
+	}
+}
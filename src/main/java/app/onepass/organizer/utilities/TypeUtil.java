@@ -70,6 +70,8 @@ public class TypeUtil {
 
 	public static com.google.protobuf.Timestamp toProtobufTimestamp(java.sql.Timestamp timestamp) {
 
-		return com.google.protobuf.Timestamp.newBuilder().setSeconds(timestamp.getTime()).setNanos(timestamp.getNanos()).build();
+		Instant instant = timestamp.toInstant();
+
+		return com.google.protobuf.Timestamp.newBuilder().setSeconds(instant.getEpochSecond()).setNanos(instant.getNano()).build();
 	}
 }
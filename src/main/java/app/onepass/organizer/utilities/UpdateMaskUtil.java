@@ -0,0 +1,57 @@
+package app.onepass.organizer.utilities;
+
+import java.util.Arrays;
+import java.util.List;
+
+import com.google.protobuf.Descriptors;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Message;
+
+public class UpdateMaskUtil {
+
+	/**
+	 * The ID selects the object to update, and the version is a precondition checked against the stored one, so
+	 * neither can be changed through a mask.
+	 */
+	private static final List<String> PROTECTED_PATHS = Arrays.asList("id", "version");
+
+	/**
+	 * Copies the fields named in the mask from the update onto the stored message and keeps every other field as
+	 * stored. A named field the update leaves unset is cleared. Paths are top-level field names as written in the
+	 * proto file, such as {@code registration_due_date}.
+	 *
+	 * @throws IllegalArgumentException if a path names no field of the message, or names the ID or the version
+	 */
+	@SuppressWarnings("unchecked")
+	public static <M extends Message> M apply(FieldMask updateMask, M update, M stored) {
+
+		Message.Builder builder = stored.toBuilder();
+
+		for (String path : updateMask.getPathsList()) {
+
+			if (PROTECTED_PATHS.contains(path)) {
+
+				throw new IllegalArgumentException("The update mask cannot name " + path + ".");
+			}
+
+			Descriptors.FieldDescriptor field = stored.getDescriptorForType().findFieldByName(path);
+
+			if (field == null) {
+
+				throw new IllegalArgumentException("The update mask names an unknown field: " + path + ".");
+			}
+
+			if (!field.isRepeated() && field.getJavaType() == Descriptors.FieldDescriptor.JavaType.MESSAGE
+					&& !update.hasField(field)) {
+
+				builder.clearField(field);
+
+			} else {
+
+				builder.setField(field, update.getField(field));
+			}
+		}
+
+		return (M) builder.build();
+	}
+}
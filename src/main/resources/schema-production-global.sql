@@ -0,0 +1,30 @@
+-- Tables of the global database that the production profile validates but the migrations repository does not
+-- create yet. Every statement can be run again. Run it against the database configured by the POSTGRES_* variables.
+
+CREATE TABLE IF NOT EXISTS idempotency_record (
+	idempotency_key varchar(255) PRIMARY KEY,
+	request_digest bytea,
+	-- Null while the request that claimed the key is still running.
+	response bytea,
+	created_at timestamp
+);
+
+ALTER TABLE idempotency_record ALTER COLUMN response DROP NOT NULL;
+
+-- Expired records are deleted by creation time.
+CREATE INDEX IF NOT EXISTS idempotency_record_created_at_idx ON idempotency_record (created_at);
+
+CREATE TABLE IF NOT EXISTS organization_shard (
+	organization_id integer PRIMARY KEY,
+	shard integer NOT NULL,
+	moving boolean NOT NULL
+);
+
+CREATE TABLE IF NOT EXISTS change_feed_position (
+	id integer PRIMARY KEY,
+	position bigint NOT NULL
+);
+
+INSERT INTO change_feed_position (id, position) VALUES (1, 0) ON CONFLICT DO NOTHING;
+
+ALTER TABLE location ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
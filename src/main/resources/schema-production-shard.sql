@@ -0,0 +1,43 @@
+-- Columns and indexes of the organization tables that the production profile validates or relies on but the
+-- migrations repository does not create yet. Every statement can be run again. Run it against every database listed
+-- in ORGANIZATION_SHARD_URLS, or against the global database when no shards are listed.
+
+ALTER TABLE organization ADD COLUMN IF NOT EXISTS deleted_at timestamp;
+
+ALTER TABLE organization ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+
+ALTER TABLE event ADD COLUMN IF NOT EXISTS deleted_at timestamp;
+
+ALTER TABLE event ADD COLUMN IF NOT EXISTS version bigint NOT NULL DEFAULT 0;
+
+-- Seats taken by approved and attended registrations. Recounting is safe to repeat while no instance is running.
+ALTER TABLE event ADD COLUMN IF NOT EXISTS approved_count integer NOT NULL DEFAULT 0;
+
+UPDATE event SET approved_count = (SELECT COUNT(*) FROM user_event
+	WHERE user_event.event_id = event.id AND user_event.status IN ('APPROVED', 'ATTENDED'));
+
+CREATE TABLE IF NOT EXISTS event_duration (
+	id serial PRIMARY KEY,
+	event_id integer NOT NULL,
+	start timestamp NOT NULL,
+	finish timestamp NOT NULL
+);
+
+-- Events of an organization are listed and removed together.
+CREATE INDEX IF NOT EXISTS event_organization_id_idx ON event (organization_id);
+
+-- Location conflicts are checked among the events at one location.
+CREATE INDEX IF NOT EXISTS event_location_id_idx ON event (location_id);
+
+-- Registrations are closed by the due date.
+CREATE INDEX IF NOT EXISTS event_registration_due_date_idx ON event (registration_due_date);
+
+CREATE INDEX IF NOT EXISTS event_duration_event_id_idx ON event_duration (event_id);
+
+-- Attendees are counted, exported and rejected per event and status.
+CREATE INDEX IF NOT EXISTS user_event_event_id_status_idx ON user_event (event_id, status);
+
+-- Answer aggregates are rebuilt per question, and exports join answers to registrations.
+CREATE INDEX IF NOT EXISTS answer_question_id_idx ON answer (question_id);
+
+CREATE INDEX IF NOT EXISTS answer_user_event_id_idx ON answer (user_event_id);
@@ -0,0 +1,119 @@
+package app.onepass.organizer;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import com.google.protobuf.Empty;
+
+import app.onepass.apis.OrganizerServiceGrpc;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.StatusRuntimeException;
+
+/**
+ * Starts the given command repeatedly and reports the time from process start until the first {@code ping} that
+ * returns true. Each run waits for the previous process to exit before the next one starts.
+ *
+ * <pre>
+ * java -Dbenchmark.target=localhost:50051 -Dbenchmark.runs=5 app.onepass.organizer.StartupBenchmark java -jar target/organizer-app.jar
+ * </pre>
+ */
+public class StartupBenchmark {
+
+	private static final long POLL_INTERVAL_MILLIS = 10;
+
+	private static final long RUN_TIMEOUT_MILLIS = TimeUnit.MINUTES.toMillis(2);
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length == 0) {
+
+			System.err.println("Usage: StartupBenchmark <command> [arguments...]");
+
+			System.exit(2);
+		}
+
+		String target = System.getProperty("benchmark.target", "localhost:50051");
+
+		int runs = Integer.getInteger("benchmark.runs", 5);
+
+		File log = new File(System.getProperty("benchmark.log", "target/startup-benchmark.log"));
+
+		List<Long> elapsedMillis = new ArrayList<>();
+
+		for (int run = 1; run <= runs; run++) {
+
+			long elapsed = measure(Arrays.asList(args), target, log);
+
+			elapsedMillis.add(elapsed);
+
+			System.out.printf("run %d: %d ms%n", run, elapsed);
+		}
+
+		Collections.sort(elapsedMillis);
+
+		System.out.printf("min %d ms, median %d ms, max %d ms%n", elapsedMillis.get(0),
+				elapsedMillis.get(elapsedMillis.size() / 2), elapsedMillis.get(elapsedMillis.size() - 1));
+	}
+
+	private static long measure(List<String> command, String target, File log) throws Exception {
+
+		ManagedChannel channel = ManagedChannelBuilder.forTarget(target).usePlaintext().build();
+
+		OrganizerServiceGrpc.OrganizerServiceBlockingStub stub = OrganizerServiceGrpc.newBlockingStub(channel);
+
+		long start = System.nanoTime();
+
+		Process process = new ProcessBuilder(command)
+				.redirectErrorStream(true)
+				.redirectOutput(ProcessBuilder.Redirect.appendTo(log))
+				.start();
+
+		try {
+
+			while (true) {
+
+				long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+
+				if (!process.isAlive()) {
+
+					throw new IllegalStateException("The application exited with code " + process.exitValue() + ", see " + log);
+				}
+
+				if (elapsed > RUN_TIMEOUT_MILLIS) {
+
+					throw new IllegalStateException("The application did not become ready within " + RUN_TIMEOUT_MILLIS + " ms.");
+				}
+
+				try {
+
+					if (stub.withDeadlineAfter(1, TimeUnit.SECONDS).ping(Empty.getDefaultInstance()).getValue()) {
+
+						return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+					}
+
+				} catch (StatusRuntimeException exception) {
+
+					// The port is not open yet.
+				}
+
+				Thread.sleep(POLL_INTERVAL_MILLIS);
+			}
+
+		} finally {
+
+			channel.shutdownNow();
+
+			process.destroy();
+
+			if (!process.waitFor(30, TimeUnit.SECONDS)) {
+
+				process.destroyForcibly().waitFor();
+			}
+		}
+	}
+}
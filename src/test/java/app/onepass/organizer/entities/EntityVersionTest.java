@@ -0,0 +1,153 @@
+package app.onepass.organizer.entities;
+
+import java.util.function.Function;
+
+import javax.persistence.OptimisticLockException;
+
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.StaleStateException;
+import org.hibernate.Transaction;
+import org.hibernate.cfg.AvailableSettings;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.H2Dialect;
+import org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy;
+
+import junit.framework.TestCase;
+
+public class EntityVersionTest extends TestCase {
+
+	private SessionFactory sessionFactory;
+
+	@Override
+	protected void setUp() {
+
+		sessionFactory = new Configuration()
+				.addAnnotatedClass(EventEntity.class)
+				.setPhysicalNamingStrategy(new SpringPhysicalNamingStrategy())
+				.setProperty(AvailableSettings.URL, "jdbc:h2:mem:" + getName() + ";DB_CLOSE_DELAY=-1")
+				.setProperty(AvailableSettings.DIALECT, H2Dialect.class.getName())
+				.setProperty(AvailableSettings.HBM2DDL_AUTO, "create-drop")
+				.setProperty(AvailableSettings.JPA_VALIDATION_MODE, "none")
+				.buildSessionFactory();
+	}
+
+	@Override
+	protected void tearDown() {
+
+		sessionFactory.close();
+	}
+
+	public void testUpdatesRowInsertedWithoutVersion() {
+
+		int eventId = insertWithoutVersion();
+
+		EventEntity storedEntity = inTransaction(session -> session.get(EventEntity.class, eventId));
+
+		assertEquals(0, storedEntity.getVersion());
+
+		EventEntity savedEntity = inTransaction(session -> (EventEntity) session.merge(renamed(eventId, storedEntity.getVersion())));
+
+		assertEquals(1, savedEntity.getVersion());
+		assertEquals(1, countEvents());
+		assertEquals("Renamed", inTransaction(session -> session.get(EventEntity.class, eventId)).getName());
+	}
+
+	public void testStaleVersionIsRejected() {
+
+		int eventId = insertWithoutVersion();
+
+		inTransaction(session -> session.merge(renamed(eventId, 0)));
+
+		try {
+
+			inTransaction(session -> session.merge(renamed(eventId, 0)));
+
+			fail("An update based on version 0 should not overwrite version 1.");
+
+		} catch (RuntimeException exception) {
+
+			assertTrue(isOptimisticLockFailure(exception));
+		}
+
+		assertEquals(1, inTransaction(session -> session.get(EventEntity.class, eventId)).getVersion());
+	}
+
+	public void testNewEntityStartsAtVersionZero() {
+
+		EventEntity savedEntity = inTransaction(session -> (EventEntity) session.merge(renamed(0, 0)));
+
+		assertTrue(savedEntity.getId() != 0);
+		assertEquals(0, savedEntity.getVersion());
+		assertEquals(1, countEvents());
+	}
+
+	/**
+	 * Inserts an event the way the bulk import and older schemas do, leaving the version to the column default.
+	 */
+	private int insertWithoutVersion() {
+
+		return inTransaction(session -> {
+
+			session.createNativeQuery("INSERT INTO event (organization_id, description, name, attendee_limit) "
+					+ "VALUES (1, 'Description', 'Event', 0)").executeUpdate();
+
+			return ((Number) session.createNativeQuery("SELECT MAX(id) FROM event").getSingleResult()).intValue();
+		});
+	}
+
+	private long countEvents() {
+
+		return inTransaction(session -> ((Number) session.createNativeQuery("SELECT COUNT(*) FROM event").getSingleResult()).longValue());
+	}
+
+	private static EventEntity renamed(int eventId, long version) {
+
+		return EventEntity.builder()
+				.id(eventId)
+				.organizationId(1)
+				.description("Description")
+				.name("Renamed")
+				.version(version)
+				.build();
+	}
+
+	private <T> T inTransaction(Function<Session, T> work) {
+
+		try (Session session = sessionFactory.openSession()) {
+
+			Transaction transaction = session.beginTransaction();
+
+			try {
+
+				T result = work.apply(session);
+
+				transaction.commit();
+
+				return result;
+
+			} catch (RuntimeException exception) {
+
+				if (transaction.isActive()) {
+
+					transaction.rollback();
+				}
+
+				throw exception;
+			}
+		}
+	}
+
+	private static boolean isOptimisticLockFailure(Throwable exception) {
+
+		for (Throwable cause = exception; cause != null; cause = cause.getCause()) {
+
+			if (cause instanceof OptimisticLockException || cause instanceof StaleStateException) {
+
+				return true;
+			}
+		}
+
+		return false;
+	}
+}
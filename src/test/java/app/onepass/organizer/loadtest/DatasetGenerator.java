@@ -0,0 +1,707 @@
+package app.onepass.organizer.loadtest;
+
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Generates a large, skewed data set with plain JDBC batch inserts. At scale 1 it writes 10k organizations, 1M
+ * users, 100k events, 5M registrations and about 50M answers. Organization sizes, events per organization and
+ * registrations per event follow Zipf distributions, so a few organizations and events are much larger than the
+ * rest.
+ *
+ * <p>The output depends only on the seed and the scale. Every table draws from its own random source, IDs are
+ * assigned explicitly, and timestamps are relative to a fixed base time instead of the current time. The
+ * identity sequences are moved past the generated IDs at the end so the application can keep inserting.
+ *
+ * <pre>
+ * java -Ddataset.url=jdbc:postgresql://localhost:5432/hts -Ddataset.user=... -Ddataset.password=... \
+ *     -Ddataset.scale=0.1 -Ddataset.seed=1 app.onepass.organizer.loadtest.DatasetGenerator
+ * </pre>
+ */
+public class DatasetGenerator {
+
+	public static final Instant BASE_TIME = Instant.parse("2026-01-01T00:00:00Z");
+
+	/**
+	 * Rows per JDBC batch, and per transaction.
+	 */
+	private static final int BATCH_SIZE = 5000;
+
+	private static final double ZIPF_EXPONENT = 1.1;
+
+	private static final String[] STATUSES = { "APPROVED", "APPROVED", "APPROVED", "APPROVED", "APPROVED", "APPROVED",
+			"PENDING", "PENDING", "REJECTED", "ATTENDED" };
+
+	private static final String[] WORDS = { "great", "fun", "too long", "well organized", "crowded", "informative",
+			"would join again", "needs more food", "friendly staff", "good location" };
+
+	private final Connection connection;
+
+	private final long seed;
+
+	private final int organizationCount;
+
+	private final int userCount;
+
+	private final int membershipCount;
+
+	private final int locationCount;
+
+	private final int tagCount;
+
+	private final int eventCount;
+
+	private final int registrationCount;
+
+	private int[] firstQuestionIdByEvent;
+
+	private int[] questionCountByEvent;
+
+	private boolean[] isScaleQuestion;
+
+	public DatasetGenerator(Connection connection, long seed, double scale) {
+
+		this.connection = connection;
+
+		this.seed = seed;
+
+		organizationCount = scaled(10_000, scale);
+
+		userCount = scaled(1_000_000, scale);
+
+		membershipCount = scaled(200_000, scale);
+
+		locationCount = scaled(1_000, scale);
+
+		tagCount = scaled(200, scale);
+
+		eventCount = scaled(100_000, scale);
+
+		registrationCount = scaled(5_000_000, scale);
+	}
+
+	public static void main(String[] args) throws SQLException {
+
+		String url = System.getProperty("dataset.url", String.format("jdbc:postgresql://%s:%s/%s", System.getenv("POSTGRES_HOST"),
+				System.getenv("POSTGRES_PORT"), System.getenv("POSTGRES_DB")));
+
+		if (url.startsWith("jdbc:postgresql:") && !url.contains("stringtype=")) {
+
+			// Status, gender and answer type are enum columns in the real schema.
+			url += (url.contains("?") ? "&" : "?") + "stringtype=unspecified&reWriteBatchedInserts=true";
+		}
+
+		try (Connection connection = DriverManager.getConnection(url, System.getProperty("dataset.user", System.getenv("POSTGRES_USER")),
+				System.getProperty("dataset.password", System.getenv("POSTGRES_PASSWORD")))) {
+
+			new DatasetGenerator(connection, Long.getLong("dataset.seed", 1),
+					Double.parseDouble(System.getProperty("dataset.scale", "1"))).generate();
+		}
+	}
+
+	/**
+	 * Commits every {@code BATCH_SIZE} rows, so the server never holds one transaction of tens of millions of rows.
+	 * On failure the batch in progress is rolled back and the committed batches stay, so the tables have to be
+	 * emptied before running again.
+	 */
+	public void generate() throws SQLException {
+
+		boolean wasAutoCommit = connection.getAutoCommit();
+
+		connection.setAutoCommit(false);
+
+		try {
+
+			long start = System.nanoTime();
+
+			insertOrganizations();
+
+			insertUsers();
+
+			insertMemberships();
+
+			insertLocations();
+
+			insertTags();
+
+			insertEvents();
+
+			insertQuestions();
+
+			insertRegistrationsAndAnswers();
+
+			countApprovedRegistrations();
+
+			restartIdentities();
+
+			connection.commit();
+
+			System.out.printf("generated data set in %d s%n", TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start));
+
+		} catch (SQLException | RuntimeException exception) {
+
+			try {
+
+				connection.rollback();
+
+			} catch (SQLException rollbackException) {
+
+				exception.addSuppressed(rollbackException);
+			}
+
+			throw exception;
+
+		} finally {
+
+			connection.setAutoCommit(wasAutoCommit);
+		}
+	}
+
+	private void insertOrganizations() throws SQLException {
+
+		try (BatchInserter inserter = new BatchInserter("organization",
+				"INSERT INTO organization (id, name, is_verified, description, version) VALUES (?, ?, ?, ?, 0)")) {
+
+			Random random = random(1);
+
+			for (int id = 1; id <= organizationCount; id++) {
+
+				inserter.statement.setInt(1, id);
+
+				inserter.statement.setString(2, "Organization " + id);
+
+				inserter.statement.setBoolean(3, random.nextInt(10) == 0);
+
+				inserter.statement.setString(4, "Generated organization " + id);
+
+				inserter.add();
+			}
+		}
+	}
+
+	private void insertUsers() throws SQLException {
+
+		try (BatchInserter inserter = new BatchInserter("user",
+				"INSERT INTO \"user\" (id, first_name, last_name, email, gender, is_chula_student, did_setup) VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+
+			Random random = random(2);
+
+			for (int id = 1; id <= userCount; id++) {
+
+				inserter.statement.setInt(1, id);
+
+				inserter.statement.setString(2, "First" + id);
+
+				inserter.statement.setString(3, "Last" + id);
+
+				inserter.statement.setString(4, "user" + id + "@example.com");
+
+				inserter.statement.setString(5, random.nextInt(20) == 0 ? "NS" : random.nextBoolean() ? "M" : "F");
+
+				inserter.statement.setBoolean(6, random.nextInt(3) > 0);
+
+				inserter.statement.setBoolean(7, true);
+
+				inserter.add();
+			}
+		}
+	}
+
+	/**
+	 * Each organization gets a Zipf-distributed number of members. Members of one organization are distinct
+	 * because they are taken with a stride that is coprime to the number of users.
+	 */
+	private void insertMemberships() throws SQLException {
+
+		Random random = random(3);
+
+		int[] memberCounts = distribute(membershipCount, organizationCount, random);
+
+		try (BatchInserter inserter = new BatchInserter("user_organization",
+				"INSERT INTO user_organization (id, user_id, organization_id) VALUES (?, ?, ?)")) {
+
+			int id = 1;
+
+			for (int organization = 0; organization < organizationCount; organization++) {
+
+				int count = Math.min(memberCounts[organization], userCount);
+
+				long base = random.nextInt(userCount);
+
+				long stride = coprimeStride(userCount, random);
+
+				for (int member = 0; member < count; member++) {
+
+					inserter.statement.setInt(1, id++);
+
+					inserter.statement.setInt(2, (int) ((base + member * stride) % userCount) + 1);
+
+					inserter.statement.setInt(3, organization + 1);
+
+					inserter.add();
+				}
+			}
+		}
+	}
+
+	private void insertLocations() throws SQLException {
+
+		try (BatchInserter inserter = new BatchInserter("location",
+				"INSERT INTO location (id, name, google_map_url, is_online, version) VALUES (?, ?, ?, ?, 0)")) {
+
+			for (int id = 1; id <= locationCount; id++) {
+
+				inserter.statement.setInt(1, id);
+
+				inserter.statement.setString(2, "Location " + id);
+
+				inserter.statement.setString(3, "https://maps.example.com/" + id);
+
+				inserter.statement.setBoolean(4, id % 10 == 0);
+
+				inserter.add();
+			}
+		}
+	}
+
+	private void insertTags() throws SQLException {
+
+		try (BatchInserter inserter = new BatchInserter("tag", "INSERT INTO tag (id, name) VALUES (?, ?)")) {
+
+			for (int id = 1; id <= tagCount; id++) {
+
+				inserter.statement.setInt(1, id);
+
+				inserter.statement.setString(2, "Tag " + id);
+
+				inserter.add();
+			}
+		}
+	}
+
+	/**
+	 * Events are spread over organizations with a Zipf distribution and each gets one to three durations within a
+	 * year around the base time.
+	 */
+	private void insertEvents() throws SQLException {
+
+		Random random = random(4);
+
+		ZipfDistribution organizations = new ZipfDistribution(organizationCount, random);
+
+		long baseMillis = BASE_TIME.toEpochMilli();
+
+		try (BatchInserter eventInserter = new BatchInserter("event",
+				"INSERT INTO event (id, organization_id, location_id, name, description, attendee_limit, version) "
+						+ "VALUES (?, ?, ?, ?, ?, ?, 0)");
+				BatchInserter durationInserter = new BatchInserter("event_duration",
+						"INSERT INTO event_duration (id, event_id, start, finish) VALUES (?, ?, ?, ?)")) {
+
+			int durationId = 1;
+
+			for (int id = 1; id <= eventCount; id++) {
+
+				eventInserter.statement.setInt(1, id);
+
+				eventInserter.statement.setInt(2, organizations.sample(random));
+
+				eventInserter.statement.setInt(3, random.nextInt(locationCount) + 1);
+
+				eventInserter.statement.setString(4, "Event " + id);
+
+				eventInserter.statement.setString(5, "Generated event " + id);
+
+				eventInserter.statement.setInt(6, random.nextInt(4) == 0 ? 0 : 50 * (1 + random.nextInt(20)));
+
+				eventInserter.add();
+
+				long start = baseMillis + TimeUnit.HOURS.toMillis(random.nextInt(24 * 365) - 24 * 182);
+
+				for (int duration = 0, durations = 1 + random.nextInt(3); duration < durations; duration++) {
+
+					long finish = start + TimeUnit.HOURS.toMillis(1 + random.nextInt(6));
+
+					durationInserter.statement.setInt(1, durationId++);
+
+					durationInserter.statement.setInt(2, id);
+
+					durationInserter.statement.setTimestamp(3, new Timestamp(start));
+
+					durationInserter.statement.setTimestamp(4, new Timestamp(finish));
+
+					durationInserter.add();
+
+					start = finish + TimeUnit.DAYS.toMillis(1);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Every event gets a PRE_EVENT and a POST_EVENT question group with three to seven questions each, so each
+	 * registration answers ten questions on average.
+	 */
+	private void insertQuestions() throws SQLException {
+
+		Random random = random(5);
+
+		firstQuestionIdByEvent = new int[eventCount];
+
+		questionCountByEvent = new int[eventCount];
+
+		isScaleQuestion = new boolean[eventCount * 14 + 1];
+
+		try (BatchInserter groupInserter = new BatchInserter("question_group",
+				"INSERT INTO question_group (id, event_id, type, seq, title) VALUES (?, ?, ?, ?, ?)");
+				BatchInserter questionInserter = new BatchInserter("question",
+						"INSERT INTO question (id, question_group_id, seq, answer_type, is_optional, title, subtitle) "
+								+ "VALUES (?, ?, ?, ?, ?, ?, ?)")) {
+
+			int groupId = 1;
+
+			int questionId = 1;
+
+			for (int event = 0; event < eventCount; event++) {
+
+				firstQuestionIdByEvent[event] = questionId;
+
+				for (int seq = 1; seq <= 2; seq++, groupId++) {
+
+					groupInserter.statement.setInt(1, groupId);
+
+					groupInserter.statement.setInt(2, event + 1);
+
+					groupInserter.statement.setString(3, seq == 1 ? "PRE_EVENT" : "POST_EVENT");
+
+					groupInserter.statement.setInt(4, seq);
+
+					groupInserter.statement.setString(5, seq == 1 ? "Before the event" : "Feedback");
+
+					groupInserter.add();
+
+					for (int questionSeq = 1, questions = 3 + random.nextInt(5); questionSeq <= questions; questionSeq++) {
+
+						isScaleQuestion[questionId] = random.nextInt(10) < 7;
+
+						questionInserter.statement.setInt(1, questionId++);
+
+						questionInserter.statement.setInt(2, groupId);
+
+						questionInserter.statement.setInt(3, questionSeq);
+
+						questionInserter.statement.setString(4, isScaleQuestion[questionId - 1] ? "SCALE" : "TEXT");
+
+						questionInserter.statement.setBoolean(5, random.nextInt(4) == 0);
+
+						questionInserter.statement.setString(6, "Question " + questionSeq);
+
+						questionInserter.statement.setString(7, "");
+
+						questionInserter.add();
+					}
+				}
+
+				questionCountByEvent[event] = questionId - firstQuestionIdByEvent[event];
+			}
+
+		}
+	}
+
+	/**
+	 * Registrations per event follow a Zipf distribution. Approved and attended registrations answer every question
+	 * of their event, with scale answers skewed towards the top of the scale.
+	 */
+	private void insertRegistrationsAndAnswers() throws SQLException {
+
+		Random random = random(6);
+
+		int[] registrationCounts = distribute(registrationCount, eventCount, random);
+
+		try (BatchInserter registrationInserter = new BatchInserter("user_event",
+				"INSERT INTO user_event (id, user_id, event_id, ticket, status, is_internal) VALUES (?, ?, ?, ?, ?, ?)");
+				BatchInserter answerInserter = new BatchInserter("answer",
+						"INSERT INTO answer (id, user_event_id, question_id, value) VALUES (?, ?, ?, ?)")) {
+
+			int registrationId = 1;
+
+			long answerId = 1;
+
+			for (int event = 0; event < eventCount; event++) {
+
+				int count = Math.min(registrationCounts[event], userCount);
+
+				long base = random.nextInt(userCount);
+
+				long stride = coprimeStride(userCount, random);
+
+				for (int registration = 0; registration < count; registration++, registrationId++) {
+
+					String status = STATUSES[random.nextInt(STATUSES.length)];
+
+					boolean hasTicket = "APPROVED".equals(status) || "ATTENDED".equals(status);
+
+					registrationInserter.statement.setInt(1, registrationId);
+
+					registrationInserter.statement.setInt(2, (int) ((base + registration * stride) % userCount) + 1);
+
+					registrationInserter.statement.setInt(3, event + 1);
+
+					registrationInserter.statement.setString(4, hasTicket ? ticket(registrationId) : null);
+
+					registrationInserter.statement.setString(5, status);
+
+					registrationInserter.statement.setBoolean(6, random.nextInt(50) == 0);
+
+					registrationInserter.add();
+
+					if (!hasTicket) {
+
+						continue;
+					}
+
+					for (int question = 0; question < questionCountByEvent[event]; question++) {
+
+						int questionId = firstQuestionIdByEvent[event] + question;
+
+						answerInserter.statement.setLong(1, answerId++);
+
+						answerInserter.statement.setInt(2, registrationId);
+
+						answerInserter.statement.setInt(3, questionId);
+
+						answerInserter.statement.setString(4, isScaleQuestion[questionId] ?
+								String.valueOf(Math.max(1, 5 - (int) Math.abs(random.nextGaussian() * 1.2))) :
+								WORDS[random.nextInt(WORDS.length)]);
+
+						answerInserter.add();
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the seats taken by each event, which the service otherwise maintains as it approves registrations.
+	 */
+	private void countApprovedRegistrations() throws SQLException {
+
+		try (Statement statement = connection.createStatement()) {
+
+			statement.executeUpdate("UPDATE event SET approved_count = (SELECT COUNT(*) FROM user_event "
+					+ "WHERE user_event.event_id = event.id AND user_event.status IN ('APPROVED', 'ATTENDED'))");
+		}
+
+		System.out.println("event: approved counts done");
+	}
+
+	private void restartIdentities() throws SQLException {
+
+		String[] tables = { "organization", "\"user\"", "user_organization", "location", "tag", "event", "event_duration",
+				"question_group", "question", "user_event", "answer" };
+
+		DatabaseMetaData metaData = connection.getMetaData();
+
+		boolean isPostgres = metaData.getDatabaseProductName().toLowerCase().contains("postgres");
+
+		try (Statement statement = connection.createStatement()) {
+
+			for (String table : tables) {
+
+				if (isPostgres) {
+
+					statement.execute(String.format("SELECT setval(pg_get_serial_sequence('%s', 'id'), "
+							+ "COALESCE((SELECT MAX(id) FROM %s), 0) + 1, false)", table, table));
+
+				} else {
+
+					long nextId;
+
+					try (ResultSet resultSet = statement.executeQuery("SELECT COALESCE(MAX(id), 0) + 1 FROM " + table)) {
+
+						resultSet.next();
+
+						nextId = resultSet.getLong(1);
+					}
+
+					statement.execute(String.format("ALTER TABLE %s ALTER COLUMN id RESTART WITH %d", table, nextId));
+				}
+			}
+		}
+	}
+
+	private Random random(int stream) {
+
+		return new Random(seed * 1_000_003L + stream);
+	}
+
+	/**
+	 * Splits a total over the given number of buckets by drawing each unit from a Zipf distribution.
+	 */
+	private static int[] distribute(int total, int buckets, Random random) {
+
+		ZipfDistribution zipfDistribution = new ZipfDistribution(buckets, random);
+
+		int[] counts = new int[buckets];
+
+		for (int index = 0; index < total; index++) {
+
+			counts[zipfDistribution.sample(random) - 1]++;
+		}
+
+		return counts;
+	}
+
+	private static long coprimeStride(int modulus, Random random) {
+
+		while (true) {
+
+			long stride = 1 + random.nextInt(Math.max(1, modulus - 1));
+
+			if (gcd(stride, modulus) == 1) {
+
+				return stride;
+			}
+		}
+	}
+
+	private static long gcd(long first, long second) {
+
+		return second == 0 ? first : gcd(second, first % second);
+	}
+
+	private static String ticket(int registrationId) {
+
+		String ticket = Integer.toString(registrationId, 36).toUpperCase();
+
+		return ticket.length() >= 6 ? ticket : "000000".substring(ticket.length()) + ticket;
+	}
+
+	private static int scaled(int count, double scale) {
+
+		return Math.max(1, (int) Math.round(count * scale));
+	}
+
+	/**
+	 * Samples IDs from 1 to n with Zipf-distributed popularity. Ranks are shuffled onto IDs, so the most popular
+	 * items are not simply the lowest IDs.
+	 */
+	private static final class ZipfDistribution {
+
+		private final double[] cumulative;
+
+		private final int[] idByRank;
+
+		private ZipfDistribution(int n, Random random) {
+
+			cumulative = new double[n];
+
+			idByRank = new int[n];
+
+			double sum = 0;
+
+			for (int rank = 0; rank < n; rank++) {
+
+				sum += 1 / Math.pow(rank + 1, ZIPF_EXPONENT);
+
+				cumulative[rank] = sum;
+
+				idByRank[rank] = rank + 1;
+			}
+
+			for (int index = n - 1; index > 0; index--) {
+
+				int other = random.nextInt(index + 1);
+
+				int id = idByRank[index];
+
+				idByRank[index] = idByRank[other];
+
+				idByRank[other] = id;
+			}
+		}
+
+		private int sample(Random random) {
+
+			double value = random.nextDouble() * cumulative[cumulative.length - 1];
+
+			int rank = Arrays.binarySearch(cumulative, value);
+
+			return idByRank[rank >= 0 ? rank : Math.min(-rank - 1, cumulative.length - 1)];
+		}
+	}
+
+	private final class BatchInserter implements AutoCloseable {
+
+		private final String table;
+
+		private final PreparedStatement statement;
+
+		private int pending;
+
+		private long total;
+
+		private BatchInserter(String table, String sql) throws SQLException {
+
+			this.table = table;
+
+			statement = connection.prepareStatement(sql);
+		}
+
+		private void add() throws SQLException {
+
+			statement.addBatch();
+
+			if (++pending == BATCH_SIZE) {
+
+				flush();
+			}
+		}
+
+		private void flush() throws SQLException {
+
+			if (pending == 0) {
+
+				return;
+			}
+
+			statement.executeBatch();
+
+			// Every full batch is its own transaction.
+			connection.commit();
+
+			total += pending;
+
+			pending = 0;
+
+			if (total % 1_000_000 < BATCH_SIZE) {
+
+				System.out.printf("%s: %d rows%n", table, total);
+			}
+		}
+
+		@Override
+		public void close() throws SQLException {
+
+			try {
+
+				flush();
+
+				System.out.printf("%s: %d rows done%n", table, total);
+
+			} finally {
+
+				statement.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,95 @@
+package app.onepass.organizer.loadtest;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.Empty;
+
+import app.onepass.apis.AccountServiceGrpc;
+import app.onepass.apis.AssignRoleRequest;
+import app.onepass.apis.HasPermissionRequest;
+import io.grpc.Server;
+import io.grpc.ServerBuilder;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+
+/**
+ * Stands in for the account service on a loopback port. Every permission check waits for the configured latency,
+ * with up to 50% jitter, and is denied at the configured rate the same way the real service denies it.
+ */
+public class FakeAccountService extends AccountServiceGrpc.AccountServiceImplBase {
+
+	private final long latencyMicros;
+
+	private final double denyRate;
+
+	private Server server;
+
+	public FakeAccountService(long latencyMicros, double denyRate) {
+
+		this.latencyMicros = latencyMicros;
+
+		this.denyRate = denyRate;
+	}
+
+	public int start() throws IOException {
+
+		server = ServerBuilder.forPort(0).addService(this).build().start();
+
+		return server.getPort();
+	}
+
+	public void stop() throws InterruptedException {
+
+		server.shutdownNow().awaitTermination(5, TimeUnit.SECONDS);
+	}
+
+	@Override
+	public void ping(Empty request, StreamObserver<BoolValue> responseObserver) {
+
+		responseObserver.onNext(BoolValue.of(true));
+
+		responseObserver.onCompleted();
+	}
+
+	@Override
+	public void hasPermission(HasPermissionRequest request, StreamObserver<BoolValue> responseObserver) {
+
+		ThreadLocalRandom random = ThreadLocalRandom.current();
+
+		sleep(latencyMicros + (latencyMicros > 0 ? random.nextLong(latencyMicros / 2 + 1) : 0));
+
+		if (random.nextDouble() < denyRate) {
+
+			responseObserver.onError(Status.PERMISSION_DENIED.asException());
+
+			return;
+		}
+
+		responseObserver.onNext(BoolValue.of(true));
+
+		responseObserver.onCompleted();
+	}
+
+	@Override
+	public void assignRole(AssignRoleRequest request, StreamObserver<BoolValue> responseObserver) {
+
+		responseObserver.onNext(BoolValue.of(true));
+
+		responseObserver.onCompleted();
+	}
+
+	private static void sleep(long micros) {
+
+		try {
+
+			TimeUnit.MICROSECONDS.sleep(micros);
+
+		} catch (InterruptedException exception) {
+
+			Thread.currentThread().interrupt();
+		}
+	}
+}
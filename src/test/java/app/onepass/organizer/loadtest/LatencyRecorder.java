@@ -0,0 +1,109 @@
+package app.onepass.organizer.loadtest;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Collects every latency sample per method and reports throughput and percentiles. Samples are kept in full,
+ * which is fine for the run lengths these tools are meant for and keeps the percentiles exact.
+ */
+public class LatencyRecorder {
+
+	private static final double[] PERCENTILES = { 50, 90, 99, 99.9 };
+
+	private final Map<String, Samples> samplesByMethod = new TreeMap<>();
+
+	public synchronized void record(String method, long latencyNanos, boolean isSuccessful) {
+
+		samplesByMethod.computeIfAbsent(method, key -> new Samples()).add(latencyNanos, isSuccessful);
+	}
+
+	public synchronized void report(PrintStream out, long elapsedNanos) {
+
+		double elapsedSeconds = elapsedNanos / 1e9;
+
+		out.printf("%-32s %9s %7s %9s %9s %9s %9s %9s %9s%n", "method", "calls", "errors", "calls/s", "p50 ms",
+				"p90 ms", "p99 ms", "p99.9 ms", "max ms");
+
+		Samples total = new Samples();
+
+		for (Map.Entry<String, Samples> entry : samplesByMethod.entrySet()) {
+
+			print(out, entry.getKey(), entry.getValue(), elapsedSeconds);
+
+			total.addAll(entry.getValue());
+		}
+
+		print(out, "total", total, elapsedSeconds);
+	}
+
+	private static void print(PrintStream out, String method, Samples samples, double elapsedSeconds) {
+
+		long[] sorted = Arrays.copyOf(samples.latencies, samples.count);
+
+		Arrays.sort(sorted);
+
+		out.printf("%-32s %9d %7d %9.1f", method, samples.count, samples.errors, samples.count / elapsedSeconds);
+
+		for (double percentile : PERCENTILES) {
+
+			out.printf(" %9.2f", toMillis(percentile(sorted, percentile)));
+		}
+
+		out.printf(" %9.2f%n", toMillis(sorted.length == 0 ? 0 : sorted[sorted.length - 1]));
+	}
+
+	private static long percentile(long[] sorted, double percentile) {
+
+		if (sorted.length == 0) {
+
+			return 0;
+		}
+
+		int index = (int) Math.ceil(percentile / 100 * sorted.length) - 1;
+
+		return sorted[Math.max(0, Math.min(index, sorted.length - 1))];
+	}
+
+	private static double toMillis(long nanos) {
+
+		return nanos / (double) TimeUnit.MILLISECONDS.toNanos(1);
+	}
+
+	private static final class Samples {
+
+		private long[] latencies = new long[1024];
+
+		private int count;
+
+		private int errors;
+
+		private void add(long latencyNanos, boolean isSuccessful) {
+
+			if (count == latencies.length) {
+
+				latencies = Arrays.copyOf(latencies, count * 2);
+			}
+
+			latencies[count++] = latencyNanos;
+
+			if (!isSuccessful) {
+
+				errors++;
+			}
+		}
+
+		private void addAll(Samples samples) {
+
+			for (int index = 0; index < samples.count; index++) {
+
+				add(samples.latencies[index], true);
+			}
+
+			errors += samples.errors;
+		}
+	}
+}
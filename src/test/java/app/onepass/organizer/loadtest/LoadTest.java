@@ -0,0 +1,234 @@
+package app.onepass.organizer.loadtest;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.Random;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.sql.DataSource;
+
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.MoreExecutors;
+import com.google.protobuf.Empty;
+
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.organizer.App;
+import app.onepass.organizer.components.EventDurationIndex;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.StatusRuntimeException;
+
+/**
+ * Boots the application against an in-memory H2 database in PostgreSQL mode and a fake account service, seeds a
+ * deterministic data set and drives an RPC mix at a fixed rate. The driver is open-loop: calls are started on
+ * schedule whether or not earlier ones have finished, and latency is measured from the scheduled start, so a
+ * slow server shows up as latency rather than as a lower request rate.
+ *
+ * <p>Configured with system properties:
+ * <ul>
+ * <li>{@code loadtest.rate} calls per second (200)</li>
+ * <li>{@code loadtest.durationSeconds} measured duration (30) after {@code loadtest.warmUpSeconds} (10)</li>
+ * <li>{@code loadtest.mix} an {@link RpcMix} specification, or {@code read-heavy} / {@code check-in}</li>
+ * <li>{@code loadtest.maxInFlight} calls allowed in flight before new ones are counted as dropped (512)</li>
+ * <li>{@code loadtest.seed} random seed for the data set and the call sequence (1)</li>
+ * <li>{@code loadtest.scale} size of the seeded data set (20)</li>
+ * <li>{@code loadtest.datasetScale} when set, seeds with {@link DatasetGenerator} at this scale instead</li>
+ * <li>{@code loadtest.accountLatencyMicros} (2000) and {@code loadtest.accountDenyRate} (0.0) for the fake</li>
+ * <li>{@code loadtest.grpcPort} port the application listens on (50151)</li>
+ * </ul>
+ */
+public class LoadTest {
+
+	public static void main(String[] args) throws Exception {
+
+		long rate = Long.getLong("loadtest.rate", 200);
+
+		long durationSeconds = Long.getLong("loadtest.durationSeconds", 30);
+
+		long warmUpSeconds = Long.getLong("loadtest.warmUpSeconds", 10);
+
+		String mix = System.getProperty("loadtest.mix", "read-heavy");
+
+		int maxInFlight = Integer.getInteger("loadtest.maxInFlight", 512);
+
+		long seed = Long.getLong("loadtest.seed", 1);
+
+		int scale = Integer.getInteger("loadtest.scale", 20);
+
+		int grpcPort = Integer.getInteger("loadtest.grpcPort", 50151);
+
+		String datasetScale = System.getProperty("loadtest.datasetScale");
+
+		FakeAccountService fakeAccountService = new FakeAccountService(Long.getLong("loadtest.accountLatencyMicros", 2000),
+				Double.parseDouble(System.getProperty("loadtest.accountDenyRate", "0.0")));
+
+		int accountPort = fakeAccountService.start();
+
+		ConfigurableApplicationContext context = new SpringApplicationBuilder(App.class)
+				.profiles("loadtest")
+				.properties("HTS_SVC_ACCOUNT=localhost:" + accountPort, "GRPC_PORT=" + grpcPort)
+				.run(args);
+
+		ManagedChannel channel = ManagedChannelBuilder.forAddress("localhost", grpcPort).usePlaintext().build();
+
+		try {
+
+			Random random = new Random(seed);
+
+			LoadTestData data = datasetScale == null ? LoadTestData.seed(context, random, scale) :
+					generate(context, seed, Double.parseDouble(datasetScale));
+
+			// The data was written around the services, so the in-memory index is rebuilt from the tables.
+			context.getBean(EventDurationIndex.class).load();
+
+			awaitReady(OrganizerServiceGrpc.newBlockingStub(channel));
+
+			RpcMix rpcMix = RpcMix.parse(resolveMix(mix), data);
+
+			OrganizerServiceGrpc.OrganizerServiceFutureStub stub = OrganizerServiceGrpc.newFutureStub(channel);
+
+			System.out.printf("warming up for %d s at %d calls/s%n", warmUpSeconds, rate);
+
+			drive(stub, rpcMix, random, rate, warmUpSeconds, maxInFlight, new LatencyRecorder());
+
+			System.out.printf("measuring for %d s at %d calls/s, mix %s%n", durationSeconds, rate, mix);
+
+			LatencyRecorder latencyRecorder = new LatencyRecorder();
+
+			long elapsedNanos = drive(stub, rpcMix, random, rate, durationSeconds, maxInFlight, latencyRecorder);
+
+			latencyRecorder.report(System.out, elapsedNanos);
+
+		} finally {
+
+			channel.shutdownNow();
+
+			context.close();
+
+			fakeAccountService.stop();
+		}
+	}
+
+	private static LoadTestData generate(ConfigurableApplicationContext context, long seed, double datasetScale)
+			throws SQLException {
+
+		try (Connection connection = context.getBean(DataSource.class).getConnection()) {
+
+			new DatasetGenerator(connection, seed, datasetScale).generate();
+		}
+
+		return LoadTestData.load(context, 1000);
+	}
+
+	private static String resolveMix(String mix) {
+
+		switch (mix) {
+			case "read-heavy":
+				return RpcMix.READ_HEAVY;
+			case "check-in":
+				return RpcMix.CHECK_IN;
+		}
+
+		return mix;
+	}
+
+	private static void awaitReady(OrganizerServiceGrpc.OrganizerServiceBlockingStub stub) throws InterruptedException {
+
+		while (true) {
+
+			try {
+
+				if (stub.ping(Empty.getDefaultInstance()).getValue()) {
+
+					return;
+				}
+
+			} catch (StatusRuntimeException exception) {
+
+				// The server is still starting.
+			}
+
+			Thread.sleep(100);
+		}
+	}
+
+	private static long drive(OrganizerServiceGrpc.OrganizerServiceFutureStub stub, RpcMix rpcMix, Random random, long rate,
+			long durationSeconds, int maxInFlight, LatencyRecorder latencyRecorder) throws InterruptedException {
+
+		Semaphore inFlight = new Semaphore(maxInFlight);
+
+		AtomicLong dropped = new AtomicLong();
+
+		long intervalNanos = TimeUnit.SECONDS.toNanos(1) / rate;
+
+		long callCount = rate * durationSeconds;
+
+		long start = System.nanoTime();
+
+		for (long index = 0; index < callCount; index++) {
+
+			long scheduledStart = start + index * intervalNanos;
+
+			long delay;
+
+			while ((delay = scheduledStart - System.nanoTime()) > 0) {
+
+				LockSupport.parkNanos(delay);
+			}
+
+			int call = rpcMix.pick(random);
+
+			if (!inFlight.tryAcquire()) {
+
+				dropped.incrementAndGet();
+
+				latencyRecorder.record(rpcMix.getMethod(call), System.nanoTime() - scheduledStart, false);
+
+				continue;
+			}
+
+			String method = rpcMix.getMethod(call);
+
+			ListenableFuture<?> future = rpcMix.getCall(call).call(stub, random);
+
+			Futures.addCallback(future, new FutureCallback<Object>() {
+
+				@Override
+				public void onSuccess(Object result) {
+
+					inFlight.release();
+
+					latencyRecorder.record(method, System.nanoTime() - scheduledStart, true);
+				}
+
+				@Override
+				public void onFailure(Throwable throwable) {
+
+					inFlight.release();
+
+					latencyRecorder.record(method, System.nanoTime() - scheduledStart, false);
+				}
+
+			}, MoreExecutors.directExecutor());
+		}
+
+		inFlight.acquire(maxInFlight);
+
+		inFlight.release(maxInFlight);
+
+		if (dropped.get() > 0) {
+
+			System.out.printf("%d calls were dropped because %d were already in flight%n", dropped.get(), maxInFlight);
+		}
+
+		return System.nanoTime() - start;
+	}
+}
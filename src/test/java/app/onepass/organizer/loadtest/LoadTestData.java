@@ -0,0 +1,319 @@
+package app.onepass.organizer.loadtest;
+
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.springframework.context.ApplicationContext;
+import org.springframework.data.domain.PageRequest;
+
+import app.onepass.organizer.entities.AnswerEntity;
+import app.onepass.organizer.entities.EventDurationEntity;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.entities.LocationEntity;
+import app.onepass.organizer.entities.OrganizationEntity;
+import app.onepass.organizer.entities.QuestionEntity;
+import app.onepass.organizer.entities.QuestionGroupEntity;
+import app.onepass.organizer.entities.TagEntity;
+import app.onepass.organizer.entities.UserEntity;
+import app.onepass.organizer.entities.UserEventEntity;
+import app.onepass.organizer.entities.UserOrganizationEntity;
+import app.onepass.organizer.repositories.AnswerRepository;
+import app.onepass.organizer.repositories.EventDurationRepository;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.LocationRepository;
+import app.onepass.organizer.repositories.OrganizationRepository;
+import app.onepass.organizer.repositories.QuestionGroupRepository;
+import app.onepass.organizer.repositories.QuestionRepository;
+import app.onepass.organizer.repositories.TagRepository;
+import app.onepass.organizer.repositories.UserEventRepository;
+import app.onepass.organizer.repositories.UserOrganizationRepository;
+import app.onepass.organizer.repositories.UserRepository;
+
+/**
+ * Seeds a small, deterministic data set through the repositories and keeps the IDs the RPC mixes pick from.
+ */
+public class LoadTestData {
+
+	final List<Integer> userIds = new ArrayList<>();
+
+	final List<Integer> organizationIds = new ArrayList<>();
+
+	final List<EventEntity> events = new ArrayList<>();
+
+	final List<Integer> locationIds = new ArrayList<>();
+
+	final List<Integer> tagIds = new ArrayList<>();
+
+	final List<Integer> questionIds = new ArrayList<>();
+
+	final List<UserEventEntity> registrations = new ArrayList<>();
+
+	public static LoadTestData seed(ApplicationContext context, Random random, int scale) {
+
+		LoadTestData data = new LoadTestData();
+
+		for (UserEntity userEntity : context.getBean(UserRepository.class).saveAll(users(scale * 25))) {
+
+			data.userIds.add(userEntity.getId());
+		}
+
+		for (OrganizationEntity organizationEntity : context.getBean(OrganizationRepository.class).saveAll(organizations(scale))) {
+
+			data.organizationIds.add(organizationEntity.getId());
+		}
+
+		List<UserOrganizationEntity> members = new ArrayList<>();
+
+		for (int organizationId : data.organizationIds) {
+
+			members.add(UserOrganizationEntity.builder().userId(data.pick(random, data.userIds)).organizationId(organizationId).build());
+		}
+
+		context.getBean(UserOrganizationRepository.class).saveAll(members);
+
+		for (LocationEntity locationEntity : context.getBean(LocationRepository.class).saveAll(locations(scale))) {
+
+			data.locationIds.add(locationEntity.getId());
+		}
+
+		for (TagEntity tagEntity : context.getBean(TagRepository.class).saveAll(tags(scale))) {
+
+			data.tagIds.add(tagEntity.getId());
+		}
+
+		data.events.addAll(context.getBean(EventRepository.class).saveAll(data.events(random, scale * 10)));
+
+		context.getBean(EventDurationRepository.class).saveAll(data.durations(random));
+
+		List<QuestionGroupEntity> questionGroups = context.getBean(QuestionGroupRepository.class).saveAll(data.questionGroups());
+
+		for (QuestionEntity questionEntity : context.getBean(QuestionRepository.class).saveAll(questions(questionGroups))) {
+
+			data.questionIds.add(questionEntity.getId());
+		}
+
+		data.registrations.addAll(context.getBean(UserEventRepository.class).saveAll(data.registrations(random, scale * 100)));
+
+		context.getBean(EventRepository.class).recountAllApprovedCounts();
+
+		context.getBean(AnswerRepository.class).saveAll(data.answers(random));
+
+		return data;
+	}
+
+	/**
+	 * Samples IDs from data that is already in the database, such as a set written by {@link DatasetGenerator}.
+	 */
+	public static LoadTestData load(ApplicationContext context, int sampleSize) {
+
+		LoadTestData data = new LoadTestData();
+
+		PageRequest sample = PageRequest.of(0, sampleSize);
+
+		context.getBean(UserRepository.class).findAll(sample).forEach(userEntity -> data.userIds.add(userEntity.getId()));
+
+		context.getBean(OrganizationRepository.class).findAll(sample)
+				.forEach(organizationEntity -> data.organizationIds.add(organizationEntity.getId()));
+
+		context.getBean(LocationRepository.class).findAll(sample).forEach(locationEntity -> data.locationIds.add(locationEntity.getId()));
+
+		context.getBean(TagRepository.class).findAll(sample).forEach(tagEntity -> data.tagIds.add(tagEntity.getId()));
+
+		data.events.addAll(context.getBean(EventRepository.class).findAll(sample).getContent());
+
+		context.getBean(QuestionRepository.class).findAll(sample).forEach(questionEntity -> data.questionIds.add(questionEntity.getId()));
+
+		data.registrations.addAll(context.getBean(UserEventRepository.class).findAll(sample).getContent());
+
+		return data;
+	}
+
+	int pick(Random random, List<Integer> ids) {
+
+		return ids.get(random.nextInt(ids.size()));
+	}
+
+	<T> T pickItem(Random random, List<T> items) {
+
+		return items.get(random.nextInt(items.size()));
+	}
+
+	private static List<UserEntity> users(int count) {
+
+		List<UserEntity> users = new ArrayList<>();
+
+		for (int index = 0; index < count; index++) {
+
+			users.add(UserEntity.builder()
+					.firstName("First" + index)
+					.lastName("Last" + index)
+					.email("user" + index + "@example.com")
+					.gender(index % 2 == 0 ? "M" : "F")
+					.build());
+		}
+
+		return users;
+	}
+
+	private static List<OrganizationEntity> organizations(int count) {
+
+		List<OrganizationEntity> organizations = new ArrayList<>();
+
+		for (int index = 0; index < count; index++) {
+
+			organizations.add(OrganizationEntity.builder().name("Organization " + index).description("Load test organization").build());
+		}
+
+		return organizations;
+	}
+
+	private static List<LocationEntity> locations(int count) {
+
+		List<LocationEntity> locations = new ArrayList<>();
+
+		for (int index = 0; index < count; index++) {
+
+			locations.add(LocationEntity.builder().name("Location " + index).googleMapUrl("https://maps.example.com/" + index).build());
+		}
+
+		return locations;
+	}
+
+	private static List<TagEntity> tags(int count) {
+
+		List<TagEntity> tags = new ArrayList<>();
+
+		for (int index = 0; index < count; index++) {
+
+			tags.add(TagEntity.builder().name("Tag " + index).build());
+		}
+
+		return tags;
+	}
+
+	private List<EventEntity> events(Random random, int count) {
+
+		List<EventEntity> newEvents = new ArrayList<>();
+
+		for (int index = 0; index < count; index++) {
+
+			newEvents.add(EventEntity.builder()
+					.organizationId(pick(random, organizationIds))
+					.locationId(pick(random, locationIds))
+					.name("Event " + index)
+					.description("Load test event")
+					.build());
+		}
+
+		return newEvents;
+	}
+
+	private List<EventDurationEntity> durations(Random random) {
+
+		List<EventDurationEntity> durations = new ArrayList<>();
+
+		long now = System.currentTimeMillis();
+
+		for (EventEntity eventEntity : events) {
+
+			long start = now + TimeUnit.HOURS.toMillis(random.nextInt(24 * 30));
+
+			durations.add(EventDurationEntity.builder()
+					.eventId(eventEntity.getId())
+					.start(new Timestamp(start))
+					.finish(new Timestamp(start + TimeUnit.HOURS.toMillis(1 + random.nextInt(4))))
+					.build());
+		}
+
+		return durations;
+	}
+
+	private List<QuestionGroupEntity> questionGroups() {
+
+		List<QuestionGroupEntity> questionGroups = new ArrayList<>();
+
+		for (EventEntity eventEntity : events) {
+
+			questionGroups.add(QuestionGroupEntity.builder().eventId(eventEntity.getId()).type("POST_EVENT").title("Feedback").build());
+		}
+
+		return questionGroups;
+	}
+
+	private static List<QuestionEntity> questions(List<QuestionGroupEntity> questionGroups) {
+
+		List<QuestionEntity> questions = new ArrayList<>();
+
+		for (QuestionGroupEntity questionGroupEntity : questionGroups) {
+
+			for (int seq = 1; seq <= 3; seq++) {
+
+				questions.add(QuestionEntity.builder()
+						.questionGroupId(questionGroupEntity.getId())
+						.seq(seq)
+						.answerType("SCALE")
+						.title("Question " + seq)
+						.subtitle("")
+						.build());
+			}
+		}
+
+		return questions;
+	}
+
+	private List<UserEventEntity> registrations(Random random, int count) {
+
+		List<UserEventEntity> newRegistrations = new ArrayList<>();
+
+		Set<Long> pairs = new HashSet<>();
+
+		while (newRegistrations.size() < count && pairs.size() < userIds.size() * events.size()) {
+
+			int userId = pick(random, userIds);
+
+			int eventId = pickItem(random, events).getId();
+
+			if (!pairs.add((long) userId << 32 | eventId)) {
+
+				continue;
+			}
+
+			boolean isApproved = random.nextInt(4) > 0;
+
+			newRegistrations.add(UserEventEntity.builder()
+					.userId(userId)
+					.eventId(eventId)
+					.status(isApproved ? "APPROVED" : "PENDING")
+					.ticket(isApproved ? String.format("T%05d", newRegistrations.size()) : null)
+					.build());
+		}
+
+		return newRegistrations;
+	}
+
+	private List<AnswerEntity> answers(Random random) {
+
+		List<AnswerEntity> answers = new ArrayList<>();
+
+		for (UserEventEntity userEventEntity : registrations) {
+
+			if (userEventEntity.getTicket() == null) {
+
+				continue;
+			}
+
+			answers.add(AnswerEntity.builder()
+					.userEventId(userEventEntity.getId())
+					.questionId(pick(random, questionIds))
+					.value(String.valueOf(1 + random.nextInt(5)))
+					.build());
+		}
+
+		return answers;
+	}
+}
@@ -0,0 +1,204 @@
+package app.onepass.organizer.loadtest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.protobuf.Empty;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.Timestamp;
+
+import app.onepass.apis.CheckInRequest;
+import app.onepass.apis.CreateEventRequest;
+import app.onepass.apis.Event;
+import app.onepass.apis.GenerateTicketRequest;
+import app.onepass.apis.GetEventsInWindowRequest;
+import app.onepass.apis.GetObjectByIdRequest;
+import app.onepass.apis.HasEventRequest;
+import app.onepass.apis.OrganizerServiceGrpc.OrganizerServiceFutureStub;
+import app.onepass.apis.UpdateRegistrationRequestRequest;
+import app.onepass.apis.UpdateTagRequest;
+import app.onepass.apis.UserEvent;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.entities.UserEventEntity;
+
+/**
+ * A weighted mix of RPCs, written as {@code method:weight,method:weight}. Each call picks its arguments from the
+ * seeded data with the driver's random source, so a run with the same seed sends the same sequence of calls.
+ */
+public class RpcMix {
+
+	public static final String READ_HEAVY = "getOrganizationById:30,hasEvent:25,getEventsInWindow:15,getAnswersByQuestionId:10,"
+			+ "getAnswerAggregateByQuestionId:10,getOrganizations:2,createEvent:3,addTags:3,updateRegistrationRequest:2";
+
+	public static final String CHECK_IN = "checkIn:80,hasEvent:20";
+
+	private final List<String> methods = new ArrayList<>();
+
+	private final List<RpcCall> calls = new ArrayList<>();
+
+	private final List<Integer> cumulativeWeights = new ArrayList<>();
+
+	private int totalWeight;
+
+	public interface RpcCall {
+
+		ListenableFuture<?> call(OrganizerServiceFutureStub stub, Random random);
+	}
+
+	public static RpcMix parse(String specification, LoadTestData data) {
+
+		Map<String, RpcCall> available = availableCalls(data);
+
+		RpcMix rpcMix = new RpcMix();
+
+		for (String entry : specification.split(",")) {
+
+			String[] parts = entry.trim().split(":");
+
+			RpcCall rpcCall = available.get(parts[0]);
+
+			if (rpcCall == null) {
+
+				throw new IllegalArgumentException("Unknown method in mix: " + parts[0] + ", expected one of " + available.keySet());
+			}
+
+			rpcMix.totalWeight += parts.length > 1 ? Integer.parseInt(parts[1]) : 1;
+
+			rpcMix.methods.add(parts[0]);
+
+			rpcMix.calls.add(rpcCall);
+
+			rpcMix.cumulativeWeights.add(rpcMix.totalWeight);
+		}
+
+		return rpcMix;
+	}
+
+	public int pick(Random random) {
+
+		int value = random.nextInt(totalWeight);
+
+		int index = 0;
+
+		while (cumulativeWeights.get(index) <= value) {
+
+			index++;
+		}
+
+		return index;
+	}
+
+	public String getMethod(int index) {
+
+		return methods.get(index);
+	}
+
+	public RpcCall getCall(int index) {
+
+		return calls.get(index);
+	}
+
+	private static Map<String, RpcCall> availableCalls(LoadTestData data) {
+
+		Map<String, RpcCall> calls = new LinkedHashMap<>();
+
+		calls.put("getOrganizations", (stub, random) -> stub.getOrganizations(Empty.getDefaultInstance()));
+
+		calls.put("getOrganizationById", (stub, random) -> stub.getOrganizationById(byId(data.pick(random, data.organizationIds))));
+
+		calls.put("getUsersInOrganizationById",
+				(stub, random) -> stub.getUsersInOrganizationById(byId(data.pick(random, data.organizationIds))));
+
+		calls.put("getLocations", (stub, random) -> stub.getLocations(Empty.getDefaultInstance()));
+
+		calls.put("hasEvent", (stub, random) -> {
+
+			EventEntity eventEntity = data.pickItem(random, data.events);
+
+			return stub.hasEvent(HasEventRequest.newBuilder()
+					.setEventId(eventEntity.getId())
+					.setOrganizationId(eventEntity.getOrganizationId())
+					.build());
+		});
+
+		calls.put("getEventsInWindow", (stub, random) -> {
+
+			long start = TimeUnit.MILLISECONDS.toSeconds(System.currentTimeMillis()) + TimeUnit.DAYS.toSeconds(random.nextInt(30));
+
+			return stub.getEventsInWindow(GetEventsInWindowRequest.newBuilder()
+					.setStart(Timestamp.newBuilder().setSeconds(start))
+					.setFinish(Timestamp.newBuilder().setSeconds(start + TimeUnit.DAYS.toSeconds(1)))
+					.setOrganizationId(Int32Value.of(data.pick(random, data.organizationIds)))
+					.build());
+		});
+
+		calls.put("getAnswersByQuestionId", (stub, random) -> stub.getAnswersByQuestionId(byId(data.pick(random, data.questionIds))));
+
+		calls.put("getAnswerAggregateByQuestionId",
+				(stub, random) -> stub.getAnswerAggregateByQuestionId(byId(data.pick(random, data.questionIds))));
+
+		calls.put("createEvent", (stub, random) -> stub.createEvent(CreateEventRequest.newBuilder()
+				.setUserId(data.pick(random, data.userIds))
+				.setEvent(Event.newBuilder()
+						.setOrganizationId(data.pick(random, data.organizationIds))
+						.setName("Load test event")
+						.setDescription("Created by the load test"))
+				.build()));
+
+		calls.put("addTags", (stub, random) -> stub.addTags(UpdateTagRequest.newBuilder()
+				.setUserId(data.pick(random, data.userIds))
+				.setEventId(data.pickItem(random, data.events).getId())
+				.addTagIds(data.pick(random, data.tagIds))
+				.addTagIds(data.pick(random, data.tagIds))
+				.build()));
+
+		calls.put("updateRegistrationRequest", (stub, random) -> {
+
+			UserEventEntity userEventEntity = data.pickItem(random, data.registrations);
+
+			return stub.updateRegistrationRequest(UpdateRegistrationRequestRequest.newBuilder()
+					.setUserId(data.pick(random, data.userIds))
+					.setRegisteredEventId(userEventEntity.getEventId())
+					.setRegisteredUserId(userEventEntity.getUserId())
+					.setStatus(random.nextBoolean() ? UserEvent.Status.APPROVED : UserEvent.Status.PENDING)
+					.build());
+		});
+
+		calls.put("generateTicket", (stub, random) -> {
+
+			UserEventEntity userEventEntity = data.pickItem(random, data.registrations);
+
+			return stub.generateTicket(GenerateTicketRequest.newBuilder()
+					.setUserId(userEventEntity.getUserId())
+					.setEventId(userEventEntity.getEventId())
+					.build());
+		});
+
+		calls.put("checkIn", (stub, random) -> {
+
+			UserEventEntity userEventEntity = data.pickItem(random, data.registrations);
+
+			while (userEventEntity.getTicket() == null) {
+
+				userEventEntity = data.pickItem(random, data.registrations);
+			}
+
+			return stub.checkIn(CheckInRequest.newBuilder()
+					.setEventId(userEventEntity.getEventId())
+					.setTicket(userEventEntity.getTicket())
+					.build());
+		});
+
+		return calls;
+	}
+
+	private static GetObjectByIdRequest byId(int id) {
+
+		return GetObjectByIdRequest.newBuilder().setId(id).build();
+	}
+}
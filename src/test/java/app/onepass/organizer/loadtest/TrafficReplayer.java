@@ -0,0 +1,170 @@
+package app.onepass.organizer.loadtest;
+
+import java.io.ByteArrayInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import com.google.common.io.ByteStreams;
+import com.google.common.util.concurrent.FutureCallback;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.MoreExecutors;
+
+import app.onepass.apis.OrganizerServiceGrpc;
+import app.onepass.organizer.utilities.TrafficLog;
+import io.grpc.CallOptions;
+import io.grpc.ManagedChannel;
+import io.grpc.ManagedChannelBuilder;
+import io.grpc.MethodDescriptor;
+import io.grpc.stub.ClientCalls;
+
+/**
+ * Replays a {@link TrafficLog} against a running instance and reports latency percentiles per method. Requests are
+ * sent as the recorded bytes, so the replayer does not depend on the request types.
+ *
+ * <pre>
+ * java app.onepass.organizer.loadtest.TrafficReplayer traffic.log localhost:50051 [speed] [maxInFlight]
+ * </pre>
+ *
+ * A speed of 1 keeps the recorded timing, a speed of N compresses it N times and {@code max} sends as fast as
+ * {@code maxInFlight} allows. In timed modes latency is measured from the scheduled send time, so falling behind
+ * shows up as latency. Only unary calls are replayed; streaming calls are counted and skipped.
+ */
+public class TrafficReplayer {
+
+	private static final MethodDescriptor.Marshaller<byte[]> BYTES_MARSHALLER = new MethodDescriptor.Marshaller<byte[]>() {
+
+		@Override
+		public InputStream stream(byte[] value) {
+
+			return new ByteArrayInputStream(value);
+		}
+
+		@Override
+		public byte[] parse(InputStream stream) {
+
+			try {
+
+				return ByteStreams.toByteArray(stream);
+
+			} catch (IOException exception) {
+
+				throw new IllegalStateException(exception);
+			}
+		}
+	};
+
+	public static void main(String[] args) throws Exception {
+
+		if (args.length < 2) {
+
+			System.err.println("Usage: TrafficReplayer <log> <host:port> [speed|max] [maxInFlight]");
+
+			System.exit(2);
+		}
+
+		boolean isMaxSpeed = args.length > 2 && "max".equals(args[2]);
+
+		double speed = args.length > 2 && !isMaxSpeed ? Double.parseDouble(args[2]) : 1;
+
+		int maxInFlight = args.length > 3 ? Integer.parseInt(args[3]) : 512;
+
+		Map<String, MethodDescriptor<byte[], byte[]>> unaryMethods = new HashMap<>();
+
+		for (MethodDescriptor<?, ?> methodDescriptor : OrganizerServiceGrpc.getServiceDescriptor().getMethods()) {
+
+			if (methodDescriptor.getType() == MethodDescriptor.MethodType.UNARY) {
+
+				unaryMethods.put(methodDescriptor.getFullMethodName(),
+						methodDescriptor.toBuilder(BYTES_MARSHALLER, BYTES_MARSHALLER).build());
+			}
+		}
+
+		ManagedChannel channel = ManagedChannelBuilder.forTarget(args[1]).usePlaintext().build();
+
+		LatencyRecorder latencyRecorder = new LatencyRecorder();
+
+		Semaphore inFlight = new Semaphore(maxInFlight);
+
+		long skipped = 0;
+
+		long start = System.nanoTime();
+
+		try (TrafficLog.Reader reader = new TrafficLog.Reader(new FileInputStream(args[0]))) {
+
+			long firstTimestampMicros = -1;
+
+			TrafficLog.Record record;
+
+			while ((record = reader.read()) != null) {
+
+				MethodDescriptor<byte[], byte[]> methodDescriptor = unaryMethods.get(record.getMethod());
+
+				if (methodDescriptor == null) {
+
+					skipped++;
+
+					continue;
+				}
+
+				if (firstTimestampMicros < 0) {
+
+					firstTimestampMicros = record.getTimestampMicros();
+				}
+
+				long scheduledStart = isMaxSpeed ? System.nanoTime() :
+						start + (long) (TimeUnit.MICROSECONDS.toNanos(record.getTimestampMicros() - firstTimestampMicros) / speed);
+
+				long delay;
+
+				while ((delay = scheduledStart - System.nanoTime()) > 0) {
+
+					LockSupport.parkNanos(delay);
+				}
+
+				inFlight.acquire();
+
+				String method = methodDescriptor.getBareMethodName();
+
+				Futures.addCallback(ClientCalls.futureUnaryCall(channel.newCall(methodDescriptor, CallOptions.DEFAULT), record.getRequest()),
+						new FutureCallback<byte[]>() {
+
+							@Override
+							public void onSuccess(byte[] result) {
+
+								inFlight.release();
+
+								latencyRecorder.record(method, System.nanoTime() - scheduledStart, true);
+							}
+
+							@Override
+							public void onFailure(Throwable throwable) {
+
+								inFlight.release();
+
+								latencyRecorder.record(method, System.nanoTime() - scheduledStart, false);
+							}
+
+						}, MoreExecutors.directExecutor());
+			}
+
+			inFlight.acquire(maxInFlight);
+
+		} finally {
+
+			channel.shutdownNow();
+		}
+
+		if (skipped > 0) {
+
+			System.out.printf("%d streaming or unknown calls were skipped%n", skipped);
+		}
+
+		latencyRecorder.report(System.out, System.nanoTime() - start);
+	}
+}
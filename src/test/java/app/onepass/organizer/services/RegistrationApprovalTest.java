@@ -0,0 +1,366 @@
+package app.onepass.organizer.services;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan.Filter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.protobuf.BoolValue;
+
+import app.onepass.apis.HasPermissionRequest;
+import app.onepass.apis.UpdateRegistrationRequestRequest;
+import app.onepass.apis.UserEvent;
+import app.onepass.organizer.components.ChangeFeed;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.entities.UserEventEntity;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.UserEventRepository;
+import io.grpc.stub.StreamObserver;
+import junit.framework.TestCase;
+
+public class RegistrationApprovalTest extends TestCase {
+
+	private AnnotationConfigApplicationContext context;
+
+	private EventService eventService;
+
+	private EventRepository eventRepository;
+
+	private UserEventRepository userEventRepository;
+
+	@Override
+	protected void setUp() {
+
+		context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+
+		eventRepository = context.getBean(EventRepository.class);
+
+		userEventRepository = context.getBean(UserEventRepository.class);
+
+		AccountService accountService = mock(AccountService.class);
+
+		when(accountService.hasPermission(any(HasPermissionRequest.class))).thenReturn(BoolValue.of(true));
+
+		eventService = new EventService();
+
+		ReflectionTestUtils.setField(eventService, "accountService", accountService);
+		ReflectionTestUtils.setField(eventService, "eventRepository", eventRepository);
+		ReflectionTestUtils.setField(eventService, "userEventRepository", userEventRepository);
+		ReflectionTestUtils.setField(eventService, "changeFeed", mock(ChangeFeed.class));
+		ReflectionTestUtils.setField(eventService, "transactionTemplate", context.getBean(TransactionTemplate.class));
+	}
+
+	@Override
+	protected void tearDown() {
+
+		context.close();
+	}
+
+	public void testConcurrentApprovalsNeverExceedAttendeeLimit() throws InterruptedException {
+
+		int attendeeLimit = 250;
+
+		int eventId = createEvent(attendeeLimit);
+
+		List<Integer> userIds = new ArrayList<>();
+
+		for (int userId = 1; userId <= 800; userId++) {
+
+			register(userId, eventId);
+
+			userIds.add(userId);
+		}
+
+		AtomicInteger approved = new AtomicInteger();
+
+		AtomicInteger rejected = new AtomicInteger();
+
+		updateConcurrently(eventId, userIds, UserEvent.Status.APPROVED, approved, rejected);
+
+		assertEquals(attendeeLimit, approved.get());
+		assertEquals(userIds.size() - attendeeLimit, rejected.get());
+		assertEquals(attendeeLimit, countApproved(eventId));
+		assertEquals(attendeeLimit, approvedCount(eventId));
+	}
+
+	public void testUnlimitedEventApprovesEveryone() throws InterruptedException {
+
+		int eventId = createEvent(0);
+
+		List<Integer> userIds = new ArrayList<>();
+
+		for (int userId = 1; userId <= 300; userId++) {
+
+			register(userId, eventId);
+
+			userIds.add(userId);
+		}
+
+		AtomicInteger approved = new AtomicInteger();
+
+		AtomicInteger rejected = new AtomicInteger();
+
+		updateConcurrently(eventId, userIds, UserEvent.Status.APPROVED, approved, rejected);
+
+		assertEquals(userIds.size(), approved.get());
+		assertEquals(0, rejected.get());
+		assertEquals(userIds.size(), approvedCount(eventId));
+	}
+
+	public void testRepeatedApprovalOfOneRegistrationTakesOneSeat() throws InterruptedException {
+
+		int eventId = createEvent(2);
+
+		register(1, eventId);
+
+		register(2, eventId);
+
+		register(3, eventId);
+
+		AtomicInteger approved = new AtomicInteger();
+
+		AtomicInteger rejected = new AtomicInteger();
+
+		updateConcurrently(eventId, Collections.nCopies(200, 1), UserEvent.Status.APPROVED, approved, rejected);
+
+		assertEquals(200, approved.get());
+		assertEquals(0, rejected.get());
+		assertEquals(1, approvedCount(eventId));
+
+		updateConcurrently(eventId, Arrays.asList(2, 3), UserEvent.Status.APPROVED, approved, rejected);
+
+		assertEquals(201, approved.get());
+		assertEquals(1, rejected.get());
+		assertEquals(2, countApproved(eventId));
+		assertEquals(2, approvedCount(eventId));
+	}
+
+	public void testRejectingApprovedRegistrationsFreesSeats() throws InterruptedException {
+
+		int attendeeLimit = 100;
+
+		int eventId = createEvent(attendeeLimit);
+
+		List<Integer> firstUserIds = new ArrayList<>();
+
+		List<Integer> secondUserIds = new ArrayList<>();
+
+		for (int userId = 1; userId <= 2 * attendeeLimit; userId++) {
+
+			register(userId, eventId);
+
+			(userId <= attendeeLimit ? firstUserIds : secondUserIds).add(userId);
+		}
+
+		AtomicInteger approved = new AtomicInteger();
+
+		AtomicInteger rejected = new AtomicInteger();
+
+		updateConcurrently(eventId, firstUserIds, UserEvent.Status.APPROVED, approved, rejected);
+
+		updateConcurrently(eventId, secondUserIds.subList(0, 1), UserEvent.Status.APPROVED, approved, rejected);
+
+		assertEquals(attendeeLimit, approved.get());
+		assertEquals(1, rejected.get());
+
+		// Rejections and the approvals that take the freed seats race with each other.
+		List<Integer> rejections = firstUserIds.subList(0, attendeeLimit / 2);
+
+		AtomicInteger rejectionCount = new AtomicInteger();
+
+		Thread rejector = new Thread(() -> {
+
+			try {
+
+				updateConcurrently(eventId, rejections, UserEvent.Status.REJECTED, rejectionCount, new AtomicInteger());
+
+			} catch (InterruptedException exception) {
+
+				Thread.currentThread().interrupt();
+			}
+		});
+
+		rejector.start();
+
+		AtomicInteger secondApproved = new AtomicInteger();
+
+		updateConcurrently(eventId, secondUserIds, UserEvent.Status.APPROVED, secondApproved, new AtomicInteger());
+
+		rejector.join();
+
+		assertEquals(rejections.size(), rejectionCount.get());
+		assertTrue(secondApproved.get() <= rejections.size());
+		assertEquals(attendeeLimit - rejections.size() + secondApproved.get(), countApproved(eventId));
+		assertEquals(countApproved(eventId), approvedCount(eventId));
+	}
+
+	private void updateConcurrently(int eventId, List<Integer> userIds, UserEvent.Status status, AtomicInteger succeeded,
+			AtomicInteger failed) throws InterruptedException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(64);
+
+		CountDownLatch startGate = new CountDownLatch(1);
+
+		CountDownLatch finished = new CountDownLatch(userIds.size());
+
+		for (int userId : userIds) {
+
+			UpdateRegistrationRequestRequest request = UpdateRegistrationRequestRequest.newBuilder()
+					.setUserId(1)
+					.setRegisteredUserId(userId)
+					.setRegisteredEventId(eventId)
+					.setStatus(status)
+					.build();
+
+			executor.execute(() -> {
+
+				try {
+
+					startGate.await();
+
+					eventService.updateRegistrationRequest(request, new CountingObserver(succeeded, failed));
+
+				} catch (InterruptedException exception) {
+
+					Thread.currentThread().interrupt();
+
+				} finally {
+
+					finished.countDown();
+				}
+			});
+		}
+
+		startGate.countDown();
+
+		assertTrue(finished.await(60, TimeUnit.SECONDS));
+
+		executor.shutdown();
+	}
+
+	private int createEvent(int attendeeLimit) {
+
+		return eventRepository.save(EventEntity.builder()
+				.organizationId(1)
+				.description("Description")
+				.name("Event")
+				.attendeeLimit(attendeeLimit)
+				.build()).getId();
+	}
+
+	private void register(int userId, int eventId) {
+
+		userEventRepository.save(UserEventEntity.builder()
+				.userId(userId)
+				.eventId(eventId)
+				.status(UserEvent.Status.PENDING.toString())
+				.build());
+	}
+
+	private int approvedCount(int eventId) {
+
+		return eventRepository.findById(eventId).map(EventEntity::getApprovedCount).orElse(-1);
+	}
+
+	private long countApproved(int eventId) {
+
+		return userEventRepository.countByEventIdAndStatusIn(eventId, Arrays.asList(UserEvent.Status.APPROVED.toString()));
+	}
+
+	private static class CountingObserver implements StreamObserver<UserEvent> {
+
+		private final AtomicInteger approved;
+
+		private final AtomicInteger rejected;
+
+		private CountingObserver(AtomicInteger approved, AtomicInteger rejected) {
+
+			this.approved = approved;
+
+			this.rejected = rejected;
+		}
+
+		@Override
+		public void onNext(UserEvent userEvent) {
+
+			approved.incrementAndGet();
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+
+			rejected.incrementAndGet();
+		}
+
+		@Override
+		public void onCompleted() {
+
+		}
+	}
+
+	@Configuration
+	@EnableJpaRepositories(basePackageClasses = EventRepository.class, includeFilters = @Filter(
+			type = FilterType.ASSIGNABLE_TYPE, classes = { EventRepository.class, UserEventRepository.class }))
+	static class TestConfiguration {
+
+		@Bean
+		public DataSource dataSource() {
+
+			return new DriverManagerDataSource("jdbc:h2:mem:registration-approval;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+		}
+
+		@Bean
+		public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+
+			LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+
+			entityManagerFactory.setDataSource(dataSource);
+			entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			entityManagerFactory.setPackagesToScan(EventEntity.class.getPackage().getName());
+			entityManagerFactory.getJpaPropertyMap().put("hibernate.hbm2ddl.auto", "create-drop");
+			entityManagerFactory.getJpaPropertyMap().put("hibernate.physical_naming_strategy",
+					"org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy");
+			entityManagerFactory.getJpaPropertyMap().put("javax.persistence.validation.mode", "none");
+
+			return entityManagerFactory;
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+
+		@Bean
+		public TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
+
+			return new TransactionTemplate(transactionManager);
+		}
+	}
+}
@@ -0,0 +1,331 @@
+package app.onepass.organizer.services;
+
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.persistence.EntityManagerFactory;
+import javax.sql.DataSource;
+
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.ComponentScan.Filter;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.context.annotation.FilterType;
+import org.springframework.data.jpa.repository.config.EnableJpaRepositories;
+import org.springframework.jdbc.datasource.DriverManagerDataSource;
+import org.springframework.orm.jpa.JpaTransactionManager;
+import org.springframework.orm.jpa.LocalContainerEntityManagerFactoryBean;
+import org.springframework.orm.jpa.vendor.HibernateJpaVendorAdapter;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import com.google.protobuf.BoolValue;
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Int64Value;
+
+import app.onepass.apis.Event;
+import app.onepass.apis.HasPermissionRequest;
+import app.onepass.apis.Location;
+import app.onepass.apis.Organization;
+import app.onepass.apis.UpdateEventRequest;
+import app.onepass.apis.UpdateLocationRequest;
+import app.onepass.apis.UpdateOrganizationRequest;
+import app.onepass.organizer.components.ChangeFeed;
+import app.onepass.organizer.components.EventDurationIndex;
+import app.onepass.organizer.components.InvalidationBus;
+import app.onepass.organizer.components.RegistrationDeadlineScheduler;
+import app.onepass.organizer.entities.EventEntity;
+import app.onepass.organizer.entities.LocationEntity;
+import app.onepass.organizer.entities.OrganizationEntity;
+import app.onepass.organizer.repositories.EventDurationRepository;
+import app.onepass.organizer.repositories.EventRepository;
+import app.onepass.organizer.repositories.LocationRepository;
+import app.onepass.organizer.repositories.OrganizationRepository;
+import app.onepass.organizer.utilities.ServiceUtil;
+import io.grpc.Status;
+import io.grpc.stub.StreamObserver;
+import junit.framework.TestCase;
+
+public class VersionConflictTest extends TestCase {
+
+	private AnnotationConfigApplicationContext context;
+
+	private EventService eventService;
+
+	private OrganizationService organizationService;
+
+	private LocationService locationService;
+
+	private EventRepository eventRepository;
+
+	private OrganizationRepository organizationRepository;
+
+	private LocationRepository locationRepository;
+
+	@Override
+	protected void setUp() {
+
+		context = new AnnotationConfigApplicationContext(TestConfiguration.class);
+
+		eventRepository = context.getBean(EventRepository.class);
+
+		organizationRepository = context.getBean(OrganizationRepository.class);
+
+		locationRepository = context.getBean(LocationRepository.class);
+
+		TransactionTemplate transactionTemplate = context.getBean(TransactionTemplate.class);
+
+		AccountService accountService = mock(AccountService.class);
+
+		when(accountService.hasPermission(any(HasPermissionRequest.class))).thenReturn(BoolValue.of(true));
+
+		eventService = new EventService();
+
+		ReflectionTestUtils.setField(eventService, "accountService", accountService);
+		ReflectionTestUtils.setField(eventService, "eventRepository", eventRepository);
+		ReflectionTestUtils.setField(eventService, "eventDurationRepository", context.getBean(EventDurationRepository.class));
+		ReflectionTestUtils.setField(eventService, "locationRepository", locationRepository);
+		ReflectionTestUtils.setField(eventService, "eventDurationIndex", mock(EventDurationIndex.class));
+		ReflectionTestUtils.setField(eventService, "registrationDeadlineScheduler", mock(RegistrationDeadlineScheduler.class));
+		ReflectionTestUtils.setField(eventService, "invalidationBus", mock(InvalidationBus.class));
+		ReflectionTestUtils.setField(eventService, "changeFeed", mock(ChangeFeed.class));
+		ReflectionTestUtils.setField(eventService, "transactionTemplate", transactionTemplate);
+
+		organizationService = new OrganizationService();
+
+		ReflectionTestUtils.setField(organizationService, "accountService", accountService);
+		ReflectionTestUtils.setField(organizationService, "organizationRepository", organizationRepository);
+		ReflectionTestUtils.setField(organizationService, "changeFeed", mock(ChangeFeed.class));
+		ReflectionTestUtils.setField(organizationService, "transactionTemplate", transactionTemplate);
+
+		locationService = new LocationService();
+
+		ReflectionTestUtils.setField(locationService, "locationRepository", locationRepository);
+		ReflectionTestUtils.setField(locationService, "changeFeed", mock(ChangeFeed.class));
+		ReflectionTestUtils.setField(locationService, "globalTransactionTemplate", transactionTemplate);
+	}
+
+	@Override
+	protected void tearDown() {
+
+		context.close();
+	}
+
+	public void testStaleOrganizationVersionIsAbortedWithCurrentVersion() {
+
+		int organizationId = organizationRepository.save(OrganizationEntity.builder().name("Club").build()).getId();
+
+		RecordingObserver<Organization> first = new RecordingObserver<>();
+
+		organizationService.updateOrganization(organizationUpdate(organizationId, "Renamed", 0), first);
+
+		assertNull(first.error);
+		assertEquals(1, first.value.getVersion().getValue());
+
+		RecordingObserver<Organization> second = new RecordingObserver<>();
+
+		organizationService.updateOrganization(organizationUpdate(organizationId, "Renamed again", 0), second);
+
+		assertAborted(second, 1);
+		assertEquals("Renamed", organizationRepository.findById(organizationId).get().getName());
+	}
+
+	public void testConcurrentEventUpdatesFromOneVersionApplyOnce() throws InterruptedException {
+
+		int eventId = eventRepository.save(EventEntity.builder()
+				.organizationId(1)
+				.name("Event")
+				.description("Description")
+				.build()).getId();
+
+		int threadCount = 32;
+
+		ExecutorService executor = Executors.newFixedThreadPool(threadCount);
+
+		CountDownLatch startGate = new CountDownLatch(1);
+
+		CountDownLatch finished = new CountDownLatch(threadCount);
+
+		AtomicInteger succeeded = new AtomicInteger();
+
+		AtomicInteger aborted = new AtomicInteger();
+
+		for (int thread = 0; thread < threadCount; thread++) {
+
+			UpdateEventRequest request = UpdateEventRequest.newBuilder()
+					.setUserId(1)
+					.setEvent(Event.newBuilder()
+							.setId(eventId)
+							.setOrganizationId(1)
+							.setName("Event " + thread)
+							.setDescription("Description")
+							.setVersion(Int64Value.of(0)))
+					.build();
+
+			executor.execute(() -> {
+
+				try {
+
+					startGate.await();
+
+					RecordingObserver<Event> observer = new RecordingObserver<>();
+
+					eventService.updateEvent(request, observer);
+
+					if (observer.error == null) {
+
+						succeeded.incrementAndGet();
+
+					} else {
+
+						assertAborted(observer, 1);
+
+						aborted.incrementAndGet();
+					}
+
+				} catch (InterruptedException exception) {
+
+					Thread.currentThread().interrupt();
+
+				} finally {
+
+					finished.countDown();
+				}
+			});
+		}
+
+		startGate.countDown();
+
+		assertTrue(finished.await(30, TimeUnit.SECONDS));
+
+		executor.shutdown();
+
+		assertEquals(1, succeeded.get());
+		assertEquals(threadCount - 1, aborted.get());
+		assertEquals(1, eventRepository.findById(eventId).get().getVersion());
+	}
+
+	public void testMaskedLocationUpdateWithoutVersionBumpsVersion() {
+
+		int locationId = locationRepository.save(LocationEntity.builder()
+				.name("Hall")
+				.googleMapUrl("https://maps.example/hall")
+				.description("Ground floor")
+				.build()).getId();
+
+		RecordingObserver<Location> observer = new RecordingObserver<>();
+
+		locationService.updateLocation(UpdateLocationRequest.newBuilder()
+				.setLocation(Location.newBuilder().setId(locationId).setName("Main hall"))
+				.setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+				.build(), observer);
+
+		assertNull(observer.error);
+		assertEquals(1, observer.value.getVersion().getValue());
+
+		LocationEntity storedEntity = locationRepository.findById(locationId).get();
+
+		assertEquals("Main hall", storedEntity.getName());
+		assertEquals("Ground floor", storedEntity.getDescription());
+		assertEquals(1, storedEntity.getVersion());
+
+		RecordingObserver<Location> stale = new RecordingObserver<>();
+
+		locationService.updateLocation(UpdateLocationRequest.newBuilder()
+				.setLocation(Location.newBuilder().setId(locationId).setName("Old hall").setVersion(Int64Value.of(0)))
+				.setUpdateMask(FieldMask.newBuilder().addPaths("name"))
+				.build(), stale);
+
+		assertAborted(stale, 1);
+	}
+
+	private static UpdateOrganizationRequest organizationUpdate(int organizationId, String name, long version) {
+
+		return UpdateOrganizationRequest.newBuilder()
+				.setUserId(1)
+				.setOrganization(Organization.newBuilder()
+						.setId(organizationId)
+						.setName(name)
+						.setVersion(Int64Value.of(version)))
+				.build();
+	}
+
+	private static void assertAborted(RecordingObserver<?> observer, long currentVersion) {
+
+		assertNotNull(observer.error);
+		assertEquals(Status.Code.ABORTED, Status.fromThrowable(observer.error).getCode());
+		assertEquals(Long.toString(currentVersion), Status.trailersFromThrowable(observer.error).get(ServiceUtil.CURRENT_VERSION_HEADER));
+	}
+
+	private static class RecordingObserver<T> implements StreamObserver<T> {
+
+		private T value;
+
+		private Throwable error;
+
+		@Override
+		public void onNext(T value) {
+
+			this.value = value;
+		}
+
+		@Override
+		public void onError(Throwable throwable) {
+
+			error = throwable;
+		}
+
+		@Override
+		public void onCompleted() {
+
+		}
+	}
+
+	@Configuration
+	@EnableJpaRepositories(basePackageClasses = EventRepository.class, includeFilters = @Filter(type = FilterType.ASSIGNABLE_TYPE,
+			classes = { EventRepository.class, EventDurationRepository.class, LocationRepository.class, OrganizationRepository.class }))
+	static class TestConfiguration {
+
+		@Bean
+		public DataSource dataSource() {
+
+			return new DriverManagerDataSource("jdbc:h2:mem:version-conflict;DB_CLOSE_DELAY=-1;LOCK_TIMEOUT=10000");
+		}
+
+		@Bean
+		public LocalContainerEntityManagerFactoryBean entityManagerFactory(DataSource dataSource) {
+
+			LocalContainerEntityManagerFactoryBean entityManagerFactory = new LocalContainerEntityManagerFactoryBean();
+
+			entityManagerFactory.setDataSource(dataSource);
+			entityManagerFactory.setJpaVendorAdapter(new HibernateJpaVendorAdapter());
+			entityManagerFactory.setPackagesToScan(EventEntity.class.getPackage().getName());
+			entityManagerFactory.getJpaPropertyMap().put("hibernate.hbm2ddl.auto", "create-drop");
+			entityManagerFactory.getJpaPropertyMap().put("hibernate.physical_naming_strategy",
+					"org.springframework.boot.orm.jpa.hibernate.SpringPhysicalNamingStrategy");
+			entityManagerFactory.getJpaPropertyMap().put("javax.persistence.validation.mode", "none");
+
+			return entityManagerFactory;
+		}
+
+		@Bean
+		public PlatformTransactionManager transactionManager(EntityManagerFactory entityManagerFactory) {
+
+			return new JpaTransactionManager(entityManagerFactory);
+		}
+
+		@Bean
+		public TransactionTemplate transactionTemplate(PlatformTransactionManager transactionManager) {
+
+			return new TransactionTemplate(transactionManager);
+		}
+	}
+}
@@ -0,0 +1,150 @@
+package app.onepass.organizer.utilities;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class HashedTimingWheelTest extends TestCase {
+
+	private static final long TICK = 100;
+
+	private HashedTimingWheel<String> wheel;
+
+	private long base;
+
+	@Override
+	protected void setUp() {
+
+		wheel = new HashedTimingWheel<>(TICK, 8, "timing-wheel-test", key -> {
+		});
+
+		// Moves the wheel to a tick of the test's choosing. The worker is never started, so the test drives the ticks.
+		base = System.currentTimeMillis() / TICK + 1_000;
+
+		wheel.expire(base);
+	}
+
+	public void testFiresAtDeadlineTick() {
+
+		wheel.schedule("key", millis(base + 3));
+
+		assertTrue(wheel.expire(base + 1).isEmpty());
+		assertTrue(wheel.expire(base + 2).isEmpty());
+		assertEquals(Collections.singletonList("key"), wheel.expire(base + 3));
+		assertEquals(0, wheel.size());
+		assertTrue(wheel.expire(base + 11).isEmpty());
+	}
+
+	public void testPastDeadlineFiresOnNextTick() {
+
+		wheel.schedule("key", millis(base - 50));
+
+		assertEquals(Collections.singletonList("key"), wheel.expire(base + 1));
+	}
+
+	public void testLaterRevolutionWaitsInSameSlot() {
+
+		wheel.schedule("first", millis(base + 3));
+
+		wheel.schedule("third", millis(base + 3 + 16));
+
+		wheel.schedule("second", millis(base + 3 + 8));
+
+		List<String> fired = new ArrayList<>();
+
+		for (long tick = base + 1; tick <= base + 24; tick++) {
+
+			for (String key : wheel.expire(tick)) {
+
+				fired.add(key + "@" + (tick - base));
+			}
+		}
+
+		assertEquals(Arrays.asList("first@3", "second@11", "third@19"), fired);
+	}
+
+	public void testCatchesUpAfterLongPause() {
+
+		for (int offset = 1; offset <= 20; offset++) {
+
+			wheel.schedule("key" + offset, millis(base + offset));
+		}
+
+		wheel.schedule("later", millis(base + 100));
+
+		// Sleeping through more than two revolutions still visits every slot, once.
+		List<String> fired = wheel.expire(base + 50);
+
+		assertEquals(20, fired.size());
+		assertEquals(20, new HashSet<>(fired).size());
+		assertEquals(1, wheel.size());
+
+		assertTrue(wheel.expire(base + 99).isEmpty());
+		assertEquals(Collections.singletonList("later"), wheel.expire(base + 100));
+	}
+
+	public void testCatchUpWithinOneRevolution() {
+
+		wheel.schedule("early", millis(base + 2));
+
+		wheel.schedule("late", millis(base + 5));
+
+		wheel.schedule("next", millis(base + 7));
+
+		List<String> fired = wheel.expire(base + 5);
+
+		Collections.sort(fired);
+
+		assertEquals(Arrays.asList("early", "late"), fired);
+		assertEquals(Collections.singletonList("next"), wheel.expire(base + 7));
+	}
+
+	public void testRescheduleAndCancel() {
+
+		wheel.schedule("moved", millis(base + 2));
+
+		wheel.schedule("moved", millis(base + 6));
+
+		wheel.schedule("cancelled", millis(base + 2));
+
+		wheel.schedule("kept", millis(base + 2));
+
+		assertTrue(wheel.cancel("cancelled"));
+		assertFalse(wheel.cancel("cancelled"));
+		assertEquals(2, wheel.size());
+
+		assertEquals(Collections.singletonList("kept"), wheel.expire(base + 2));
+		assertEquals(Collections.singletonList("moved"), wheel.expire(base + 6));
+	}
+
+	public void testWorkerRunsAction() throws InterruptedException {
+
+		List<String> fired = Collections.synchronizedList(new ArrayList<>());
+
+		HashedTimingWheel<String> runningWheel = new HashedTimingWheel<>(10, 8, "timing-wheel-test", fired::add);
+
+		runningWheel.start();
+
+		runningWheel.schedule("key", System.currentTimeMillis() + 30);
+
+		long deadline = System.currentTimeMillis() + 5_000;
+
+		while (fired.isEmpty() && System.currentTimeMillis() < deadline) {
+
+			Thread.sleep(10);
+		}
+
+		runningWheel.stop();
+
+		assertEquals(Collections.singletonList("key"), fired);
+	}
+
+	private static long millis(long tick) {
+
+		return tick * TICK;
+	}
+}
@@ -0,0 +1,183 @@
+package app.onepass.organizer.utilities;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+public class IntervalTreeTest extends TestCase {
+
+	public void testOverlapIsHalfOpen() {
+
+		IntervalTree<String> tree = new IntervalTree<>();
+
+		tree.put(1, 10, 20, "first");
+
+		tree.put(2, 20, 30, "second");
+
+		assertEquals(Collections.singletonList("first"), overlapping(tree, 0, 11));
+		assertEquals(Collections.singletonList("first"), overlapping(tree, 19, 20));
+		assertEquals(Collections.singletonList("second"), overlapping(tree, 20, 21));
+		assertTrue(overlapping(tree, 0, 10).isEmpty());
+		assertTrue(overlapping(tree, 30, 40).isEmpty());
+		assertEquals(2, overlapping(tree, 15, 25).size());
+	}
+
+	public void testLongIntervalUnderShortOnesIsFound() {
+
+		IntervalTree<String> tree = new IntervalTree<>();
+
+		tree.put(1, 0, 1_000, "long");
+
+		for (int id = 2; id < 200; id++) {
+
+			tree.put(id, id * 10, id * 10 + 1, "short");
+		}
+
+		// Only the maximum finish of the subtrees leads the search past the short intervals to the long one.
+		assertEquals(Collections.singletonList("long"), overlapping(tree, 995, 999));
+	}
+
+	public void testPutReplacesAndRemoveForgets() {
+
+		IntervalTree<String> tree = new IntervalTree<>();
+
+		tree.put(1, 0, 10, "before");
+
+		tree.put(1, 50, 60, "after");
+
+		assertEquals(1, tree.size());
+		assertTrue(overlapping(tree, 0, 10).isEmpty());
+		assertEquals(Collections.singletonList("after"), overlapping(tree, 55, 56));
+
+		assertTrue(tree.remove(1));
+		assertFalse(tree.remove(1));
+		assertEquals(0, tree.size());
+		assertTrue(overlapping(tree, 0, 100).isEmpty());
+	}
+
+	public void testAnyOverlappingStopsAtFirstMatch() {
+
+		IntervalTree<Integer> tree = new IntervalTree<>();
+
+		for (int id = 0; id < 100; id++) {
+
+			tree.put(id, id, id + 5, id);
+		}
+
+		List<Integer> tested = new ArrayList<>();
+
+		assertTrue(tree.anyOverlapping(10, 20, value -> {
+
+			tested.add(value);
+
+			return value == 12;
+		}));
+
+		assertEquals(12, (int) tested.get(tested.size() - 1));
+		assertFalse(tree.anyOverlapping(10, 20, value -> value > 100));
+	}
+
+	/**
+	 * Random priorities rotate nodes on every insertion and merge subtrees on every removal, so a long random run
+	 * checked against a plain list covers the rebalancing paths.
+	 */
+	public void testRandomOperationsMatchLinearScan() {
+
+		Random random = new Random(42);
+
+		IntervalTree<Long> tree = new IntervalTree<>();
+
+		Map<Long, long[]> intervals = new HashMap<>();
+
+		for (int operation = 0; operation < 20_000; operation++) {
+
+			long id = random.nextInt(500);
+
+			if (random.nextInt(3) == 0) {
+
+				assertEquals(intervals.remove(id) != null, tree.remove(id));
+
+			} else {
+
+				long start = random.nextInt(10_000);
+
+				long finish = start + 1 + random.nextInt(random.nextBoolean() ? 20 : 2_000);
+
+				tree.put(id, start, finish, id);
+
+				intervals.put(id, new long[] { start, finish });
+			}
+
+			if (operation % 100 == 0) {
+
+				assertEquals(intervals.size(), tree.size());
+
+				long from = random.nextInt(10_000);
+
+				long to = from + 1 + random.nextInt(500);
+
+				assertEquals(scan(intervals, from, to), overlappingInOrder(tree, from, to));
+			}
+		}
+
+		tree.clear();
+
+		assertEquals(0, tree.size());
+		assertTrue(overlapping(tree, 0, Long.MAX_VALUE).isEmpty());
+	}
+
+	private static List<String> overlapping(IntervalTree<String> tree, long from, long to) {
+
+		List<String> values = new ArrayList<>();
+
+		tree.forEachOverlapping(from, to, values::add);
+
+		return values;
+	}
+
+	private static List<Long> overlappingInOrder(IntervalTree<Long> tree, long from, long to) {
+
+		List<Long> ids = new ArrayList<>();
+
+		List<Long> starts = new ArrayList<>();
+
+		tree.forEachOverlappingInterval(from, to, (start, finish, id) -> {
+
+			starts.add(start);
+
+			ids.add(id);
+		});
+
+		List<Long> sortedStarts = new ArrayList<>(starts);
+
+		Collections.sort(sortedStarts);
+
+		assertEquals(sortedStarts, starts);
+
+		Collections.sort(ids);
+
+		return ids;
+	}
+
+	private static List<Long> scan(Map<Long, long[]> intervals, long from, long to) {
+
+		List<Long> ids = new ArrayList<>();
+
+		for (Map.Entry<Long, long[]> entry : intervals.entrySet()) {
+
+			if (entry.getValue()[0] < to && entry.getValue()[1] > from) {
+
+				ids.add(entry.getKey());
+			}
+		}
+
+		Collections.sort(ids);
+
+		return ids;
+	}
+}
@@ -0,0 +1,100 @@
+package app.onepass.organizer.utilities;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class RateLimiterTest extends TestCase {
+
+	private static final long INTERVAL = TimeUnit.MILLISECONDS.toNanos(10);
+
+	public void testBurstThenSteadyRate() {
+
+		RateLimiter rateLimiter = new RateLimiter();
+
+		long now = 1_000_000_000L;
+
+		for (int call = 0; call < 5; call++) {
+
+			assertEquals(0, rateLimiter.tryAcquire(1, now, INTERVAL, 5));
+		}
+
+		assertEquals(INTERVAL, rateLimiter.tryAcquire(1, now, INTERVAL, 5));
+
+		assertEquals(0, rateLimiter.tryAcquire(2, now, INTERVAL, 5));
+
+		assertEquals(0, rateLimiter.tryAcquire(1, now + INTERVAL, INTERVAL, 5));
+
+		assertTrue(rateLimiter.tryAcquire(1, now + INTERVAL, INTERVAL, 5) > 0);
+	}
+
+	public void testIdleBucketsAreEvicted() {
+
+		RateLimiter rateLimiter = new RateLimiter();
+
+		rateLimiter.tryAcquire(1, 0, INTERVAL, 3);
+
+		rateLimiter.tryAcquire(1, 0, INTERVAL, 3);
+
+		rateLimiter.evictIdle(INTERVAL);
+
+		assertEquals(1, rateLimiter.size());
+
+		rateLimiter.evictIdle(2 * INTERVAL);
+
+		assertEquals(0, rateLimiter.size());
+	}
+
+	public void testConcurrentCallersNeverExceedBurst() throws InterruptedException {
+
+		int burst = 100;
+
+		int calls = 2000;
+
+		RateLimiter rateLimiter = new RateLimiter();
+
+		AtomicInteger granted = new AtomicInteger();
+
+		ExecutorService executor = Executors.newFixedThreadPool(32);
+
+		CountDownLatch startGate = new CountDownLatch(1);
+
+		CountDownLatch finished = new CountDownLatch(calls);
+
+		for (int index = 0; index < calls; index++) {
+
+			executor.execute(() -> {
+
+				try {
+
+					startGate.await();
+
+					if (rateLimiter.tryAcquire(7, 0, TimeUnit.HOURS.toNanos(1), burst) == 0) {
+
+						granted.incrementAndGet();
+					}
+
+				} catch (InterruptedException exception) {
+
+					Thread.currentThread().interrupt();
+
+				} finally {
+
+					finished.countDown();
+				}
+			});
+		}
+
+		startGate.countDown();
+
+		assertTrue(finished.await(30, TimeUnit.SECONDS));
+
+		executor.shutdown();
+
+		assertEquals(burst, granted.get());
+	}
+}
@@ -0,0 +1,184 @@
+package app.onepass.organizer.utilities;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import junit.framework.TestCase;
+
+public class SerialExecutorTest extends TestCase {
+
+	public void testRunsTasksInOrderOneAtATime() throws InterruptedException {
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+
+		List<Integer> completed = Collections.synchronizedList(new ArrayList<>());
+
+		AtomicInteger running = new AtomicInteger();
+
+		AtomicInteger mostRunning = new AtomicInteger();
+
+		int taskCount = 10_000;
+
+		for (int index = 0; index < taskCount; index++) {
+
+			int task = index;
+
+			serialExecutor.execute(() -> {
+
+				mostRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+
+				completed.add(task);
+
+				running.decrementAndGet();
+			});
+		}
+
+		executor.shutdown();
+
+		assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+
+		assertEquals(1, mostRunning.get());
+		assertEquals(taskCount, completed.size());
+
+		for (int index = 0; index < taskCount; index++) {
+
+			assertEquals(index, (int) completed.get(index));
+		}
+	}
+
+	public void testRejectedTaskIsDropped() {
+
+		ManualExecutor executor = new ManualExecutor();
+
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+
+		List<String> completed = new ArrayList<>();
+
+		executor.isRejecting = true;
+
+		try {
+
+			serialExecutor.execute(() -> completed.add("rejected"));
+
+			fail("A saturated executor should reject the task.");
+
+		} catch (RejectedExecutionException expected) {
+
+			// The caller closes the call instead.
+		}
+
+		executor.isRejecting = false;
+
+		serialExecutor.execute(() -> completed.add("accepted"));
+
+		executor.runAll();
+
+		assertEquals(Collections.singletonList("accepted"), completed);
+	}
+
+	public void testOverflowWaitsBehindRunningTask() {
+
+		ManualExecutor executor = new ManualExecutor();
+
+		ManualExecutor overflowExecutor = new ManualExecutor();
+
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+
+		List<String> completed = new ArrayList<>();
+
+		serialExecutor.execute(() -> completed.add("message"));
+
+		executor.isRejecting = true;
+
+		serialExecutor.executeOrOverflow(() -> completed.add("complete"), overflowExecutor);
+
+		// The drain scheduled for the first task is still pending, so the completion joins it instead of overflowing.
+		assertEquals(0, overflowExecutor.pending());
+		assertTrue(completed.isEmpty());
+
+		executor.runAll();
+
+		assertEquals(0, overflowExecutor.pending());
+		assertEquals(Arrays.asList("message", "complete"), completed);
+	}
+
+	public void testOverflowRunsWhenExecutorRejects() {
+
+		ManualExecutor executor = new ManualExecutor();
+
+		ManualExecutor overflowExecutor = new ManualExecutor();
+
+		SerialExecutor serialExecutor = new SerialExecutor(executor);
+
+		List<String> completed = new ArrayList<>();
+
+		executor.isRejecting = true;
+
+		try {
+
+			serialExecutor.execute(() -> completed.add("message"));
+
+			fail("A saturated executor should reject the task.");
+
+		} catch (RejectedExecutionException expected) {
+
+			// The call is closed, and its completion follows.
+		}
+
+		serialExecutor.executeOrOverflow(() -> completed.add("cancel"), overflowExecutor);
+
+		serialExecutor.executeOrOverflow(() -> completed.add("complete"), overflowExecutor);
+
+		assertEquals(1, overflowExecutor.pending());
+
+		overflowExecutor.runAll();
+
+		assertEquals(Arrays.asList("cancel", "complete"), completed);
+		assertEquals(0, executor.pending());
+	}
+
+	private static class ManualExecutor implements Executor {
+
+		private final Queue<Runnable> runnables = new ArrayDeque<>();
+
+		private boolean isRejecting;
+
+		@Override
+		public void execute(Runnable runnable) {
+
+			if (isRejecting) {
+
+				throw new RejectedExecutionException();
+			}
+
+			runnables.add(runnable);
+		}
+
+		void runAll() {
+
+			Runnable runnable;
+
+			while ((runnable = runnables.poll()) != null) {
+
+				runnable.run();
+			}
+		}
+
+		int pending() {
+
+			return runnables.size();
+		}
+	}
+}
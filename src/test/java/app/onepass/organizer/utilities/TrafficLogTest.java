@@ -0,0 +1,197 @@
+package app.onepass.organizer.utilities;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+
+public class TrafficLogTest extends TestCase {
+
+	public void testRoundTripOfVarintBoundaries() throws IOException {
+
+		List<TrafficLog.Record> records = new ArrayList<>();
+
+		long[] timestamps = { 0, 127, 128, 16_383, 16_384, 1_600_000_000_000_000L, Long.MAX_VALUE, -1 };
+
+		for (long timestamp : timestamps) {
+
+			records.add(new TrafficLog.Record(timestamp, "organizer.Organizer/GetEvent", new byte[] { 1, 2, 3 }));
+		}
+
+		// More than 128 methods need two-byte method numbers.
+		for (int method = 0; method < 300; method++) {
+
+			records.add(new TrafficLog.Record(method, "organizer.Organizer/Method" + method, request(method % 200)));
+		}
+
+		records.add(new TrafficLog.Record(1, "organizer.Organizer/Method5", new byte[0]));
+
+		records.add(new TrafficLog.Record(2, "organizer.Organizer/Method299", request(100_000)));
+
+		List<TrafficLog.Record> readRecords = readAll(write(records));
+
+		assertEquals(records.size(), readRecords.size());
+
+		for (int index = 0; index < records.size(); index++) {
+
+			assertRecordEquals(records.get(index), readRecords.get(index));
+		}
+	}
+
+	public void testTruncatedTailEndsLog() throws IOException {
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		List<TrafficLog.Record> records = new ArrayList<>();
+
+		List<Integer> recordEnds = new ArrayList<>();
+
+		try (TrafficLog.Writer writer = new TrafficLog.Writer(outputStream)) {
+
+			for (int index = 0; index < 6; index++) {
+
+				TrafficLog.Record record = new TrafficLog.Record(1_000L * index, "method" + index % 2, request(index * 60));
+
+				records.add(record);
+
+				writer.write(record);
+
+				writer.flush();
+
+				recordEnds.add(outputStream.size());
+			}
+		}
+
+		byte[] log = outputStream.toByteArray();
+
+		int headerLength = write(new ArrayList<>()).length;
+
+		// Cutting at every byte also cuts inside varints, inside method names and inside requests.
+		for (int length = headerLength; length <= log.length; length++) {
+
+			int completeRecords = 0;
+
+			while (completeRecords < recordEnds.size() && recordEnds.get(completeRecords) <= length) {
+
+				completeRecords++;
+			}
+
+			List<TrafficLog.Record> readRecords = readAll(Arrays.copyOf(log, length));
+
+			assertEquals("Length " + length, completeRecords, readRecords.size());
+
+			for (int index = 0; index < completeRecords; index++) {
+
+				assertRecordEquals(records.get(index), readRecords.get(index));
+			}
+		}
+	}
+
+	public void testTruncatedHeaderIsRejected() throws IOException {
+
+		byte[] log = write(new ArrayList<>());
+
+		try {
+
+			readAll(Arrays.copyOf(log, 3));
+
+			fail("A truncated header should be rejected.");
+
+		} catch (IOException expected) {
+
+			// The file is not a traffic log.
+		}
+	}
+
+	public void testForeignFileIsRejected() {
+
+		try {
+
+			readAll("not a traffic log".getBytes());
+
+			fail("A file without the header should be rejected.");
+
+		} catch (IOException expected) {
+
+			// The file is not a traffic log.
+		}
+	}
+
+	public void testUnknownMethodNumberIsCorrupt() throws IOException {
+
+		byte[] log = write(Arrays.asList(new TrafficLog.Record(1, "method", new byte[0])));
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		outputStream.write(log);
+
+		// Timestamp 2, then method number 5 although only method 0 has been named.
+		outputStream.write(new byte[] { 2, 5, 0 });
+
+		try {
+
+			readAll(outputStream.toByteArray());
+
+			fail("A method number that was never named should be rejected.");
+
+		} catch (IOException expected) {
+
+			assertEquals("The traffic log is corrupt.", expected.getMessage());
+		}
+	}
+
+	private static byte[] request(int length) {
+
+		byte[] request = new byte[length];
+
+		for (int index = 0; index < length; index++) {
+
+			request[index] = (byte) (index * 31);
+		}
+
+		return request;
+	}
+
+	private static byte[] write(List<TrafficLog.Record> records) throws IOException {
+
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		try (TrafficLog.Writer writer = new TrafficLog.Writer(outputStream)) {
+
+			for (TrafficLog.Record record : records) {
+
+				writer.write(record);
+			}
+		}
+
+		return outputStream.toByteArray();
+	}
+
+	private static List<TrafficLog.Record> readAll(byte[] log) throws IOException {
+
+		List<TrafficLog.Record> records = new ArrayList<>();
+
+		try (TrafficLog.Reader reader = new TrafficLog.Reader(new ByteArrayInputStream(log))) {
+
+			TrafficLog.Record record;
+
+			while ((record = reader.read()) != null) {
+
+				records.add(record);
+			}
+		}
+
+		return records;
+	}
+
+	private static void assertRecordEquals(TrafficLog.Record expected, TrafficLog.Record actual) {
+
+		assertEquals(expected.getTimestampMicros(), actual.getTimestampMicros());
+		assertEquals(expected.getMethod(), actual.getMethod());
+		assertTrue(Arrays.equals(expected.getRequest(), actual.getRequest()));
+	}
+}
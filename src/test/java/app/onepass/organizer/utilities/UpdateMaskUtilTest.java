@@ -0,0 +1,144 @@
+package app.onepass.organizer.utilities;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import com.google.protobuf.FieldMask;
+import com.google.protobuf.Int32Value;
+import com.google.protobuf.Int64Value;
+
+import app.onepass.apis.Event;
+import junit.framework.TestCase;
+
+public class UpdateMaskUtilTest extends TestCase {
+
+	private static final Event STORED = Event.newBuilder()
+			.setId(7)
+			.setOrganizationId(3)
+			.setName("Stored name")
+			.setDescription("Stored description")
+			.setLocationId(Int32Value.of(5))
+			.setVersion(Int64Value.of(2))
+			.build();
+
+	public void testCopiesOnlyNamedFields() {
+
+		Event update = Event.newBuilder()
+				.setId(7)
+				.setName("New name")
+				.setDescription("New description")
+				.build();
+
+		Event merged = UpdateMaskUtil.apply(mask("name"), update, STORED);
+
+		assertEquals("New name", merged.getName());
+		assertEquals("Stored description", merged.getDescription());
+		assertEquals(5, merged.getLocationId().getValue());
+		assertEquals(3, merged.getOrganizationId());
+	}
+
+	public void testUnknownPathIsRejected() {
+
+		try {
+
+			UpdateMaskUtil.apply(mask("name", "no_such_field"), STORED, STORED);
+
+			fail("An unknown path should be rejected.");
+
+		} catch (IllegalArgumentException expected) {
+
+			assertTrue(expected.getMessage().contains("no_such_field"));
+		}
+	}
+
+	public void testUnsetWrapperIsCleared() {
+
+		Event update = STORED.toBuilder().clearLocationId().build();
+
+		Event merged = UpdateMaskUtil.apply(mask("location_id"), update, STORED);
+
+		assertFalse(merged.hasLocationId());
+		assertEquals("Stored name", merged.getName());
+	}
+
+	public void testUnsetWrapperOutsideMaskIsKept() {
+
+		Event update = Event.newBuilder().setName("New name").build();
+
+		Event merged = UpdateMaskUtil.apply(mask("name"), update, STORED);
+
+		assertTrue(merged.hasLocationId());
+		assertEquals(5, merged.getLocationId().getValue());
+	}
+
+	public void testRepeatedFieldIsReplaced() {
+
+		FieldMask stored = FieldMask.newBuilder().addAllPaths(Arrays.asList("name", "description")).build();
+
+		FieldMask update = FieldMask.newBuilder().addPaths("contact").build();
+
+		FieldMask merged = UpdateMaskUtil.apply(mask("paths"), update, stored);
+
+		assertEquals(Collections.singletonList("contact"), merged.getPathsList());
+
+		FieldMask cleared = UpdateMaskUtil.apply(mask("paths"), FieldMask.getDefaultInstance(), stored);
+
+		assertEquals(0, cleared.getPathsCount());
+	}
+
+	public void testIdIsRejected() {
+
+		try {
+
+			UpdateMaskUtil.apply(mask("id"), STORED.toBuilder().setId(8).build(), STORED);
+
+			fail("The ID should not be changeable through a mask.");
+
+		} catch (IllegalArgumentException expected) {
+
+			assertTrue(expected.getMessage().contains("id"));
+		}
+	}
+
+	public void testOrganizationIdIsCopiedForTheServiceToCheck() {
+
+		Event merged = UpdateMaskUtil.apply(mask("organization_id"), STORED.toBuilder().setOrganizationId(4).build(), STORED);
+
+		// The services compare the merged organization ID with the stored one and reject the change.
+		assertEquals(4, merged.getOrganizationId());
+		assertEquals(7, merged.getId());
+	}
+
+	public void testVersionIsRejected() {
+
+		try {
+
+			UpdateMaskUtil.apply(mask("name", "version"), STORED.toBuilder().setVersion(Int64Value.of(9)).build(), STORED);
+
+			fail("The version should not be changeable through a mask.");
+
+		} catch (IllegalArgumentException expected) {
+
+			assertTrue(expected.getMessage().contains("version"));
+		}
+	}
+
+	public void testVersionOutsideMaskKeepsStoredVersion() {
+
+		Event update = Event.newBuilder()
+				.setName("New name")
+				.setVersion(Int64Value.of(9))
+				.build();
+
+		Event merged = UpdateMaskUtil.apply(mask("name"), update, STORED);
+
+		// The request's version is only a precondition, and the services read it from the request itself.
+		assertEquals(2, merged.getVersion().getValue());
+		assertEquals("New name", merged.getName());
+	}
+
+	private static FieldMask mask(String... paths) {
+
+		return FieldMask.newBuilder().addAllPaths(Arrays.asList(paths)).build();
+	}
+}